@@ -0,0 +1,156 @@
+package br.edu.leonardo.jaf.android;
+
+import android.hardware.SensorEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmark of the event throughput when several threads deliver events at the same time, as
+ * happens when a SensorHub dispatches sensors on more than one thread. It compares threads that
+ * deliver to a shared sensor (and contend on its reading pool) with threads that deliver to their
+ * own sensors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class SensorContentionBenchmark {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method delivers an event to the sensor shared by all threads.
+     *
+     * @param shared The shared sensor.
+     * @param local The event of the current thread.
+     */
+    @Benchmark
+    public void sharedSensor(SharedSensor shared, ThreadSensor local) {
+        local.event.timestamp += 1000000L;
+        shared.sensor.onSensorChanged(local.event);
+    }
+
+    /**
+     * This method delivers an event to the sensor of the current thread.
+     *
+     * @param local The sensor and the event of the current thread.
+     */
+    @Benchmark
+    public void ownSensor(ThreadSensor local) {
+        local.event.timestamp += 1000000L;
+        local.sensor.onSensorChanged(local.event);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method builds a sensor with a reading listener that feeds the given blackhole.
+     *
+     * @param channels The number of channels of the sensor.
+     * @param pooled true, to deliver only pooled readings; false, to deliver sensor values too.
+     * @param blackhole The blackhole.
+     * @return The sensor.
+     */
+    static AndroidDeviceSensor createSensor(int channels, boolean pooled, final Blackhole blackhole) {
+        AndroidDeviceSensor sensor = SyntheticSensors.createSensor(channels, 0);
+        sensor.addReadingListener(new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                blackhole.consume(reading.getValue(0));
+            }
+        });
+        if(pooled)
+            sensor.enablePooledReadings(POOL_SIZE);
+        return sensor;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The sensor shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedSensor {
+
+        /**
+         * This method builds the shared sensor.
+         *
+         * @param blackhole The blackhole that consumes the readings.
+         */
+        @Setup
+        public void setup(Blackhole blackhole) {
+            sensor = createSensor(channels, pooled, blackhole);
+        }
+
+        /**
+         * The number of channels of the sensor.
+         */
+        @Param({"3"})
+        public int channels;
+
+        /**
+         * It indicates whether the sensor delivers only pooled readings.
+         */
+        @Param({"false", "true"})
+        public boolean pooled;
+
+        /**
+         * The shared sensor.
+         */
+        AndroidDeviceSensor sensor;
+    }
+
+    /**
+     * The sensor and the event of a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadSensor {
+
+        /**
+         * This method builds the sensor and the event of the thread.
+         *
+         * @param shared The shared sensor, whose parameters are reused.
+         * @param blackhole The blackhole that consumes the readings.
+         */
+        @Setup
+        public void setup(SharedSensor shared, Blackhole blackhole) {
+            sensor = createSensor(shared.channels, shared.pooled, blackhole);
+            event = SyntheticSensors.createEvent(sensor);
+        }
+
+        /**
+         * The sensor of the thread.
+         */
+        AndroidDeviceSensor sensor;
+
+        /**
+         * The event of the thread.
+         */
+        SensorEvent event;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of readings in the pools, enough for all benchmark threads.
+     */
+    private static final int POOL_SIZE = 8;
+}
@@ -0,0 +1,120 @@
+package br.edu.leonardo.jaf.android;
+
+import android.hardware.SensorEvent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The benchmark of the path followed by a single sensor event, from onSensorChanged to the agents
+ * (createSensorValue and newReading) and/or to the reading listeners. Each invocation processes
+ * one event, so the average time is the cost per event and the gc profiler reports the allocated
+ * bytes per event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SensorEventBenchmark {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method builds the sensor and the event of the current trial.
+     *
+     * @param blackhole The blackhole that consumes the readings.
+     */
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        sensor = SyntheticSensors.createSensor(channels, SAMPLING_PERIOD);
+        event = SyntheticSensors.createEvent(sensor);
+        // As a hub does when another sensor shares the registration at the event rate
+        sensor.setSharedSamplingPeriod(eventInterval);
+        if(!"agent".equals(path)) {
+            sensor.addReadingListener(new SensorReadingListener() {
+                @Override
+                public void onReading(SensorReadingSource source, SensorReading reading) {
+                    blackhole.consume(reading.getValue(0));
+                }
+            });
+        }
+        if("pooled".equals(path))
+            sensor.enablePooledReadings(2);
+    }
+
+    /**
+     * This method delivers an event directly to the sensor.
+     */
+    @Benchmark
+    public void onSensorChanged() {
+        event.timestamp += eventInterval * 1000L;
+        sensor.onSensorChanged(event);
+    }
+
+    /**
+     * This method delivers an event as a SensorHub does when the registration is shared: events
+     * that arrive faster than the sampling period of the sensor are skipped before processing.
+     */
+    @Benchmark
+    public void sharedDispatch() {
+        event.timestamp += eventInterval * 1000L;
+        if(sensor.acceptSharedEvent(event.timestamp))
+            sensor.onSensorChanged(event);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of channels of the sensor (single value, three-axis and quaternion sensors).
+     */
+    @Param({"1", "3", "4"})
+    public int channels;
+
+    /**
+     * The delivery path: "agent" (sensor values only), "reading" (sensor values and reading
+     * listeners) or "pooled" (reading listeners only).
+     */
+    @Param({"agent", "reading", "pooled"})
+    public String path;
+
+    /**
+     * The time between two synthetic events in microseconds (1 kHz, 200 Hz and 50 Hz).
+     */
+    @Param({"1000", "5000", "20000"})
+    public int eventInterval;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The sampling period of the sensor in microseconds.
+     */
+    private static final int SAMPLING_PERIOD = 20000;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The sensor.
+     */
+    private AndroidDeviceSensor sensor;
+
+    /**
+     * The reused event.
+     */
+    private SensorEvent event;
+}
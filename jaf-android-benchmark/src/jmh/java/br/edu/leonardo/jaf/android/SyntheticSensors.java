@@ -0,0 +1,119 @@
+package br.edu.leonardo.jaf.android;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.hardware.SensorEvent;
+
+import java.lang.reflect.Constructor;
+
+import br.edu.leonardo.jaf.sensors.SensorValue;
+import br.edu.leonardo.jaf.sensors.SingleSensorValue;
+import br.edu.leonardo.jaf.sensors.ThreeAxisSensorValue;
+import tec.units.ri.AbstractUnit;
+
+/**
+ * The factory of the synthetic sensors and events used by the benchmarks. The sensors are never
+ * registered in a SensorManager: the benchmarks call onSensorChanged directly, as the framework
+ * would do on the sensor thread.
+ */
+final class SyntheticSensors {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This class has only static members.
+     */
+    private SyntheticSensors() {
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method creates a sensor that builds its sensor values as the sensors created by
+     * AndroidDeviceSensorFactory do: a single channel produces SingleSensorValue objects, three
+     * channels produce ThreeAxisSensorValue objects and any other count produces
+     * VectorSensorValue objects.
+     *
+     * @param channels The number of channels of the sensor.
+     * @param samplingPeriod The sampling period of the sensor in microseconds.
+     * @return The sensor.
+     */
+    static AndroidDeviceSensor createSensor(final int channels, int samplingPeriod) {
+        return new AndroidDeviceSensor(CONTEXT, newInstance(android.hardware.Sensor.class), samplingPeriod, 0) {
+            @Override
+            protected SensorValue createSensorValue(float[] values) {
+                if(channels == 1)
+                    return new SingleSensorValue(values[0], AbstractUnit.ONE);
+                if(channels == 3)
+                    return new ThreeAxisSensorValue(values, AbstractUnit.ONE);
+                return new VectorSensorValue(values, channels, AbstractUnit.ONE);
+            }
+
+            @Override
+            public int getChannelCount() {
+                return channels;
+            }
+        };
+    }
+
+    /**
+     * This method creates an event of the given sensor with synthetic values.
+     *
+     * @param sensor The sensor.
+     * @return The event.
+     */
+    static SensorEvent createEvent(AndroidDeviceSensor sensor) {
+        int channels = sensor.getChannelCount();
+        SensorEvent event = newInstance(SensorEvent.class, channels);
+        event.sensor = sensor.getSensor();
+        event.accuracy = 3;
+        for(int i = 0; i < channels; i++)
+            event.values[i] = 0.1f * (i + 1);
+        return event;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method calls a non-public constructor of a framework class.
+     *
+     * @param type The class.
+     * @param args The int arguments of the constructor.
+     * @return The new instance.
+     */
+    private static <T> T newInstance(Class<T> type, int... args) {
+        try {
+            Class<?>[] types = new Class<?>[args.length];
+            Object[] values = new Object[args.length];
+            for(int i = 0; i < args.length; i++) {
+                types[i] = int.class;
+                values[i] = args[i];
+            }
+            Constructor<T> constructor = type.getDeclaredConstructor(types);
+            constructor.setAccessible(true);
+            return constructor.newInstance(values);
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not instantiate " + type.getName(), e);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A context without system services.
+     */
+    private static final Context CONTEXT = new ContextWrapper(null) {
+        @Override
+        public Object getSystemService(String name) {
+            return null;
+        }
+    };
+}
@@ -0,0 +1,131 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * The state machine that decides the slowdown level of a sensor published by SensorPublisher from
+ * the demand of its subscribers. The values are evaluated in windows of EVALUATION_WINDOW values:
+ * after LOW_WINDOWS consecutive windows in which at least 3/4 of the values were missed, the level
+ * is raised (the sampling period doubles); after a window without missed values in which every
+ * subscriber still has a whole window of demand, or when a subscriber requests a whole window of
+ * values at once, the level is lowered.
+ */
+final class AdaptiveRateLevel {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method accounts a value published by the sensor and, at the end of an evaluation window,
+     * evaluates the demand of the window.
+     *
+     * @param delivered true, if the value was delivered to a subscriber; false, if it was missed.
+     * @param spare The smallest outstanding demand among the subscribers after the value.
+     * @return The level wanted by the demand, which is the current level unless the window ended.
+     */
+    synchronized int onValue(boolean delivered, long spare) {
+        if(!delivered)
+            windowMissed++;
+        if(++windowEvents < EVALUATION_WINDOW)
+            return level;
+        int wanted = level;
+        if(windowMissed * 4 >= windowEvents * 3) {
+            if(++lowWindows >= LOW_WINDOWS && level < MAX_LEVEL) {
+                lowWindows = 0;
+                wanted = level + 1;
+            }
+        } else {
+            lowWindows = 0;
+            if(windowMissed == 0 && spare >= EVALUATION_WINDOW && level > 0)
+                wanted = level - 1;
+        }
+        windowEvents = 0;
+        windowMissed = 0;
+        return wanted;
+    }
+
+    /**
+     * This method evaluates a request of values by a subscriber.
+     *
+     * @param demand The outstanding demand of the subscriber after the request.
+     * @return The level wanted by the demand.
+     */
+    int onRequest(long demand) {
+        int current = level;
+        return current > 0 && demand >= EVALUATION_WINDOW ? current - 1 : current;
+    }
+
+    /**
+     * This method changes the current level.
+     *
+     * @param newLevel The new level.
+     * @return true, if the level changed; false, if it was already the current one.
+     */
+    synchronized boolean setLevel(int newLevel) {
+        if(newLevel == level)
+            return false;
+        level = newLevel;
+        return true;
+    }
+
+    /**
+     * This method restores the original rate and discards the current evaluation window.
+     */
+    synchronized void reset() {
+        level = 0;
+        windowEvents = 0;
+        windowMissed = 0;
+        lowWindows = 0;
+    }
+
+    /**
+     * This method obtains the current level.
+     *
+     * @return The slowdown level: the sampling period is multiplied by 2 to the power of the level.
+     */
+    int getLevel() {
+        return level;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of values in an evaluation window of the demand.
+     */
+    static final int EVALUATION_WINDOW = 32;
+
+    /**
+     * The number of consecutive windows with low demand that slow the sensor down.
+     */
+    static final int LOW_WINDOWS = 2;
+
+    /**
+     * The maximum slowdown level.
+     */
+    static final int MAX_LEVEL = 4;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The current slowdown level.
+     */
+    private volatile int level;
+
+    /**
+     * The number of values in the current evaluation window.
+     */
+    private int windowEvents;
+
+    /**
+     * The number of missed values in the current evaluation window.
+     */
+    private int windowMissed;
+
+    /**
+     * The number of consecutive evaluation windows with low demand.
+     */
+    private int lowWindows;
+}
@@ -0,0 +1,492 @@
+package br.edu.leonardo.jaf.android;
+
+import br.edu.leonardo.jaf.sensors.Sensor;
+import br.edu.leonardo.jaf.sensors.SensorException;
+import br.edu.leonardo.jaf.sensors.SensorValue;
+
+/**
+ * A sensor that aggregates the readings of an Android device sensor over windows and emits only
+ * one aggregate per window. Windows may be count-based (a number of readings) or time-based (a
+ * duration), and tumbling (consecutive windows do not overlap) or sliding (a new window is emitted
+ * every slide, covering the last window size). The statistics of each channel (mean, RMS, minimum,
+ * maximum and variance) are maintained incrementally in primitive accumulators, one per slide, so
+ * the raw readings are never stored nor allocated.
+ *
+ * Reading listeners receive the statistics of all channels: the reading has
+ * STATISTIC_COUNT x N channels (N being the number of channels of the source), where the channel
+ * s x N + c holds the statistic s of the source channel c. Agents receive, for each window, the
+ * SensorValue that the source would create with the values of a single statistic (the mean, by
+ * default).
+ *
+ * Windows are closed by the readings themselves: a time-based window is emitted when the first
+ * reading after its end arrives. If the source may stop delivering readings (for instance, an
+ * on-change sensor), call {@link #flush(long)} periodically to close the windows that already
+ * ended.
+ */
+public class AggregatedSensor extends Sensor implements SensorReadingSource {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new AggregatedSensor.
+     *
+     * @param source The aggregated sensor. While the aggregation is running, the source works in
+     *               the zero-allocation mode and does not deliver its own readings to agents.
+     * @param windowType The window type (COUNT_WINDOW or TIME_WINDOW).
+     * @param windowSize The window size, in readings or in microseconds.
+     * @param slide The interval between two windows, in the same unit of the window size. It
+     *              must divide the window size; a slide equal to the window size makes tumbling
+     *              windows.
+     */
+    public AggregatedSensor(AndroidDeviceSensor source, int windowType, long windowSize, long slide) {
+        this(source, source.getChannelCount(), windowType, windowSize, slide);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new AggregatedSensor with the given number of source channels.
+     *
+     * @param source The aggregated sensor.
+     * @param channels The number of channels of the source.
+     * @param windowType The window type (COUNT_WINDOW or TIME_WINDOW).
+     * @param windowSize The window size, in readings or in microseconds.
+     * @param slide The interval between two windows, in the same unit of the window size.
+     */
+    AggregatedSensor(AndroidDeviceSensor source, int channels, int windowType, long windowSize, long slide) {
+        if(windowType != COUNT_WINDOW && windowType != TIME_WINDOW)
+            throw new IllegalArgumentException("Unknown window type " + windowType);
+        if(slide <= 0 || windowSize < slide || windowSize % slide != 0)
+            throw new IllegalArgumentException("The slide must be positive and divide the window size.");
+        this.source = source;
+        this.timeBased = windowType == TIME_WINDOW;
+        this.paneLength = timeBased ? slide * 1000L : slide;
+        this.panes = (int) (windowSize / slide);
+        this.channels = channels;
+        this.counts = new long[panes];
+        this.means = new double[panes * channels];
+        this.m2s = new double[panes * channels];
+        this.squares = new double[panes * channels];
+        this.mins = new float[panes * channels];
+        this.maxs = new float[panes * channels];
+        this.output = new float[STATISTIC_COUNT * channels];
+        this.pool = new SensorReadingPool(POOL_SIZE, output.length);
+        clearPane(0);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void init() throws SensorException {
+        source.enablePooledReadings(SOURCE_POOL_SIZE);
+        source.addReadingListener(sourceListener);
+        source.init();
+    }
+
+    /**
+     * This method stops the aggregation and the underlying sensor. The partial window is
+     * discarded.
+     */
+    public synchronized void unregister() {
+        source.unregister();
+        source.removeReadingListener(sourceListener);
+        source.disablePooledReadings();
+        filled = 0;
+        currentPane = NO_PANE;
+        slot = 0;
+        clearPane(0);
+    }
+
+    /**
+     * This method closes the panes of time-based windows that ended before the given time,
+     * emitting the complete windows that have readings, as if a reading had arrived at that time.
+     * It has no effect on count-based windows nor before the first reading.
+     *
+     * @param timestamp The current time in nanoseconds, in the time base of the source readings
+     *                  (usually SystemClock.elapsedRealtimeNanos).
+     */
+    public synchronized void flush(long timestamp) {
+        if(timeBased && currentPane != NO_PANE)
+            advanceTo(timestamp / paneLength);
+    }
+
+    @Override
+    public void addReadingListener(SensorReadingListener listener) {
+        readingListeners.add(listener);
+    }
+
+    @Override
+    public void removeReadingListener(SensorReadingListener listener) {
+        readingListeners.remove(listener);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getChannelCount() {
+        return output.length;
+    }
+
+    /**
+     * This method obtains the aggregated sensor.
+     *
+     * @return The source sensor.
+     */
+    public AndroidDeviceSensor getSource() {
+        return source;
+    }
+
+    /**
+     * This method defines which statistic is delivered to the agents.
+     *
+     * @param statistic The statistic (STATISTIC_MEAN, STATISTIC_RMS, STATISTIC_MIN, STATISTIC_MAX
+     *                  or STATISTIC_VARIANCE), or -1 to deliver aggregates only to the reading
+     *                  listeners.
+     */
+    public void setAgentStatistic(int statistic) {
+        if(statistic < -1 || statistic >= STATISTIC_COUNT)
+            throw new IllegalArgumentException("Unknown statistic " + statistic);
+        this.agentStatistic = statistic;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method adds a reading of the source to the current window.
+     *
+     * @param reading The reading.
+     */
+    synchronized void onSourceReading(SensorReading reading) {
+        long timestamp = reading.getTimestamp();
+        if(timeBased) {
+            long pane = timestamp / paneLength;
+            if(currentPane == NO_PANE)
+                currentPane = pane;
+            advanceTo(pane);
+        }
+        accumulate(reading.getValues(), Math.min(reading.getSize(), channels));
+        if(!timeBased && counts[slot] == paneLength)
+            closePane(timestamp);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method closes the time-based panes up to the given one, which becomes the current pane.
+     *
+     * @param pane The index of the new current pane.
+     */
+    private void advanceTo(long pane) {
+        while(currentPane < pane) {
+            currentPane++;
+            closePane(currentPane * paneLength);
+            // Once the window has no readings, closing the panes of the gap emits nothing
+            if(isWindowEmpty())
+                currentPane = pane;
+        }
+    }
+
+    /**
+     * This method adds the values of a reading to the accumulators of the current pane, using the
+     * Welford algorithm for the mean and the variance.
+     *
+     * @param values The values of the reading.
+     * @param count The number of channels to be aggregated.
+     */
+    private void accumulate(float[] values, int count) {
+        long n = ++counts[slot];
+        int base = slot * channels;
+        for(int c = 0; c < count; c++) {
+            int i = base + c;
+            float x = values[c];
+            double delta = x - means[i];
+            means[i] += delta / n;
+            m2s[i] += delta * (x - means[i]);
+            squares[i] += (double) x * x;
+            if(x < mins[i])
+                mins[i] = x;
+            if(x > maxs[i])
+                maxs[i] = x;
+        }
+    }
+
+    /**
+     * This method closes the current pane, emits the window that ends with it (if the window is
+     * complete and has readings) and starts a new pane.
+     *
+     * @param timestamp The time in nanoseconds of the end of the window.
+     */
+    private void closePane(long timestamp) {
+        if(filled < panes)
+            filled++;
+        if(filled == panes)
+            emitWindow(timestamp);
+        slot = (slot + 1) % panes;
+        clearPane(slot);
+    }
+
+    /**
+     * This method combines the accumulators of all panes of the window, using the parallel
+     * algorithm of Chan et al. for the variance, and emits the aggregate.
+     *
+     * @param timestamp The time in nanoseconds of the end of the window.
+     */
+    private void emitWindow(long timestamp) {
+        if(isWindowEmpty())
+            return;
+        for(int c = 0; c < channels; c++) {
+            long n = 0;
+            double mean = 0;
+            double m2 = 0;
+            double squareSum = 0;
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for(int p = 0; p < panes; p++) {
+                long pn = counts[p];
+                if(pn == 0)
+                    continue;
+                int i = p * channels + c;
+                long combined = n + pn;
+                double delta = means[i] - mean;
+                mean += delta * pn / combined;
+                m2 += m2s[i] + delta * delta * n * pn / combined;
+                n = combined;
+                squareSum += squares[i];
+                min = Math.min(min, mins[i]);
+                max = Math.max(max, maxs[i]);
+            }
+            output[STATISTIC_MEAN * channels + c] = (float) mean;
+            output[STATISTIC_RMS * channels + c] = (float) Math.sqrt(squareSum / n);
+            output[STATISTIC_MIN * channels + c] = min;
+            output[STATISTIC_MAX * channels + c] = max;
+            output[STATISTIC_VARIANCE * channels + c] = (float) (m2 / n);
+        }
+        if(!readingListeners.isEmpty()) {
+            SensorReading reading = pool.acquire();
+            if(reading != null) {
+                reading.set(timestamp, 0, output, output.length);
+                try {
+                    readingListeners.dispatch(this, reading);
+                } finally {
+                    reading.release();
+                }
+            }
+        }
+        int statistic = agentStatistic;
+        if(statistic >= 0) {
+            float[] values = new float[channels];
+            System.arraycopy(output, statistic * channels, values, 0, channels);
+            SensorValue value = source.createSensorValue(values);
+            if(value != null)
+                newReading(value);
+        }
+    }
+
+    /**
+     * This method checks whether no pane of the window has readings.
+     *
+     * @return true, if the window is empty; false, otherwise.
+     */
+    private boolean isWindowEmpty() {
+        for(int p = 0; p < panes; p++)
+            if(counts[p] != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * This method resets the accumulators of a pane.
+     *
+     * @param pane The pane slot.
+     */
+    private void clearPane(int pane) {
+        counts[pane] = 0;
+        int base = pane * channels;
+        for(int c = 0; c < channels; c++) {
+            means[base + c] = 0;
+            m2s[base + c] = 0;
+            squares[base + c] = 0;
+            mins[base + c] = Float.POSITIVE_INFINITY;
+            maxs[base + c] = Float.NEGATIVE_INFINITY;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The window type whose size and slide are numbers of readings.
+     */
+    public static final int COUNT_WINDOW = 0;
+
+    /**
+     * The window type whose size and slide are durations in microseconds.
+     */
+    public static final int TIME_WINDOW = 1;
+
+    /**
+     * The mean of the readings in the window.
+     */
+    public static final int STATISTIC_MEAN = 0;
+
+    /**
+     * The root mean square of the readings in the window.
+     */
+    public static final int STATISTIC_RMS = 1;
+
+    /**
+     * The minimum of the readings in the window.
+     */
+    public static final int STATISTIC_MIN = 2;
+
+    /**
+     * The maximum of the readings in the window.
+     */
+    public static final int STATISTIC_MAX = 3;
+
+    /**
+     * The population variance of the readings in the window.
+     */
+    public static final int STATISTIC_VARIANCE = 4;
+
+    /**
+     * The number of statistics computed for each channel.
+     */
+    public static final int STATISTIC_COUNT = 5;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of readings in the pool of the source.
+     */
+    private static final int SOURCE_POOL_SIZE = 2;
+
+    /**
+     * The number of readings in the pool of aggregates.
+     */
+    private static final int POOL_SIZE = 4;
+
+    /**
+     * The marker of the pane index before the first reading.
+     */
+    private static final long NO_PANE = Long.MIN_VALUE;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The aggregated sensor.
+     */
+    private final AndroidDeviceSensor source;
+
+    /**
+     * Indicates whether the windows are time-based.
+     */
+    private final boolean timeBased;
+
+    /**
+     * The length of a pane (the slide), in readings or in nanoseconds.
+     */
+    private final long paneLength;
+
+    /**
+     * The number of panes in a window.
+     */
+    private final int panes;
+
+    /**
+     * The number of channels of the source.
+     */
+    private final int channels;
+
+    /**
+     * The number of readings in each pane.
+     */
+    private final long[] counts;
+
+    /**
+     * The running mean of each channel in each pane.
+     */
+    private final double[] means;
+
+    /**
+     * The running sum of squared differences from the mean of each channel in each pane.
+     */
+    private final double[] m2s;
+
+    /**
+     * The sum of squares of each channel in each pane.
+     */
+    private final double[] squares;
+
+    /**
+     * The minimum of each channel in each pane.
+     */
+    private final float[] mins;
+
+    /**
+     * The maximum of each channel in each pane.
+     */
+    private final float[] maxs;
+
+    /**
+     * The array where the aggregate of a window is computed.
+     */
+    private final float[] output;
+
+    /**
+     * The pool of aggregate readings.
+     */
+    private final SensorReadingPool pool;
+
+    /**
+     * The listeners that receive the aggregate readings.
+     */
+    private final ReadingListenerList readingListeners = new ReadingListenerList();
+
+    /**
+     * The listener registered in the source.
+     */
+    private final SensorReadingListener sourceListener = new SensorReadingListener() {
+        @Override
+        public void onReading(SensorReadingSource source, SensorReading reading) {
+            onSourceReading(reading);
+        }
+    };
+
+    /**
+     * The statistic delivered to the agents, or -1.
+     */
+    private volatile int agentStatistic = STATISTIC_MEAN;
+
+    /**
+     * The slot of the current pane.
+     */
+    private int slot;
+
+    /**
+     * The number of closed panes, up to the number of panes in a window.
+     */
+    private int filled;
+
+    /**
+     * The index of the current pane of time-based windows.
+     */
+    private long currentPane = NO_PANE;
+}
@@ -2,20 +2,27 @@ package br.edu.leonardo.jaf.android;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.hardware.SensorDirectChannel;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 
 import br.edu.leonardo.jaf.sensors.Sensor;
 import br.edu.leonardo.jaf.sensors.SensorException;
 import br.edu.leonardo.jaf.sensors.SensorValue;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * An abstract implementation of an Android device sensor for agents in JAF. It is possible to
  * implement a specific sensor in Android creating a subclass of this class.
  */
-public abstract class AndroidDeviceSensor extends Sensor implements SensorEventListener {
+public abstract class AndroidDeviceSensor extends Sensor implements SensorEventListener, SensorReadingSource {
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // P U B L I C   C O N S T R U C T O R S
@@ -40,6 +47,7 @@ public abstract class AndroidDeviceSensor extends Sensor implements SensorEventL
         this.sensor = sensor;
         this.samplingPeriod = samplingPeriod;
         this.reportLatency = reportLatency;
+        this.minSharedInterval = SensorHub.toMicros(samplingPeriod) * 900L;
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -48,20 +56,376 @@ public abstract class AndroidDeviceSensor extends Sensor implements SensorEventL
 
     @TargetApi(Build.VERSION_CODES.KITKAT)
     @Override
-    public void init() throws SensorException {
-        if(!sensorMgr.registerListener(this, sensor, samplingPeriod, reportLatency))
-            throw new SensorException(this, "The sensor is not supported or it is not successfully enabled.");
+    public synchronized void init() throws SensorException {
+        if(deferredToListeners && readingListeners.isEmpty() && batch == null) {
+            registrationPending = true;
+            return;
+        }
+        registrationPending = false;
+        if(directRateLevel > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && startDirectChannel()) {
+            registered = true;
+            return;
+        }
+        SensorHub currentHub = hub;
+        if(currentHub != null)
+            currentHub.attach(this);
+        else
+            ownDispatcher().attach(this);
+        registered = true;
+    }
+
+    /**
+     * This method stops receiving events from the Android sensor, undoing the registration made by
+     * init().
+     */
+    public synchronized void unregister() {
+        registrationPending = false;
+        Handler handler = heartbeatHandler;
+        if(handler != null) {
+            handler.removeCallbacks(heartbeat);
+            heartbeatPosted = false;
+        }
+        DirectChannelReader reader = directReader;
+        SensorHub currentHub = hub;
+        if(reader != null) {
+            reader.stop();
+            directReader = null;
+        } else if(currentHub != null)
+            currentHub.detach(this);
+        else
+            ownDispatcher().detach(this);
+        registered = false;
+    }
+
+    /**
+     * This method changes the sampling period and the report latency of this sensor. If the sensor
+     * is registered, it is registered again with the new values (when the registration is shared
+     * through a hub, the hub renegotiates the shared registration).
+     *
+     * @param samplingPeriod The sensor sampling period passed to the Android system (the desired
+     *                       delay between two consecutive events in microseconds).
+     * @param reportLatency The sensor report latency passed to the Android system, in
+     *                      microseconds.
+     * @throws SensorException If the sensor could not be registered again.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public synchronized void setSamplingRate(int samplingPeriod, int reportLatency) throws SensorException {
+        if(samplingPeriod == this.samplingPeriod && reportLatency == this.reportLatency)
+            return;
+        boolean wasRegistered = registered;
+        if(wasRegistered)
+            unregister();
+        this.samplingPeriod = samplingPeriod;
+        this.reportLatency = reportLatency;
+        this.minSharedInterval = SensorHub.toMicros(samplingPeriod) * 900L;
+        SensorMetrics m = metrics;
+        if(m != null)
+            m.setExpectedPeriod(SensorHub.toMicros(samplingPeriod) * 1000L);
+        if(wasRegistered)
+            init();
+    }
+
+    /**
+     * This method checks whether init() was called and the sensor was not unregistered since,
+     * including when the registration is deferred until the sensor has a listener.
+     *
+     * @return true, if the sensor is registered or waiting for a listener; false, otherwise.
+     */
+    public synchronized boolean isRegistered() {
+        return registered || registrationPending;
     }
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-        newReading(createSensorValue(event.values));
+        onSensorValues(event.timestamp, event.accuracy, event.values);
     }
 
     @Override
     public void onAccuracyChanged(android.hardware.Sensor sensor, int i) {
     }
 
+    @Override
+    public void addReadingListener(SensorReadingListener listener) {
+        synchronized(readingListeners) {
+            if(readingPool == null)
+                readingPool = new SensorReadingPool(DEFAULT_POOL_SIZE, getChannelCount());
+        }
+        readingListeners.add(listener);
+        if(registrationPending)
+            registerPending();
+    }
+
+    @Override
+    public void removeReadingListener(SensorReadingListener listener) {
+        readingListeners.remove(listener);
+    }
+
+    /**
+     * This method enables the zero-allocation mode of this sensor. In this mode, the sensor does
+     * not create SensorValue objects nor calls newReading. Instead, each event is copied into a
+     * reading borrowed from a pool of preallocated readings and delivered to the registered
+     * reading listeners.
+     *
+     * @param poolSize The number of readings in the pool. It bounds how many readings listeners
+     *                 can retain at the same time; events that arrive while all readings are
+     *                 retained are dropped.
+     */
+    public void enablePooledReadings(int poolSize) {
+        synchronized(readingListeners) {
+            readingPool = new SensorReadingPool(poolSize, getChannelCount());
+        }
+        pooledReadings = true;
+    }
+
+    /**
+     * This method disables the zero-allocation mode of this sensor, so that events are delivered
+     * again as SensorValue objects through newReading.
+     */
+    public void disablePooledReadings() {
+        pooledReadings = false;
+    }
+
+    /**
+     * This method enables the collection of runtime metrics of this sensor: event rate, delivery
+     * latency, jitter relative to the sampling period, and dropped, coalesced and missed events.
+     * The latency is measured from the event timestamp to the moment the event is processed, so it
+     * is only available in Android 4.2 or later.
+     *
+     * @return The metrics of this sensor.
+     */
+    public SensorMetrics enableMetrics() {
+        SensorMetrics m = metrics;
+        if(m == null) {
+            m = new SensorMetrics(SensorHub.toMicros(samplingPeriod) * 1000L);
+            metrics = m;
+        }
+        return m;
+    }
+
+    /**
+     * This method disables the collection of runtime metrics of this sensor.
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * This method enables the latest value slot of this sensor, which keeps the values of the
+     * latest event so that any thread can read them without subscribing to the sensor and without
+     * locks. Events discarded by the warm-up are not stored; events suppressed by the suppression
+     * filter are, since the slot always holds the current values.
+     *
+     * @return The latest value slot of this sensor.
+     */
+    public synchronized LatestValueSlot enableLatestValue() {
+        LatestValueSlot slot = latestValue;
+        if(slot == null) {
+            slot = new LatestValueSlot(MAX_CHANNELS);
+            latestValue = slot;
+        }
+        return slot;
+    }
+
+    /**
+     * This method disables the latest value slot of this sensor and the polling-only mode.
+     */
+    public synchronized void disableLatestValue() {
+        pollingOnly = false;
+        latestValue = null;
+    }
+
+    /**
+     * This method enables the polling-only mode of this sensor, for agents that only read its
+     * current value. In this mode, events are only stored in the latest value slot: no SensorValue
+     * is created and nothing is delivered to the agents, the reading listeners or the batch
+     * listener. A sensor whose registration is deferred until it has a listener is registered
+     * now, since polling does not add a listener to it.
+     *
+     * @return The latest value slot of this sensor.
+     */
+    public LatestValueSlot enablePollingOnly() {
+        LatestValueSlot slot = enableLatestValue();
+        pollingOnly = true;
+        // A heartbeat posted before would keep forwarding the last emitted values
+        Handler handler = heartbeatHandler;
+        if(handler != null) {
+            handler.removeCallbacks(heartbeat);
+            heartbeatPosted = false;
+        }
+        if(registrationPending)
+            registerPending();
+        return slot;
+    }
+
+    /**
+     * This method disables the polling-only mode of this sensor. The latest value slot remains
+     * enabled.
+     */
+    public void disablePollingOnly() {
+        pollingOnly = false;
+    }
+
+    /**
+     * This method enables the asynchronous delivery mode of this sensor. In this mode, the events
+     * received from the Android system are only copied into a bounded ring buffer, and a dedicated
+     * thread takes them from the buffer and delivers them to the reading listeners and agents. A
+     * slow agent therefore does not stall the thread that receives the events; when the buffer is
+     * full, the overflow policy decides which events are lost.
+     *
+     * The BLOCK policy makes the thread that receives the events wait for the delivery thread, so
+     * it is refused for sensors attached to a SensorHub, whose threads deliver the events of every
+     * attached sensor: a slow agent would stall all of them. Without a hub, the events are
+     * received in the main thread, which BLOCK stalls as well; it is meant for the direct channel
+     * mode, whose reader thread serves a single sensor.
+     *
+     * @param capacity The maximum number of buffered events.
+     * @param policy The overflow policy (SensorRingBuffer.DROP_OLDEST, DROP_NEWEST,
+     *               COALESCE_LATEST or BLOCK).
+     * @return The ring buffer, whose occupancy and drop counters can be monitored.
+     * @throws IllegalArgumentException If the policy is BLOCK and the sensor is attached to a hub.
+     */
+    public synchronized SensorRingBuffer enableAsyncDelivery(int capacity, int policy) {
+        if(policy == SensorRingBuffer.BLOCK && hub != null)
+            throw new IllegalArgumentException("The BLOCK policy would stall the other sensors of the hub.");
+        disableAsyncDelivery();
+        AsyncDelivery async = new AsyncDelivery(new SensorRingBuffer(capacity, getChannelCount(), policy));
+        Thread thread = new Thread(async, "jaf-delivery-" + (sensor != null ? sensor.getName() : "sensor"));
+        thread.setDaemon(true);
+        async.thread = thread;
+        asyncDelivery = async;
+        thread.start();
+        return async.buffer;
+    }
+
+    /**
+     * This method disables the asynchronous delivery mode of this sensor, so that events are
+     * delivered again in the thread that receives them. The events still in the buffer are
+     * discarded.
+     */
+    public synchronized void disableAsyncDelivery() {
+        AsyncDelivery async = asyncDelivery;
+        if(async == null)
+            return;
+        asyncDelivery = null;
+        async.running = false;
+        async.thread.interrupt();
+        if(async.thread != Thread.currentThread()) {
+            try {
+                async.thread.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * This method enables the batch delivery mode of this sensor. In this mode, the events that the
+     * Android system delivers together (for instance, the events flushed from the hardware FIFO
+     * when the report latency is not zero) are gathered into a columnar batch and handed to the
+     * given listener in a single call, instead of being delivered one by one. A batch is delivered
+     * when it gets full or after the last event of a burst is received; in direct channel mode, after
+     * each read of the shared memory ring.
+     *
+     * @param capacity The maximum number of readings in a batch.
+     * @param listener The listener that receives the batches.
+     */
+    public void enableBatchDelivery(int capacity, SensorBatchListener listener) {
+        batchListener = listener;
+        batch = new SensorReadingBatch(capacity, getChannelCount());
+        bindCallbackHandler();
+        if(registrationPending)
+            registerPending();
+    }
+
+    /**
+     * This method disables the batch delivery mode of this sensor. Readings pending in the current
+     * batch are discarded.
+     */
+    public void disableBatchDelivery() {
+        batch = null;
+        batchListener = null;
+    }
+
+    /**
+     * This method enables the direct channel mode of this sensor. In this mode, the Android system
+     * writes the events of the sensor into a shared memory ring instead of delivering SensorEvent
+     * objects to a listener, and a reader thread parses the ring into primitive readings. This
+     * avoids the callback path at very high rates (hundreds of events per second). The events are
+     * processed in the reader thread. If the sensor or the device does not support direct channels
+     * backed by shared memory at the given rate level, the sensor keeps using the listener path.
+     * If the sensor is registered, it is registered again.
+     *
+     * @param rateLevel The direct report rate level (SensorDirectChannel.RATE_NORMAL, RATE_FAST or
+     *                  RATE_VERY_FAST).
+     * @param capacity The number of events of the shared memory ring.
+     * @return true, if the direct channel mode is supported; false, if the listener path is used.
+     * @throws SensorException If the sensor could not be registered again.
+     */
+    public synchronized boolean enableDirectChannel(int rateLevel, int capacity) throws SensorException {
+        if(!isDirectChannelSupported(rateLevel))
+            return false;
+        boolean wasRegistered = registered;
+        if(wasRegistered)
+            unregister();
+        directRateLevel = rateLevel;
+        directCapacity = capacity;
+        if(wasRegistered)
+            init();
+        return true;
+    }
+
+    /**
+     * This method disables the direct channel mode of this sensor, so that it uses the listener
+     * path again. If the sensor is registered, it is registered again.
+     *
+     * @throws SensorException If the sensor could not be registered again.
+     */
+    public synchronized void disableDirectChannel() throws SensorException {
+        boolean wasRegistered = registered;
+        if(wasRegistered)
+            unregister();
+        directRateLevel = 0;
+        if(wasRegistered)
+            init();
+    }
+
+    /**
+     * This method checks whether the events of this sensor are currently read from a direct
+     * channel.
+     *
+     * @return true, if a direct channel is active; false, if the listener path is used.
+     */
+    public synchronized boolean isDirectChannelActive() {
+        return directReader != null;
+    }
+
+    /**
+     * This method asks the Android system to flush the hardware FIFO of the sensor, so that all
+     * buffered events are delivered immediately. The flush is requested through the listener that
+     * holds the registration of the sensor, so the other sensors registered by the same hub thread
+     * are flushed too. In batch delivery mode, the current batch is delivered when the Android
+     * system reports that the flushed events have been received. Sensors read from a direct
+     * channel cannot be flushed.
+     *
+     * @return true, if the flush was successfully requested; false, otherwise.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public synchronized boolean flush() {
+        if(!registered || directReader != null)
+            return false;
+        SensorHub currentHub = hub;
+        return currentHub != null ? currentHub.flush(this) : ownDispatcher().flush();
+    }
+
+    /**
+     * This method checks whether the zero-allocation mode of this sensor is enabled.
+     *
+     * @return true, if the sensor delivers only pooled readings; false, otherwise.
+     */
+    public boolean isPooledReadingsEnabled() {
+        return pooledReadings;
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // P R O T E C T E D   M E T H O D S
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -75,10 +439,419 @@ public abstract class AndroidDeviceSensor extends Sensor implements SensorEventL
      */
     protected abstract SensorValue createSensorValue(float[] values);
 
+    /**
+     * This method processes the values of an event reported by the Android sensor. The values are
+     * first converted to the target unit of the sensor, if it has one, and stored in the latest
+     * value slot, if it is enabled; in the polling-only mode, processing stops there. Unless the
+     * event is discarded by the suppression filter, it delivers a pooled reading to the registered
+     * reading listeners and, unless the zero-allocation mode is enabled, a SensorValue to
+     * newReading. In the asynchronous delivery mode, the event is only buffered here and delivered
+     * by the delivery thread.
+     *
+     * @param timestamp The time in nanoseconds at which the event happened.
+     * @param accuracy The accuracy of the event.
+     * @param values The values reported by the Android sensor.
+     */
+    protected void onSensorValues(long timestamp, int accuracy, float[] values) {
+        if(consumeWarmUp())
+            return;
+        receivedCount++;
+        SensorMetrics m = metrics;
+        if(m != null)
+            m.recordEvent(timestamp, Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? SystemClock.elapsedRealtimeNanos() : -1L);
+        PrimitiveUnitConverter converter = unitConverter;
+        if(converter != null && !converter.isIdentity()) {
+            // The values array may be shared with other sensors of the same registration
+            float[] converted = convertedValues;
+            if(converted == null || converted.length != values.length)
+                convertedValues = converted = new float[values.length];
+            converter.convert(values, converted, values.length);
+            values = converted;
+        }
+        LatestValueSlot slot = latestValue;
+        if(slot != null) {
+            slot.write(timestamp, accuracy, values, Math.min(values.length, getChannelCount()));
+            if(pollingOnly)
+                return;
+        }
+        SuppressionFilter filter = suppressionFilter;
+        if(filter != null) {
+            int count = Math.min(values.length, getChannelCount());
+            if(!filter.accept(timestamp, values, count)) {
+                if(m != null)
+                    m.recordCoalesced(1);
+                return;
+            }
+            if(filter.getMaxSilence() > 0)
+                scheduleHeartbeat(filter, accuracy, count);
+        }
+        forward(timestamp, accuracy, values);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method decides whether an event of an Android sensor registration shared with other
+     * sensors must be processed by this sensor. When the shared registration of a continuous
+     * sensor uses a faster rate than the one requested by this sensor, events that arrive sooner
+     * than the sampling period of this sensor (with a 10% tolerance) are skipped. Events of
+     * on-change and trigger sensors, and of registrations that are not faster, are always
+     * processed, since each of them may carry a value that is not reported again.
+     *
+     * @param timestamp The time in nanoseconds at which the event happened.
+     * @return true, if the event must be processed; false, otherwise.
+     */
+    boolean acceptSharedEvent(long timestamp) {
+        if(!decimateShared)
+            return true;
+        if(timestamp - lastSharedTimestamp < minSharedInterval) {
+            SensorMetrics m = metrics;
+            if(m != null)
+                m.recordCoalesced(1);
+            return false;
+        }
+        lastSharedTimestamp = timestamp;
+        return true;
+    }
+
+    /**
+     * This method is called by the dispatcher of the registration of this sensor whenever the
+     * effective sampling period of the registration changes, so that this sensor skips the extra
+     * events only when the registration is shared at a faster rate.
+     *
+     * @param sharedPeriod The effective sampling period of the registration in microseconds; or
+     *                     -1, if this sensor is no longer attached to it.
+     */
+    void setSharedSamplingPeriod(int sharedPeriod) {
+        decimateShared = sharedPeriod >= 0
+                && sharedPeriod < SensorHub.toMicros(samplingPeriod)
+                && getReportingMode() == AndroidSensorType.REPORTING_MODE_CONTINUOUS;
+    }
+
+    /**
+     * This method defines the reporting mode of the Android sensor, as resolved by
+     * AndroidDeviceSensorFactory.
+     *
+     * @param reportingMode The reporting mode (see the AndroidSensorType.REPORTING_MODE_*
+     *                      constants).
+     */
+    void setReportingMode(int reportingMode) {
+        this.reportingMode = reportingMode;
+    }
+
+    /**
+     * This method is called by the dispatcher of the registration of this sensor when a flush of
+     * the hardware FIFO has completed, in the thread that receives the events. In batch delivery
+     * mode, it delivers the current batch, which holds the last flushed events.
+     */
+    void onFlushCompleted() {
+        deliverBatch();
+    }
+
+    /**
+     * This method is called by the direct channel reader after it delivers the new records of a
+     * read of the shared memory ring, in the reader thread. In batch delivery mode, it delivers the
+     * current batch.
+     */
+    void onDirectReadCompleted() {
+        deliverBatch();
+    }
+
+    /**
+     * This method makes this sensor discard the next events, which Android sensors may report
+     * with unsettled values right after being registered.
+     *
+     * @param samples The number of events to discard.
+     */
+    void discardWarmUp(int samples) {
+        warmUpRemaining.set(samples);
+    }
+
+    /**
+     * This method obtains the number of events received by this sensor, excluding the discarded
+     * warm-up events.
+     *
+     * @return The number of received events.
+     */
+    long getReceivedCount() {
+        return receivedCount;
+    }
+
+    /**
+     * This method computes when the heartbeat of the suppression filter must emit the last values
+     * of a silent sensor.
+     *
+     * @param filter The suppression filter, or null.
+     * @param active true, if the sensor is registered and delivers its events; false, if it is
+     *               unregistered or in the polling-only mode.
+     * @param lastEmitUptime The uptime in milliseconds of the last emitted event.
+     * @param now The current uptime in milliseconds.
+     * @return The time in milliseconds until the heartbeat is due; zero, if it is due now; or
+     *         NO_HEARTBEAT_DELAY, if the heartbeat must stop.
+     */
+    static long getHeartbeatDelay(SuppressionFilter filter, boolean active, long lastEmitUptime, long now) {
+        if(filter == null || filter.getMaxSilence() == 0 || !active)
+            return NO_HEARTBEAT_DELAY;
+        long remaining = lastEmitUptime + filter.getMaxSilence() / 1000000L - now;
+        return remaining > 0 ? remaining : 0;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method performs a registration deferred until the sensor has a listener.
+     */
+    private synchronized void registerPending() {
+        if(!registrationPending)
+            return;
+        try {
+            init();
+            registrationError = null;
+        } catch(SensorException e) {
+            registrationError = e;
+        }
+    }
+
+    /**
+     * This method obtains the dispatcher that holds the registration of this sensor when it is not
+     * attached to a hub. It delivers the events in the main thread.
+     *
+     * @return The dispatcher reference.
+     */
+    private SensorHub.Dispatcher ownDispatcher() {
+        if(ownDispatcher == null)
+            ownDispatcher = SensorHub.newDispatcher(sensorMgr, null);
+        return ownDispatcher;
+    }
+
+    /**
+     * This method checks whether the Android sensor supports direct channels backed by shared
+     * memory at a rate level.
+     *
+     * @param rateLevel The direct report rate level.
+     * @return true, if the direct channel is supported; false, otherwise.
+     */
+    private boolean isDirectChannelSupported(int rateLevel) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && sensor != null
+                && rateLevel > 0
+                && sensor.isDirectChannelTypeSupported(SensorDirectChannel.TYPE_MEMORY_FILE)
+                && rateLevel <= sensor.getHighestDirectReportRateLevel();
+    }
+
+    /**
+     * This method starts reading the events of this sensor from a direct channel.
+     *
+     * @return true, if the direct channel was started; false, if it could not be configured.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private boolean startDirectChannel() {
+        DirectChannelReader reader = new DirectChannelReader(this, sensorMgr, directRateLevel, directCapacity);
+        if(!reader.start())
+            return false;
+        directReader = reader;
+        return true;
+    }
+
+    /**
+     * This method forwards an event that passed the suppression filter to the current delivery
+     * mode: the batch, the asynchronous delivery or the immediate delivery.
+     *
+     * @param timestamp The time in nanoseconds at which the event happened.
+     * @param accuracy The accuracy of the event.
+     * @param values The values of the event.
+     */
+    private void forward(long timestamp, int accuracy, float[] values) {
+        SensorReadingBatch currentBatch = batch;
+        if(currentBatch != null) {
+            appendToBatch(currentBatch, timestamp, values);
+            return;
+        }
+        AsyncDelivery async = asyncDelivery;
+        if(async != null) {
+            int result = async.buffer.offer(timestamp, accuracy, values, values.length);
+            SensorMetrics m = metrics;
+            if(m != null && result == SensorRingBuffer.OFFER_DROPPED)
+                m.recordDropped(1);
+            else if(m != null && result == SensorRingBuffer.OFFER_COALESCED)
+                m.recordCoalesced(1);
+            return;
+        }
+        deliver(timestamp, accuracy, values);
+    }
+
+    /**
+     * This method schedules the heartbeat of the suppression filter after an emitted event, in the
+     * thread that receives the events, so that a sensor that stays silent still emits its last
+     * values once per maximum interval. Threads without a looper (as the direct channel reader)
+     * receive events at a fixed rate, so the filter checks the silence at each event instead.
+     *
+     * @param filter The suppression filter.
+     * @param accuracy The accuracy of the emitted event.
+     * @param count The number of values of the emitted event.
+     */
+    private void scheduleHeartbeat(SuppressionFilter filter, int accuracy, int count) {
+        Looper looper = Looper.myLooper();
+        if(looper == null)
+            return;
+        Handler handler = heartbeatHandler;
+        if(handler == null || handler.getLooper() != looper) {
+            heartbeatHandler = handler = new Handler(looper);
+            heartbeatPosted = false;
+        }
+        heartbeatAccuracy = accuracy;
+        heartbeatCount = count;
+        lastEmitUptime = SystemClock.uptimeMillis();
+        if(!heartbeatPosted) {
+            heartbeatPosted = true;
+            handler.postDelayed(heartbeat, filter.getMaxSilence() / 1000000L);
+        }
+    }
+
+    /**
+     * This method delivers the values of an event to the reading listeners and, unless the
+     * zero-allocation mode is enabled, a SensorValue to newReading.
+     *
+     * @param timestamp The time in nanoseconds at which the event happened.
+     * @param accuracy The accuracy of the event.
+     * @param values The values of the event.
+     */
+    private void deliver(long timestamp, int accuracy, float[] values) {
+        if(!readingListeners.isEmpty())
+            dispatchReading(timestamp, accuracy, values);
+        if(!pooledReadings)
+            newReading(createSensorValue(values));
+    }
+
+    /**
+     * This method copies the given values into a pooled reading and delivers it to the reading
+     * listeners. The event is dropped if all readings of the pool are retained by listeners.
+     *
+     * @param timestamp The time in nanoseconds at which the event happened.
+     * @param accuracy The accuracy of the event.
+     * @param values The values reported by the Android sensor.
+     */
+    private void dispatchReading(long timestamp, int accuracy, float[] values) {
+        SensorReading reading = readingPool.acquire();
+        if(reading == null) {
+            SensorMetrics m = metrics;
+            if(m != null)
+                m.recordDropped(1);
+            return;
+        }
+        reading.set(timestamp, accuracy, values, values.length);
+        try {
+            readingListeners.dispatch(this, reading);
+        } finally {
+            reading.release();
+        }
+    }
+
+    /**
+     * This method appends an event to the current batch. The batch is delivered right away if it
+     * gets full; otherwise, its delivery is posted to the callback thread, so that it happens after
+     * all events of the current burst have been appended.
+     *
+     * @param currentBatch The current batch.
+     * @param timestamp The time in nanoseconds at which the event happened.
+     * @param values The values reported by the Android sensor.
+     */
+    private void appendToBatch(SensorReadingBatch currentBatch, long timestamp, float[] values) {
+        currentBatch.add(timestamp, values, values.length);
+        if(currentBatch.isFull()) {
+            deliverBatch();
+            return;
+        }
+        // The direct channel reader delivers the batch itself after each read of the ring
+        if(directReader == null && batchDrainPosted.compareAndSet(false, true))
+            callbackHandler.post(batchDrain);
+    }
+
+    /**
+     * This method consumes one of the warm-up events still to be discarded. The count is decremented
+     * atomically, so that it is not lost when discardWarmUp() resets it concurrently.
+     *
+     * @return true, if the current event must be discarded; false, otherwise.
+     */
+    private boolean consumeWarmUp() {
+        int remaining;
+        do {
+            remaining = warmUpRemaining.get();
+            if(remaining <= 0)
+                return false;
+        } while(!warmUpRemaining.compareAndSet(remaining, remaining - 1));
+        return true;
+    }
+
+    /**
+     * This method binds the handler used to deliver a batch after the end of a burst to the thread
+     * that receives the sensor events: the hub thread of the sensor, or the main thread.
+     */
+    private void bindCallbackHandler() {
+        SensorHub currentHub = hub;
+        Handler handler = currentHub != null ? currentHub.getHandler(this) : null;
+        callbackHandler = handler != null ? handler : new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * This method delivers the readings pending in the current batch to the batch listener.
+     */
+    private void deliverBatch() {
+        SensorReadingBatch currentBatch = batch;
+        SensorBatchListener listener = batchListener;
+        if(currentBatch == null || listener == null || currentBatch.getSize() == 0)
+            return;
+        listener.onBatch(this, currentBatch);
+        currentBatch.clear();
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // G E T T E R S   A N D   S E T T E R S
     ///////////////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * This method defines whether the registration of this sensor is deferred until it has a
+     * reading listener or a batch listener. When it is enabled, init() does not register the
+     * sensor if none of them is registered yet; the sensor is registered when the first one is, or
+     * when the polling-only mode is enabled. It avoids the cost of sensors that are initialized at
+     * startup but only consumed later through stages, publishers or listeners. Errors of a
+     * deferred registration are available through getRegistrationError().
+     *
+     * Agents do not count as listeners: JAF does not tell the sensor when an agent starts
+     * consuming newReading(), so a sensor with deferred registration that is only consumed by
+     * agents is never registered. This mode must only be enabled for sensors consumed through
+     * reading or batch listeners.
+     *
+     * @param deferred true, to defer the registration until the first listener; false, to
+     *                 register the sensor in init().
+     */
+    public void setRegistrationDeferredToListeners(boolean deferred) {
+        deferredToListeners = deferred;
+    }
+
+    /**
+     * This method checks whether the registration of this sensor is deferred until it has a
+     * reading listener or a batch listener.
+     *
+     * @return true, if the registration is deferred; false, otherwise.
+     */
+    public boolean isRegistrationDeferredToListeners() {
+        return deferredToListeners;
+    }
+
+    /**
+     * This method obtains the error of the last deferred registration of this sensor.
+     *
+     * @return The error; or null, if the last deferred registration succeeded.
+     */
+    public SensorException getRegistrationError() {
+        return registrationError;
+    }
+
     /**
      * This method obtains the Android sensor reference encapsulated by this object.
      *
@@ -110,6 +883,156 @@ public abstract class AndroidDeviceSensor extends Sensor implements SensorEventL
         return reportLatency;
     }
 
+    /**
+     * This method obtains the number of channels of the readings delivered by this sensor. Values
+     * reported by the Android sensor beyond this number are not copied to pooled readings.
+     * Subclasses should override it with the exact number of values of the encapsulated sensor.
+     *
+     * @return The number of channels.
+     */
+    @Override
+    public int getChannelCount() {
+        return MAX_CHANNELS;
+    }
+
+    /**
+     * This method obtains the reporting mode of the Android sensor. Unless it was resolved by
+     * AndroidDeviceSensorFactory, it is taken from the registry of sensor types, and sensors of
+     * unregistered types are considered continuous.
+     *
+     * @return The reporting mode (see the AndroidSensorType.REPORTING_MODE_* constants).
+     */
+    public int getReportingMode() {
+        int mode = reportingMode;
+        if(mode < 0) {
+            AndroidSensorType type = sensor != null ? AndroidDeviceSensorFactory.getSensorType(sensor.getType()) : null;
+            reportingMode = mode = type != null ? type.getReportingMode() : AndroidSensorType.REPORTING_MODE_CONTINUOUS;
+        }
+        return mode;
+    }
+
+    /**
+     * This method obtains the hub that delivers the events of this sensor.
+     *
+     * @return The SensorHub reference; or null, if the sensor registers itself in the Android
+     *         system and receives its events in the main thread.
+     */
+    public SensorHub getSensorHub() {
+        return hub;
+    }
+
+    /**
+     * This method defines the hub that delivers the events of this sensor. It must be called before
+     * init().
+     *
+     * @param hub The SensorHub reference; or null, to make the sensor hold its own registration
+     *            in the Android system and receive its events in the main thread.
+     * @throws IllegalStateException If the asynchronous delivery mode is enabled with the BLOCK
+     *                               policy (see enableAsyncDelivery).
+     */
+    public void setSensorHub(SensorHub hub) {
+        AsyncDelivery async = asyncDelivery;
+        if(hub != null && async != null && async.buffer.getPolicy() == SensorRingBuffer.BLOCK)
+            throw new IllegalStateException("The BLOCK policy would stall the other sensors of the hub.");
+        this.hub = hub;
+        if(batch != null)
+            bindCallbackHandler();
+    }
+
+    /**
+     * This method obtains the pool used to deliver readings to the reading listeners.
+     *
+     * @return The reading pool; or null, if no reading listener was registered and the
+     *         zero-allocation mode was never enabled.
+     */
+    public SensorReadingPool getReadingPool() {
+        return readingPool;
+    }
+
+    /**
+     * This method obtains the filter that suppresses unchanged events of this sensor.
+     *
+     * @return The SuppressionFilter reference; or null, if all events are delivered.
+     */
+    public SuppressionFilter getSuppressionFilter() {
+        return suppressionFilter;
+    }
+
+    /**
+     * This method defines a filter that suppresses the events of this sensor whose values did not
+     * change significantly. Suppressed events are discarded before any reading or SensorValue is
+     * created, so they never reach the agents nor the reading listeners. If the filter has a
+     * maximum interval without emitted events, a timer in the thread that receives the events
+     * emits the last values again whenever the sensor stays silent for that interval.
+     *
+     * @param filter The SuppressionFilter reference, used only by this sensor; or null, to deliver
+     *               all events.
+     */
+    public void setSuppressionFilter(SuppressionFilter filter) {
+        this.suppressionFilter = filter;
+    }
+
+    /**
+     * This method obtains the latest value slot of this sensor.
+     *
+     * @return The LatestValueSlot reference; or null, if it is not enabled.
+     */
+    public LatestValueSlot getLatestValue() {
+        return latestValue;
+    }
+
+    /**
+     * This method checks whether the polling-only mode of this sensor is enabled.
+     *
+     * @return true, if events are only stored in the latest value slot; false, otherwise.
+     */
+    public boolean isPollingOnly() {
+        return pollingOnly;
+    }
+
+    /**
+     * This method obtains the converter applied to the values of this sensor before they are
+     * filtered and delivered.
+     *
+     * @return The PrimitiveUnitConverter reference; or null, if the values are delivered in the
+     *         unit reported by the Android sensor.
+     */
+    public PrimitiveUnitConverter getUnitConverter() {
+        return unitConverter;
+    }
+
+    /**
+     * This method defines the converter applied to the values of this sensor. It is defined by the
+     * factory when the sensor is created with a target unit, so that the values match the unit of
+     * the created SensorValues.
+     *
+     * @param converter The PrimitiveUnitConverter reference; or null, to deliver the values in the
+     *                  unit reported by the Android sensor.
+     */
+    void setUnitConverter(PrimitiveUnitConverter converter) {
+        this.unitConverter = converter;
+    }
+
+    /**
+     * This method obtains the ring buffer of the asynchronous delivery mode.
+     *
+     * @return The SensorRingBuffer reference; or null, if the asynchronous delivery mode is not
+     *         enabled.
+     */
+    public SensorRingBuffer getDeliveryBuffer() {
+        AsyncDelivery async = asyncDelivery;
+        return async != null ? async.buffer : null;
+    }
+
+    /**
+     * This method obtains the runtime metrics of this sensor.
+     *
+     * @return The metrics; or null, if their collection is not enabled.
+     */
+    public SensorMetrics getMetrics() {
+        return metrics;
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // P R I V A T E   A T T R I B U T E S
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -128,7 +1051,7 @@ public abstract class AndroidDeviceSensor extends Sensor implements SensorEventL
      * The sensor sampling period passed to the Android system (the desired delay between two
      * consecutive events in microseconds).
      */
-    private final int samplingPeriod;
+    private volatile int samplingPeriod;
 
     /**
      * The sensor report latency passed to the Android system. It is the maximum time in
@@ -136,5 +1059,304 @@ public abstract class AndroidDeviceSensor extends Sensor implements SensorEventL
      * value allows reducing the power consumption associated with the sensor. If the report latency
      * is set to zero, events are delivered as soon as they are available.
      */
-    private final int reportLatency;
+    private volatile int reportLatency;
+
+    /**
+     * The minimum interval in nanoseconds between two events processed from a shared registration.
+     */
+    private volatile long minSharedInterval;
+
+    /**
+     * Indicates whether the registration of this sensor is shared at a faster rate than the one
+     * it requested, so that the extra events must be skipped.
+     */
+    private volatile boolean decimateShared;
+
+    /**
+     * The reporting mode of the Android sensor, or -1 if it was not resolved yet.
+     */
+    private volatile int reportingMode = -1;
+
+    /**
+     * The timestamp of the last event processed from a shared registration.
+     */
+    private long lastSharedTimestamp = Long.MIN_VALUE / 2;
+
+    /**
+     * The number of warm-up events still to be discarded.
+     */
+    private final AtomicInteger warmUpRemaining = new AtomicInteger();
+
+    /**
+     * The number of events received, excluding the discarded warm-up events.
+     */
+    private volatile long receivedCount;
+
+    /**
+     * Indicates whether the registration is deferred until the sensor has a reading listener or a
+     * batch listener.
+     */
+    private volatile boolean deferredToListeners;
+
+    /**
+     * Indicates whether init() was called and the registration is waiting for a listener.
+     */
+    private volatile boolean registrationPending;
+
+    /**
+     * The error of the last deferred registration, or null.
+     */
+    private volatile SensorException registrationError;
+
+    /**
+     * The direct report rate level of the direct channel mode, or zero if this mode is disabled.
+     */
+    private int directRateLevel;
+
+    /**
+     * The number of events of the shared memory ring of the direct channel mode.
+     */
+    private int directCapacity;
+
+    /**
+     * The reader of the active direct channel, or null if the listener path is used.
+     */
+    private DirectChannelReader directReader;
+
+    /**
+     * The hub that delivers the events of this sensor, or null if the sensor registers itself.
+     */
+    private volatile SensorHub hub;
+
+    /**
+     * The dispatcher that holds the registration of this sensor when it is not attached to a hub,
+     * or null if it was not needed yet.
+     */
+    private SensorHub.Dispatcher ownDispatcher;
+
+    /**
+     * The listeners that receive the primitive readings of this sensor.
+     */
+    private final ReadingListenerList readingListeners = new ReadingListenerList();
+
+    /**
+     * The pool of readings delivered to the reading listeners.
+     */
+    private volatile SensorReadingPool readingPool;
+
+    /**
+     * Indicates whether the zero-allocation mode is enabled.
+     */
+    private volatile boolean pooledReadings;
+
+    /**
+     * The batch that gathers events in batch delivery mode, or null if this mode is disabled.
+     */
+    private volatile SensorReadingBatch batch;
+
+    /**
+     * The listener that receives the batches in batch delivery mode.
+     */
+    private volatile SensorBatchListener batchListener;
+
+    /**
+     * The handler of the thread that receives the sensor events, used to deliver a batch after the
+     * end of a burst of events. It is bound when the batch delivery mode is enabled.
+     */
+    private volatile Handler callbackHandler;
+
+    /**
+     * Indicates whether the delivery of the current batch is already posted to the callback thread.
+     */
+    private final AtomicBoolean batchDrainPosted = new AtomicBoolean();
+
+    /**
+     * The task posted to the callback thread to deliver the current batch.
+     */
+    private final Runnable batchDrain = new Runnable() {
+        @Override
+        public void run() {
+            batchDrainPosted.set(false);
+            deliverBatch();
+        }
+    };
+
+    /**
+     * The runtime metrics of this sensor, or null if their collection is not enabled.
+     */
+    private volatile SensorMetrics metrics;
+
+    /**
+     * The filter that suppresses unchanged events, or null if all events are delivered.
+     */
+    private volatile SuppressionFilter suppressionFilter;
+
+    /**
+     * The handler of the thread that receives the sensor events, used to schedule the heartbeat of
+     * the suppression filter.
+     */
+    private volatile Handler heartbeatHandler;
+
+    /**
+     * Indicates whether the heartbeat is posted to the thread that receives the events.
+     */
+    private volatile boolean heartbeatPosted;
+
+    /**
+     * The uptime in milliseconds of the last event emitted by the suppression filter.
+     */
+    private long lastEmitUptime;
+
+    /**
+     * The accuracy of the last event emitted by the suppression filter.
+     */
+    private int heartbeatAccuracy;
+
+    /**
+     * The number of values of the last event emitted by the suppression filter.
+     */
+    private int heartbeatCount;
+
+    /**
+     * The task posted to the thread that receives the events to emit the heartbeat of the
+     * suppression filter when the sensor stays silent for the maximum interval.
+     */
+    private final Runnable heartbeat = new Runnable() {
+        @Override
+        public void run() {
+            heartbeatPosted = false;
+            SuppressionFilter filter = suppressionFilter;
+            long remaining = getHeartbeatDelay(filter, registered && !pollingOnly, lastEmitUptime, SystemClock.uptimeMillis());
+            if(remaining == NO_HEARTBEAT_DELAY)
+                return;
+            long period = filter.getMaxSilence() / 1000000L;
+            if(remaining == 0) {
+                float[] values = new float[heartbeatCount];
+                long timestamp = filter.heartbeat(values);
+                if(timestamp == SuppressionFilter.NO_HEARTBEAT)
+                    return;
+                lastEmitUptime = SystemClock.uptimeMillis();
+                remaining = period;
+                forward(timestamp, heartbeatAccuracy, values);
+            }
+            heartbeatPosted = true;
+            heartbeatHandler.postDelayed(this, remaining);
+        }
+    };
+
+    /**
+     * The slot that holds the values of the latest event, or null if it is not enabled.
+     */
+    private volatile LatestValueSlot latestValue;
+
+    /**
+     * Indicates whether events are only stored in the latest value slot.
+     */
+    private volatile boolean pollingOnly;
+
+    /**
+     * The converter to the target unit of the sensor, or null if the values are not converted.
+     */
+    private volatile PrimitiveUnitConverter unitConverter;
+
+    /**
+     * The buffer that receives the converted values of each event, used only in the thread that
+     * receives the events.
+     */
+    private float[] convertedValues;
+
+    /**
+     * The asynchronous delivery of this sensor, or null if events are delivered in the thread that
+     * receives them.
+     */
+    private volatile AsyncDelivery asyncDelivery;
+
+    /**
+     * Indicates whether the sensor is registered to receive events.
+     */
+    private volatile boolean registered;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The value returned by getHeartbeatDelay() when the heartbeat must stop.
+     */
+    static final long NO_HEARTBEAT_DELAY = -1L;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The maximum number of values reported in an Android sensor event.
+     */
+    private static final int MAX_CHANNELS = 16;
+
+    /**
+     * The number of readings in the pool created when a reading listener is registered before the
+     * zero-allocation mode is enabled.
+     */
+    private static final int DEFAULT_POOL_SIZE = 4;
+
+    /**
+     * The maximum time the asynchronous delivery thread waits for an event before checking whether
+     * it must stop.
+     */
+    private static final long IDLE_WAIT_NANOS = 100000000L;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The consumer loop of the asynchronous delivery mode.
+     */
+    private final class AsyncDelivery implements Runnable {
+
+        /**
+         * This constructor builds a new AsyncDelivery.
+         *
+         * @param buffer The ring buffer filled by the thread that receives the events.
+         */
+        AsyncDelivery(SensorRingBuffer buffer) {
+            this.buffer = buffer;
+            this.reading = new SensorReading(buffer.getChannelCount());
+        }
+
+        @Override
+        public void run() {
+            while(running) {
+                if(!buffer.poll(reading, IDLE_WAIT_NANOS))
+                    continue;
+                float[] values = reading.getValues();
+                if(!pooledReadings || values.length != reading.getSize()) {
+                    values = new float[reading.getSize()];
+                    reading.copyValues(values);
+                }
+                deliver(reading.getTimestamp(), reading.getAccuracy(), values);
+            }
+        }
+
+        /**
+         * The ring buffer filled by the thread that receives the events.
+         */
+        final SensorRingBuffer buffer;
+
+        /**
+         * The reading that receives the events taken from the buffer.
+         */
+        private final SensorReading reading;
+
+        /**
+         * The consumer thread.
+         */
+        Thread thread;
+
+        /**
+         * Indicates whether the consumer thread must keep running.
+         */
+        volatile boolean running = true;
+    }
 }
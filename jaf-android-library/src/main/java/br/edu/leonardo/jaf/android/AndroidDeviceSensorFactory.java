@@ -3,6 +3,10 @@ package br.edu.leonardo.jaf.android;
 import android.content.Context;
 import android.hardware.Sensor;
 import android.hardware.SensorManager;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.measure.Quantity;
 import javax.measure.Unit;
@@ -38,7 +42,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createAccelerometer(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_ACCELEROMETER, SENSOR_VALUE_3D, Units.METRE_PER_SQUARE_SECOND, samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_ACCELEROMETER, samplingPeriod, reportLatency);
     }
 
     /**
@@ -56,7 +60,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createAmbientTemperatureSensor(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_AMBIENT_TEMPERATURE, SENSOR_VALUE_SINGLE, Units.CELSIUS, samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_AMBIENT_TEMPERATURE, samplingPeriod, reportLatency);
     }
 
     /**
@@ -74,7 +78,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createGravity(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_GRAVITY, SENSOR_VALUE_3D, Units.METRE_PER_SQUARE_SECOND, samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_GRAVITY, samplingPeriod, reportLatency);
     }
 
     /**
@@ -92,7 +96,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createGyroscope(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_GYROSCOPE, SENSOR_VALUE_3D, Units.RADIAN.divide(Units.SECOND), samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_GYROSCOPE, samplingPeriod, reportLatency);
     }
 
     /**
@@ -110,7 +114,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createLight(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_LIGHT, SENSOR_VALUE_SINGLE, Units.LUX, samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_LIGHT, samplingPeriod, reportLatency);
     }
 
     /**
@@ -128,7 +132,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createLinearAcceleration(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_LINEAR_ACCELERATION, SENSOR_VALUE_3D, Units.METRE_PER_SQUARE_SECOND, samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_LINEAR_ACCELERATION, samplingPeriod, reportLatency);
     }
 
     /**
@@ -146,7 +150,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createMagneticField(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_MAGNETIC_FIELD, SENSOR_VALUE_3D, MetricPrefix.MICRO(Units.TESLA), samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_MAGNETIC_FIELD, samplingPeriod, reportLatency);
     }
 
     /**
@@ -164,7 +168,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createPressure(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_PRESSURE, SENSOR_VALUE_SINGLE, MetricPrefix.HECTO(Units.PASCAL), samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_PRESSURE, samplingPeriod, reportLatency);
     }
 
     /**
@@ -182,7 +186,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createProximity(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_PROXIMITY, SENSOR_VALUE_SINGLE, MetricPrefix.CENTI(Units.METRE), samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_PROXIMITY, samplingPeriod, reportLatency);
     }
 
     /**
@@ -200,7 +204,7 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createRelativeHumidity(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_RELATIVE_HUMIDITY, SENSOR_VALUE_SINGLE, Units.PERCENT, samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_RELATIVE_HUMIDITY, samplingPeriod, reportLatency);
     }
 
     /**
@@ -218,7 +222,274 @@ public class AndroidDeviceSensorFactory {
      * @return The Sensor reference.
      */
     public static AndroidDeviceSensor createStepCounter(Context context, int samplingPeriod, int reportLatency) {
-        return createAndroidDeviceSensor(context, Sensor.TYPE_STEP_COUNTER, SENSOR_VALUE_SINGLE, AbstractUnit.ONE, samplingPeriod, reportLatency);
+        return createSensor(context, Sensor.TYPE_STEP_COUNTER, samplingPeriod, reportLatency);
+    }
+
+    /**
+     * This method creates a new Sensor object for the Android device orientation. The created
+     * sensor object can be added to an agent. If the device has a hardware rotation vector sensor,
+     * the orientation is obtained from it; otherwise, it is fused in software from the
+     * accelerometer, gyroscope and magnetic field sensors. When there is no magnetic field sensor,
+     * the hardware game rotation vector sensor is used if available.
+     *
+     * @param context The Android application context.
+     * @param samplingPeriod The sampling period of the underlying sensors passed to the Android
+     *                       system (the desired delay between two consecutive events in
+     *                       microseconds).
+     * @param reportLatency The report latency of the underlying sensors passed to the Android
+     *                      system. It is the maximum time in microseconds that events can be
+     *                      delayed before being reported to the application.
+     * @param outputPeriod The desired delay between two orientations emitted by the created sensor
+     *                     in microseconds. It may be larger than the sampling period, so that the
+     *                     agent receives fewer orientations than the underlying sensors produce.
+     * @return The Sensor reference; or null, if the device does not contain the sensors needed to
+     *         obtain its orientation.
+     */
+    public static AndroidOrientationSensor createOrientation(Context context, int samplingPeriod, int reportLatency, int outputPeriod) {
+        AndroidDeviceSensor rotationVector = createSensor(context, Sensor.TYPE_ROTATION_VECTOR, samplingPeriod, reportLatency);
+        if(rotationVector != null)
+            return new AndroidOrientationSensor(rotationVector, outputPeriod);
+        AndroidDeviceSensor magneticField = createMagneticField(context, samplingPeriod, reportLatency);
+        if(magneticField == null) {
+            AndroidDeviceSensor gameRotationVector = createSensor(context, Sensor.TYPE_GAME_ROTATION_VECTOR, samplingPeriod, reportLatency);
+            if(gameRotationVector != null)
+                return new AndroidOrientationSensor(gameRotationVector, outputPeriod);
+        }
+        AndroidDeviceSensor accelerometer = createAccelerometer(context, samplingPeriod, reportLatency);
+        AndroidDeviceSensor gyroscope = createGyroscope(context, samplingPeriod, reportLatency);
+        if(accelerometer == null || gyroscope == null)
+            return null;
+        return new AndroidOrientationSensor(accelerometer, gyroscope, magneticField, outputPeriod);
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android sensor of any registered type. The
+     * value shape and unit come from the registry of sensor types. One-shot sensors (such as the
+     * significant motion sensor) are created as {@link AndroidTriggerSensor}s, which wake the
+     * agent only when the event happens. The sampling period is only a rate limit for on-change
+     * sensors, and it is ignored for one-shot and special trigger sensors (such as the step
+     * detector), whose events are delivered as they happen.
+     *
+     * @param context The Android application context.
+     * @param sensorType The Android sensor type (see constants in the Android Sensor class).
+     * @param samplingPeriod The sensor sampling period passed to the Android system (the desired
+     *                       delay between two consecutive events in microseconds).
+     * @param reportLatency The sensor report latency passed to the Android system. It is the
+     *                      maximum time in microseconds that events can be delayed before being
+     *                      reported to the application. A large value allows reducing the power
+     *                      consumption associated with the sensor. If the report latency is set to
+     *                      zero, events are delivered as soon as they are available.
+     * @return The Sensor reference; or null, if the type is not registered or the device does not
+     *         contain a sensor of the type.
+     */
+    public static AndroidDeviceSensor createSensor(Context context, int sensorType, int samplingPeriod, int reportLatency) {
+        AndroidSensorType type = getSensorType(sensorType);
+        if(type == null)
+            return null;
+        return createAndroidDeviceSensor(context, type, samplingPeriod, reportLatency, null);
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android sensor of any registered type whose
+     * values are reported in the given unit. The conversion from the unit of the Android sensor is
+     * resolved once, when the sensor is created, and applied to the raw values of each event before
+     * they are filtered and delivered, so that agents receive readings already in their units
+     * without converting each sample. The named factory methods (such as
+     * {@link #createAccelerometer(Context, int, int)}) have no unit parameter and report the
+     * values in the unit of their type; call this method with the type constant of the sensor to
+     * get them in another unit.
+     *
+     * @param context The Android application context.
+     * @param sensorType The Android sensor type (see constants in the Android Sensor class).
+     * @param samplingPeriod The sensor sampling period passed to the Android system (the desired
+     *                       delay between two consecutive events in microseconds).
+     * @param reportLatency The sensor report latency passed to the Android system (the maximum time
+     *                      in microseconds that events can be delayed before being reported).
+     * @param targetUnit The Unit of the values reported by the created sensor.
+     * @return The Sensor reference; or null, if the type is not registered or the device does not
+     *         contain a sensor of the type.
+     * @throws IllegalArgumentException If the unit of the sensor type cannot be converted to the
+     *                                  target unit.
+     */
+    public static AndroidDeviceSensor createSensor(Context context, int sensorType, int samplingPeriod, int reportLatency, Unit<?> targetUnit) {
+        AndroidSensorType type = getSensorType(sensorType);
+        if(type == null)
+            return null;
+        return createAndroidDeviceSensor(context, type, samplingPeriod, reportLatency, new PrimitiveUnitConverter(type.getUnit(), targetUnit));
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android sensor of any registered type, tuning
+     * its sampling period and report latency to the capabilities of the device. The sampling
+     * period is clamped to the delays supported by the sensor, and the report latency is the
+     * largest one whose events fit in the hardware FIFO without exceeding the delivery deadline,
+     * which maximizes batching on each device without per-model tuning.
+     *
+     * @param context The Android application context.
+     * @param sensorType The Android sensor type (see constants in the Android Sensor class).
+     * @param samplingPeriod The desired sampling period in microseconds, or one of the
+     *                       SensorManager.SENSOR_DELAY_* constants.
+     * @param deliveryDeadline The maximum time in microseconds an event can wait before being
+     *                         delivered to the application.
+     * @return The Sensor reference; or null, if the type is not registered or the device does not
+     *         contain a sensor of the type.
+     */
+    public static AndroidDeviceSensor createSensorAuto(Context context, int sensorType, int samplingPeriod, long deliveryDeadline) {
+        return createSensorAuto(context, sensorType, samplingPeriod, deliveryDeadline, null);
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android sensor of any registered type, tuning
+     * its sampling period and report latency to the capabilities of the device as
+     * {@link #createSensorAuto(Context, int, int, long)} does, whose values are reported in the
+     * given unit as {@link #createSensor(Context, int, int, int, Unit)} does.
+     *
+     * @param context The Android application context.
+     * @param sensorType The Android sensor type (see constants in the Android Sensor class).
+     * @param samplingPeriod The desired sampling period in microseconds, or one of the
+     *                       SensorManager.SENSOR_DELAY_* constants.
+     * @param deliveryDeadline The maximum time in microseconds an event can wait before being
+     *                         delivered to the application.
+     * @param targetUnit The Unit of the values reported by the created sensor; or null, to report
+     *                   the values in the unit of the sensor type.
+     * @return The Sensor reference; or null, if the type is not registered or the device does not
+     *         contain a sensor of the type.
+     * @throws IllegalArgumentException If the unit of the sensor type cannot be converted to the
+     *                                  target unit.
+     */
+    public static AndroidDeviceSensor createSensorAuto(Context context, int sensorType, int samplingPeriod, long deliveryDeadline, Unit<?> targetUnit) {
+        AndroidSensorType type = getSensorType(sensorType);
+        SensorCapabilities capabilities = getCapabilities(context, sensorType);
+        if(type == null || capabilities == null)
+            return null;
+        PrimitiveUnitConverter converter = targetUnit != null ? new PrimitiveUnitConverter(type.getUnit(), targetUnit) : null;
+        int period = capabilities.clampSamplingPeriod(samplingPeriod);
+        return createAndroidDeviceSensor(context, type, period, capabilities.getMaxReportLatency(period, deliveryDeadline), converter);
+    }
+
+    /**
+     * This method obtains the capabilities of the default Android sensor of a type. The
+     * capabilities of all sensors of the device are read once and cached for the whole process.
+     *
+     * @param context The Android application context.
+     * @param sensorType The Android sensor type (see constants in the Android Sensor class).
+     * @return The SensorCapabilities reference; or null, if the device does not contain a sensor of
+     *         the type.
+     */
+    public static SensorCapabilities getCapabilities(Context context, int sensorType) {
+        synchronized(capabilities) {
+            if(!capabilitiesLoaded) {
+                SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+                for(Sensor s : sensorManager.getSensorList(Sensor.TYPE_ALL)) {
+                    if(capabilities.containsKey(s.getType()))
+                        continue;
+                    Sensor defaultSensor = sensorManager.getDefaultSensor(s.getType());
+                    if(defaultSensor != null)
+                        capabilities.put(s.getType(), new SensorCapabilities(defaultSensor));
+                }
+                capabilitiesLoaded = true;
+            }
+            return capabilities.get(sensorType);
+        }
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android significant motion sensor, a one-shot
+     * sensor that triggers when the device starts moving significantly (for example, walking or
+     * riding a vehicle). The created sensor object can be added to an agent.
+     *
+     * @param context The Android application context.
+     * @return The Sensor reference; or null, if the device does not contain the sensor.
+     */
+    public static AndroidDeviceSensor createSignificantMotion(Context context) {
+        return createSensor(context, Sensor.TYPE_SIGNIFICANT_MOTION, SensorManager.SENSOR_DELAY_NORMAL, 0);
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android step detector, which reports an event
+     * for each step. The created sensor object can be added to an agent.
+     *
+     * @param context The Android application context.
+     * @param reportLatency The sensor report latency passed to the Android system, in
+     *                      microseconds. A large value lets the sensor hub gather steps while the
+     *                      application processor sleeps.
+     * @return The Sensor reference; or null, if the device does not contain the sensor.
+     */
+    public static AndroidDeviceSensor createStepDetector(Context context, int reportLatency) {
+        return createSensor(context, Sensor.TYPE_STEP_DETECTOR, SensorManager.SENSOR_DELAY_NORMAL, reportLatency);
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android stationary detector, a one-shot
+     * sensor that triggers when the device has been still for a while. The created sensor object
+     * can be added to an agent.
+     *
+     * @param context The Android application context.
+     * @return The Sensor reference; or null, if the device does not contain the sensor.
+     */
+    public static AndroidDeviceSensor createStationaryDetect(Context context) {
+        return createSensor(context, Sensor.TYPE_STATIONARY_DETECT, SensorManager.SENSOR_DELAY_NORMAL, 0);
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android motion detector, a one-shot sensor
+     * that triggers when the device starts moving. The created sensor object can be added to an
+     * agent.
+     *
+     * @param context The Android application context.
+     * @return The Sensor reference; or null, if the device does not contain the sensor.
+     */
+    public static AndroidDeviceSensor createMotionDetect(Context context) {
+        return createSensor(context, Sensor.TYPE_MOTION_DETECT, SensorManager.SENSOR_DELAY_NORMAL, 0);
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android rotation vector sensor, which fuses
+     * the accelerometer, gyroscope and magnetic field in the sensor hub. The values are the X, Y, Z
+     * and W components of the rotation quaternion. The created sensor object can be added to an
+     * agent.
+     *
+     * @param context The Android application context.
+     * @param samplingPeriod The sensor sampling period passed to the Android system (the desired
+     *                       delay between two consecutive events in microseconds).
+     * @param reportLatency The sensor report latency passed to the Android system, in
+     *                      microseconds.
+     * @return The Sensor reference; or null, if the device does not contain the sensor.
+     */
+    public static AndroidDeviceSensor createRotationVector(Context context, int samplingPeriod, int reportLatency) {
+        return createSensor(context, Sensor.TYPE_ROTATION_VECTOR, samplingPeriod, reportLatency);
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android game rotation vector sensor, which is
+     * like the rotation vector but does not use the magnetic field. The created sensor object can
+     * be added to an agent.
+     *
+     * @param context The Android application context.
+     * @param samplingPeriod The sensor sampling period passed to the Android system (the desired
+     *                       delay between two consecutive events in microseconds).
+     * @param reportLatency The sensor report latency passed to the Android system, in
+     *                      microseconds.
+     * @return The Sensor reference; or null, if the device does not contain the sensor.
+     */
+    public static AndroidDeviceSensor createGameRotationVector(Context context, int samplingPeriod, int reportLatency) {
+        return createSensor(context, Sensor.TYPE_GAME_ROTATION_VECTOR, samplingPeriod, reportLatency);
+    }
+
+    /**
+     * This method creates a new Sensor object for an Android geomagnetic rotation vector sensor,
+     * which is like the rotation vector but uses the magnetometer instead of the gyroscope, so it
+     * consumes less power. The created sensor object can be added to an agent.
+     *
+     * @param context The Android application context.
+     * @param samplingPeriod The sensor sampling period passed to the Android system (the desired
+     *                       delay between two consecutive events in microseconds).
+     * @param reportLatency The sensor report latency passed to the Android system, in
+     *                      microseconds.
+     * @return The Sensor reference; or null, if the device does not contain the sensor.
+     */
+    public static AndroidDeviceSensor createGeomagneticRotationVector(Context context, int samplingPeriod, int reportLatency) {
+        return createSensor(context, Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR, samplingPeriod, reportLatency);
     }
 
     /**
@@ -234,18 +505,62 @@ public class AndroidDeviceSensorFactory {
         return new AndroidLocationSensor(context, minTime, minDistance);
     }
 
+    /**
+     * This method defines the hub that delivers the events of the sensors created by this factory
+     * from now on. The sensors already created are not affected. Sensors of the same type created
+     * with the same hub share a single registration in the Android system.
+     *
+     * @param hub The SensorHub reference; or null, to make the created sensors share the
+     *            process-wide hub that delivers events in the main thread.
+     */
+    public static void setSensorHub(SensorHub hub) {
+        sensorHub = hub;
+    }
+
+    /**
+     * This method obtains the hub that delivers the events of the sensors created by this factory.
+     *
+     * @return The SensorHub reference; or null, if the created sensors use the process-wide hub that
+     *         delivers events in the main thread.
+     */
+    public static SensorHub getSensorHub() {
+        return sensorHub;
+    }
+
+    /**
+     * This method obtains the description of a registered sensor type.
+     *
+     * @param sensorType The Android sensor type (see constants in the Android Sensor class).
+     * @return The AndroidSensorType reference; or null, if the type is not registered.
+     */
+    public static AndroidSensorType getSensorType(int sensorType) {
+        synchronized(sensorTypes) {
+            return sensorTypes.get(sensorType);
+        }
+    }
+
+    /**
+     * This method adds a sensor type to the registry used by this factory, or replaces the
+     * description of a registered one. It allows creating sensors of vendor-specific types.
+     *
+     * @param type The description of the sensor type.
+     */
+    public static void registerSensorType(AndroidSensorType type) {
+        synchronized(sensorTypes) {
+            sensorTypes.put(type.getType(), type);
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // P R I V A T E   M E T H O D S
     ///////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * This internal method creates a new generic Android sensor and it is used by the other factory
-     * methods to generate a specific Sensor object.
+     * This internal method creates a new Android sensor of a registered type and it is used by the
+     * other factory methods to generate a specific Sensor object.
      *
      * @param context The Android application context.
-     * @param sensorType The Android sensor type (see constants in the Android Sensor class).
-     * @param valType The type of the value (SENSOR_VALUE_SINGLE or SENSOR_VALUE_3D).
-     * @param unit The Unit used in the sensor values.
+     * @param type The description of the sensor type.
      * @param samplingPeriod The sensor sampling period passed to the Android system (the desired
      *                       delay between two consecutive events in microseconds).
      * @param reportLatency The sensor report latency passed to the Android system. It is the
@@ -253,36 +568,154 @@ public class AndroidDeviceSensorFactory {
      *                      reported to the application. A large value allows reducing the power
      *                      consumption associated with the sensor. If the report latency is set to
      *                      zero, events are delivered as soon as they are available.
+     * @param converter The converter to the unit of the reported values; or null, to report the
+     *                  values in the unit of the sensor type.
      * @return An AndroidDeviceSensor reference; or null, if the device does not contain a sensor
      *         related to the given sensor type.
      */
-    private static AndroidDeviceSensor createAndroidDeviceSensor(Context context, int  sensorType, int valType, Unit unit, int samplingPeriod, int reportLatency) {
-        SensorManager sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
-        Sensor androidSensor = sensorManager.getDefaultSensor(sensorType);
-        if(androidSensor == null)
+    private static AndroidDeviceSensor createAndroidDeviceSensor(Context context, final AndroidSensorType type, int samplingPeriod, int reportLatency, PrimitiveUnitConverter converter) {
+        final Unit<?> unit = converter != null ? converter.getTargetUnit() : type.getUnit();
+        SensorCapabilities capabilities = getCapabilities(context, type.getType());
+        if(capabilities == null)
             return null;
-        return new AndroidDeviceSensor(context, androidSensor, samplingPeriod, reportLatency) {
+        Sensor androidSensor = capabilities.getSensor();
+        int reportingMode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? androidSensor.getReportingMode() : type.getReportingMode();
+        AndroidDeviceSensor sensor;
+        if(reportingMode == AndroidSensorType.REPORTING_MODE_ONE_SHOT) {
+            sensor = new AndroidTriggerSensor(context, androidSensor) {
+                @Override
+                protected SensorValue createSensorValue(float[] values) {
+                    return createValue(type, unit, values);
+                }
+
+                @Override
+                public int getChannelCount() {
+                    return type.getChannelCount();
+                }
+            };
+            sensor.setReportingMode(reportingMode);
+            sensor.setUnitConverter(converter);
+            return sensor;
+        }
+        // Every event of a special trigger sensor matters, so the rate must not skip any
+        if(reportingMode == AndroidSensorType.REPORTING_MODE_SPECIAL_TRIGGER)
+            samplingPeriod = SensorManager.SENSOR_DELAY_FASTEST;
+        sensor = new AndroidDeviceSensor(context, androidSensor, samplingPeriod, reportLatency) {
             @Override
             protected SensorValue createSensorValue(float[] values) {
-                switch(valType) {
-                    case SENSOR_VALUE_3D: return new ThreeAxisSensorValue(values, unit);
-                    default: return new SingleSensorValue(values[0], unit);
-                }
+                return createValue(type, unit, values);
+            }
+
+            @Override
+            public int getChannelCount() {
+                return type.getChannelCount();
             }
         };
+        sensor.setReportingMode(reportingMode);
+        sensor.setUnitConverter(converter);
+        SensorHub hub = sensorHub;
+        sensor.setSensorHub(hub != null ? hub : SensorHub.getMainThreadHub(context));
+        return sensor;
+    }
+
+    /**
+     * This method creates the SensorValue of an event: a single value for types with one channel, a
+     * three-axis value for types with three channels, and a vector value with every channel for
+     * the other types (rotation vectors, uncalibrated and limited axes sensors, heading, pose).
+     *
+     * @param type The description of the sensor type.
+     * @param unit The Unit of the values.
+     * @param values The values reported by the Android sensor.
+     * @return The generated SensorValue reference.
+     */
+    private static SensorValue createValue(AndroidSensorType type, Unit<?> unit, float[] values) {
+        int count = Math.min(type.getChannelCount(), values.length);
+        if(count == 1)
+            return new SingleSensorValue(values[0], unit);
+        if(count == 3)
+            return new ThreeAxisSensorValue(new float[] { values[0], values[1], values[2] }, unit);
+        return new VectorSensorValue(values, count, unit);
+    }
+
+    /**
+     * This method adds a type to the registry of sensor types.
+     *
+     * @param type The Android sensor type (see constants in the Android Sensor class).
+     * @param name A readable name of the type.
+     * @param channelCount The number of values of each event.
+     * @param unit The Unit of the values.
+     * @param reportingMode The reporting mode of the type.
+     */
+    private static void register(int type, String name, int channelCount, Unit<?> unit, int reportingMode) {
+        registerSensorType(new AndroidSensorType(type, name, channelCount, unit, reportingMode));
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
-    // P R I V A T E   C O N S T A N T S
+    // P R I V A T E   A T T R I B U T E S
     ///////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
-     * A constant that represents a sensor that notifies a unique value.
+     * The hub that delivers the events of the sensors created by this factory.
      */
-    private static final int SENSOR_VALUE_SINGLE = 0;
+    private static volatile SensorHub sensorHub;
 
     /**
-     * A constant that represents a sensor that notifies a three axis vector value.
+     * The capabilities of the default sensor of each type of the device, read once.
      */
-    private static final int SENSOR_VALUE_3D = 1;
+    private static final Map<Integer, SensorCapabilities> capabilities = new HashMap<>();
+
+    /**
+     * Indicates whether the capabilities of the sensors of the device were read.
+     */
+    private static boolean capabilitiesLoaded;
+
+    /**
+     * The registered sensor types, indexed by the Android sensor type.
+     */
+    private static final Map<Integer, AndroidSensorType> sensorTypes = new HashMap<>();
+
+    static {
+        Unit<?> acceleration = Units.METRE_PER_SQUARE_SECOND;
+        Unit<?> angularSpeed = Units.RADIAN.divide(Units.SECOND);
+        Unit<?> magneticField = MetricPrefix.MICRO(Units.TESLA);
+        Unit<?> degree = Units.RADIAN.multiply(Math.PI / 180.0);
+        int continuous = AndroidSensorType.REPORTING_MODE_CONTINUOUS;
+        int onChange = AndroidSensorType.REPORTING_MODE_ON_CHANGE;
+        int oneShot = AndroidSensorType.REPORTING_MODE_ONE_SHOT;
+        int special = AndroidSensorType.REPORTING_MODE_SPECIAL_TRIGGER;
+        register(Sensor.TYPE_ACCELEROMETER, "accelerometer", 3, acceleration, continuous);
+        register(Sensor.TYPE_MAGNETIC_FIELD, "magnetic field", 3, magneticField, continuous);
+        register(Sensor.TYPE_ORIENTATION, "orientation", 3, degree, continuous);
+        register(Sensor.TYPE_GYROSCOPE, "gyroscope", 3, angularSpeed, continuous);
+        register(Sensor.TYPE_LIGHT, "light", 1, Units.LUX, onChange);
+        register(Sensor.TYPE_PRESSURE, "pressure", 1, MetricPrefix.HECTO(Units.PASCAL), continuous);
+        register(Sensor.TYPE_TEMPERATURE, "temperature", 1, Units.CELSIUS, onChange);
+        register(Sensor.TYPE_PROXIMITY, "proximity", 1, MetricPrefix.CENTI(Units.METRE), onChange);
+        register(Sensor.TYPE_GRAVITY, "gravity", 3, acceleration, continuous);
+        register(Sensor.TYPE_LINEAR_ACCELERATION, "linear acceleration", 3, acceleration, continuous);
+        register(Sensor.TYPE_ROTATION_VECTOR, "rotation vector", 4, AbstractUnit.ONE, continuous);
+        register(Sensor.TYPE_RELATIVE_HUMIDITY, "relative humidity", 1, Units.PERCENT, onChange);
+        register(Sensor.TYPE_AMBIENT_TEMPERATURE, "ambient temperature", 1, Units.CELSIUS, onChange);
+        register(Sensor.TYPE_MAGNETIC_FIELD_UNCALIBRATED, "uncalibrated magnetic field", 6, magneticField, continuous);
+        register(Sensor.TYPE_GAME_ROTATION_VECTOR, "game rotation vector", 4, AbstractUnit.ONE, continuous);
+        register(Sensor.TYPE_GYROSCOPE_UNCALIBRATED, "uncalibrated gyroscope", 6, angularSpeed, continuous);
+        register(Sensor.TYPE_SIGNIFICANT_MOTION, "significant motion", 1, AbstractUnit.ONE, oneShot);
+        register(Sensor.TYPE_STEP_DETECTOR, "step detector", 1, AbstractUnit.ONE, special);
+        register(Sensor.TYPE_STEP_COUNTER, "step counter", 1, AbstractUnit.ONE, onChange);
+        register(Sensor.TYPE_GEOMAGNETIC_ROTATION_VECTOR, "geomagnetic rotation vector", 4, AbstractUnit.ONE, continuous);
+        register(Sensor.TYPE_HEART_RATE, "heart rate", 1, AbstractUnit.ONE.divide(Units.MINUTE), onChange);
+        register(Sensor.TYPE_POSE_6DOF, "pose 6DOF", 15, AbstractUnit.ONE, continuous);
+        register(Sensor.TYPE_STATIONARY_DETECT, "stationary detect", 1, AbstractUnit.ONE, oneShot);
+        register(Sensor.TYPE_MOTION_DETECT, "motion detect", 1, AbstractUnit.ONE, oneShot);
+        register(Sensor.TYPE_HEART_BEAT, "heart beat", 1, AbstractUnit.ONE, special);
+        register(Sensor.TYPE_LOW_LATENCY_OFFBODY_DETECT, "low latency off-body detect", 1, AbstractUnit.ONE, onChange);
+        register(Sensor.TYPE_ACCELEROMETER_UNCALIBRATED, "uncalibrated accelerometer", 6, acceleration, continuous);
+        register(Sensor.TYPE_HINGE_ANGLE, "hinge angle", 1, degree, onChange);
+        register(Sensor.TYPE_HEAD_TRACKER, "head tracker", 6, AbstractUnit.ONE, continuous);
+        register(Sensor.TYPE_ACCELEROMETER_LIMITED_AXES, "limited axes accelerometer", 6, acceleration, continuous);
+        register(Sensor.TYPE_GYROSCOPE_LIMITED_AXES, "limited axes gyroscope", 6, angularSpeed, continuous);
+        register(Sensor.TYPE_ACCELEROMETER_LIMITED_AXES_UNCALIBRATED, "uncalibrated limited axes accelerometer", 9, acceleration, continuous);
+        register(Sensor.TYPE_GYROSCOPE_LIMITED_AXES_UNCALIBRATED, "uncalibrated limited axes gyroscope", 9, angularSpeed, continuous);
+        register(Sensor.TYPE_HEADING, "heading", 2, degree, continuous);
+    }
 }
@@ -1,16 +1,22 @@
 package br.edu.leonardo.jaf.android;
 
 import android.Manifest;
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
+import android.location.LocationRequest;
+import android.os.Build;
 import android.os.Bundle;
-
-import androidx.core.app.ActivityCompat;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.measure.Quantity;
 
@@ -22,7 +28,7 @@ import tec.units.ri.unit.MetricPrefix;
 import tec.units.ri.unit.Units;
 
 /**
- * An Android location sensor (a GPS receiver).
+ * An Android location sensor (a GPS receiver, by default, or another location provider).
  */
 public class AndroidLocationSensor extends Sensor implements LocationListener {
 
@@ -39,10 +45,27 @@ public class AndroidLocationSensor extends Sensor implements LocationListener {
      * @param minDistance The minimum distance between location updates.
      */
     public AndroidLocationSensor(Context context, Quantity minTime, Quantity minDistance) {
+        this(context, LocationManager.GPS_PROVIDER, minTime, minDistance);
+    }
+
+    /**
+     * This method builds a new AndroidLocationSensor from the given context and that encapsulates
+     * a location sensor of the given provider.
+     *
+     * @param context The Android application context.
+     * @param provider The location provider, such as LocationManager.GPS_PROVIDER,
+     *                 LocationManager.NETWORK_PROVIDER or LocationManager.PASSIVE_PROVIDER.
+     * @param minTime The minimum time interval between location updates.
+     * @param minDistance The minimum distance between location updates.
+     */
+    public AndroidLocationSensor(Context context, String provider, Quantity minTime, Quantity minDistance) {
         this.context = context;
         this.locationMgr = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        this.provider = provider;
         this.minTime = minTime;
         this.minDistance = minDistance;
+        this.minTimeMillis = minTime.to(MetricPrefix.MILLI(Units.SECOND)).getValue().longValue();
+        this.minDistanceMeters = minDistance.to(Units.METRE).getValue().floatValue();
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -50,37 +73,309 @@ public class AndroidLocationSensor extends Sensor implements LocationListener {
     ///////////////////////////////////////////////////////////////////////////////////////////////
 
     @Override
-    public void init() throws SensorException {
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED && ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+    public synchronized void init() throws SensorException {
+        if (context.checkPermission(Manifest.permission.ACCESS_FINE_LOCATION, Process.myPid(), Process.myUid()) != PackageManager.PERMISSION_GRANTED && context.checkPermission(Manifest.permission.ACCESS_COARSE_LOCATION, Process.myPid(), Process.myUid()) != PackageManager.PERMISSION_GRANTED) {
             throw new SensorException(this, "The application does not have permissions to access user location.");
         }
-        locationMgr.requestLocationUpdates(
-                LocationManager.GPS_PROVIDER,
-                minTime.to(MetricPrefix.MILLI(Units.SECOND)).getValue().longValue(),
-                minDistance.to(Units.METRE).getValue().floatValue(),
-                this);
+        if(batch != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            requestBatchedUpdates(minTimeMillis, minDistanceMeters);
+            callbackHandler = null;
+        } else {
+            // Updates are delivered in the main thread when init() is called from a thread
+            // without a looper, such as a SensorInitializer worker
+            Looper looper = Looper.myLooper();
+            if(looper == null)
+                looper = Looper.getMainLooper();
+            locationMgr.requestLocationUpdates(provider, minTimeMillis, minDistanceMeters, this, looper);
+            callbackHandler = new Handler(looper);
+        }
+        registered = true;
+    }
+
+    /**
+     * This method stops receiving location updates, undoing the registration made by init(). In
+     * batch delivery mode, the fixes pending in the current batch are delivered.
+     */
+    public synchronized void unregister() {
+        locationMgr.removeUpdates(this);
+        registered = false;
+        deliverBatch();
+        callbackHandler = null;
+    }
+
+    /**
+     * This method enables the batch delivery mode of this sensor. In this mode, location fixes are
+     * not delivered one by one to the agents; instead, they are gathered in a columnar batch that
+     * is delivered to the given listener. The fix listeners still receive every fix as soon as it
+     * is received. In Android 12 or later, the location provider is asked to batch the fixes
+     * itself for up to the given delay, which lets the device sleep between deliveries; in older
+     * versions, the fixes are gathered by this sensor and a batch is delivered when it gets full or
+     * when the maximum delay has passed since its oldest fix was received. If the sensor is
+     * registered, its location updates are requested again.
+     *
+     * @param maxUpdateDelay The maximum time a fix can be delayed before being delivered.
+     * @param capacity The maximum number of fixes in a batch.
+     * @param listener The listener that receives the batches.
+     * @throws SensorException If the location updates could not be requested again.
+     */
+    public synchronized void enableBatchDelivery(Quantity maxUpdateDelay, int capacity, LocationBatchListener listener) throws SensorException {
+        deliverBatch();
+        batchListener = listener;
+        batch = new LocationBatch(capacity);
+        maxUpdateDelayNanos = maxUpdateDelay.to(MetricPrefix.NANO(Units.SECOND)).getValue().longValue();
+        if(registered)
+            init();
+    }
+
+    /**
+     * This method disables the batch delivery mode of this sensor. Fixes pending in the current
+     * batch are delivered first. If the sensor is registered, its location updates are requested
+     * again.
+     *
+     * @throws SensorException If the location updates could not be requested again.
+     */
+    public synchronized void disableBatchDelivery() throws SensorException {
+        deliverBatch();
+        batch = null;
+        batchListener = null;
+        if(registered)
+            init();
+    }
+
+    /**
+     * This method obtains the location provider of this sensor.
+     *
+     * @return The name of the location provider.
+     */
+    public String getProvider() {
+        return provider;
+    }
+
+    /**
+     * This method changes the location provider of this sensor. If the sensor is registered, its
+     * location updates are requested again from the new provider.
+     *
+     * @param provider The location provider, such as LocationManager.GPS_PROVIDER,
+     *                 LocationManager.NETWORK_PROVIDER or LocationManager.PASSIVE_PROVIDER.
+     * @throws SensorException If the location updates could not be requested again.
+     */
+    public synchronized void setProvider(String provider) throws SensorException {
+        if(registered)
+            locationMgr.removeUpdates(this);
+        this.provider = provider;
+        if(registered)
+            init();
+    }
+
+    /**
+     * This method obtains the minimum time interval between location updates.
+     *
+     * @return The minimum time interval.
+     */
+    public Quantity getMinTime() {
+        return minTime;
+    }
+
+    /**
+     * This method changes the minimum time interval between location updates. If the sensor is
+     * registered, its location updates are requested again with the new interval.
+     *
+     * @param minTime The minimum time interval between location updates.
+     * @throws SensorException If the location updates could not be requested again.
+     */
+    public synchronized void setMinTime(Quantity minTime) throws SensorException {
+        setUpdateCriteria(minTime, minDistance);
+    }
+
+    /**
+     * This method obtains the minimum distance between location updates.
+     *
+     * @return The minimum distance.
+     */
+    public Quantity getMinDistance() {
+        return minDistance;
+    }
+
+    /**
+     * This method changes the minimum time interval and the minimum distance between location
+     * updates. If the sensor is registered, its location updates are requested again with the new
+     * values.
+     *
+     * @param minTime The minimum time interval between location updates.
+     * @param minDistance The minimum distance between location updates.
+     * @throws SensorException If the location updates could not be requested again.
+     */
+    public synchronized void setUpdateCriteria(Quantity minTime, Quantity minDistance) throws SensorException {
+        this.minTime = minTime;
+        this.minDistance = minDistance;
+        this.minTimeMillis = minTime.to(MetricPrefix.MILLI(Units.SECOND)).getValue().longValue();
+        this.minDistanceMeters = minDistance.to(Units.METRE).getValue().floatValue();
+        SensorMetrics m = metrics;
+        if(m != null)
+            m.setExpectedPeriod(minTime.to(MetricPrefix.NANO(Units.SECOND)).getValue().longValue());
+        if(registered)
+            init();
+    }
+
+    /**
+     * This method checks whether init() was called and the sensor was not unregistered since.
+     *
+     * @return true, if location updates are requested; false, otherwise.
+     */
+    public synchronized boolean isRegistered() {
+        return registered;
     }
 
     @Override
     public void onLocationChanged(Location location) {
+        LocationBatch currentBatch = batch;
+        if(currentBatch != null && !pollingOnly) {
+            notifyFixListeners(location);
+            synchronized(this) {
+                appendToBatch(location);
+                if(batch != null && isBatchExpired(batch))
+                    deliverBatch();
+            }
+            return;
+        }
+        processFix(location);
     }
 
     @Override
     public void onLocationChanged(List<Location> locations) {
-        for(Location loc : locations) {
-            newReading(new LocationSensorValue(
-                    loc.getLatitude(),
-                    loc.getLongitude(),
-                    loc.getAltitude(),
-                    AbstractUnit.ONE,
-                    Units.METRE
-            ));
+        LocationBatch currentBatch = batch;
+        if(currentBatch != null && !pollingOnly) {
+            // A list of fixes is a batch of the location provider, so it is delivered at once
+            for(Location loc : locations)
+                notifyFixListeners(loc);
+            synchronized(this) {
+                for(Location loc : locations)
+                    appendToBatch(loc);
+                deliverBatch();
+            }
+            return;
         }
+        for(Location loc : locations)
+            processFix(loc);
     }
 
     @Override
     public void onFlushComplete(int requestCode) { }
 
+    /**
+     * This method registers a listener that receives the raw location fixes of this sensor.
+     *
+     * @param listener The listener to be registered.
+     */
+    public void addLocationFixListener(LocationFixListener listener) {
+        fixListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * This method unregisters a listener previously registered in this sensor.
+     *
+     * @param listener The listener to be removed.
+     */
+    public void removeLocationFixListener(LocationFixListener listener) {
+        fixListeners.remove(listener);
+    }
+
+    /**
+     * This method enables the collection of runtime metrics of this sensor: fix rate, delivery
+     * latency, jitter relative to the minimum time interval and missed fixes.
+     *
+     * @return The metrics of this sensor.
+     */
+    public SensorMetrics enableMetrics() {
+        SensorMetrics m = metrics;
+        if(m == null) {
+            m = new SensorMetrics(minTime.to(MetricPrefix.NANO(Units.SECOND)).getValue().longValue());
+            metrics = m;
+        }
+        return m;
+    }
+
+    /**
+     * This method disables the collection of runtime metrics of this sensor.
+     */
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * This method obtains the runtime metrics of this sensor.
+     *
+     * @return The metrics; or null, if their collection is not enabled.
+     */
+    public SensorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * This method enables the latest value slot of this sensor, which keeps the latest fix so that
+     * any thread can read it without subscribing to the sensor and without locks. The values of
+     * the slot are indexed by the CHANNEL_* constants of this class; missing altitude, accuracy,
+     * speed or bearing are stored as NaN.
+     *
+     * @return The latest value slot of this sensor.
+     */
+    public synchronized LatestValueSlot enableLatestValue() {
+        LatestValueSlot slot = latestValue;
+        if(slot == null) {
+            slot = new LatestValueSlot(CHANNEL_COUNT);
+            latestValue = slot;
+        }
+        return slot;
+    }
+
+    /**
+     * This method disables the latest value slot of this sensor and the polling-only mode.
+     */
+    public synchronized void disableLatestValue() {
+        pollingOnly = false;
+        latestValue = null;
+    }
+
+    /**
+     * This method obtains the latest value slot of this sensor.
+     *
+     * @return The LatestValueSlot reference; or null, if it is not enabled.
+     */
+    public LatestValueSlot getLatestValue() {
+        return latestValue;
+    }
+
+    /**
+     * This method enables the polling-only mode of this sensor, for agents that only read its
+     * current location. In this mode, fixes are stored in the latest value slot and delivered to
+     * the fix listeners, but no LocationSensorValue is created, nothing is delivered to the agents
+     * and the batch delivery mode is bypassed.
+     *
+     * @return The latest value slot of this sensor.
+     */
+    public LatestValueSlot enablePollingOnly() {
+        LatestValueSlot slot = enableLatestValue();
+        pollingOnly = true;
+        return slot;
+    }
+
+    /**
+     * This method disables the polling-only mode of this sensor. The latest value slot remains
+     * enabled.
+     */
+    public void disablePollingOnly() {
+        pollingOnly = false;
+    }
+
+    /**
+     * This method checks whether the polling-only mode of this sensor is enabled.
+     *
+     * @return true, if fixes are not delivered to the agents; false, otherwise.
+     */
+    public boolean isPollingOnly() {
+        return pollingOnly;
+    }
+
     @Override
     public void onStatusChanged(String provider, int status, Bundle extras) { }
 
@@ -90,6 +385,192 @@ public class AndroidLocationSensor extends Sensor implements LocationListener {
     @Override
     public void onProviderDisabled(String provider) { }
 
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method delivers a location fix to the fix listeners and, unless the polling-only mode
+     * is enabled, to the agents.
+     *
+     * @param loc The location fix.
+     */
+    private void processFix(Location loc) {
+        SensorMetrics m = metrics;
+        if(m != null)
+            recordMetrics(m, loc);
+        LatestValueSlot slot = latestValue;
+        if(slot != null)
+            storeLatestValue(slot, loc);
+        notifyFixListeners(loc);
+        if(pollingOnly)
+            return;
+        newReading(new LocationSensorValue(
+                loc.getLatitude(),
+                loc.getLongitude(),
+                loc.getAltitude(),
+                AbstractUnit.ONE,
+                Units.METRE
+        ));
+    }
+
+    /**
+     * This method delivers a location fix to the fix listeners.
+     *
+     * @param loc The location fix.
+     */
+    private void notifyFixListeners(Location loc) {
+        for(LocationFixListener l : fixListeners)
+            l.onLocationFix(this, loc);
+    }
+
+    /**
+     * This method requests location updates batched by the location provider.
+     *
+     * @param minTimeMillis The minimum time interval between location updates in milliseconds.
+     * @param minDistanceMeters The minimum distance between location updates in meters.
+     */
+    @TargetApi(Build.VERSION_CODES.S)
+    private void requestBatchedUpdates(long minTimeMillis, float minDistanceMeters) {
+        LocationRequest request = new LocationRequest.Builder(minTimeMillis)
+                .setMinUpdateDistanceMeters(minDistanceMeters)
+                .setMaxUpdateDelayMillis(maxUpdateDelayNanos / 1000000L)
+                .build();
+        locationMgr.requestLocationUpdates(provider, request, context.getMainExecutor(), this);
+    }
+
+    /**
+     * This method appends a location fix to the current batch, delivering the batch first if it is
+     * full. When the fix starts a new batch and the location provider does not batch the fixes
+     * itself, the delivery of the batch is posted for the maximum delay, so that the last fixes
+     * are not held until a later fix arrives. It must be called with the lock of this sensor held.
+     *
+     * @param loc The location fix.
+     */
+    private void appendToBatch(Location loc) {
+        LocationBatch currentBatch = batch;
+        if(currentBatch == null)
+            return;
+        SensorMetrics m = metrics;
+        if(m != null)
+            recordMetrics(m, loc);
+        LatestValueSlot slot = latestValue;
+        if(slot != null)
+            storeLatestValue(slot, loc);
+        if(!currentBatch.add(loc)) {
+            deliverBatch();
+            currentBatch.add(loc);
+        }
+        if(currentBatch.isFull()) {
+            deliverBatch();
+            return;
+        }
+        Handler handler = callbackHandler;
+        if(handler != null && currentBatch.getSize() == 1)
+            handler.postDelayed(batchTimeout, maxUpdateDelayNanos / 1000000L);
+    }
+
+    /**
+     * This method checks whether the oldest fix of a batch is older than the maximum delay.
+     *
+     * @param currentBatch The batch.
+     * @return true, if the batch must be delivered; false, otherwise.
+     */
+    private boolean isBatchExpired(LocationBatch currentBatch) {
+        int size = currentBatch.getSize();
+        return size > 0 && currentBatch.getTimestamp(size - 1) - currentBatch.getTimestamp(0) >= maxUpdateDelayNanos;
+    }
+
+    /**
+     * This method delivers the current batch to the batch listener, if it is not empty. It must be
+     * called with the lock of this sensor held.
+     */
+    private void deliverBatch() {
+        Handler handler = callbackHandler;
+        if(handler != null)
+            handler.removeCallbacks(batchTimeout);
+        LocationBatch currentBatch = batch;
+        LocationBatchListener listener = batchListener;
+        if(currentBatch == null || listener == null || currentBatch.getSize() == 0)
+            return;
+        listener.onBatch(this, currentBatch);
+        currentBatch.clear();
+    }
+
+    /**
+     * This method stores a location fix in the latest value slot.
+     *
+     * @param slot The latest value slot.
+     * @param loc The location fix.
+     */
+    private void storeLatestValue(LatestValueSlot slot, Location loc) {
+        // The lock of the slot also guards the scratch array of the fix values
+        synchronized(slot) {
+            double[] v = fixValues;
+            v[CHANNEL_LATITUDE] = loc.getLatitude();
+            v[CHANNEL_LONGITUDE] = loc.getLongitude();
+            v[CHANNEL_ALTITUDE] = loc.hasAltitude() ? loc.getAltitude() : Double.NaN;
+            v[CHANNEL_ACCURACY] = loc.hasAccuracy() ? loc.getAccuracy() : Double.NaN;
+            v[CHANNEL_SPEED] = loc.hasSpeed() ? loc.getSpeed() : Double.NaN;
+            v[CHANNEL_BEARING] = loc.hasBearing() ? loc.getBearing() : Double.NaN;
+            long timestamp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? loc.getElapsedRealtimeNanos() : loc.getTime() * 1000000L;
+            slot.write(timestamp, 0, v, CHANNEL_COUNT);
+        }
+    }
+
+    /**
+     * This method records a location fix in the metrics of this sensor. The elapsed realtime clock
+     * is used when available; otherwise, the fix time is compared with the wall clock.
+     *
+     * @param m The metrics.
+     * @param loc The location fix.
+     */
+    private static void recordMetrics(SensorMetrics m, Location loc) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1)
+            m.recordEvent(loc.getElapsedRealtimeNanos(), SystemClock.elapsedRealtimeNanos());
+        else
+            m.recordEvent(loc.getTime() * 1000000L, System.currentTimeMillis() * 1000000L);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The index of the latitude, in degrees, in the latest value slot.
+     */
+    public static final int CHANNEL_LATITUDE = 0;
+
+    /**
+     * The index of the longitude, in degrees, in the latest value slot.
+     */
+    public static final int CHANNEL_LONGITUDE = 1;
+
+    /**
+     * The index of the altitude, in meters, in the latest value slot.
+     */
+    public static final int CHANNEL_ALTITUDE = 2;
+
+    /**
+     * The index of the horizontal accuracy, in meters, in the latest value slot.
+     */
+    public static final int CHANNEL_ACCURACY = 3;
+
+    /**
+     * The index of the speed, in meters per second, in the latest value slot.
+     */
+    public static final int CHANNEL_SPEED = 4;
+
+    /**
+     * The index of the bearing, in degrees, in the latest value slot.
+     */
+    public static final int CHANNEL_BEARING = 5;
+
+    /**
+     * The number of values of a fix in the latest value slot.
+     */
+    public static final int CHANNEL_COUNT = 6;
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // P R I V A T E   A T T R I B U T E S
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -104,13 +585,92 @@ public class AndroidLocationSensor extends Sensor implements LocationListener {
      */
     private final Context context;
 
+    /**
+     * The location provider.
+     */
+    private volatile String provider;
+
     /**
      * The minimum time interval between location updates.
      */
-    private final Quantity minTime;
+    private volatile Quantity minTime;
 
     /**
      * The minimum distance between location updates.
      */
-    private final Quantity minDistance;
+    private volatile Quantity minDistance;
+
+    /**
+     * The minimum time interval between location updates in milliseconds, converted once from
+     * minTime.
+     */
+    private volatile long minTimeMillis;
+
+    /**
+     * The minimum distance between location updates in meters, converted once from minDistance.
+     */
+    private volatile float minDistanceMeters;
+
+    /**
+     * The listeners that receive the raw location fixes.
+     */
+    private final CopyOnWriteArrayList<LocationFixListener> fixListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The runtime metrics of this sensor, or null if their collection is not enabled.
+     */
+    private volatile SensorMetrics metrics;
+
+    /**
+     * Indicates whether the sensor is registered to receive location updates.
+     */
+    private boolean registered;
+
+    /**
+     * The batch that gathers fixes in batch delivery mode, or null if this mode is disabled.
+     */
+    private volatile LocationBatch batch;
+
+    /**
+     * The listener that receives the batches in batch delivery mode.
+     */
+    private volatile LocationBatchListener batchListener;
+
+    /**
+     * The maximum time in nanoseconds a fix can be delayed in batch delivery mode.
+     */
+    private volatile long maxUpdateDelayNanos;
+
+    /**
+     * The handler of the thread that receives the location updates when the fixes are batched by
+     * this sensor, or null if they are batched by the location provider.
+     */
+    private volatile Handler callbackHandler;
+
+    /**
+     * The task posted to the callback thread to deliver the current batch after the maximum delay.
+     */
+    private final Runnable batchTimeout = new Runnable() {
+        @Override
+        public void run() {
+            synchronized(AndroidLocationSensor.this) {
+                deliverBatch();
+            }
+        }
+    };
+
+    /**
+     * The slot that holds the latest fix, or null if it is not enabled.
+     */
+    private volatile LatestValueSlot latestValue;
+
+    /**
+     * Indicates whether fixes are not delivered to the agents.
+     */
+    private volatile boolean pollingOnly;
+
+    /**
+     * The values of the fix being stored in the latest value slot.
+     */
+    private final double[] fixValues = new double[CHANNEL_COUNT];
 }
@@ -0,0 +1,411 @@
+package br.edu.leonardo.jaf.android;
+
+import br.edu.leonardo.jaf.sensors.Sensor;
+import br.edu.leonardo.jaf.sensors.SensorException;
+
+/**
+ * An Android device orientation sensor. It is backed either by a hardware-fused rotation vector
+ * sensor or by a Madgwick filter that fuses the accelerometer, gyroscope and (if available)
+ * magnetic field sensors in software without allocating memory per event. The orientation is
+ * emitted at an output rate that does not depend on the rate of the underlying sensors: agents
+ * receive the azimuth, pitch and roll angles (in the same convention of
+ * SensorManager.getOrientation) as OrientationSensorValue objects, three-axis values that also
+ * carry the rotation quaternion, and reading listeners receive readings with the rotation
+ * quaternion (w, x, y, z) followed by the three angles.
+ */
+public class AndroidOrientationSensor extends Sensor implements SensorReadingSource {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new AndroidOrientationSensor backed by a hardware rotation vector
+     * sensor.
+     *
+     * @param rotationVector The rotation vector sensor (its readings must have the X, Y, Z and,
+     *                       optionally, W components of the rotation quaternion).
+     * @param outputPeriod The desired delay between two emitted orientations in microseconds, or
+     *                     zero to emit an orientation per rotation vector event.
+     */
+    AndroidOrientationSensor(AndroidDeviceSensor rotationVector, int outputPeriod) {
+        this(rotationVector, null, null, null, outputPeriod);
+    }
+
+    /**
+     * This constructor builds a new AndroidOrientationSensor that fuses raw sensors in software.
+     *
+     * @param accelerometer The accelerometer.
+     * @param gyroscope The gyroscope.
+     * @param magneticField The magnetic field sensor, or null to estimate the orientation without
+     *                      an absolute heading.
+     * @param outputPeriod The desired delay between two emitted orientations in microseconds, or
+     *                     zero to emit an orientation per gyroscope event.
+     */
+    AndroidOrientationSensor(AndroidDeviceSensor accelerometer, AndroidDeviceSensor gyroscope, AndroidDeviceSensor magneticField, int outputPeriod) {
+        this(null, accelerometer, gyroscope, magneticField, outputPeriod);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new AndroidOrientationSensor from all possible sources.
+     *
+     * @param rotationVector The rotation vector sensor, or null.
+     * @param accelerometer The accelerometer, or null.
+     * @param gyroscope The gyroscope, or null.
+     * @param magneticField The magnetic field sensor, or null.
+     * @param outputPeriod The desired delay between two emitted orientations in microseconds.
+     */
+    private AndroidOrientationSensor(AndroidDeviceSensor rotationVector, AndroidDeviceSensor accelerometer, AndroidDeviceSensor gyroscope, AndroidDeviceSensor magneticField, int outputPeriod) {
+        this.rotationVector = rotationVector;
+        this.accelerometer = accelerometer;
+        this.gyroscope = gyroscope;
+        this.magneticField = magneticField;
+        this.outputPeriod = outputPeriod * 1000L;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void init() throws SensorException {
+        for(AndroidDeviceSensor s : sources()) {
+            if(s == null)
+                continue;
+            s.enablePooledReadings(SOURCE_POOL_SIZE);
+            s.addReadingListener(sourceListener);
+            s.init();
+        }
+    }
+
+    /**
+     * This method stops receiving events from the underlying Android sensors.
+     */
+    public void unregister() {
+        for(AndroidDeviceSensor s : sources()) {
+            if(s == null)
+                continue;
+            s.unregister();
+            s.removeReadingListener(sourceListener);
+        }
+    }
+
+    @Override
+    public void addReadingListener(SensorReadingListener listener) {
+        readingListeners.add(listener);
+    }
+
+    @Override
+    public void removeReadingListener(SensorReadingListener listener) {
+        readingListeners.remove(listener);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getChannelCount() {
+        return CHANNELS;
+    }
+
+    /**
+     * This method checks whether the orientation is fused by the sensor hardware.
+     *
+     * @return true, if the sensor is backed by a rotation vector sensor; false, if it fuses raw
+     *         sensors in software.
+     */
+    public boolean isHardwareFused() {
+        return rotationVector != null;
+    }
+
+    /**
+     * This method obtains the delay between two emitted orientations.
+     *
+     * @return The output period in microseconds.
+     */
+    public int getOutputPeriod() {
+        return (int) (outputPeriod / 1000L);
+    }
+
+    /**
+     * This method defines the gain of the software fusion filter. Larger values correct the
+     * gyroscope drift faster at the cost of more noise in the estimate. It has no effect when the
+     * orientation is fused by the sensor hardware.
+     *
+     * @param beta The filter gain (0.1 by default).
+     */
+    public synchronized void setFilterGain(float beta) {
+        filter.beta = beta;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method converts the estimate of the software fusion filter, whose earth frame is
+     * North-West-Up, to the Android world frame, which is East-North-Up, by rotating it 90 degrees
+     * around the Z axis.
+     *
+     * @param filter The software fusion filter.
+     * @param dest The array that receives the W, X, Y and Z components of the rotation quaternion
+     *             from the device frame to the Android world frame.
+     */
+    static void toWorldFrame(MadgwickFilter filter, float[] dest) {
+        dest[0] = HALF_SQRT2 * (filter.q0 - filter.q3);
+        dest[1] = HALF_SQRT2 * (filter.q1 - filter.q2);
+        dest[2] = HALF_SQRT2 * (filter.q2 + filter.q1);
+        dest[3] = HALF_SQRT2 * (filter.q3 + filter.q0);
+    }
+
+    /**
+     * This method computes the orientation readings channels from a rotation quaternion: the
+     * quaternion itself followed by the azimuth, pitch and roll angles, in the same convention of
+     * SensorManager.getOrientation.
+     *
+     * @param w The W component of the rotation quaternion (device to world frame).
+     * @param x The X component of the rotation quaternion.
+     * @param y The Y component of the rotation quaternion.
+     * @param z The Z component of the rotation quaternion.
+     * @param dest The array that receives the seven channels.
+     */
+    static void toOrientation(float w, float x, float y, float z, float[] dest) {
+        // Elements of the rotation matrix used by SensorManager.getOrientation
+        float r1 = 2f * (x * y - z * w);
+        float r4 = 1f - 2f * (x * x + z * z);
+        float r6 = 2f * (x * z - y * w);
+        float r7 = 2f * (y * z + x * w);
+        float r8 = 1f - 2f * (x * x + y * y);
+        dest[0] = w;
+        dest[1] = x;
+        dest[2] = y;
+        dest[3] = z;
+        dest[4] = (float) Math.atan2(r1, r4);
+        dest[5] = (float) Math.asin(Math.max(-1f, Math.min(1f, -r7)));
+        dest[6] = (float) Math.atan2(-r6, r8);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the Android sensors used by this sensor.
+     *
+     * @return The array of sensors (some positions may be null).
+     */
+    private AndroidDeviceSensor[] sources() {
+        return new AndroidDeviceSensor[] { rotationVector, accelerometer, gyroscope, magneticField };
+    }
+
+    /**
+     * This method processes a reading of one of the underlying sensors.
+     *
+     * @param source The sensor that produced the reading.
+     * @param reading The reading.
+     */
+    private synchronized void onSourceReading(SensorReadingSource source, SensorReading reading) {
+        float[] v = reading.getValues();
+        if(source == rotationVector) {
+            float x = v[0];
+            float y = v[1];
+            float z = v[2];
+            float w = reading.getSize() > 3 ? v[3] : (float) Math.sqrt(Math.max(0f, 1f - x * x - y * y - z * z));
+            emitIfDue(reading.getTimestamp(), w, x, y, z);
+        } else if(source == accelerometer) {
+            ax = v[0];
+            ay = v[1];
+            az = v[2];
+            hasAcceleration = true;
+        } else if(source == magneticField) {
+            mx = v[0];
+            my = v[1];
+            mz = v[2];
+        } else if(source == gyroscope) {
+            onGyroscope(reading.getTimestamp(), v[0], v[1], v[2]);
+        }
+    }
+
+    /**
+     * This method updates the software fusion filter with a gyroscope sample and the latest
+     * accelerometer and magnetic field samples.
+     *
+     * @param timestamp The time in nanoseconds of the gyroscope sample.
+     * @param gx The angular speed around the X axis in rad/s.
+     * @param gy The angular speed around the Y axis in rad/s.
+     * @param gz The angular speed around the Z axis in rad/s.
+     */
+    private void onGyroscope(long timestamp, float gx, float gy, float gz) {
+        if(!hasAcceleration)
+            return;
+        if(!filterInitialized) {
+            filter.initialize(ax, ay, az, mx, my, mz);
+            filterInitialized = true;
+        } else {
+            float dt = (timestamp - lastGyroscopeTimestamp) * 1e-9f;
+            if(dt > 0f && dt < MAX_INTEGRATION_INTERVAL)
+                filter.update(gx, gy, gz, ax, ay, az, mx, my, mz, dt);
+        }
+        lastGyroscopeTimestamp = timestamp;
+        toWorldFrame(filter, quaternion);
+        emitIfDue(timestamp, quaternion[0], quaternion[1], quaternion[2], quaternion[3]);
+    }
+
+    /**
+     * This method emits an orientation if the output period has elapsed since the last emitted
+     * orientation.
+     *
+     * @param timestamp The time in nanoseconds of the orientation.
+     * @param w The W component of the rotation quaternion (device to world frame).
+     * @param x The X component of the rotation quaternion.
+     * @param y The Y component of the rotation quaternion.
+     * @param z The Z component of the rotation quaternion.
+     */
+    private void emitIfDue(long timestamp, float w, float x, float y, float z) {
+        if(timestamp - lastEmitTimestamp < outputPeriod)
+            return;
+        lastEmitTimestamp = timestamp;
+        toOrientation(w, x, y, z, output);
+        if(!readingListeners.isEmpty()) {
+            SensorReading reading = pool.acquire();
+            if(reading != null) {
+                reading.set(timestamp, 0, output, CHANNELS);
+                try {
+                    readingListeners.dispatch(this, reading);
+                } finally {
+                    reading.release();
+                }
+            }
+        }
+        newReading(new OrientationSensorValue(w, x, y, z, output[4], output[5], output[6]));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The hardware rotation vector sensor, or null if the orientation is fused in software.
+     */
+    private final AndroidDeviceSensor rotationVector;
+
+    /**
+     * The accelerometer used by the software fusion, or null.
+     */
+    private final AndroidDeviceSensor accelerometer;
+
+    /**
+     * The gyroscope used by the software fusion, or null.
+     */
+    private final AndroidDeviceSensor gyroscope;
+
+    /**
+     * The magnetic field sensor used by the software fusion, or null.
+     */
+    private final AndroidDeviceSensor magneticField;
+
+    /**
+     * The minimum delay in nanoseconds between two emitted orientations.
+     */
+    private final long outputPeriod;
+
+    /**
+     * The software fusion filter.
+     */
+    private final MadgwickFilter filter = new MadgwickFilter(DEFAULT_FILTER_GAIN);
+
+    /**
+     * The listeners that receive the orientation readings.
+     */
+    private final ReadingListenerList readingListeners = new ReadingListenerList();
+
+    /**
+     * The pool of orientation readings.
+     */
+    private final SensorReadingPool pool = new SensorReadingPool(SOURCE_POOL_SIZE, CHANNELS);
+
+    /**
+     * The array where the channels of the emitted orientation are computed.
+     */
+    private final float[] output = new float[CHANNELS];
+
+    /**
+     * The array where the estimate of the software fusion filter is converted to the Android world
+     * frame.
+     */
+    private final float[] quaternion = new float[4];
+
+    /**
+     * The listener registered in the underlying sensors.
+     */
+    private final SensorReadingListener sourceListener = new SensorReadingListener() {
+        @Override
+        public void onReading(SensorReadingSource source, SensorReading reading) {
+            onSourceReading(source, reading);
+        }
+    };
+
+    /**
+     * The latest accelerometer sample.
+     */
+    private float ax, ay, az;
+
+    /**
+     * The latest magnetic field sample (zero if there is no magnetic field sensor).
+     */
+    private float mx, my, mz;
+
+    /**
+     * Indicates whether an accelerometer sample was received.
+     */
+    private boolean hasAcceleration;
+
+    /**
+     * Indicates whether the filter was initialized from the accelerometer and magnetic field.
+     */
+    private boolean filterInitialized;
+
+    /**
+     * The timestamp of the latest gyroscope sample.
+     */
+    private long lastGyroscopeTimestamp;
+
+    /**
+     * The timestamp of the latest emitted orientation.
+     */
+    private long lastEmitTimestamp = Long.MIN_VALUE / 2;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of channels of the orientation readings.
+     */
+    private static final int CHANNELS = 7;
+
+    /**
+     * The number of readings in the pools of the underlying sensors and of this sensor.
+     */
+    private static final int SOURCE_POOL_SIZE = 2;
+
+    /**
+     * The default gain of the software fusion filter.
+     */
+    private static final float DEFAULT_FILTER_GAIN = 0.1f;
+
+    /**
+     * The largest gap in seconds between two gyroscope samples integrated by the filter.
+     */
+    private static final float MAX_INTEGRATION_INTERVAL = 0.5f;
+
+    /**
+     * The value of sqrt(2) / 2.
+     */
+    private static final float HALF_SQRT2 = (float) Math.sqrt(0.5);
+}
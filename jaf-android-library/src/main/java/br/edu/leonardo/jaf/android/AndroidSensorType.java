@@ -0,0 +1,158 @@
+package br.edu.leonardo.jaf.android;
+
+import javax.measure.Unit;
+
+/**
+ * The description of an Android sensor type used by {@link AndroidDeviceSensorFactory} to create
+ * sensors of that type: the number of values of its events, the unit of the values and how the
+ * Android system reports them.
+ */
+public final class AndroidSensorType {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The reporting mode of sensors that generate events at a constant rate defined by the
+     * sampling period.
+     */
+    public static final int REPORTING_MODE_CONTINUOUS = 0;
+
+    /**
+     * The reporting mode of sensors that generate events only when the measured values change.
+     */
+    public static final int REPORTING_MODE_ON_CHANGE = 1;
+
+    /**
+     * The reporting mode of sensors that generate a single event when they detect something, and
+     * must be requested again to detect it again.
+     */
+    public static final int REPORTING_MODE_ONE_SHOT = 2;
+
+    /**
+     * The reporting mode of sensors that generate events when they detect something, such as a
+     * step or a heart beat.
+     */
+    public static final int REPORTING_MODE_SPECIAL_TRIGGER = 3;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new AndroidSensorType.
+     *
+     * @param type The Android sensor type (see constants in the Android Sensor class).
+     * @param name A readable name of the type.
+     * @param channelCount The number of values of each event.
+     * @param unit The Unit of the values.
+     * @param reportingMode The reporting mode (REPORTING_MODE_CONTINUOUS,
+     *                      REPORTING_MODE_ON_CHANGE, REPORTING_MODE_ONE_SHOT or
+     *                      REPORTING_MODE_SPECIAL_TRIGGER).
+     */
+    public AndroidSensorType(int type, String name, int channelCount, Unit<?> unit, int reportingMode) {
+        this.type = type;
+        this.name = name;
+        this.channelCount = channelCount;
+        this.unit = unit;
+        this.reportingMode = reportingMode;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method checks whether sensors of this type report events as they happen instead of at
+     * a rate defined by the sampling period.
+     *
+     * @return true, if the reporting mode is not continuous; false, otherwise.
+     */
+    public boolean isEventDriven() {
+        return reportingMode != REPORTING_MODE_CONTINUOUS;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the Android sensor type.
+     *
+     * @return The Android sensor type.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * This method obtains the readable name of this type.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * This method obtains the number of values of each event of this type.
+     *
+     * @return The number of values.
+     */
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * This method obtains the Unit of the values of this type.
+     *
+     * @return The Unit.
+     */
+    public Unit<?> getUnit() {
+        return unit;
+    }
+
+    /**
+     * This method obtains the reporting mode of this type.
+     *
+     * @return The reporting mode.
+     */
+    public int getReportingMode() {
+        return reportingMode;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The Android sensor type.
+     */
+    private final int type;
+
+    /**
+     * A readable name of the type.
+     */
+    private final String name;
+
+    /**
+     * The number of values of each event.
+     */
+    private final int channelCount;
+
+    /**
+     * The Unit of the values.
+     */
+    private final Unit<?> unit;
+
+    /**
+     * The reporting mode.
+     */
+    private final int reportingMode;
+}
@@ -0,0 +1,131 @@
+package br.edu.leonardo.jaf.android;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
+import android.os.Build;
+
+import br.edu.leonardo.jaf.sensors.SensorException;
+
+/**
+ * An Android one-shot sensor, such as the significant motion sensor. Instead of being registered
+ * to report events continuously, the sensor is requested to trigger once: the hardware watches
+ * for the event on its own while the application processor sleeps, and the agent is only woken up
+ * when it happens. By default, the trigger is requested again after each event, so the agent
+ * receives every detection.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+public abstract class AndroidTriggerSensor extends AndroidDeviceSensor {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new AndroidTriggerSensor from the given context and that
+     * encapsulates the given one-shot Android sensor.
+     *
+     * @param context The Android application context.
+     * @param sensor The desired Android sensor.
+     */
+    public AndroidTriggerSensor(Context context, android.hardware.Sensor sensor) {
+        super(context, sensor, SensorManager.SENSOR_DELAY_NORMAL, 0);
+        this.sensorMgr = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public synchronized void init() throws SensorException {
+        if(!sensorMgr.requestTriggerSensor(triggerListener, getSensor()))
+            throw new SensorException(this, "The sensor is not supported or it is not successfully enabled.");
+        armed = true;
+    }
+
+    @Override
+    public synchronized void unregister() {
+        sensorMgr.cancelTriggerSensor(triggerListener, getSensor());
+        armed = false;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method defines whether the trigger is requested again after each event.
+     *
+     * @param rearm true, to receive every detection; false, to receive a single detection after
+     *              each call to init().
+     */
+    public void setRearm(boolean rearm) {
+        this.rearm = rearm;
+    }
+
+    /**
+     * This method checks whether the trigger is requested again after each event.
+     *
+     * @return true, if the trigger is requested again; false, otherwise.
+     */
+    public boolean isRearm() {
+        return rearm;
+    }
+
+    /**
+     * This method checks whether the trigger is currently requested.
+     *
+     * @return true, if the sensor is waiting for an event; false, otherwise.
+     */
+    public synchronized boolean isArmed() {
+        return armed;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method processes a trigger event and requests the trigger again if needed.
+     *
+     * @param event The trigger event.
+     */
+    private void onTrigger(TriggerEvent event) {
+        synchronized(this) {
+            armed = rearm && armed && sensorMgr.requestTriggerSensor(triggerListener, getSensor());
+        }
+        onSensorValues(event.timestamp, SensorManager.SENSOR_STATUS_ACCURACY_HIGH, event.values);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The sensor manager obtained from the application context given to this object.
+     */
+    private final SensorManager sensorMgr;
+
+    /**
+     * Indicates whether the trigger is requested again after each event.
+     */
+    private volatile boolean rearm = true;
+
+    /**
+     * Indicates whether the trigger is currently requested.
+     */
+    private boolean armed;
+
+    /**
+     * The listener that receives the trigger events.
+     */
+    private final TriggerEventListener triggerListener = new TriggerEventListener() {
+        @Override
+        public void onTrigger(TriggerEvent event) {
+            AndroidTriggerSensor.this.onTrigger(event);
+        }
+    };
+}
@@ -0,0 +1,252 @@
+package br.edu.leonardo.jaf.android;
+
+import android.annotation.TargetApi;
+import android.hardware.SensorDirectChannel;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.MemoryFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The reader of the sensor direct channel of an AndroidDeviceSensor. The Android system writes the
+ * events of the sensor straight into a shared memory ring, without SensorEvent objects nor
+ * callbacks; a reader thread periodically copies the ring into a reusable buffer, parses the new
+ * records and delivers them to the sensor. Since the copy is not atomic, the counter of each parsed
+ * record is read again from the shared memory, and records overwritten meanwhile are discarded.
+ */
+@TargetApi(Build.VERSION_CODES.O)
+final class DirectChannelReader implements Runnable {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new DirectChannelReader.
+     *
+     * @param owner The sensor that receives the events.
+     * @param sensorMgr The sensor manager.
+     * @param rateLevel The direct report rate level (SensorDirectChannel.RATE_NORMAL, RATE_FAST or
+     *                  RATE_VERY_FAST).
+     * @param capacity The number of records of the shared memory ring.
+     */
+    DirectChannelReader(AndroidDeviceSensor owner, SensorManager sensorMgr, int rateLevel, int capacity) {
+        this.owner = owner;
+        this.sensorMgr = sensorMgr;
+        this.rateLevel = rateLevel;
+        this.capacity = capacity;
+        this.bytes = new byte[capacity * DirectReportParser.RECORD_SIZE];
+        this.buffer = ByteBuffer.wrap(bytes);
+        this.reading = new SensorReading(owner.getChannelCount());
+        // Poll when about a quarter of the ring is filled at the nominal rate of the level
+        this.pollNanos = Math.max(1000000L, capacity / 4 * nominalPeriodNanos(rateLevel));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method creates the shared memory and the direct channel, configures the sensor to
+     * report into it and starts the reader thread.
+     *
+     * @return true, if the direct channel is running; false, if it could not be configured.
+     */
+    boolean start() {
+        try {
+            memoryFile = new MemoryFile("jaf-direct", bytes.length);
+            channel = sensorMgr.createDirectChannel(memoryFile);
+            int token = channel.configure(owner.getSensor(), rateLevel);
+            if(token <= 0) {
+                release();
+                return false;
+            }
+            parser = new DirectReportParser(capacity, token);
+        } catch(IOException | RuntimeException e) {
+            release();
+            return false;
+        }
+        running = true;
+        thread = new Thread(this, "jaf-direct-" + owner.getSensor().getName());
+        thread.start();
+        return true;
+    }
+
+    /**
+     * This method stops the sensor reports, the reader thread and releases the shared memory.
+     */
+    void stop() {
+        running = false;
+        Thread t = thread;
+        if(t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        release();
+    }
+
+    @Override
+    public void run() {
+        long lastLost = 0;
+        while(running) {
+            try {
+                memoryFile.readBytes(bytes, 0, 0, bytes.length);
+            } catch(IOException e) {
+                break;
+            }
+            while(parser.next(buffer, reading)) {
+                if(!isIntact(parser.getLastOffset(), parser.getLastCounter())) {
+                    parser.rejectLast();
+                    continue;
+                }
+                float[] values = reading.getValues();
+                if(!owner.isPooledReadingsEnabled() || values.length != reading.getSize()) {
+                    values = new float[reading.getSize()];
+                    reading.copyValues(values);
+                }
+                owner.onSensorValues(reading.getTimestamp(), reading.getAccuracy(), values);
+            }
+            owner.onDirectReadCompleted();
+            long lost = parser.getLostCount();
+            SensorMetrics m = owner.getMetrics();
+            if(m != null && lost != lastLost)
+                m.recordDropped((int) (lost - lastLost));
+            lastLost = lost;
+            LockSupport.parkNanos(this, pollNanos);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method checks whether a record parsed from the copy of the ring is still in the shared
+     * memory. If its counter changed, the writer overwrote the record, possibly while it was being
+     * copied, so its values may mix two records.
+     *
+     * @param offset The offset of the record in the ring.
+     * @param counter The counter of the record in the copy.
+     * @return true, if the record is intact; false, otherwise.
+     */
+    private boolean isIntact(int offset, int counter) {
+        try {
+            memoryFile.readBytes(counterBytes, offset + DirectReportParser.OFFSET_COUNTER, 0, 4);
+        } catch(IOException e) {
+            return false;
+        }
+        int current = (counterBytes[0] & 0xFF) | (counterBytes[1] & 0xFF) << 8
+                | (counterBytes[2] & 0xFF) << 16 | counterBytes[3] << 24;
+        return current == counter;
+    }
+
+    /**
+     * This method stops the sensor reports and releases the channel and the shared memory.
+     */
+    private void release() {
+        if(channel != null) {
+            channel.configure(owner.getSensor(), SensorDirectChannel.RATE_STOP);
+            channel.close();
+            channel = null;
+        }
+        if(memoryFile != null) {
+            memoryFile.close();
+            memoryFile = null;
+        }
+    }
+
+    /**
+     * This method obtains the nominal period of a direct report rate level.
+     *
+     * @param rateLevel The rate level.
+     * @return The nominal period in nanoseconds.
+     */
+    private static long nominalPeriodNanos(int rateLevel) {
+        switch(rateLevel) {
+            case SensorDirectChannel.RATE_VERY_FAST: return 1250000L;
+            case SensorDirectChannel.RATE_FAST: return 5000000L;
+            default: return 20000000L;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The sensor that receives the events.
+     */
+    private final AndroidDeviceSensor owner;
+
+    /**
+     * The sensor manager.
+     */
+    private final SensorManager sensorMgr;
+
+    /**
+     * The direct report rate level.
+     */
+    private final int rateLevel;
+
+    /**
+     * The number of records of the shared memory ring.
+     */
+    private final int capacity;
+
+    /**
+     * The copy of the shared memory ring.
+     */
+    private final byte[] bytes;
+
+    /**
+     * The buffer that wraps the copy of the shared memory ring.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The bytes of a counter read again from the shared memory ring.
+     */
+    private final byte[] counterBytes = new byte[4];
+
+    /**
+     * The reading that receives the parsed records.
+     */
+    private final SensorReading reading;
+
+    /**
+     * The interval in nanoseconds between two reads of the shared memory ring.
+     */
+    private final long pollNanos;
+
+    /**
+     * The shared memory ring.
+     */
+    private MemoryFile memoryFile;
+
+    /**
+     * The direct channel.
+     */
+    private SensorDirectChannel channel;
+
+    /**
+     * The parser of the records.
+     */
+    private DirectReportParser parser;
+
+    /**
+     * The reader thread.
+     */
+    private Thread thread;
+
+    /**
+     * Indicates whether the reader thread must keep running.
+     */
+    private volatile boolean running;
+}
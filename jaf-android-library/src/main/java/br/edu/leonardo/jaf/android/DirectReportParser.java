@@ -0,0 +1,263 @@
+package br.edu.leonardo.jaf.android;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A parser of the sensor events written by the Android system into the shared memory of a sensor
+ * direct channel. The memory is a ring of fixed 104-byte records: a 32-bit size, the report token
+ * of the sensor, the sensor type, a 32-bit counter, a 64-bit timestamp and sixteen float values,
+ * in little-endian order. The counter of each record is written last and grows by one for each
+ * record, so the parser knows whether the next slot holds a new record, and how many records were
+ * overwritten if the writer laps it. The parser works on a copy of the ring, so the reader must
+ * check, against the shared memory itself, that a parsed record was not being overwritten while
+ * the copy was made, and reject it otherwise.
+ *
+ * The parser has no Android dependency, so it can be exercised on synthetic buffers.
+ */
+final class DirectReportParser {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The size in bytes of a record.
+     */
+    static final int RECORD_SIZE = 104;
+
+    /**
+     * The offset of the size field of a record.
+     */
+    static final int OFFSET_SIZE = 0;
+
+    /**
+     * The offset of the report token of a record.
+     */
+    static final int OFFSET_TOKEN = 4;
+
+    /**
+     * The offset of the sensor type of a record.
+     */
+    static final int OFFSET_TYPE = 8;
+
+    /**
+     * The offset of the counter of a record.
+     */
+    static final int OFFSET_COUNTER = 12;
+
+    /**
+     * The offset of the timestamp of a record.
+     */
+    static final int OFFSET_TIMESTAMP = 16;
+
+    /**
+     * The offset of the values of a record.
+     */
+    static final int OFFSET_VALUES = 24;
+
+    /**
+     * The maximum number of values of a record.
+     */
+    static final int MAX_VALUES = 16;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new DirectReportParser.
+     *
+     * @param capacity The number of records of the shared memory ring.
+     * @param token The report token of the sensor whose records are parsed; records of other
+     *              sensors sharing the channel are skipped.
+     */
+    DirectReportParser(int capacity, int token) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("The ring capacity must be positive.");
+        this.capacity = capacity;
+        this.token = token;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method parses the next record of the sensor from the shared memory ring.
+     *
+     * @param buffer The buffer with the shared memory ring, starting at position zero.
+     * @param dest The reading that receives the timestamp and values of the record.
+     * @return true, if a record was parsed; false, if there are no new records.
+     */
+    boolean next(ByteBuffer buffer, SensorReading dest) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        while(true) {
+            int offset = slot * RECORD_SIZE;
+            int counter = buffer.getInt(offset + OFFSET_COUNTER);
+            int ahead = counter - expectedCounter;
+            if(ahead < 0 || buffer.getInt(offset + OFFSET_SIZE) != RECORD_SIZE)
+                return false;
+            if(ahead > 0) {
+                // The writer lapped the parser: resynchronize at the oldest record in the ring
+                int skipped = newestCounter(buffer) - capacity + 1 - expectedCounter;
+                if(skipped <= 0)
+                    skipped = ahead;
+                lost += skipped;
+                expectedCounter += skipped;
+                slot = (int) ((slot + (long) skipped) % capacity);
+                continue;
+            }
+            boolean match = buffer.getInt(offset + OFFSET_TOKEN) == token;
+            if(match) {
+                long timestamp = buffer.getLong(offset + OFFSET_TIMESTAMP);
+                for(int i = 0; i < MAX_VALUES; i++)
+                    scratch[i] = buffer.getFloat(offset + OFFSET_VALUES + 4 * i);
+                dest.set(timestamp, ACCURACY_HIGH, scratch, MAX_VALUES);
+                lastOffset = offset;
+                lastCounter = counter;
+            }
+            expectedCounter = counter + 1;
+            slot = slot + 1 == capacity ? 0 : slot + 1;
+            if(match) {
+                parsed++;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * This method discards the last parsed record, counting it as lost. The reader calls it when
+     * the counter of the record in the shared memory no longer matches the copy, since the writer
+     * may have overwritten the record while the copy was made.
+     */
+    void rejectLast() {
+        parsed--;
+        lost++;
+    }
+
+    /**
+     * This method obtains the offset in the ring of the last parsed record.
+     *
+     * @return The offset in bytes.
+     */
+    int getLastOffset() {
+        return lastOffset;
+    }
+
+    /**
+     * This method obtains the counter of the last parsed record.
+     *
+     * @return The counter.
+     */
+    int getLastCounter() {
+        return lastCounter;
+    }
+
+    /**
+     * This method restarts the parser at the beginning of a ring whose counters start at one, as
+     * it is after the channel is configured.
+     */
+    void reset() {
+        slot = 0;
+        expectedCounter = 1;
+    }
+
+    /**
+     * This method obtains the number of records parsed.
+     *
+     * @return The number of parsed records.
+     */
+    long getParsedCount() {
+        return parsed;
+    }
+
+    /**
+     * This method obtains the number of records overwritten by the writer before being parsed.
+     *
+     * @return The number of lost records.
+     */
+    long getLostCount() {
+        return lost;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method finds the counter of the newest record of the ring.
+     *
+     * @param buffer The buffer with the shared memory ring.
+     * @return The newest counter, which is at least the expected counter.
+     */
+    private int newestCounter(ByteBuffer buffer) {
+        int newest = expectedCounter;
+        for(int i = 0; i < capacity; i++) {
+            int offset = i * RECORD_SIZE;
+            int counter = buffer.getInt(offset + OFFSET_COUNTER);
+            if(buffer.getInt(offset + OFFSET_SIZE) == RECORD_SIZE && counter - newest > 0)
+                newest = counter;
+        }
+        return newest;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The accuracy assigned to the records, which carry no accuracy (the value of
+     * SensorManager.SENSOR_STATUS_ACCURACY_HIGH).
+     */
+    private static final int ACCURACY_HIGH = 3;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of records of the shared memory ring.
+     */
+    private final int capacity;
+
+    /**
+     * The report token of the sensor whose records are parsed.
+     */
+    private final int token;
+
+    /**
+     * The values of the record being parsed.
+     */
+    private final float[] scratch = new float[MAX_VALUES];
+
+    /**
+     * The slot of the next record.
+     */
+    private int slot;
+
+    /**
+     * The counter expected in the next record.
+     */
+    private int expectedCounter = 1;
+
+    /**
+     * The offset in the ring of the last parsed record.
+     */
+    private int lastOffset;
+
+    /**
+     * The counter of the last parsed record.
+     */
+    private int lastCounter;
+
+    /**
+     * The number of records parsed.
+     */
+    private long parsed;
+
+    /**
+     * The number of records overwritten before being parsed.
+     */
+    private long lost;
+}
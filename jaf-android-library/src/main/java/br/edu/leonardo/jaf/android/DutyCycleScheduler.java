@@ -0,0 +1,566 @@
+package br.edu.leonardo.jaf.android;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import br.edu.leonardo.jaf.sensors.SensorException;
+
+/**
+ * This class registers and unregisters Android device sensors on a duty cycle, so that agents that
+ * only need a few seconds of data from time to time do not keep the sensors on. In each cycle, all
+ * sensors of the scheduler are registered together for the on-time, and the first events reported
+ * after each registration are discarded as warm-up samples.
+ *
+ * Cycles start at multiples of the cycle period, so the cycles of all schedulers with the same
+ * period (or with periods that are multiples of each other) are aligned and share the same
+ * wake-ups. The scheduler owns the registration of its sensors: they must not be registered by
+ * other means while they are scheduled.
+ *
+ * A scheduler built with a Context keeps cycling while the device sleeps: each cycle is started
+ * by an alarm on the elapsed realtime clock that wakes the device up (even in doze mode), and a
+ * partial wake lock keeps the CPU on during the on-time, so that the events of non-wake-up
+ * sensors are delivered and the on-time ends in time (the library declares the WAKE_LOCK
+ * permission). From Android 12 on, exact alarms must be allowed for the application; otherwise,
+ * inexact alarms are used. A scheduler built without a Context times the cycles on the uptime clock,
+ * which stops in deep sleep, so its cycles stall while the device sleeps.
+ *
+ * The scheduler reports the coverage of each sensor: the ratio between the events delivered while
+ * the sensor was on and the events requested by its sampling period.
+ */
+public class DutyCycleScheduler {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new DutyCycleScheduler that runs in the main thread.
+     *
+     * @param period The duration of a cycle in milliseconds.
+     * @param onTime The time in milliseconds during which the sensors are registered in each
+     *               cycle.
+     * @param warmUpSamples The number of events discarded after each registration.
+     */
+    public DutyCycleScheduler(long period, long onTime, int warmUpSamples) {
+        this(null, period, onTime, warmUpSamples, Looper.getMainLooper());
+    }
+
+    /**
+     * This constructor builds a new DutyCycleScheduler that runs in the main thread and keeps
+     * cycling while the device sleeps, with alarms and a wake lock.
+     *
+     * @param context The Android application context.
+     * @param period The duration of a cycle in milliseconds.
+     * @param onTime The time in milliseconds during which the sensors are registered in each
+     *               cycle.
+     * @param warmUpSamples The number of events discarded after each registration.
+     */
+    public DutyCycleScheduler(Context context, long period, long onTime, int warmUpSamples) {
+        this(context, period, onTime, warmUpSamples, Looper.getMainLooper());
+    }
+
+    /**
+     * This constructor builds a new DutyCycleScheduler.
+     *
+     * @param period The duration of a cycle in milliseconds.
+     * @param onTime The time in milliseconds during which the sensors are registered in each
+     *               cycle.
+     * @param warmUpSamples The number of events discarded after each registration.
+     * @param looper The looper of the thread where the sensors are registered and unregistered.
+     */
+    public DutyCycleScheduler(long period, long onTime, int warmUpSamples, Looper looper) {
+        this(null, period, onTime, warmUpSamples, looper);
+    }
+
+    /**
+     * This constructor builds a new DutyCycleScheduler.
+     *
+     * @param context The Android application context, to keep cycling while the device sleeps;
+     *                or null, to time the cycles on the uptime clock.
+     * @param period The duration of a cycle in milliseconds.
+     * @param onTime The time in milliseconds during which the sensors are registered in each
+     *               cycle.
+     * @param warmUpSamples The number of events discarded after each registration.
+     * @param looper The looper of the thread where the sensors are registered and unregistered.
+     */
+    public DutyCycleScheduler(Context context, long period, long onTime, int warmUpSamples, Looper looper) {
+        if(period <= 0 || onTime <= 0 || onTime > period)
+            throw new IllegalArgumentException("The on-time must be positive and not longer than the period.");
+        if(warmUpSamples < 0)
+            throw new IllegalArgumentException("The number of warm-up samples must not be negative.");
+        this.period = period;
+        this.onTime = onTime;
+        this.warmUpSamples = warmUpSamples;
+        this.handler = new Handler(looper);
+        if(context == null) {
+            this.context = null;
+            this.alarmMgr = null;
+            this.wakeLock = null;
+            this.alarmIntent = null;
+            return;
+        }
+        this.context = context.getApplicationContext();
+        this.alarmMgr = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PowerManager powerMgr = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.wakeLock = powerMgr.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "jaf:duty-cycle");
+        this.wakeLock.setReferenceCounted(false);
+        Intent intent = new Intent(ALARM_ACTION + "." + System.identityHashCode(this));
+        intent.setPackage(this.context.getPackageName());
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+            flags |= PendingIntent.FLAG_IMMUTABLE;
+        this.alarmIntent = PendingIntent.getBroadcast(this.context, 0, intent, flags);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method adds a sensor to this scheduler. The sensor is registered from the next cycle on.
+     *
+     * @param sensor The sensor.
+     */
+    public synchronized void add(AndroidDeviceSensor sensor) {
+        if(find(sensor) == null)
+            entries.add(new Entry(sensor));
+    }
+
+    /**
+     * This method removes a sensor from this scheduler, unregistering it if it is on.
+     *
+     * @param sensor The sensor.
+     */
+    public synchronized void remove(AndroidDeviceSensor sensor) {
+        Entry entry = find(sensor);
+        if(entry == null)
+            return;
+        switchOff(entry);
+        entries.remove(entry);
+    }
+
+    /**
+     * This method starts the duty cycle. The first cycle starts at the next multiple of the period
+     * on the uptime clock.
+     */
+    public synchronized void start() {
+        if(running)
+            return;
+        running = true;
+        if(alarmMgr != null)
+            registerAlarmReceiver();
+        scheduleCycleStart(nextCycleStart(now()));
+    }
+
+    /**
+     * This method stops the duty cycle, unregistering the sensors that are on.
+     */
+    public synchronized void stop() {
+        if(!running)
+            return;
+        running = false;
+        handler.removeCallbacks(cycleStart);
+        handler.removeCallbacks(cycleEnd);
+        if(alarmMgr != null) {
+            alarmMgr.cancel(alarmIntent);
+            context.unregisterReceiver(alarmReceiver);
+        }
+        for(Entry entry : entries)
+            switchOff(entry);
+        releaseWakeLock();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of cycles started by this scheduler.
+     *
+     * @return The number of cycles.
+     */
+    public synchronized long getCycleCount() {
+        return cycles;
+    }
+
+    /**
+     * This method obtains the number of events requested from a sensor: in each cycle, the events
+     * expected from its sampling period during the on-time, excluding the warm-up samples.
+     *
+     * @param sensor The sensor.
+     * @return The number of requested events, or zero if the sensor is not scheduled.
+     */
+    public synchronized long getRequestedCount(AndroidDeviceSensor sensor) {
+        Entry entry = find(sensor);
+        return entry == null ? 0 : entry.requested;
+    }
+
+    /**
+     * This method obtains the number of events delivered by a sensor while it was on, excluding the
+     * warm-up samples.
+     *
+     * @param sensor The sensor.
+     * @return The number of delivered events, or zero if the sensor is not scheduled.
+     */
+    public synchronized long getDeliveredCount(AndroidDeviceSensor sensor) {
+        Entry entry = find(sensor);
+        if(entry == null)
+            return 0;
+        return entry.active ? entry.delivered + sensor.getReceivedCount() - entry.receivedAtStart : entry.delivered;
+    }
+
+    /**
+     * This method obtains the coverage of a sensor, that is, the ratio between its delivered and
+     * requested events. The coverage drops below one when the sensor reports events more slowly
+     * than requested or fails to be registered.
+     *
+     * @param sensor The sensor.
+     * @return The coverage, or NaN if no event was requested yet.
+     */
+    public synchronized double getCoverage(AndroidDeviceSensor sensor) {
+        long requested = getRequestedCount(sensor);
+        return requested == 0 ? Double.NaN : (double) getDeliveredCount(sensor) / requested;
+    }
+
+    /**
+     * This method obtains the number of cycles in which a sensor could not be registered.
+     *
+     * @param sensor The sensor.
+     * @return The number of failed cycles, or zero if the sensor is not scheduled.
+     */
+    public synchronized long getFailedCycleCount(AndroidDeviceSensor sensor) {
+        Entry entry = find(sensor);
+        return entry == null ? 0 : entry.failedCycles;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method finds the entry of a sensor.
+     *
+     * @param sensor The sensor.
+     * @return The entry, or null if the sensor is not scheduled.
+     */
+    private Entry find(AndroidDeviceSensor sensor) {
+        for(Entry entry : entries)
+            if(entry.sensor == sensor)
+                return entry;
+        return null;
+    }
+
+    /**
+     * This method obtains the current time on the clock of the cycles: the elapsed realtime, which
+     * keeps running in deep sleep, when the cycles are started by alarms; the uptime, otherwise.
+     *
+     * @return The current time in milliseconds.
+     */
+    private long now() {
+        return alarmMgr != null ? SystemClock.elapsedRealtime() : SystemClock.uptimeMillis();
+    }
+
+    /**
+     * This method computes the start of the next cycle, which is the next multiple of the period.
+     *
+     * @param now The current time in milliseconds on the clock of the cycles.
+     * @return The time in milliseconds at which the next cycle starts.
+     */
+    private long nextCycleStart(long now) {
+        return (now / period + 1) * period;
+    }
+
+    /**
+     * This method computes the number of events expected from a sensor during the on-time. At the
+     * fastest rate, the minimum delay of the Android sensor is used as the sampling period; the
+     * events of sensors without a fixed rate are not counted.
+     *
+     * @param sensor The sensor.
+     * @return The number of expected events.
+     */
+    private long expectedEvents(AndroidDeviceSensor sensor) {
+        int micros = SensorHub.toMicros(sensor.getSamplingPeriod());
+        if(micros <= 0 && sensor.getSensor() != null)
+            micros = sensor.getSensor().getMinDelay();
+        return micros <= 0 ? 0 : onTime * 1000L / micros;
+    }
+
+    /**
+     * This method registers the sensors at the beginning of a cycle and schedules the end of the
+     * on-time and the next cycle.
+     */
+    private synchronized void beginCycle() {
+        if(!running)
+            return;
+        long now = now();
+        if(wakeLock != null)
+            wakeLock.acquire(onTime + WAKE_LOCK_MARGIN);
+        cycles++;
+        for(Entry entry : entries) {
+            entry.requested += Math.max(0, expectedEvents(entry.sensor) - warmUpSamples);
+            entry.sensor.discardWarmUp(warmUpSamples);
+            entry.receivedAtStart = entry.sensor.getReceivedCount();
+            try {
+                entry.sensor.init();
+                entry.active = true;
+            } catch(SensorException e) {
+                entry.failedCycles++;
+            }
+        }
+        handler.postAtTime(cycleEnd, SystemClock.uptimeMillis() + onTime);
+        scheduleCycleStart(nextCycleStart(now));
+    }
+
+    /**
+     * This method unregisters the sensors at the end of the on-time of a cycle and lets the device
+     * sleep until the next cycle.
+     */
+    private synchronized void endCycle() {
+        for(Entry entry : entries)
+            switchOff(entry);
+        releaseWakeLock();
+    }
+
+    /**
+     * This method schedules the start of a cycle: with an alarm that wakes the device up, if the
+     * scheduler has a Context; in the handler, otherwise.
+     *
+     * @param at The time in milliseconds, on the clock of the cycles, at which the cycle starts.
+     */
+    private void scheduleCycleStart(long at) {
+        if(alarmMgr == null) {
+            handler.postAtTime(cycleStart, at);
+        } else if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            setIdleAlarm(at);
+        } else if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            alarmMgr.setExact(AlarmManager.ELAPSED_REALTIME_WAKEUP, at, alarmIntent);
+        } else {
+            alarmMgr.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, at, alarmIntent);
+        }
+    }
+
+    /**
+     * This method sets an alarm that fires even in doze mode. It is exact unless the application
+     * is not allowed to schedule exact alarms.
+     *
+     * @param at The elapsed realtime in milliseconds at which the alarm fires.
+     */
+    @TargetApi(Build.VERSION_CODES.M)
+    private void setIdleAlarm(long at) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && !alarmMgr.canScheduleExactAlarms())
+            alarmMgr.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, at, alarmIntent);
+        else
+            alarmMgr.setExactAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, at, alarmIntent);
+    }
+
+    /**
+     * This method registers the receiver of the alarms that start the cycles, so that they are
+     * handled in the thread of the scheduler.
+     */
+    private void registerAlarmReceiver() {
+        IntentFilter filter = new IntentFilter(ALARM_ACTION + "." + System.identityHashCode(this));
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU)
+            registerNotExported(filter);
+        else
+            context.registerReceiver(alarmReceiver, filter, null, handler);
+    }
+
+    /**
+     * This method registers the receiver of the alarms as not exported to other applications.
+     *
+     * @param filter The filter of the alarm action.
+     */
+    @TargetApi(Build.VERSION_CODES.TIRAMISU)
+    private void registerNotExported(IntentFilter filter) {
+        context.registerReceiver(alarmReceiver, filter, null, handler, Context.RECEIVER_NOT_EXPORTED);
+    }
+
+    /**
+     * This method releases the wake lock held during the on-time, if any.
+     */
+    private void releaseWakeLock() {
+        if(wakeLock != null && wakeLock.isHeld())
+            wakeLock.release();
+    }
+
+    /**
+     * This method unregisters a sensor, if it is on, and accounts the events it delivered.
+     *
+     * @param entry The entry of the sensor.
+     */
+    private void switchOff(Entry entry) {
+        if(!entry.active)
+            return;
+        entry.sensor.unregister();
+        entry.sensor.discardWarmUp(0);
+        entry.delivered += entry.sensor.getReceivedCount() - entry.receivedAtStart;
+        entry.active = false;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The prefix of the action of the alarms that start the cycles.
+     */
+    private static final String ALARM_ACTION = "br.edu.leonardo.jaf.android.DUTY_CYCLE";
+
+    /**
+     * The time in milliseconds the wake lock is held beyond the on-time, as a safety timeout in
+     * case the end of the on-time is delayed.
+     */
+    private static final long WAKE_LOCK_MARGIN = 5000L;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The duration of a cycle in milliseconds.
+     */
+    private final long period;
+
+    /**
+     * The time in milliseconds during which the sensors are registered in each cycle.
+     */
+    private final long onTime;
+
+    /**
+     * The number of events discarded after each registration.
+     */
+    private final int warmUpSamples;
+
+    /**
+     * The handler of the thread where the sensors are registered and unregistered.
+     */
+    private final Handler handler;
+
+    /**
+     * The application context, or null if the cycles are timed on the uptime clock.
+     */
+    private final Context context;
+
+    /**
+     * The alarm manager that starts the cycles, or null if the cycles are timed on the uptime
+     * clock.
+     */
+    private final AlarmManager alarmMgr;
+
+    /**
+     * The intent of the alarms that start the cycles, or null.
+     */
+    private final PendingIntent alarmIntent;
+
+    /**
+     * The wake lock held during the on-time, or null.
+     */
+    private final PowerManager.WakeLock wakeLock;
+
+    /**
+     * The scheduled sensors.
+     */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Indicates whether the duty cycle is running.
+     */
+    private boolean running;
+
+    /**
+     * The number of cycles started.
+     */
+    private long cycles;
+
+    /**
+     * The task that starts a cycle.
+     */
+    private final Runnable cycleStart = new Runnable() {
+        @Override
+        public void run() {
+            beginCycle();
+        }
+    };
+
+    /**
+     * The receiver of the alarms that start the cycles.
+     */
+    private final BroadcastReceiver alarmReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            beginCycle();
+        }
+    };
+
+    /**
+     * The task that ends the on-time of a cycle.
+     */
+    private final Runnable cycleEnd = new Runnable() {
+        @Override
+        public void run() {
+            endCycle();
+        }
+    };
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The scheduling state of a sensor.
+     */
+    private static final class Entry {
+
+        /**
+         * This constructor builds a new Entry.
+         *
+         * @param sensor The sensor.
+         */
+        Entry(AndroidDeviceSensor sensor) {
+            this.sensor = sensor;
+        }
+
+        /**
+         * The sensor.
+         */
+        final AndroidDeviceSensor sensor;
+
+        /**
+         * Indicates whether the sensor is registered.
+         */
+        boolean active;
+
+        /**
+         * The number of events received by the sensor when it was registered in the current cycle.
+         */
+        long receivedAtStart;
+
+        /**
+         * The number of events delivered in the finished cycles.
+         */
+        long delivered;
+
+        /**
+         * The number of events requested so far.
+         */
+        long requested;
+
+        /**
+         * The number of cycles in which the sensor could not be registered.
+         */
+        long failedCycles;
+    }
+}
@@ -0,0 +1,425 @@
+package br.edu.leonardo.jaf.android;
+
+import br.edu.leonardo.jaf.sensors.Sensor;
+import br.edu.leonardo.jaf.sensors.SensorException;
+import tec.units.ri.AbstractUnit;
+
+/**
+ * A sensor that extracts time and frequency domain features from a motion sensor (such as the
+ * accelerometer or the linear acceleration sensor) for activity recognition. It keeps the
+ * magnitude of the last samples in a preallocated ring buffer and, every hop, computes a feature
+ * vector over the overlapping window with an in-place radix-2 FFT, without allocating memory:
+ *
+ * <pre>
+ * 0: mean of the magnitude        3: number of peaks above one standard deviation
+ * 1: standard deviation           4: dominant frequency in Hz
+ * 2: zero-crossing rate           5: total spectral energy
+ * 6..: energy of each band (equal-width bands between 0 Hz and the Nyquist frequency)
+ * </pre>
+ *
+ * Reading listeners receive the feature vector as a reading. Agents receive it as a
+ * VectorSensorValue with every feature.
+ */
+public class FeatureSensor extends Sensor implements SensorReadingSource {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new FeatureSensor.
+     *
+     * @param source The motion sensor. While the extraction is running, the source works in the
+     *               zero-allocation mode and does not deliver its own readings to agents.
+     * @param windowSize The number of samples in a window. It must be a power of two.
+     * @param hop The number of samples between two feature vectors (the window size for windows
+     *            without overlap).
+     * @param bands The number of frequency bands.
+     */
+    public FeatureSensor(AndroidDeviceSensor source, int windowSize, int hop, int bands) {
+        if(windowSize < 4 || Integer.bitCount(windowSize) != 1)
+            throw new IllegalArgumentException("The window size must be a power of two.");
+        if(hop <= 0 || hop > windowSize)
+            throw new IllegalArgumentException("The hop must be between 1 and the window size.");
+        if(bands <= 0 || bands > windowSize / 2)
+            throw new IllegalArgumentException("The number of bands must be between 1 and half the window size.");
+        this.source = source;
+        this.windowSize = windowSize;
+        this.hop = hop;
+        this.bands = bands;
+        this.samples = new float[windowSize];
+        this.timestamps = new long[windowSize];
+        this.re = new float[windowSize];
+        this.im = new float[windowSize];
+        this.window = new float[windowSize];
+        this.cos = new float[windowSize / 2];
+        this.sin = new float[windowSize / 2];
+        this.reversed = new int[windowSize];
+        this.features = new float[FEATURE_BANDS + bands];
+        this.pool = new SensorReadingPool(POOL_SIZE, features.length);
+        int bits = Integer.numberOfTrailingZeros(windowSize);
+        for(int i = 0; i < windowSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (windowSize - 1)));
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        for(int i = 0; i < windowSize / 2; i++) {
+            cos[i] = (float) Math.cos(2 * Math.PI * i / windowSize);
+            sin[i] = (float) -Math.sin(2 * Math.PI * i / windowSize);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void init() throws SensorException {
+        source.enablePooledReadings(SOURCE_POOL_SIZE);
+        source.addReadingListener(sourceListener);
+        source.init();
+    }
+
+    /**
+     * This method stops the extraction and the underlying sensor. The buffered samples are
+     * discarded.
+     */
+    public synchronized void unregister() {
+        source.unregister();
+        source.removeReadingListener(sourceListener);
+        source.disablePooledReadings();
+        count = 0;
+        sinceLastHop = 0;
+    }
+
+    @Override
+    public void addReadingListener(SensorReadingListener listener) {
+        readingListeners.add(listener);
+    }
+
+    @Override
+    public void removeReadingListener(SensorReadingListener listener) {
+        readingListeners.remove(listener);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getChannelCount() {
+        return features.length;
+    }
+
+    /**
+     * This method obtains the number of samples in a window.
+     *
+     * @return The window size.
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * This method obtains the number of samples between two feature vectors.
+     *
+     * @return The hop.
+     */
+    public int getHop() {
+        return hop;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method computes, in place, the discrete Fourier transform of the given arrays with the
+     * iterative radix-2 Cooley-Tukey algorithm.
+     *
+     * @param re The real parts, replaced by the real parts of the transform.
+     * @param im The imaginary parts, replaced by the imaginary parts of the transform.
+     */
+    void fft(float[] re, float[] im) {
+        int n = windowSize;
+        for(int i = 0; i < n; i++) {
+            int j = reversed[i];
+            if(j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+        for(int size = 2; size <= n; size <<= 1) {
+            int half = size >> 1;
+            int step = n / size;
+            for(int start = 0; start < n; start += size) {
+                for(int k = 0; k < half; k++) {
+                    float wr = cos[k * step];
+                    float wi = sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = re[b] * wr - im[b] * wi;
+                    float ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method adds the magnitude of a reading of the source to the ring buffer and extracts
+     * the features when a hop is completed.
+     *
+     * @param reading The reading.
+     */
+    synchronized void onSourceReading(SensorReading reading) {
+        float[] v = reading.getValues();
+        int n = Math.min(reading.getSize(), 3);
+        float squares = 0f;
+        for(int c = 0; c < n; c++)
+            squares += v[c] * v[c];
+        int position = (int) (count % windowSize);
+        samples[position] = (float) Math.sqrt(squares);
+        timestamps[position] = reading.getTimestamp();
+        count++;
+        sinceLastHop++;
+        if(count >= windowSize && sinceLastHop >= hop) {
+            sinceLastHop = 0;
+            extract(reading.getTimestamp());
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method computes the feature vector of the current window and emits it.
+     *
+     * @param timestamp The time in nanoseconds of the last sample of the window.
+     */
+    private void extract(long timestamp) {
+        int n = windowSize;
+        int first = (int) (count % n);
+        double sum = 0;
+        for(int i = 0; i < n; i++) {
+            float x = samples[(first + i) % n];
+            re[i] = x;
+            sum += x;
+        }
+        float mean = (float) (sum / n);
+        double variance = 0;
+        for(int i = 0; i < n; i++) {
+            re[i] -= mean;
+            variance += re[i] * re[i];
+        }
+        float std = (float) Math.sqrt(variance / n);
+        int crossings = 0;
+        int peaks = 0;
+        for(int i = 1; i < n; i++) {
+            if((re[i - 1] < 0f) != (re[i] < 0f))
+                crossings++;
+            if(i < n - 1 && re[i] > std && re[i] > re[i - 1] && re[i] >= re[i + 1])
+                peaks++;
+        }
+        for(int i = 0; i < n; i++) {
+            re[i] *= window[i];
+            im[i] = 0f;
+        }
+        fft(re, im);
+        for(int b = 0; b < bands; b++)
+            features[FEATURE_BANDS + b] = 0f;
+        float total = 0f;
+        float maxPower = 0f;
+        int dominant = 0;
+        int half = n / 2;
+        for(int k = 1; k <= half; k++) {
+            float power = (re[k] * re[k] + im[k] * im[k]) / n;
+            total += power;
+            if(power > maxPower) {
+                maxPower = power;
+                dominant = k;
+            }
+            features[FEATURE_BANDS + Math.min(bands - 1, (k - 1) * bands / half)] += power;
+        }
+        long span = timestamp - timestamps[first];
+        float sampleRate = span > 0 ? (n - 1) * 1e9f / span : 0f;
+        features[FEATURE_MEAN] = mean;
+        features[FEATURE_STD] = std;
+        features[FEATURE_ZERO_CROSSING_RATE] = (float) crossings / (n - 1);
+        features[FEATURE_PEAKS] = peaks;
+        features[FEATURE_DOMINANT_FREQUENCY] = dominant * sampleRate / n;
+        features[FEATURE_SPECTRAL_ENERGY] = total;
+        if(!readingListeners.isEmpty()) {
+            SensorReading out = pool.acquire();
+            if(out != null) {
+                out.set(timestamp, 0, features, features.length);
+                try {
+                    readingListeners.dispatch(this, out);
+                } finally {
+                    out.release();
+                }
+            }
+        }
+        newReading(new VectorSensorValue(features, features.length, AbstractUnit.ONE));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The index of the mean of the magnitude in the feature vector.
+     */
+    public static final int FEATURE_MEAN = 0;
+
+    /**
+     * The index of the standard deviation of the magnitude in the feature vector.
+     */
+    public static final int FEATURE_STD = 1;
+
+    /**
+     * The index of the zero-crossing rate (of the magnitude minus its mean, per sample) in the
+     * feature vector.
+     */
+    public static final int FEATURE_ZERO_CROSSING_RATE = 2;
+
+    /**
+     * The index of the number of peaks in the feature vector.
+     */
+    public static final int FEATURE_PEAKS = 3;
+
+    /**
+     * The index of the dominant frequency in the feature vector.
+     */
+    public static final int FEATURE_DOMINANT_FREQUENCY = 4;
+
+    /**
+     * The index of the total spectral energy in the feature vector.
+     */
+    public static final int FEATURE_SPECTRAL_ENERGY = 5;
+
+    /**
+     * The index of the energy of the first band in the feature vector.
+     */
+    public static final int FEATURE_BANDS = 6;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of readings in the pool of the source.
+     */
+    private static final int SOURCE_POOL_SIZE = 2;
+
+    /**
+     * The number of readings in the pool of feature vectors.
+     */
+    private static final int POOL_SIZE = 4;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The motion sensor.
+     */
+    private final AndroidDeviceSensor source;
+
+    /**
+     * The number of samples in a window.
+     */
+    private final int windowSize;
+
+    /**
+     * The number of samples between two feature vectors.
+     */
+    private final int hop;
+
+    /**
+     * The number of frequency bands.
+     */
+    private final int bands;
+
+    /**
+     * The ring buffer of sample magnitudes.
+     */
+    private final float[] samples;
+
+    /**
+     * The ring buffer of sample timestamps.
+     */
+    private final long[] timestamps;
+
+    /**
+     * The real parts of the transformed window.
+     */
+    private final float[] re;
+
+    /**
+     * The imaginary parts of the transformed window.
+     */
+    private final float[] im;
+
+    /**
+     * The coefficients of the Hann window.
+     */
+    private final float[] window;
+
+    /**
+     * The cosines of the FFT twiddle factors.
+     */
+    private final float[] cos;
+
+    /**
+     * The sines of the FFT twiddle factors.
+     */
+    private final float[] sin;
+
+    /**
+     * The bit-reversal permutation of the FFT.
+     */
+    private final int[] reversed;
+
+    /**
+     * The array where the feature vector is computed.
+     */
+    private final float[] features;
+
+    /**
+     * The pool of feature vector readings.
+     */
+    private final SensorReadingPool pool;
+
+    /**
+     * The listeners that receive the feature vectors.
+     */
+    private final ReadingListenerList readingListeners = new ReadingListenerList();
+
+    /**
+     * The listener registered in the source.
+     */
+    private final SensorReadingListener sourceListener = new SensorReadingListener() {
+        @Override
+        public void onReading(SensorReadingSource source, SensorReading reading) {
+            onSourceReading(reading);
+        }
+    };
+
+    /**
+     * The number of samples received.
+     */
+    private long count;
+
+    /**
+     * The number of samples received since the last feature vector.
+     */
+    private int sinceLastHop;
+}
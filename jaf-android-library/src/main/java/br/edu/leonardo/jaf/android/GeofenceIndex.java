@@ -0,0 +1,289 @@
+package br.edu.leonardo.jaf.android;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A static R-tree of geofence zones, bulk-loaded with the Sort-Tile-Recursive algorithm. Each node
+ * holds the bounding box of its children, so a point query visits only the branches whose boxes
+ * contain the point, and a nearest boundary query prunes the branches whose boxes are farther than
+ * the best distance found so far.
+ */
+final class GeofenceIndex {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new GeofenceIndex over the given zones.
+     *
+     * @param zones The zones.
+     */
+    GeofenceIndex(Collection<GeofenceZone> zones) {
+        List<Node> level = new ArrayList<>(zones.size());
+        for(GeofenceZone zone : zones)
+            level.add(new Node(zone));
+        while(level.size() > 1)
+            level = pack(level);
+        this.root = level.isEmpty() ? null : level.get(0);
+        this.size = zones.size();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method finds the zones that contain a point.
+     *
+     * @param latitude The latitude of the point in degrees.
+     * @param longitude The longitude of the point in degrees.
+     * @param result The list where the zones are added.
+     */
+    void findContaining(double latitude, double longitude, List<GeofenceZone> result) {
+        if(root != null)
+            findContaining(root, latitude, longitude, result);
+    }
+
+    /**
+     * This method computes the distance from a point to the nearest zone boundary.
+     *
+     * @param latitude The latitude of the point in degrees.
+     * @param longitude The longitude of the point in degrees.
+     * @return The distance in meters, or infinity if there are no zones.
+     */
+    double distanceToNearestBoundary(double latitude, double longitude) {
+        if(root == null)
+            return Double.POSITIVE_INFINITY;
+        return nearestBoundary(root, latitude, longitude, GeofenceZone.metersPerDegreeLongitude(latitude), Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * This method obtains the number of zones in this index.
+     *
+     * @return The number of zones.
+     */
+    int size() {
+        return size;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method groups the nodes of a tree level into the parent nodes of the next level. The
+     * nodes are sorted by longitude and cut into vertical slices, and each slice is sorted by
+     * latitude and cut into nodes of at most NODE_CAPACITY children.
+     *
+     * @param level The nodes of the level.
+     * @return The parent nodes.
+     */
+    private static List<Node> pack(List<Node> level) {
+        Node[] nodes = level.toArray(new Node[0]);
+        int parents = (nodes.length + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slices = (int) Math.ceil(Math.sqrt(parents));
+        int sliceSize = slices * NODE_CAPACITY;
+        Arrays.sort(nodes, BY_LONGITUDE);
+        List<Node> result = new ArrayList<>(parents);
+        for(int start = 0; start < nodes.length; start += sliceSize) {
+            int end = Math.min(nodes.length, start + sliceSize);
+            Arrays.sort(nodes, start, end, BY_LATITUDE);
+            for(int i = start; i < end; i += NODE_CAPACITY)
+                result.add(new Node(Arrays.copyOfRange(nodes, i, Math.min(end, i + NODE_CAPACITY))));
+        }
+        return result;
+    }
+
+    /**
+     * This method finds the zones of a subtree that contain a point.
+     *
+     * @param node The root of the subtree.
+     * @param latitude The latitude of the point in degrees.
+     * @param longitude The longitude of the point in degrees.
+     * @param result The list where the zones are added.
+     */
+    private static void findContaining(Node node, double latitude, double longitude, List<GeofenceZone> result) {
+        if(latitude < node.minLatitude || latitude > node.maxLatitude || longitude < node.minLongitude || longitude > node.maxLongitude)
+            return;
+        if(node.zone != null) {
+            if(node.zone.contains(latitude, longitude))
+                result.add(node.zone);
+            return;
+        }
+        for(Node child : node.children)
+            findContaining(child, latitude, longitude, result);
+    }
+
+    /**
+     * This method computes the distance from a point to the nearest zone boundary of a subtree,
+     * skipping the branches that cannot be closer than the given bound.
+     *
+     * @param node The root of the subtree.
+     * @param latitude The latitude of the point in degrees.
+     * @param longitude The longitude of the point in degrees.
+     * @param metersPerLon The length of one degree of longitude at the point, in meters.
+     * @param best The smallest distance found so far, in meters.
+     * @return The smallest distance, in meters.
+     */
+    private static double nearestBoundary(Node node, double latitude, double longitude, double metersPerLon, double best) {
+        if(node.zone != null)
+            return Math.min(best, node.zone.distanceToBoundary(latitude, longitude));
+        // Children are visited from the nearest box, so that far branches are usually pruned
+        Node[] children = node.children;
+        double[] distances = new double[children.length];
+        int[] order = new int[children.length];
+        for(int i = 0; i < children.length; i++) {
+            double d = children[i].boxDistance(latitude, longitude, metersPerLon);
+            int j = i;
+            while(j > 0 && distances[j - 1] > d) {
+                distances[j] = distances[j - 1];
+                order[j] = order[j - 1];
+                j--;
+            }
+            distances[j] = d;
+            order[j] = i;
+        }
+        for(int i = 0; i < children.length && distances[i] < best; i++)
+            best = nearestBoundary(children[order[i]], latitude, longitude, metersPerLon, best);
+        return best;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The maximum number of children of a node.
+     */
+    private static final int NODE_CAPACITY = 16;
+
+    /**
+     * Orders nodes by the longitude of the center of their boxes.
+     */
+    private static final Comparator<Node> BY_LONGITUDE = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) {
+            return Double.compare(a.minLongitude + a.maxLongitude, b.minLongitude + b.maxLongitude);
+        }
+    };
+
+    /**
+     * Orders nodes by the latitude of the center of their boxes.
+     */
+    private static final Comparator<Node> BY_LATITUDE = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) {
+            return Double.compare(a.minLatitude + a.maxLatitude, b.minLatitude + b.maxLatitude);
+        }
+    };
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The root of the tree, or null if there are no zones.
+     */
+    private final Node root;
+
+    /**
+     * The number of zones.
+     */
+    private final int size;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A node of the tree: either a leaf with a zone or an inner node with children.
+     */
+    private static final class Node {
+
+        /**
+         * This constructor builds a new leaf node.
+         *
+         * @param zone The zone.
+         */
+        Node(GeofenceZone zone) {
+            this.zone = zone;
+            this.children = null;
+            this.minLatitude = zone.getMinLatitude();
+            this.maxLatitude = zone.getMaxLatitude();
+            this.minLongitude = zone.getMinLongitude();
+            this.maxLongitude = zone.getMaxLongitude();
+        }
+
+        /**
+         * This constructor builds a new inner node.
+         *
+         * @param children The children.
+         */
+        Node(Node[] children) {
+            this.zone = null;
+            this.children = children;
+            double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+            double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+            for(Node child : children) {
+                minLat = Math.min(minLat, child.minLatitude);
+                maxLat = Math.max(maxLat, child.maxLatitude);
+                minLon = Math.min(minLon, child.minLongitude);
+                maxLon = Math.max(maxLon, child.maxLongitude);
+            }
+            this.minLatitude = minLat;
+            this.maxLatitude = maxLat;
+            this.minLongitude = minLon;
+            this.maxLongitude = maxLon;
+        }
+
+        /**
+         * This method computes the distance from a point to the box of this node, which is a lower
+         * bound of the distance to any boundary inside the box.
+         *
+         * @param latitude The latitude of the point in degrees.
+         * @param longitude The longitude of the point in degrees.
+         * @param metersPerLon The length of one degree of longitude at the point, in meters.
+         * @return The distance in meters, or zero if the point is inside the box.
+         */
+        double boxDistance(double latitude, double longitude, double metersPerLon) {
+            double dy = Math.max(0, Math.max(minLatitude - latitude, latitude - maxLatitude)) * GeofenceZone.METERS_PER_DEGREE;
+            double dx = Math.max(0, Math.max(minLongitude - longitude, longitude - maxLongitude)) * metersPerLon;
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+        /**
+         * The zone of a leaf node, or null.
+         */
+        final GeofenceZone zone;
+
+        /**
+         * The children of an inner node, or null.
+         */
+        final Node[] children;
+
+        /**
+         * The southern limit of the box.
+         */
+        final double minLatitude;
+
+        /**
+         * The northern limit of the box.
+         */
+        final double maxLatitude;
+
+        /**
+         * The western limit of the box.
+         */
+        final double minLongitude;
+
+        /**
+         * The eastern limit of the box.
+         */
+        final double maxLongitude;
+    }
+}
@@ -0,0 +1,20 @@
+package br.edu.leonardo.jaf.android;
+
+import android.location.Location;
+
+/**
+ * A listener that receives the transitions of a {@link GeofenceMonitor}.
+ */
+public interface GeofenceListener {
+
+    /**
+     * This method is called when the monitored device enters, leaves or dwells in a zone.
+     *
+     * @param monitor The monitor that detected the transition.
+     * @param zone The zone.
+     * @param transition The transition: GeofenceMonitor.TRANSITION_ENTER,
+     *                   GeofenceMonitor.TRANSITION_EXIT or GeofenceMonitor.TRANSITION_DWELL.
+     * @param location The location fix that caused the transition.
+     */
+    void onGeofenceTransition(GeofenceMonitor monitor, GeofenceZone zone, int transition, Location location);
+}
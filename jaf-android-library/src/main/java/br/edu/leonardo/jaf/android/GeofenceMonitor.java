@@ -0,0 +1,477 @@
+package br.edu.leonardo.jaf.android;
+
+import android.location.Location;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.measure.Quantity;
+
+import br.edu.leonardo.jaf.sensors.SensorException;
+import tec.units.ri.quantity.Quantities;
+import tec.units.ri.unit.MetricPrefix;
+import tec.units.ri.unit.Units;
+
+/**
+ * A geofence stage over the fixes of an AndroidLocationSensor. The monitored zones are held in an
+ * R-tree, so the cost of each fix grows logarithmically with the number of zones, and only the
+ * transitions (entering a zone, leaving it or dwelling in it) are delivered to the listeners. The
+ * dwell transition is delivered by a timer when the dwell time passes, even if no fix arrives.
+ *
+ * When the adaptive rate is enabled, the monitor also adapts the location request to the distance
+ * to the nearest zone boundary: far from every boundary, the device cannot cross one before a
+ * longer interval at the assumed maximum speed, so the minimum time and distance between updates
+ * are doubled for each doubling of that interval, up to 64 times the original values. A request
+ * made as fast as possible (a minimum time of zero) is slowed down from a minimum time of one
+ * second. Approaching a boundary restores the original request immediately.
+ */
+public class GeofenceMonitor {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new GeofenceMonitor.
+     *
+     * @param sensor The location sensor.
+     * @param zones The monitored zones.
+     * @param dwellTime The time in milliseconds the device must stay in a zone to dwell in it.
+     */
+    public GeofenceMonitor(AndroidLocationSensor sensor, Collection<GeofenceZone> zones, long dwellTime) {
+        this.sensor = sensor;
+        this.index = new GeofenceIndex(zones);
+        this.dwellNanos = dwellTime * 1000000L;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method starts monitoring the zones, registering the location sensor.
+     *
+     * @throws SensorException If the location sensor could not be registered.
+     */
+    public synchronized void start() throws SensorException {
+        if(started)
+            return;
+        baseMinTime = sensor.getMinTime().to(MetricPrefix.MILLI(Units.SECOND)).getValue().longValue();
+        baseMinDistance = sensor.getMinDistance().to(Units.METRE).getValue().doubleValue();
+        level = 0;
+        sensor.addLocationFixListener(fixListener);
+        try {
+            sensor.init();
+        } catch(SensorException e) {
+            sensor.removeLocationFixListener(fixListener);
+            throw e;
+        }
+        started = true;
+    }
+
+    /**
+     * This method stops monitoring the zones, unregistering the location sensor and restoring its
+     * original location request.
+     */
+    public synchronized void stop() {
+        if(!started)
+            return;
+        started = false;
+        sensor.unregister();
+        sensor.removeLocationFixListener(fixListener);
+        if(handler != null)
+            handler.removeCallbacks(dwellCheck);
+        try {
+            applyLevel(0);
+        } catch(SensorException e) {
+            // The sensor is not registered, so the original request is only stored
+        }
+        inside.clear();
+        dwelled.clear();
+        lastFix = null;
+    }
+
+    /**
+     * This method registers a listener that receives the transitions of this monitor.
+     *
+     * @param listener The listener to be registered.
+     */
+    public void addGeofenceListener(GeofenceListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * This method unregisters a listener previously registered in this monitor.
+     *
+     * @param listener The listener to be removed.
+     */
+    public void removeGeofenceListener(GeofenceListener listener) {
+        listeners.remove(listener);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method enables the adaptation of the location request to the distance to the nearest
+     * zone boundary. The original minimum distance of the sensor should not exceed the distance
+     * covered at the maximum speed during its original minimum time.
+     *
+     * @param maxSpeed The maximum speed assumed for the device, in meters per second.
+     */
+    public synchronized void enableAdaptiveRate(double maxSpeed) {
+        if(maxSpeed <= 0)
+            throw new IllegalArgumentException("The maximum speed must be positive.");
+        this.maxSpeed = maxSpeed;
+    }
+
+    /**
+     * This method disables the adaptation of the location request, restoring the original one.
+     *
+     * @throws SensorException If the location updates could not be requested again.
+     */
+    public synchronized void disableAdaptiveRate() throws SensorException {
+        maxSpeed = 0;
+        if(started && level != 0)
+            applyLevel(0);
+    }
+
+    /**
+     * This method obtains the zones that contain the last location fix.
+     *
+     * @return A new list with the zones.
+     */
+    public synchronized List<GeofenceZone> getInsideZones() {
+        return new ArrayList<>(inside.keySet());
+    }
+
+    /**
+     * This method obtains the distance from the last location fix to the nearest zone boundary.
+     *
+     * @return The distance in meters, or NaN if no fix was received.
+     */
+    public synchronized double getDistanceToNearestBoundary() {
+        return lastDistance;
+    }
+
+    /**
+     * This method obtains the current slowdown of the location request.
+     *
+     * @return The slowdown level: the minimum time (not less than one second) and distance are
+     *         multiplied by 2 to the power of the level.
+     */
+    public synchronized int getRateLevel() {
+        return level;
+    }
+
+    /**
+     * This method obtains the number of monitored zones.
+     *
+     * @return The number of zones.
+     */
+    public int getZoneCount() {
+        return index.size();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method processes a location fix, delivering the transitions it causes and adapting the
+     * location request.
+     *
+     * @param loc The location fix.
+     */
+    private synchronized void onFix(Location loc) {
+        if(!started)
+            return;
+        long timestamp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? loc.getElapsedRealtimeNanos() : loc.getTime() * 1000000L;
+        double lat = loc.getLatitude();
+        double lon = loc.getLongitude();
+        lastFix = loc;
+        current.clear();
+        index.findContaining(lat, lon, current);
+        Iterator<Map.Entry<GeofenceZone, Long>> it = inside.entrySet().iterator();
+        while(it.hasNext()) {
+            GeofenceZone zone = it.next().getKey();
+            if(!current.contains(zone)) {
+                it.remove();
+                dwelled.remove(zone);
+                fire(zone, TRANSITION_EXIT, loc);
+            }
+        }
+        checkDwell(timestamp);
+        for(GeofenceZone zone : current) {
+            if(!inside.containsKey(zone)) {
+                inside.put(zone, timestamp);
+                fire(zone, TRANSITION_ENTER, loc);
+                scheduleDwellCheck();
+            }
+        }
+        lastDistance = index.distanceToNearestBoundary(lat, lon);
+        if(maxSpeed > 0)
+            adaptRate(lastDistance);
+    }
+
+    /**
+     * This method delivers the dwell transitions of the zones in which the device has stayed for
+     * the dwell time. The last fix is given to the listeners as the location of the transition.
+     *
+     * @param timestamp The current time in nanoseconds, in the time base of the fixes.
+     */
+    private void checkDwell(long timestamp) {
+        for(Map.Entry<GeofenceZone, Long> entry : inside.entrySet()) {
+            GeofenceZone zone = entry.getKey();
+            if(timestamp - entry.getValue() >= dwellNanos && dwelled.add(zone))
+                fire(zone, TRANSITION_DWELL, lastFix);
+        }
+    }
+
+    /**
+     * This method schedules a dwell check for the dwell time after a zone is entered, in the thread
+     * that receives the fixes, so that the dwell transition is delivered even if no other fix
+     * arrives meanwhile.
+     */
+    private void scheduleDwellCheck() {
+        if(handler == null) {
+            Looper looper = Looper.myLooper();
+            handler = new Handler(looper != null ? looper : Looper.getMainLooper());
+        }
+        handler.postDelayed(dwellCheck, dwellNanos / 1000000L);
+    }
+
+    /**
+     * This method obtains the current time in the time base of the fixes.
+     *
+     * @return The time in nanoseconds.
+     */
+    private static long now() {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1)
+            return SystemClock.elapsedRealtimeNanos();
+        return System.currentTimeMillis() * 1000000L;
+    }
+
+    /**
+     * This method delivers a transition to the listeners.
+     *
+     * @param zone The zone.
+     * @param transition The transition.
+     * @param loc The location fix that caused the transition.
+     */
+    private void fire(GeofenceZone zone, int transition, Location loc) {
+        for(GeofenceListener l : listeners)
+            l.onGeofenceTransition(this, zone, transition, loc);
+    }
+
+    /**
+     * This method chooses the slowdown level for a distance to the nearest boundary. The level is
+     * lowered as soon as the interval to reach the boundary gets shorter than the current minimum
+     * time, but it is only raised with a margin of two, to avoid requesting updates again while the
+     * distance oscillates around a threshold.
+     *
+     * @param distance The distance to the nearest boundary in meters.
+     */
+    private void adaptRate(double distance) {
+        double reachable = distance / maxSpeed * 1000.0 / adaptiveMinTime();
+        int newLevel = levelFor(reachable);
+        if(newLevel > level)
+            newLevel = Math.max(level, levelFor(reachable / 2));
+        if(newLevel == level)
+            return;
+        try {
+            applyLevel(newLevel);
+        } catch(SensorException e) {
+            // The previous request is kept
+        }
+    }
+
+    /**
+     * This method computes the largest level whose minimum time does not exceed the interval to
+     * reach the nearest boundary.
+     *
+     * @param reachable The interval to reach the nearest boundary, in units of the adaptive minimum
+     *                  time.
+     * @return The level.
+     */
+    private static int levelFor(double reachable) {
+        if(!(reachable >= 2))
+            return 0;
+        if(Double.isInfinite(reachable))
+            return MAX_LEVEL;
+        return Math.min(MAX_LEVEL, 63 - Long.numberOfLeadingZeros((long) reachable));
+    }
+
+    /**
+     * This method requests location updates with the minimum time and distance of a slowdown
+     * level.
+     *
+     * @param newLevel The slowdown level.
+     * @throws SensorException If the location updates could not be requested again.
+     */
+    private void applyLevel(int newLevel) throws SensorException {
+        long time = newLevel == 0 ? baseMinTime : adaptiveMinTime() << newLevel;
+        Quantity minTime = Quantities.getQuantity(time, MetricPrefix.MILLI(Units.SECOND));
+        Quantity minDistance = Quantities.getQuantity(baseMinDistance * (1 << newLevel), Units.METRE);
+        sensor.setUpdateCriteria(minTime, minDistance);
+        level = newLevel;
+    }
+
+    /**
+     * This method obtains the minimum time that is multiplied by the slowdown levels.
+     *
+     * @return The original minimum time in milliseconds, but not less than MIN_ADAPTIVE_TIME.
+     */
+    private long adaptiveMinTime() {
+        return Math.max(baseMinTime, MIN_ADAPTIVE_TIME);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The transition of entering a zone.
+     */
+    public static final int TRANSITION_ENTER = 1;
+
+    /**
+     * The transition of leaving a zone.
+     */
+    public static final int TRANSITION_EXIT = 2;
+
+    /**
+     * The transition of staying in a zone for the dwell time.
+     */
+    public static final int TRANSITION_DWELL = 4;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The maximum slowdown level.
+     */
+    private static final int MAX_LEVEL = 6;
+
+    /**
+     * The minimum time in milliseconds from which the location request is slowed down when it was
+     * requested as fast as possible.
+     */
+    private static final long MIN_ADAPTIVE_TIME = 1000L;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The location sensor.
+     */
+    private final AndroidLocationSensor sensor;
+
+    /**
+     * The index of the monitored zones.
+     */
+    private final GeofenceIndex index;
+
+    /**
+     * The time in nanoseconds the device must stay in a zone to dwell in it.
+     */
+    private final long dwellNanos;
+
+    /**
+     * The listeners that receive the transitions.
+     */
+    private final CopyOnWriteArrayList<GeofenceListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The zones that contain the device, mapped to the timestamps at which they were entered.
+     */
+    private final Map<GeofenceZone, Long> inside = new HashMap<>();
+
+    /**
+     * The zones in which the device already dwelled.
+     */
+    private final Set<GeofenceZone> dwelled = new HashSet<>();
+
+    /**
+     * The zones that contain the current fix.
+     */
+    private final List<GeofenceZone> current = new ArrayList<>();
+
+    /**
+     * Indicates whether the monitor is started.
+     */
+    private boolean started;
+
+    /**
+     * The maximum speed in meters per second assumed by the adaptive rate, or zero if it is
+     * disabled.
+     */
+    private double maxSpeed;
+
+    /**
+     * The original minimum time between location updates, in milliseconds.
+     */
+    private long baseMinTime;
+
+    /**
+     * The original minimum distance between location updates, in meters.
+     */
+    private double baseMinDistance;
+
+    /**
+     * The current slowdown level.
+     */
+    private int level;
+
+    /**
+     * The distance from the last fix to the nearest boundary, in meters.
+     */
+    private double lastDistance = Double.NaN;
+
+    /**
+     * The last location fix, or null if no fix was received since the monitor was started.
+     */
+    private Location lastFix;
+
+    /**
+     * The handler of the thread that receives the fixes, used to schedule the dwell checks.
+     */
+    private Handler handler;
+
+    /**
+     * The task posted to the thread that receives the fixes to deliver the dwell transitions.
+     */
+    private final Runnable dwellCheck = new Runnable() {
+        @Override
+        public void run() {
+            synchronized(GeofenceMonitor.this) {
+                if(started)
+                    checkDwell(now());
+            }
+        }
+    };
+
+    /**
+     * The listener registered in the location sensor.
+     */
+    private final LocationFixListener fixListener = new LocationFixListener() {
+        @Override
+        public void onLocationFix(AndroidLocationSensor s, Location location) {
+            onFix(location);
+        }
+    };
+}
@@ -0,0 +1,207 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * A polygonal geographic zone monitored by a {@link GeofenceMonitor}. Distances are computed in a
+ * local equirectangular projection around the queried point, which is accurate for zones up to a
+ * few tens of kilometers; zones must not cross the antimeridian.
+ */
+public final class GeofenceZone {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new GeofenceZone from the vertices of a polygon. The polygon is
+     * implicitly closed, so the last vertex must not repeat the first one.
+     *
+     * @param id The zone identifier.
+     * @param latitudes The latitudes of the vertices in degrees.
+     * @param longitudes The longitudes of the vertices in degrees.
+     */
+    public GeofenceZone(String id, double[] latitudes, double[] longitudes) {
+        if(latitudes.length != longitudes.length || latitudes.length < 3)
+            throw new IllegalArgumentException("A zone must have at least three vertices.");
+        this.id = id;
+        this.latitudes = latitudes.clone();
+        this.longitudes = longitudes.clone();
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < latitudes.length; i++) {
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLon = Math.min(minLon, longitudes[i]);
+            maxLon = Math.max(maxLon, longitudes[i]);
+        }
+        this.minLatitude = minLat;
+        this.maxLatitude = maxLat;
+        this.minLongitude = minLon;
+        this.maxLongitude = maxLon;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method checks whether a point is inside this zone, using the even-odd rule.
+     *
+     * @param latitude The latitude of the point in degrees.
+     * @param longitude The longitude of the point in degrees.
+     * @return true, if the point is inside the zone; false, otherwise.
+     */
+    public boolean contains(double latitude, double longitude) {
+        if(latitude < minLatitude || latitude > maxLatitude || longitude < minLongitude || longitude > maxLongitude)
+            return false;
+        boolean inside = false;
+        for(int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+            if((latitudes[i] > latitude) != (latitudes[j] > latitude)
+                    && longitude < (longitudes[j] - longitudes[i]) * (latitude - latitudes[i]) / (latitudes[j] - latitudes[i]) + longitudes[i])
+                inside = !inside;
+        }
+        return inside;
+    }
+
+    /**
+     * This method computes the distance from a point to the boundary of this zone.
+     *
+     * @param latitude The latitude of the point in degrees.
+     * @param longitude The longitude of the point in degrees.
+     * @return The distance in meters.
+     */
+    public double distanceToBoundary(double latitude, double longitude) {
+        double metersPerLon = metersPerDegreeLongitude(latitude);
+        double best = Double.POSITIVE_INFINITY;
+        for(int i = 0, j = latitudes.length - 1; i < latitudes.length; j = i++) {
+            double ax = (longitudes[j] - longitude) * metersPerLon;
+            double ay = (latitudes[j] - latitude) * METERS_PER_DEGREE;
+            double bx = (longitudes[i] - longitude) * metersPerLon;
+            double by = (latitudes[i] - latitude) * METERS_PER_DEGREE;
+            double dx = bx - ax;
+            double dy = by - ay;
+            double length2 = dx * dx + dy * dy;
+            double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / length2));
+            double px = ax + t * dx;
+            double py = ay + t * dy;
+            best = Math.min(best, px * px + py * py);
+        }
+        return Math.sqrt(best);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the identifier of this zone.
+     *
+     * @return The zone identifier.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * This method obtains the southern limit of the bounding box of this zone.
+     *
+     * @return The minimum latitude in degrees.
+     */
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+
+    /**
+     * This method obtains the northern limit of the bounding box of this zone.
+     *
+     * @return The maximum latitude in degrees.
+     */
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+
+    /**
+     * This method obtains the western limit of the bounding box of this zone.
+     *
+     * @return The minimum longitude in degrees.
+     */
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+
+    /**
+     * This method obtains the eastern limit of the bounding box of this zone.
+     *
+     * @return The maximum longitude in degrees.
+     */
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method computes the length in meters of one degree of longitude at a latitude, in the
+     * projection used by the distance computations.
+     *
+     * @param latitude The latitude in degrees.
+     * @return The length of one degree of longitude in meters.
+     */
+    static double metersPerDegreeLongitude(double latitude) {
+        return METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The length in meters of one degree of latitude (mean Earth radius of 6371 km).
+     */
+    static final double METERS_PER_DEGREE = 6371000.0 * Math.PI / 180.0;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The zone identifier.
+     */
+    private final String id;
+
+    /**
+     * The latitudes of the vertices in degrees.
+     */
+    private final double[] latitudes;
+
+    /**
+     * The longitudes of the vertices in degrees.
+     */
+    private final double[] longitudes;
+
+    /**
+     * The southern limit of the bounding box.
+     */
+    private final double minLatitude;
+
+    /**
+     * The northern limit of the bounding box.
+     */
+    private final double maxLatitude;
+
+    /**
+     * The western limit of the bounding box.
+     */
+    private final double minLongitude;
+
+    /**
+     * The eastern limit of the bounding box.
+     */
+    private final double maxLongitude;
+}
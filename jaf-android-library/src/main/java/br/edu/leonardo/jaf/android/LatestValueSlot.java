@@ -0,0 +1,243 @@
+package br.edu.leonardo.jaf.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The latest values of a sensor, for agents that poll the current value at their own pace instead
+ * of handling every event. The slot is guarded by a sequence lock: the sensor increments the
+ * sequence to an odd number, stores the values and increments it again, and readers copy the
+ * values and retry if the sequence was odd or changed meanwhile. Readers therefore never block
+ * the sensor nor each other, and never see the values of two different events mixed. The values
+ * are kept as doubles, so location coordinates keep their full precision.
+ */
+public final class LatestValueSlot {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new empty LatestValueSlot.
+     *
+     * @param capacity The maximum number of values of an event.
+     */
+    LatestValueSlot(int capacity) {
+        this.data = new AtomicLongArray(OFFSET_VALUES + capacity);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method copies the latest values into a reading. Values beyond the reading capacity are
+     * discarded.
+     *
+     * @param reading The reading that receives the values, timestamp and accuracy.
+     * @return true, if the reading was filled; false, if the sensor reported no event yet.
+     */
+    public boolean read(SensorReading reading) {
+        float[] values = reading.getValues();
+        for(;;) {
+            long seq = sequence.get();
+            if((seq & 1L) != 0L)
+                continue;
+            if(seq == 0L)
+                return false;
+            long timestamp = data.get(OFFSET_TIMESTAMP);
+            int accuracy = (int) data.get(OFFSET_ACCURACY);
+            int size = Math.min((int) data.get(OFFSET_SIZE), values.length);
+            for(int i = 0; i < size; i++)
+                values[i] = (float) Double.longBitsToDouble(data.get(OFFSET_VALUES + i));
+            if(sequence.get() == seq) {
+                reading.set(timestamp, accuracy, values, size);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * This method copies the latest values into an array. Values beyond the array length are
+     * discarded.
+     *
+     * @param dest The array that receives the values.
+     * @return The time in nanoseconds at which the values were reported; or NO_VALUE, if the
+     *         sensor reported no event yet.
+     */
+    public long read(double[] dest) {
+        for(;;) {
+            long seq = sequence.get();
+            if((seq & 1L) != 0L)
+                continue;
+            if(seq == 0L)
+                return NO_VALUE;
+            long timestamp = data.get(OFFSET_TIMESTAMP);
+            int size = Math.min((int) data.get(OFFSET_SIZE), dest.length);
+            for(int i = 0; i < size; i++)
+                dest[i] = Double.longBitsToDouble(data.get(OFFSET_VALUES + i));
+            if(sequence.get() == seq)
+                return timestamp;
+        }
+    }
+
+    /**
+     * This method obtains the latest value of a channel.
+     *
+     * @param channel The channel index.
+     * @return The value; or NaN, if the sensor reported no event yet or the event had no such
+     *         channel (including negative indexes).
+     */
+    public double getValue(int channel) {
+        for(;;) {
+            long seq = sequence.get();
+            if((seq & 1L) != 0L)
+                continue;
+            double value = channel >= 0 && channel < data.get(OFFSET_SIZE) ? Double.longBitsToDouble(data.get(OFFSET_VALUES + channel)) : Double.NaN;
+            if(sequence.get() == seq)
+                return value;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method stores the values of an event. Values beyond the slot capacity are discarded.
+     *
+     * @param timestamp The time in nanoseconds at which the event happened.
+     * @param accuracy The accuracy of the event.
+     * @param values The values of the event.
+     * @param count The number of values.
+     */
+    synchronized void write(long timestamp, int accuracy, float[] values, int count) {
+        int size = Math.min(count, data.length() - OFFSET_VALUES);
+        sequence.incrementAndGet();
+        for(int i = 0; i < size; i++)
+            data.set(OFFSET_VALUES + i, Double.doubleToRawLongBits(values[i]));
+        writeHeader(timestamp, accuracy, size);
+        sequence.incrementAndGet();
+    }
+
+    /**
+     * This method stores the values of an event. Values beyond the slot capacity are discarded.
+     *
+     * @param timestamp The time in nanoseconds at which the event happened.
+     * @param accuracy The accuracy of the event.
+     * @param values The values of the event.
+     * @param count The number of values.
+     */
+    synchronized void write(long timestamp, int accuracy, double[] values, int count) {
+        int size = Math.min(count, data.length() - OFFSET_VALUES);
+        sequence.incrementAndGet();
+        for(int i = 0; i < size; i++)
+            data.set(OFFSET_VALUES + i, Double.doubleToRawLongBits(values[i]));
+        writeHeader(timestamp, accuracy, size);
+        sequence.incrementAndGet();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the time at which the latest values were reported.
+     *
+     * @return The time in nanoseconds; or NO_VALUE, if the sensor reported no event yet.
+     */
+    public long getTimestamp() {
+        for(;;) {
+            long seq = sequence.get();
+            if((seq & 1L) != 0L)
+                continue;
+            long timestamp = seq == 0L ? NO_VALUE : data.get(OFFSET_TIMESTAMP);
+            if(sequence.get() == seq)
+                return timestamp;
+        }
+    }
+
+    /**
+     * This method obtains the number of events stored in this slot. Pollers can compare it with a
+     * previous count to know whether the values changed since their last read.
+     *
+     * @return The number of events.
+     */
+    public long getUpdateCount() {
+        return sequence.get() >>> 1;
+    }
+
+    /**
+     * This method obtains the maximum number of values of an event.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return data.length() - OFFSET_VALUES;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method stores the timestamp, accuracy and number of values of an event.
+     *
+     * @param timestamp The time in nanoseconds at which the event happened.
+     * @param accuracy The accuracy of the event.
+     * @param size The number of values.
+     */
+    private void writeHeader(long timestamp, int accuracy, int size) {
+        data.set(OFFSET_TIMESTAMP, timestamp);
+        data.set(OFFSET_ACCURACY, accuracy);
+        data.set(OFFSET_SIZE, size);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The timestamp returned when the sensor reported no event yet.
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The index of the timestamp in the slot data.
+     */
+    private static final int OFFSET_TIMESTAMP = 0;
+
+    /**
+     * The index of the accuracy in the slot data.
+     */
+    private static final int OFFSET_ACCURACY = 1;
+
+    /**
+     * The index of the number of values in the slot data.
+     */
+    private static final int OFFSET_SIZE = 2;
+
+    /**
+     * The index of the first value in the slot data.
+     */
+    private static final int OFFSET_VALUES = 3;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The sequence of the slot: odd while an event is being stored, and twice the number of
+     * stored events otherwise.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The timestamp, accuracy, number of values and bits of the values of the latest event.
+     */
+    private final AtomicLongArray data;
+}
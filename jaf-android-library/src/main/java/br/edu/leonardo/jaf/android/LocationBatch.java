@@ -0,0 +1,298 @@
+package br.edu.leonardo.jaf.android;
+
+import android.location.Location;
+import android.os.Build;
+
+/**
+ * A columnar block of location fixes. The timestamps and each attribute of the fixes are stored in
+ * separate preallocated arrays, so a batch can be filled and delivered repeatedly without
+ * allocating memory. Attributes that a fix does not have (altitude, accuracy, speed or bearing)
+ * are stored as NaN.
+ */
+public final class LocationBatch {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new empty batch.
+     *
+     * @param capacity The maximum number of fixes in the batch.
+     */
+    public LocationBatch(int capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("The batch capacity must be positive.");
+        this.timestamps = new long[capacity];
+        this.times = new long[capacity];
+        this.latitudes = new double[capacity];
+        this.longitudes = new double[capacity];
+        this.altitudes = new double[capacity];
+        this.accuracies = new float[capacity];
+        this.speeds = new float[capacity];
+        this.bearings = new float[capacity];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method appends a location fix to the end of this batch.
+     *
+     * @param location The location fix.
+     * @return true, if the fix was appended; false, if the batch is full.
+     */
+    public boolean add(Location location) {
+        if(size == timestamps.length)
+            return false;
+        timestamps[size] = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? location.getElapsedRealtimeNanos() : location.getTime() * 1000000L;
+        times[size] = location.getTime();
+        latitudes[size] = location.getLatitude();
+        longitudes[size] = location.getLongitude();
+        altitudes[size] = location.hasAltitude() ? location.getAltitude() : Double.NaN;
+        accuracies[size] = location.hasAccuracy() ? location.getAccuracy() : Float.NaN;
+        speeds[size] = location.hasSpeed() ? location.getSpeed() : Float.NaN;
+        bearings[size] = location.hasBearing() ? location.getBearing() : Float.NaN;
+        size++;
+        return true;
+    }
+
+    /**
+     * This method removes all fixes from this batch.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * This method checks whether this batch has no room for more fixes.
+     *
+     * @return true, if the batch is full; false, otherwise.
+     */
+    public boolean isFull() {
+        return size == timestamps.length;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of fixes in this batch.
+     *
+     * @return The number of fixes.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * This method obtains the maximum number of fixes in this batch.
+     *
+     * @return The batch capacity.
+     */
+    public int getCapacity() {
+        return timestamps.length;
+    }
+
+    /**
+     * This method obtains the timestamp of a fix in this batch, in the elapsed realtime clock
+     * (or in the wall clock, before Android 4.2).
+     *
+     * @param index The fix index.
+     * @return The time in nanoseconds at which the fix happened.
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * This method obtains the UTC time of a fix in this batch.
+     *
+     * @param index The fix index.
+     * @return The time in milliseconds since January 1, 1970.
+     */
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * This method obtains the latitude of a fix in this batch.
+     *
+     * @param index The fix index.
+     * @return The latitude in degrees.
+     */
+    public double getLatitude(int index) {
+        return latitudes[index];
+    }
+
+    /**
+     * This method obtains the longitude of a fix in this batch.
+     *
+     * @param index The fix index.
+     * @return The longitude in degrees.
+     */
+    public double getLongitude(int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * This method obtains the altitude of a fix in this batch.
+     *
+     * @param index The fix index.
+     * @return The altitude in meters above the WGS84 ellipsoid, or NaN if the fix has no altitude.
+     */
+    public double getAltitude(int index) {
+        return altitudes[index];
+    }
+
+    /**
+     * This method obtains the horizontal accuracy of a fix in this batch.
+     *
+     * @param index The fix index.
+     * @return The accuracy radius in meters, or NaN if the fix has no accuracy.
+     */
+    public float getAccuracy(int index) {
+        return accuracies[index];
+    }
+
+    /**
+     * This method obtains the speed of a fix in this batch.
+     *
+     * @param index The fix index.
+     * @return The speed in meters per second, or NaN if the fix has no speed.
+     */
+    public float getSpeed(int index) {
+        return speeds[index];
+    }
+
+    /**
+     * This method obtains the bearing of a fix in this batch.
+     *
+     * @param index The fix index.
+     * @return The bearing in degrees, or NaN if the fix has no bearing.
+     */
+    public float getBearing(int index) {
+        return bearings[index];
+    }
+
+    /**
+     * This method obtains the array that backs the timestamps of this batch. Only the first
+     * {@link #getSize()} positions are valid.
+     *
+     * @return The timestamps array.
+     */
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    /**
+     * This method obtains the array that backs the latitudes of this batch. Only the first
+     * {@link #getSize()} positions are valid.
+     *
+     * @return The latitudes array.
+     */
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+
+    /**
+     * This method obtains the array that backs the longitudes of this batch. Only the first
+     * {@link #getSize()} positions are valid.
+     *
+     * @return The longitudes array.
+     */
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+
+    /**
+     * This method obtains the array that backs the altitudes of this batch. Only the first
+     * {@link #getSize()} positions are valid.
+     *
+     * @return The altitudes array.
+     */
+    public double[] getAltitudes() {
+        return altitudes;
+    }
+
+    /**
+     * This method obtains the array that backs the accuracies of this batch. Only the first
+     * {@link #getSize()} positions are valid.
+     *
+     * @return The accuracies array.
+     */
+    public float[] getAccuracies() {
+        return accuracies;
+    }
+
+    /**
+     * This method obtains the array that backs the speeds of this batch. Only the first
+     * {@link #getSize()} positions are valid.
+     *
+     * @return The speeds array.
+     */
+    public float[] getSpeeds() {
+        return speeds;
+    }
+
+    /**
+     * This method obtains the array that backs the bearings of this batch. Only the first
+     * {@link #getSize()} positions are valid.
+     *
+     * @return The bearings array.
+     */
+    public float[] getBearings() {
+        return bearings;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The timestamps of the fixes in nanoseconds.
+     */
+    private final long[] timestamps;
+
+    /**
+     * The UTC times of the fixes in milliseconds.
+     */
+    private final long[] times;
+
+    /**
+     * The latitudes of the fixes in degrees.
+     */
+    private final double[] latitudes;
+
+    /**
+     * The longitudes of the fixes in degrees.
+     */
+    private final double[] longitudes;
+
+    /**
+     * The altitudes of the fixes in meters.
+     */
+    private final double[] altitudes;
+
+    /**
+     * The horizontal accuracies of the fixes in meters.
+     */
+    private final float[] accuracies;
+
+    /**
+     * The speeds of the fixes in meters per second.
+     */
+    private final float[] speeds;
+
+    /**
+     * The bearings of the fixes in degrees.
+     */
+    private final float[] bearings;
+
+    /**
+     * The number of fixes in this batch.
+     */
+    private int size;
+}
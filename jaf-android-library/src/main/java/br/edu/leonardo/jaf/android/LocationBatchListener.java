@@ -0,0 +1,16 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * A listener that receives blocks of location fixes delivered together.
+ */
+public interface LocationBatchListener {
+
+    /**
+     * This method is called when a block of location fixes is delivered. The batch is reused by
+     * the sensor after this call returns, so the listener must copy any data it wants to keep.
+     *
+     * @param sensor The sensor that produced the fixes.
+     * @param batch The delivered batch.
+     */
+    void onBatch(AndroidLocationSensor sensor, LocationBatch batch);
+}
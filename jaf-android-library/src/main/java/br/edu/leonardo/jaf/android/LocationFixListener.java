@@ -0,0 +1,17 @@
+package br.edu.leonardo.jaf.android;
+
+import android.location.Location;
+
+/**
+ * A listener that receives the raw location fixes of an AndroidLocationSensor.
+ */
+public interface LocationFixListener {
+
+    /**
+     * This method is called when the sensor receives a new location fix.
+     *
+     * @param sensor The sensor that received the fix.
+     * @param location The location fix. It must not be modified by the listener.
+     */
+    void onLocationFix(AndroidLocationSensor sensor, Location location);
+}
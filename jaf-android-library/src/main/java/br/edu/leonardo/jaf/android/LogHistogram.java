@@ -0,0 +1,125 @@
+package br.edu.leonardo.jaf.android;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values with logarithmic buckets. Each power of two is
+ * split in eight linear sub-buckets, so any recorded value is represented with a relative error
+ * below 12.5% in a fixed array, whatever its magnitude. Recording a value is a single atomic
+ * increment and never allocates memory.
+ */
+final class LogHistogram {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method records a value. Negative values are recorded as zero.
+     *
+     * @param value The value.
+     */
+    void record(long value) {
+        counts.incrementAndGet(bucket(value < 0 ? 0 : value));
+    }
+
+    /**
+     * This method copies the bucket counts to the given array, optionally clearing them.
+     *
+     * @param dest The destination array, with at least BUCKETS positions.
+     * @param reset true, to clear each bucket as it is copied; false, otherwise.
+     * @return The total count.
+     */
+    long copyTo(long[] dest, boolean reset) {
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            dest[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+            total += dest[i];
+        }
+        return total;
+    }
+
+    /**
+     * This method computes a percentile of the values represented by the given bucket counts.
+     *
+     * @param buckets The bucket counts.
+     * @param total The total count.
+     * @param quantile The quantile, between 0 and 1.
+     * @return The upper bound of the bucket that contains the percentile, or zero if there are no
+     *         values.
+     */
+    static long percentile(long[] buckets, long total, double quantile) {
+        if(total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if(seen >= rank)
+                return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method computes the bucket of a value.
+     *
+     * @param value The non-negative value.
+     * @return The bucket index.
+     */
+    private static int bucket(long value) {
+        if(value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * This method computes the largest value represented by a bucket.
+     *
+     * @param bucket The bucket index.
+     * @return The upper bound of the bucket.
+     */
+    private static long upperBound(int bucket) {
+        if(bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long upper = ((SUB_BUCKETS + sub + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of bits that select the linear sub-bucket.
+     */
+    static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The number of linear sub-buckets in each power of two.
+     */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets.
+     */
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The bucket counts.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+}
@@ -0,0 +1,329 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * An implementation of the Madgwick orientation filter. It fuses gyroscope, accelerometer and,
+ * optionally, magnetometer samples into a unit quaternion, using only primitive fields so that an
+ * update does not allocate memory. The estimated quaternion rotates vectors from the device frame
+ * to the filter earth frame, whose X axis points to the magnetic north and Z axis points up.
+ */
+final class MadgwickFilter {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new MadgwickFilter with the identity orientation.
+     *
+     * @param beta The filter gain. Larger values correct gyroscope drift faster at the cost of
+     *             more accelerometer and magnetometer noise in the estimate.
+     */
+    MadgwickFilter(float beta) {
+        this.beta = beta;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method updates the estimate with gyroscope, accelerometer and magnetometer samples. If
+     * the magnetometer sample is zero, the magnetometer is ignored.
+     *
+     * @param gx The angular speed around the X axis in rad/s.
+     * @param gy The angular speed around the Y axis in rad/s.
+     * @param gz The angular speed around the Z axis in rad/s.
+     * @param ax The acceleration along the X axis (any unit).
+     * @param ay The acceleration along the Y axis (any unit).
+     * @param az The acceleration along the Z axis (any unit).
+     * @param mx The magnetic field along the X axis (any unit).
+     * @param my The magnetic field along the Y axis (any unit).
+     * @param mz The magnetic field along the Z axis (any unit).
+     * @param dt The time elapsed since the previous update in seconds.
+     */
+    void update(float gx, float gy, float gz, float ax, float ay, float az, float mx, float my, float mz, float dt) {
+        if(mx == 0f && my == 0f && mz == 0f) {
+            update(gx, gy, gz, ax, ay, az, dt);
+            return;
+        }
+        float qDot1 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+        float qDot2 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+        float qDot3 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+        float qDot4 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+
+        if(!(ax == 0f && ay == 0f && az == 0f)) {
+            float recipNorm = invSqrt(ax * ax + ay * ay + az * az);
+            ax *= recipNorm;
+            ay *= recipNorm;
+            az *= recipNorm;
+            recipNorm = invSqrt(mx * mx + my * my + mz * mz);
+            mx *= recipNorm;
+            my *= recipNorm;
+            mz *= recipNorm;
+
+            float _2q0mx = 2f * q0 * mx;
+            float _2q0my = 2f * q0 * my;
+            float _2q0mz = 2f * q0 * mz;
+            float _2q1mx = 2f * q1 * mx;
+            float _2q0 = 2f * q0;
+            float _2q1 = 2f * q1;
+            float _2q2 = 2f * q2;
+            float _2q3 = 2f * q3;
+            float _2q0q2 = 2f * q0 * q2;
+            float _2q2q3 = 2f * q2 * q3;
+            float q0q0 = q0 * q0;
+            float q0q1 = q0 * q1;
+            float q0q2 = q0 * q2;
+            float q0q3 = q0 * q3;
+            float q1q1 = q1 * q1;
+            float q1q2 = q1 * q2;
+            float q1q3 = q1 * q3;
+            float q2q2 = q2 * q2;
+            float q2q3 = q2 * q3;
+            float q3q3 = q3 * q3;
+
+            // Reference direction of the Earth's magnetic field
+            float hx = mx * q0q0 - _2q0my * q3 + _2q0mz * q2 + mx * q1q1 + _2q1 * my * q2 + _2q1 * mz * q3 - mx * q2q2 - mx * q3q3;
+            float hy = _2q0mx * q3 + my * q0q0 - _2q0mz * q1 + _2q1mx * q2 - my * q1q1 + my * q2q2 + _2q2 * mz * q3 - my * q3q3;
+            float _2bx = (float) Math.sqrt(hx * hx + hy * hy);
+            float _2bz = -_2q0mx * q2 + _2q0my * q1 + mz * q0q0 + _2q1mx * q3 - mz * q1q1 + _2q2 * my * q3 - mz * q2q2 + mz * q3q3;
+            float _4bx = 2f * _2bx;
+            float _4bz = 2f * _2bz;
+
+            // Gradient descent corrective step
+            float ex = _2bx * (0.5f - q2q2 - q3q3) + _2bz * (q1q3 - q0q2) - mx;
+            float ey = _2bx * (q1q2 - q0q3) + _2bz * (q0q1 + q2q3) - my;
+            float ez = _2bx * (q0q2 + q1q3) + _2bz * (0.5f - q1q1 - q2q2) - mz;
+            float fx = 2f * q1q3 - _2q0q2 - ax;
+            float fy = 2f * q0q1 + _2q2q3 - ay;
+            float fz = 1f - 2f * q1q1 - 2f * q2q2 - az;
+            float s0 = -_2q2 * fx + _2q1 * fy - _2bz * q2 * ex + (-_2bx * q3 + _2bz * q1) * ey + _2bx * q2 * ez;
+            float s1 = _2q3 * fx + _2q0 * fy - 4f * q1 * fz + _2bz * q3 * ex + (_2bx * q2 + _2bz * q0) * ey + (_2bx * q3 - _4bz * q1) * ez;
+            float s2 = -_2q0 * fx + _2q3 * fy - 4f * q2 * fz + (-_4bx * q2 - _2bz * q0) * ex + (_2bx * q1 + _2bz * q3) * ey + (_2bx * q0 - _4bz * q2) * ez;
+            float s3 = _2q1 * fx + _2q2 * fy + (-_4bx * q3 + _2bz * q1) * ex + (-_2bx * q0 + _2bz * q2) * ey + _2bx * q1 * ez;
+            float norm = s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3;
+            recipNorm = norm > 0f ? invSqrt(norm) : 0f;
+            qDot1 -= beta * s0 * recipNorm;
+            qDot2 -= beta * s1 * recipNorm;
+            qDot3 -= beta * s2 * recipNorm;
+            qDot4 -= beta * s3 * recipNorm;
+        }
+        integrate(qDot1, qDot2, qDot3, qDot4, dt);
+    }
+
+    /**
+     * This method updates the estimate with gyroscope and accelerometer samples only. The heading
+     * is not corrected and may drift.
+     *
+     * @param gx The angular speed around the X axis in rad/s.
+     * @param gy The angular speed around the Y axis in rad/s.
+     * @param gz The angular speed around the Z axis in rad/s.
+     * @param ax The acceleration along the X axis (any unit).
+     * @param ay The acceleration along the Y axis (any unit).
+     * @param az The acceleration along the Z axis (any unit).
+     * @param dt The time elapsed since the previous update in seconds.
+     */
+    void update(float gx, float gy, float gz, float ax, float ay, float az, float dt) {
+        float qDot1 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+        float qDot2 = 0.5f * (q0 * gx + q2 * gz - q3 * gy);
+        float qDot3 = 0.5f * (q0 * gy - q1 * gz + q3 * gx);
+        float qDot4 = 0.5f * (q0 * gz + q1 * gy - q2 * gx);
+
+        if(!(ax == 0f && ay == 0f && az == 0f)) {
+            float recipNorm = invSqrt(ax * ax + ay * ay + az * az);
+            ax *= recipNorm;
+            ay *= recipNorm;
+            az *= recipNorm;
+
+            float _2q0 = 2f * q0;
+            float _2q1 = 2f * q1;
+            float _2q2 = 2f * q2;
+            float _2q3 = 2f * q3;
+            float _4q0 = 4f * q0;
+            float _4q1 = 4f * q1;
+            float _4q2 = 4f * q2;
+            float _8q1 = 8f * q1;
+            float _8q2 = 8f * q2;
+            float q0q0 = q0 * q0;
+            float q1q1 = q1 * q1;
+            float q2q2 = q2 * q2;
+            float q3q3 = q3 * q3;
+
+            // Gradient descent corrective step
+            float s0 = _4q0 * q2q2 + _2q2 * ax + _4q0 * q1q1 - _2q1 * ay;
+            float s1 = _4q1 * q3q3 - _2q3 * ax + 4f * q0q0 * q1 - _2q0 * ay - _4q1 + _8q1 * q1q1 + _8q1 * q2q2 + _4q1 * az;
+            float s2 = 4f * q0q0 * q2 + _2q0 * ax + _4q2 * q3q3 - _2q3 * ay - _4q2 + _8q2 * q1q1 + _8q2 * q2q2 + _4q2 * az;
+            float s3 = 4f * q1q1 * q3 - _2q1 * ax + 4f * q2q2 * q3 - _2q2 * ay;
+            float norm = s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3;
+            recipNorm = norm > 0f ? invSqrt(norm) : 0f;
+            qDot1 -= beta * s0 * recipNorm;
+            qDot2 -= beta * s1 * recipNorm;
+            qDot3 -= beta * s2 * recipNorm;
+            qDot4 -= beta * s3 * recipNorm;
+        }
+        integrate(qDot1, qDot2, qDot3, qDot4, dt);
+    }
+
+    /**
+     * This method initializes the estimate directly from an accelerometer and a magnetometer
+     * sample, so that the filter does not need to converge from the identity orientation. If the
+     * magnetometer sample is zero, the heading is initialized so that the device Y axis points to
+     * the filter north.
+     *
+     * @param ax The acceleration along the X axis (any unit).
+     * @param ay The acceleration along the Y axis (any unit).
+     * @param az The acceleration along the Z axis (any unit).
+     * @param mx The magnetic field along the X axis (any unit).
+     * @param my The magnetic field along the Y axis (any unit).
+     * @param mz The magnetic field along the Z axis (any unit).
+     */
+    void initialize(float ax, float ay, float az, float mx, float my, float mz) {
+        float recipNorm = invSqrt(ax * ax + ay * ay + az * az);
+        if(Float.isInfinite(recipNorm))
+            return;
+        ax *= recipNorm;
+        ay *= recipNorm;
+        az *= recipNorm;
+        if(mx == 0f && my == 0f && mz == 0f) {
+            mx = 0f;
+            my = 1f;
+            mz = 0f;
+        }
+        // East = M x A, North = A x East, the rows of the device-to-earth rotation matrix are
+        // (North, West, Up) in device coordinates
+        float ex = my * az - mz * ay;
+        float ey = mz * ax - mx * az;
+        float ez = mx * ay - my * ax;
+        recipNorm = invSqrt(ex * ex + ey * ey + ez * ez);
+        if(Float.isInfinite(recipNorm))
+            return;
+        ex *= recipNorm;
+        ey *= recipNorm;
+        ez *= recipNorm;
+        float nx = ay * ez - az * ey;
+        float ny = az * ex - ax * ez;
+        float nz = ax * ey - ay * ex;
+        fromRotationMatrix(nx, ny, nz, -ex, -ey, -ez, ax, ay, az);
+    }
+
+    /**
+     * This method resets the estimate to the identity orientation.
+     */
+    void reset() {
+        q0 = 1f;
+        q1 = 0f;
+        q2 = 0f;
+        q3 = 0f;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method integrates the quaternion rate of change and normalizes the result.
+     *
+     * @param qDot1 The rate of change of the W component.
+     * @param qDot2 The rate of change of the X component.
+     * @param qDot3 The rate of change of the Y component.
+     * @param qDot4 The rate of change of the Z component.
+     * @param dt The integration interval in seconds.
+     */
+    private void integrate(float qDot1, float qDot2, float qDot3, float qDot4, float dt) {
+        q0 += qDot1 * dt;
+        q1 += qDot2 * dt;
+        q2 += qDot3 * dt;
+        q3 += qDot4 * dt;
+        float recipNorm = invSqrt(q0 * q0 + q1 * q1 + q2 * q2 + q3 * q3);
+        q0 *= recipNorm;
+        q1 *= recipNorm;
+        q2 *= recipNorm;
+        q3 *= recipNorm;
+    }
+
+    /**
+     * This method sets the estimate from a rotation matrix.
+     *
+     * @param r00 The element at row 0 and column 0.
+     * @param r01 The element at row 0 and column 1.
+     * @param r02 The element at row 0 and column 2.
+     * @param r10 The element at row 1 and column 0.
+     * @param r11 The element at row 1 and column 1.
+     * @param r12 The element at row 1 and column 2.
+     * @param r20 The element at row 2 and column 0.
+     * @param r21 The element at row 2 and column 1.
+     * @param r22 The element at row 2 and column 2.
+     */
+    private void fromRotationMatrix(float r00, float r01, float r02, float r10, float r11, float r12, float r20, float r21, float r22) {
+        float trace = r00 + r11 + r22;
+        if(trace > 0f) {
+            float s = 0.5f / (float) Math.sqrt(trace + 1f);
+            q0 = 0.25f / s;
+            q1 = (r21 - r12) * s;
+            q2 = (r02 - r20) * s;
+            q3 = (r10 - r01) * s;
+        } else if(r00 > r11 && r00 > r22) {
+            float s = 2f * (float) Math.sqrt(1f + r00 - r11 - r22);
+            q0 = (r21 - r12) / s;
+            q1 = 0.25f * s;
+            q2 = (r01 + r10) / s;
+            q3 = (r02 + r20) / s;
+        } else if(r11 > r22) {
+            float s = 2f * (float) Math.sqrt(1f + r11 - r00 - r22);
+            q0 = (r02 - r20) / s;
+            q1 = (r01 + r10) / s;
+            q2 = 0.25f * s;
+            q3 = (r12 + r21) / s;
+        } else {
+            float s = 2f * (float) Math.sqrt(1f + r22 - r00 - r11);
+            q0 = (r10 - r01) / s;
+            q1 = (r02 + r20) / s;
+            q2 = (r12 + r21) / s;
+            q3 = 0.25f * s;
+        }
+        float recipNorm = invSqrt(q0 * q0 + q1 * q1 + q2 * q2 + q3 * q3);
+        q0 *= recipNorm;
+        q1 *= recipNorm;
+        q2 *= recipNorm;
+        q3 *= recipNorm;
+    }
+
+    /**
+     * This method computes the inverse of the square root of a value.
+     *
+     * @param x The value.
+     * @return The inverse square root.
+     */
+    private static float invSqrt(float x) {
+        return (float) (1.0 / Math.sqrt(x));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The filter gain.
+     */
+    float beta;
+
+    /**
+     * The W component of the estimated quaternion.
+     */
+    float q0 = 1f;
+
+    /**
+     * The X component of the estimated quaternion.
+     */
+    float q1;
+
+    /**
+     * The Y component of the estimated quaternion.
+     */
+    float q2;
+
+    /**
+     * The Z component of the estimated quaternion.
+     */
+    float q3;
+}
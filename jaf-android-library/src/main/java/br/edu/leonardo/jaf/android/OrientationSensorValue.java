@@ -0,0 +1,100 @@
+package br.edu.leonardo.jaf.android;
+
+import br.edu.leonardo.jaf.sensors.ThreeAxisSensorValue;
+import tec.units.ri.unit.Units;
+
+/**
+ * The orientation emitted by an AndroidOrientationSensor. It is a ThreeAxisSensorValue with the
+ * azimuth, pitch and roll angles in radians (in the same convention of
+ * SensorManager.getOrientation), which also carries the rotation quaternion the angles were
+ * computed from, so that agents do not lose its W component.
+ */
+public class OrientationSensorValue extends ThreeAxisSensorValue {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new OrientationSensorValue.
+     *
+     * @param w The W (scalar) component of the rotation quaternion.
+     * @param x The X component of the rotation quaternion.
+     * @param y The Y component of the rotation quaternion.
+     * @param z The Z component of the rotation quaternion.
+     * @param azimuth The azimuth angle in radians.
+     * @param pitch The pitch angle in radians.
+     * @param roll The roll angle in radians.
+     */
+    public OrientationSensorValue(float w, float x, float y, float z, float azimuth, float pitch, float roll) {
+        super(new float[] { azimuth, pitch, roll }, Units.RADIAN);
+        this.w = w;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the W (scalar) component of the rotation quaternion.
+     *
+     * @return The W component.
+     */
+    public float getQuaternionW() {
+        return w;
+    }
+
+    /**
+     * This method obtains the X component of the rotation quaternion.
+     *
+     * @return The X component.
+     */
+    public float getQuaternionX() {
+        return x;
+    }
+
+    /**
+     * This method obtains the Y component of the rotation quaternion.
+     *
+     * @return The Y component.
+     */
+    public float getQuaternionY() {
+        return y;
+    }
+
+    /**
+     * This method obtains the Z component of the rotation quaternion.
+     *
+     * @return The Z component.
+     */
+    public float getQuaternionZ() {
+        return z;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The W component of the rotation quaternion.
+     */
+    private final float w;
+
+    /**
+     * The X component of the rotation quaternion.
+     */
+    private final float x;
+
+    /**
+     * The Y component of the rotation quaternion.
+     */
+    private final float y;
+
+    /**
+     * The Z component of the rotation quaternion.
+     */
+    private final float z;
+}
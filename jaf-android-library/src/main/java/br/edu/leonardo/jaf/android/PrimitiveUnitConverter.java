@@ -0,0 +1,200 @@
+package br.edu.leonardo.jaf.android;
+
+import javax.measure.IncommensurableException;
+import javax.measure.UnconvertibleException;
+import javax.measure.Unit;
+import javax.measure.UnitConverter;
+
+/**
+ * A conversion between two units resolved once into primitive arithmetic. Most conversions between
+ * sensor units are affine (a scale and an offset, as from radians to degrees or from Celsius to
+ * Kelvin), so the converter of the units is sampled at construction time and, if it behaves as an
+ * affine function, sensor values are converted with a multiplication and an addition per value.
+ * Other conversions fall back to the generic UnitConverter, still without creating Quantity
+ * objects.
+ */
+public final class PrimitiveUnitConverter {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new PrimitiveUnitConverter.
+     *
+     * @param source The unit of the values to be converted.
+     * @param target The unit of the converted values.
+     * @throws IllegalArgumentException If the units are not commensurable.
+     */
+    public PrimitiveUnitConverter(Unit<?> source, Unit<?> target) {
+        try {
+            this.converter = source.getConverterToAny(target);
+        } catch(IncommensurableException | UnconvertibleException e) {
+            throw new IllegalArgumentException("The unit " + source + " cannot be converted to " + target + ".", e);
+        }
+        this.target = target;
+        this.offset = converter.convert(0.0);
+        this.scale = converter.convert(1.0) - offset;
+        this.identity = converter.isIdentity() || (scale == 1.0 && offset == 0.0 && isAffine(converter, 1.0, 0.0));
+        this.affine = identity || isAffine(converter, scale, offset);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method converts values to the target unit. The source and destination arrays may be
+     * the same, to convert the values in place.
+     *
+     * @param src The values in the source unit.
+     * @param dest The array that receives the values in the target unit.
+     * @param count The number of values to be converted.
+     */
+    public void convert(float[] src, float[] dest, int count) {
+        if(identity) {
+            if(src != dest)
+                System.arraycopy(src, 0, dest, 0, count);
+        } else if(affine) {
+            float s = (float) scale;
+            float o = (float) offset;
+            for(int i = 0; i < count; i++)
+                dest[i] = src[i] * s + o;
+        } else {
+            for(int i = 0; i < count; i++)
+                dest[i] = (float) converter.convert((double) src[i]);
+        }
+    }
+
+    /**
+     * This method converts a value to the target unit.
+     *
+     * @param value The value in the source unit.
+     * @return The value in the target unit.
+     */
+    public double convert(double value) {
+        return affine ? value * scale + offset : converter.convert(value);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the target unit of this converter.
+     *
+     * @return The target unit.
+     */
+    public Unit<?> getTargetUnit() {
+        return target;
+    }
+
+    /**
+     * This method checks whether this converter leaves the values unchanged.
+     *
+     * @return true, if the units are equivalent; false, otherwise.
+     */
+    public boolean isIdentity() {
+        return identity;
+    }
+
+    /**
+     * This method checks whether this converter was resolved into a scale and an offset.
+     *
+     * @return true, if the conversion is affine; false, if it uses the generic converter.
+     */
+    public boolean isAffine() {
+        return affine;
+    }
+
+    /**
+     * This method obtains the scale of an affine conversion.
+     *
+     * @return The factor by which the values are multiplied.
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * This method obtains the offset of an affine conversion.
+     *
+     * @return The value added to the scaled values.
+     */
+    public double getOffset() {
+        return offset;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method checks whether a converter behaves as an affine function with the given scale
+     * and offset, by comparing them at sample points spread over the range of sensor values.
+     *
+     * @param converter The converter.
+     * @param scale The scale.
+     * @param offset The offset.
+     * @return true, if the converter matches the affine function at all sample points; false,
+     *         otherwise.
+     */
+    private static boolean isAffine(UnitConverter converter, double scale, double offset) {
+        if(Double.isNaN(scale) || Double.isInfinite(scale) || Double.isNaN(offset) || Double.isInfinite(offset))
+            return false;
+        for(double x : PROBES) {
+            double expected = x * scale + offset;
+            if(Math.abs(converter.convert(x) - expected) > TOLERANCE * Math.max(1.0, Math.abs(expected)))
+                return false;
+        }
+        return true;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The sample points used to check whether a conversion is affine.
+     */
+    private static final double[] PROBES = {-1.0e4, -9.81, -0.5, 2.0, 3.75, 1.0e4};
+
+    /**
+     * The relative tolerance of the affine check.
+     */
+    private static final double TOLERANCE = 1.0e-9;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The generic converter of the units.
+     */
+    private final UnitConverter converter;
+
+    /**
+     * The target unit.
+     */
+    private final Unit<?> target;
+
+    /**
+     * The scale of the affine conversion.
+     */
+    private final double scale;
+
+    /**
+     * The offset of the affine conversion.
+     */
+    private final double offset;
+
+    /**
+     * Indicates whether the conversion leaves the values unchanged.
+     */
+    private final boolean identity;
+
+    /**
+     * Indicates whether the conversion is affine.
+     */
+    private final boolean affine;
+}
@@ -0,0 +1,77 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * A copy-on-write list of SensorReadingListener objects. Registering or removing a listener copies
+ * the internal array, while dispatching a reading iterates over it without allocating memory.
+ */
+final class ReadingListenerList {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method adds a listener to this list. Adding a listener that is already in the list has
+     * no effect.
+     *
+     * @param listener The listener to be added.
+     */
+    synchronized void add(SensorReadingListener listener) {
+        SensorReadingListener[] current = listeners;
+        for(SensorReadingListener l : current)
+            if(l == listener)
+                return;
+        SensorReadingListener[] updated = new SensorReadingListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * This method removes a listener from this list.
+     *
+     * @param listener The listener to be removed.
+     */
+    synchronized void remove(SensorReadingListener listener) {
+        SensorReadingListener[] current = listeners;
+        for(int i = 0; i < current.length; i++) {
+            if(current[i] == listener) {
+                SensorReadingListener[] updated = new SensorReadingListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * This method checks whether this list has no listeners.
+     *
+     * @return true, if the list is empty; false, otherwise.
+     */
+    boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    /**
+     * This method delivers a reading to all listeners in this list.
+     *
+     * @param source The source that produced the reading.
+     * @param reading The reading to be delivered.
+     */
+    void dispatch(SensorReadingSource source, SensorReading reading) {
+        SensorReadingListener[] current = listeners;
+        for(SensorReadingListener l : current)
+            l.onReading(source, reading);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The current array of listeners.
+     */
+    private volatile SensorReadingListener[] listeners = new SensorReadingListener[0];
+}
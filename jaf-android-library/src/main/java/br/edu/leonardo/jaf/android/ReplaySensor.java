@@ -0,0 +1,403 @@
+package br.edu.leonardo.jaf.android;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.measure.Unit;
+
+import br.edu.leonardo.jaf.sensors.LocationSensorValue;
+import br.edu.leonardo.jaf.sensors.Sensor;
+import br.edu.leonardo.jaf.sensors.SensorException;
+import br.edu.leonardo.jaf.sensors.SensorValue;
+import br.edu.leonardo.jaf.sensors.SingleSensorValue;
+import br.edu.leonardo.jaf.sensors.ThreeAxisSensorValue;
+import tec.units.ri.AbstractUnit;
+import tec.units.ri.unit.Units;
+
+/**
+ * A sensor that plays back a source of a trace recorded by SensorTraceRecorder. The readings are
+ * emitted on a background thread with their original timestamps, either respecting the original
+ * delay between them, a fraction of it (to replay the trace faster) or as fast as possible. This
+ * class does not depend on the Android framework, so recorded workloads can be fed to agents on a
+ * plain JVM.
+ */
+public class ReplaySensor extends Sensor implements SensorReadingSource {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new ReplaySensor.
+     *
+     * @param reader The reader of the trace. It is owned by this sensor and must not be shared
+     *               with other sensors.
+     * @param sourceName The name of the recorded source to be replayed.
+     * @param unit The unit of the replayed values (it is ignored for location sources).
+     * @param speed The replay speed: 1 to replay the trace at its original pace, N to replay it
+     *              N times faster, or AS_FAST_AS_POSSIBLE.
+     */
+    public ReplaySensor(SensorTraceReader reader, String sourceName, Unit<?> unit, double speed) {
+        int id = reader.findSource(sourceName);
+        if(id < 0)
+            throw new IllegalArgumentException("The trace has no source named " + sourceName);
+        if(!(speed > 0))
+            throw new IllegalArgumentException("The replay speed must be positive.");
+        this.reader = reader;
+        this.sourceId = id;
+        this.name = sourceName;
+        this.unit = unit;
+        this.speed = speed;
+        this.location = reader.isLocationSource(id);
+        this.channels = reader.getSourceChannels(id);
+        this.values = new float[channels];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method starts the replay thread.
+     *
+     * @throws SensorException If the sensor is already replaying the trace.
+     */
+    @Override
+    public synchronized void init() throws SensorException {
+        if(thread != null && thread.isAlive())
+            throw new SensorException(this, "The sensor " + name + " is already replaying.");
+        running = true;
+        finished = false;
+        error = null;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        }, "jaf-replay-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * This method stops the replay thread and waits for it to finish. The trace is replayed from
+     * the beginning if the sensor is initialized again.
+     */
+    public void stop() {
+        Thread t;
+        synchronized(this) {
+            running = false;
+            t = thread;
+        }
+        if(t == null)
+            return;
+        t.interrupt();
+        try {
+            t.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method waits until the whole trace has been replayed.
+     *
+     * @param timeoutMillis The maximum time to wait in milliseconds, or zero to wait forever.
+     * @return true, if the replay has finished; false, if the timeout elapsed.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        Thread t;
+        synchronized(this) {
+            t = thread;
+        }
+        if(t != null)
+            t.join(timeoutMillis);
+        return finished;
+    }
+
+    @Override
+    public void addReadingListener(SensorReadingListener listener) {
+        synchronized(readingListeners) {
+            if(readingPool == null)
+                readingPool = new SensorReadingPool(POOL_SIZE, channels);
+        }
+        readingListeners.add(listener);
+    }
+
+    @Override
+    public void removeReadingListener(SensorReadingListener listener) {
+        readingListeners.remove(listener);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /**
+     * This method obtains the number of readings replayed since the sensor was initialized.
+     *
+     * @return The number of readings.
+     */
+    public long getReplayedCount() {
+        return replayed;
+    }
+
+    /**
+     * This method checks whether the whole trace has been replayed.
+     *
+     * @return true, if the replay has finished; false, otherwise.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * This method obtains the error that interrupted the replay, if any.
+     *
+     * @return The error, or null if the trace was read without errors.
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * This method defines whether the trace is replayed again from the beginning when it ends. The
+     * replay timing restarts at each loop, but the original timestamps are kept.
+     *
+     * @param loop true, to replay the trace in a loop; false, to replay it once.
+     */
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R O T E C T E D   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method creates the SensorValue object passed to the agents for a replayed reading. By
+     * default, location sources produce LocationSensorValue objects, sources with one channel
+     * produce SingleSensorValue objects, sources with three channels produce ThreeAxisSensorValue
+     * objects and the remaining sources produce VectorSensorValue objects with every channel.
+     *
+     * @param values The values of the reading. The array is reused for the next readings.
+     * @param count The number of channels of the reading.
+     * @param timestamp The recorded time in nanoseconds of the reading.
+     * @return The sensor value, or null if no value must be passed to the agents.
+     */
+    protected SensorValue createSensorValue(float[] values, int count, long timestamp) {
+        if(location)
+            return new LocationSensorValue(
+                    (double) values[0] + values[1],
+                    (double) values[2] + values[3],
+                    values[4],
+                    AbstractUnit.ONE,
+                    Units.METRE
+            );
+        if(count == 1)
+            return new SingleSensorValue(values[0], unit);
+        if(count == 3)
+            return new ThreeAxisSensorValue(new float[] {values[0], values[1], values[2]}, unit);
+        if(count > 1)
+            return new VectorSensorValue(values, count, unit);
+        return null;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method runs the replay loop on the replay thread.
+     */
+    private void replay() {
+        replayed = 0;
+        try {
+            reader.rewind();
+            do {
+                long firstTimestamp = -1;
+                long start = 0;
+                while(running && reader.next()) {
+                    if(reader.getSourceId() != sourceId)
+                        continue;
+                    long timestamp = reader.getTimestamp();
+                    if(firstTimestamp < 0) {
+                        firstTimestamp = timestamp;
+                        start = System.nanoTime();
+                    } else if(speed != AS_FAST_AS_POSSIBLE && !waitUntil(start + (long) ((timestamp - firstTimestamp) / speed))) {
+                        break;
+                    }
+                    reader.copyValues(values, channels);
+                    emit(timestamp);
+                }
+                if(running && loop)
+                    reader.rewind();
+            } while(running && loop);
+            finished = running;
+        } catch(IOException e) {
+            error = e;
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * This method waits until the given time. It parks the thread while the time is far and spins
+     * during the last moments, since parking is not precise enough for kilohertz workloads.
+     *
+     * @param due The time to wait for, as given by System.nanoTime.
+     * @return true, if the time has been reached; false, if the sensor has been stopped.
+     */
+    private boolean waitUntil(long due) {
+        long remaining;
+        while(running && (remaining = due - System.nanoTime()) > 0) {
+            if(remaining > SPIN_NANOS)
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            else
+                Thread.yield();
+        }
+        return running;
+    }
+
+    /**
+     * This method emits a replayed reading to the reading listeners and to the agents.
+     *
+     * @param timestamp The recorded time in nanoseconds of the reading.
+     */
+    private void emit(long timestamp) {
+        replayed++;
+        if(!readingListeners.isEmpty()) {
+            SensorReading reading = readingPool.acquire();
+            if(reading != null) {
+                reading.set(timestamp, REPLAY_ACCURACY, values, channels);
+                try {
+                    readingListeners.dispatch(this, reading);
+                } finally {
+                    reading.release();
+                }
+            }
+        }
+        SensorValue value = createSensorValue(values, channels, timestamp);
+        if(value != null)
+            newReading(value);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The speed that replays the trace without waiting between readings.
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The number of readings in the pool used by the reading listeners.
+     */
+    private static final int POOL_SIZE = 4;
+
+    /**
+     * The accuracy of replayed readings (the accuracy is not recorded in traces, so the value of
+     * SensorManager.SENSOR_STATUS_ACCURACY_HIGH is used).
+     */
+    private static final int REPLAY_ACCURACY = 3;
+
+    /**
+     * The time before a due reading during which the replay thread spins instead of parking.
+     */
+    private static final long SPIN_NANOS = 200000L;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The reader of the trace.
+     */
+    private final SensorTraceReader reader;
+
+    /**
+     * The id of the replayed source in the trace.
+     */
+    private final int sourceId;
+
+    /**
+     * The name of the replayed source.
+     */
+    private final String name;
+
+    /**
+     * The unit of the replayed values.
+     */
+    private final Unit<?> unit;
+
+    /**
+     * The replay speed.
+     */
+    private final double speed;
+
+    /**
+     * It indicates whether the replayed source records location fixes.
+     */
+    private final boolean location;
+
+    /**
+     * The number of channels of the replayed source.
+     */
+    private final int channels;
+
+    /**
+     * The values of the current reading.
+     */
+    private final float[] values;
+
+    /**
+     * The listeners that receive the primitive readings of this sensor.
+     */
+    private final ReadingListenerList readingListeners = new ReadingListenerList();
+
+    /**
+     * The pool of readings used by the reading listeners.
+     */
+    private volatile SensorReadingPool readingPool;
+
+    /**
+     * The replay thread.
+     */
+    private Thread thread;
+
+    /**
+     * It indicates whether the replay thread must keep running.
+     */
+    private volatile boolean running;
+
+    /**
+     * It indicates whether the whole trace has been replayed.
+     */
+    private volatile boolean finished;
+
+    /**
+     * It indicates whether the trace is replayed in a loop.
+     */
+    private volatile boolean loop;
+
+    /**
+     * The number of replayed readings.
+     */
+    private volatile long replayed;
+
+    /**
+     * The error that interrupted the replay.
+     */
+    private volatile IOException error;
+}
@@ -0,0 +1,16 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * A listener that receives blocks of sensor readings delivered together.
+ */
+public interface SensorBatchListener {
+
+    /**
+     * This method is called when a block of readings is delivered. The batch is reused by the
+     * source after this call returns, so the listener must copy any data it wants to keep.
+     *
+     * @param source The source that produced the readings.
+     * @param batch The delivered batch.
+     */
+    void onBatch(SensorReadingSource source, SensorReadingBatch batch);
+}
@@ -0,0 +1,198 @@
+package br.edu.leonardo.jaf.android;
+
+import android.hardware.Sensor;
+import android.os.Build;
+
+/**
+ * The capabilities of an Android sensor that matter to choose its sampling period and report
+ * latency: the range of supported delays, the size of its hardware FIFO and whether it wakes the
+ * device up. The values are read once from the Android sensor and cached by
+ * {@link AndroidDeviceSensorFactory}; capabilities missing in older Android versions are reported
+ * as zero or false.
+ */
+public final class SensorCapabilities {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorCapabilities from an Android sensor.
+     *
+     * @param sensor The Android sensor.
+     */
+    SensorCapabilities(Sensor sensor) {
+        this.sensor = sensor;
+        this.minDelay = sensor.getMinDelay();
+        boolean lollipop = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+        this.maxDelay = lollipop ? sensor.getMaxDelay() : 0;
+        this.wakeUp = lollipop && sensor.isWakeUpSensor();
+        boolean kitkat = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        this.fifoMaxEventCount = kitkat ? sensor.getFifoMaxEventCount() : 0;
+        this.fifoReservedEventCount = kitkat ? sensor.getFifoReservedEventCount() : 0;
+    }
+
+    /**
+     * This constructor builds a new SensorCapabilities with the given values, without reading them
+     * from an Android sensor.
+     *
+     * @param sensor The Android sensor, or null.
+     * @param minDelay The minimum delay between two events in microseconds.
+     * @param maxDelay The maximum delay between two events in microseconds, or zero if unknown.
+     * @param fifoReservedEventCount The number of events of the hardware FIFO reserved to the
+     *                               sensor.
+     * @param fifoMaxEventCount The maximum number of events of the hardware FIFO.
+     * @param wakeUp true, if the sensor wakes the device up; false, otherwise.
+     */
+    SensorCapabilities(Sensor sensor, int minDelay, int maxDelay, int fifoReservedEventCount, int fifoMaxEventCount, boolean wakeUp) {
+        this.sensor = sensor;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.wakeUp = wakeUp;
+        this.fifoMaxEventCount = fifoMaxEventCount;
+        this.fifoReservedEventCount = fifoReservedEventCount;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method clamps a sampling period to the range supported by the sensor.
+     *
+     * @param samplingPeriod The desired sampling period in microseconds, or one of the
+     *                       SensorManager.SENSOR_DELAY_* constants.
+     * @return The supported sampling period in microseconds.
+     */
+    public int clampSamplingPeriod(int samplingPeriod) {
+        int period = SensorHub.toMicros(samplingPeriod);
+        if(period < minDelay)
+            period = minDelay;
+        if(maxDelay > 0 && period > maxDelay)
+            period = maxDelay;
+        return period;
+    }
+
+    /**
+     * This method computes the largest report latency whose events fit in the hardware FIFO of
+     * the sensor, limited by a delivery deadline. The events are only guaranteed room in the
+     * reserved part of the FIFO, which is used when the sensor reports it; otherwise the whole FIFO
+     * is used. A margin of 10% is kept, so that the FIFO does not overflow while the events are
+     * being delivered. The result does not depend on whether the sensor wakes the device up: a
+     * wake-up sensor delivers its batch when the FIFO fills, and a non-wake-up sensor loses the
+     * events that overflow its FIFO while the device sleeps whatever the latency, so the time to
+     * fill the FIFO is the useful bound in both cases.
+     *
+     * @param samplingPeriod The sampling period in microseconds.
+     * @param deadline The maximum time in microseconds an event can wait before being delivered.
+     * @return The report latency in microseconds; zero, if the sensor has no FIFO.
+     */
+    public int getMaxReportLatency(int samplingPeriod, long deadline) {
+        int events = fifoReservedEventCount > 0 ? fifoReservedEventCount : fifoMaxEventCount;
+        if(events <= 1 || samplingPeriod <= 0)
+            return 0;
+        long fillTime = (long) events * samplingPeriod * 9 / 10;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, Math.min(deadline, fillTime)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: delay %d..%d us, FIFO %d/%d events%s", sensor.getName(), minDelay, maxDelay, fifoReservedEventCount, fifoMaxEventCount, wakeUp ? ", wake-up" : "");
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the Android sensor described by these capabilities.
+     *
+     * @return The Android sensor reference.
+     */
+    public Sensor getSensor() {
+        return sensor;
+    }
+
+    /**
+     * This method obtains the minimum delay between two events of the sensor.
+     *
+     * @return The minimum delay in microseconds; or zero, if the sensor only reports events when
+     *         its values change.
+     */
+    public int getMinDelay() {
+        return minDelay;
+    }
+
+    /**
+     * This method obtains the maximum delay between two events of the sensor.
+     *
+     * @return The maximum delay in microseconds; or zero, if it is unknown.
+     */
+    public int getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * This method obtains the number of events the hardware FIFO of the sensor can hold when no
+     * other sensor uses it.
+     *
+     * @return The maximum number of events; or zero, if the sensor does not batch events.
+     */
+    public int getFifoMaxEventCount() {
+        return fifoMaxEventCount;
+    }
+
+    /**
+     * This method obtains the number of events of the hardware FIFO reserved to the sensor.
+     *
+     * @return The number of reserved events.
+     */
+    public int getFifoReservedEventCount() {
+        return fifoReservedEventCount;
+    }
+
+    /**
+     * This method checks whether the sensor wakes the device up to deliver its events. It does not
+     * change the sampling period nor the report latency chosen for the sensor; it is reported so
+     * that the application can decide whether its events may be missed while the device sleeps.
+     *
+     * @return true, if it is a wake-up sensor; false, otherwise.
+     */
+    public boolean isWakeUp() {
+        return wakeUp;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The Android sensor.
+     */
+    private final Sensor sensor;
+
+    /**
+     * The minimum delay between two events in microseconds.
+     */
+    private final int minDelay;
+
+    /**
+     * The maximum delay between two events in microseconds.
+     */
+    private final int maxDelay;
+
+    /**
+     * The maximum number of events of the hardware FIFO.
+     */
+    private final int fifoMaxEventCount;
+
+    /**
+     * The number of events of the hardware FIFO reserved to the sensor.
+     */
+    private final int fifoReservedEventCount;
+
+    /**
+     * Indicates whether the sensor wakes the device up.
+     */
+    private final boolean wakeUp;
+}
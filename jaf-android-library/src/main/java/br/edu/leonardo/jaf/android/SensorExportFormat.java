@@ -0,0 +1,222 @@
+package br.edu.leonardo.jaf.android;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * The constants and helper methods of the binary stream written by SensorExporter and read by
+ * SensorExportReader. A stream is a sequence of frames, each with a fixed-size little-endian header
+ * followed by a payload. Source frames describe a source once, before its first batch; batch frames
+ * carry the records of all sources gathered in a time window, one columnar block per source. The
+ * values are quantized with the step of each channel, and the timestamps and quantized values of a
+ * block are stored as zig-zag varint deltas of the previous record, so slowly changing signals take
+ * about one byte per value. The payload of a batch frame may be compressed with LZ4.
+ *
+ * <pre>
+ * header:  int magic, byte version, byte type, byte flags, byte reserved,
+ *          int payloadLength, int rawLength
+ * source:  varint id, varint kind, varint channels, channels x long quantumBits,
+ *          varint nameLength, byte[nameLength] name
+ * batch:   varint blockCount, blockCount x (varint sourceId, varint recordCount,
+ *          recordCount x zigzag timestampDelta, channels x recordCount x zigzag valueDelta)
+ * </pre>
+ */
+final class SensorExportFormat {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This class has only static members.
+     */
+    private SensorExportFormat() {
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method writes a frame header at the current position of the given buffer.
+     *
+     * @param buf The buffer, in little-endian order.
+     * @param type The frame type.
+     * @param flags The frame flags.
+     * @param payloadLength The number of bytes of the payload as stored.
+     * @param rawLength The number of bytes of the payload before compression.
+     */
+    static void putHeader(ByteBuffer buf, int type, int flags, int payloadLength, int rawLength) {
+        buf.putInt(MAGIC);
+        buf.put(VERSION);
+        buf.put((byte) type);
+        buf.put((byte) flags);
+        buf.put((byte) 0);
+        buf.putInt(payloadLength);
+        buf.putInt(rawLength);
+    }
+
+    /**
+     * This method quantizes a value with the given step. NaN is mapped to a reserved value, so
+     * missing values survive the encoding.
+     *
+     * @param value The value.
+     * @param quantum The quantization step.
+     * @return The quantized value.
+     */
+    static long quantize(double value, double quantum) {
+        if(Double.isNaN(value))
+            return NAN_VALUE;
+        long q = Math.round(value / quantum);
+        return q == NAN_VALUE ? NAN_VALUE + 1 : q;
+    }
+
+    /**
+     * This method restores a value quantized with the given step.
+     *
+     * @param q The quantized value.
+     * @param quantum The quantization step.
+     * @return The value.
+     */
+    static double dequantize(long q, double quantum) {
+        return q == NAN_VALUE ? Double.NaN : q * quantum;
+    }
+
+    /**
+     * This method writes a non-negative number as a varint: seven bits per byte, least significant
+     * first, with the high bit set in all bytes but the last.
+     *
+     * @param buf The buffer.
+     * @param value The number, interpreted as unsigned.
+     */
+    static void putVarLong(ByteBuffer buf, long value) {
+        while((value & ~0x7FL) != 0L) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    /**
+     * This method reads a varint written by {@link #putVarLong(ByteBuffer, long)}.
+     *
+     * @param buf The buffer.
+     * @return The number.
+     * @throws IllegalArgumentException If the varint is longer than 10 bytes.
+     */
+    static long getVarLong(ByteBuffer buf) {
+        long value = 0L;
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+
+    /**
+     * This method writes a signed number as a zig-zag varint, so that numbers of small magnitude
+     * take few bytes whatever their sign.
+     *
+     * @param buf The buffer.
+     * @param value The number.
+     */
+    static void putZigZag(ByteBuffer buf, long value) {
+        putVarLong(buf, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * This method reads a zig-zag varint written by {@link #putZigZag(ByteBuffer, long)}.
+     *
+     * @param buf The buffer.
+     * @return The number.
+     */
+    static long getZigZag(ByteBuffer buf) {
+        long value = getVarLong(buf);
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    /**
+     * This method computes the largest size of the payload of a batch block.
+     *
+     * @param records The number of records of the block.
+     * @param channels The number of channels of the source.
+     * @return The size in bytes.
+     */
+    static int maxBlockSize(int records, int channels) {
+        return MAX_VARINT_SIZE * (2 + records * (1 + channels));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The magic number at the beginning of a frame ("JAFX").
+     */
+    static final int MAGIC = 0x5846414A;
+
+    /**
+     * The version of the export format.
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * The size of the frame header.
+     */
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * The type of a frame that describes a source.
+     */
+    static final int TYPE_SOURCE = 1;
+
+    /**
+     * The type of a frame that carries a batch of records.
+     */
+    static final int TYPE_BATCH = 2;
+
+    /**
+     * The flag of a frame whose payload is compressed with LZ4.
+     */
+    static final int FLAG_LZ4 = 1;
+
+    /**
+     * The kind of a source that exports primitive sensor readings.
+     */
+    static final int KIND_READING = 0;
+
+    /**
+     * The kind of a source that exports location fixes, whose channels are indexed by the
+     * AndroidLocationSensor.CHANNEL_* constants.
+     */
+    static final int KIND_LOCATION = 1;
+
+    /**
+     * The quantization steps of the channels of a location source: 1e-7 degree (about 1 cm) for
+     * the coordinates, 1 cm for the altitude and the accuracy, 1 cm/s for the speed and 0.01
+     * degree for the bearing.
+     */
+    static final double[] LOCATION_QUANTA = {1e-7, 1e-7, 0.01, 0.01, 0.01, 0.01};
+
+    /**
+     * The quantized value that represents NaN.
+     */
+    static final long NAN_VALUE = Long.MIN_VALUE;
+
+    /**
+     * The maximum size of a varint.
+     */
+    static final int MAX_VARINT_SIZE = 10;
+
+    /**
+     * The maximum size of a payload accepted by the reader.
+     */
+    static final int MAX_PAYLOAD_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The charset of source names.
+     */
+    static final Charset UTF8 = Charset.forName("UTF-8");
+}
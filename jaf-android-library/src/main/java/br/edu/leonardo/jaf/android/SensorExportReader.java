@@ -0,0 +1,471 @@
+package br.edu.leonardo.jaf.android;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * A streaming reader of the frames written by SensorExporter. It reads one frame at a time from a
+ * byte channel and iterates over its records: the records of a batch are visited source by
+ * source, and in the order they were recorded within each source. This class does not depend on
+ * the Android framework, so streams can be consumed on a plain JVM.
+ */
+public class SensorExportReader implements Closeable {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorExportReader.
+     *
+     * @param channel The channel from which the frames are read.
+     */
+    public SensorExportReader(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method advances to the next record, reading frames from the channel as needed.
+     *
+     * @return true, if there is a current record; false, if the end of the stream was reached.
+     * @throws IOException If the channel could not be read or the stream is malformed.
+     */
+    public boolean next() throws IOException {
+        recordIndex++;
+        while(recordIndex >= recordCount) {
+            if(blocksRemaining > 0) {
+                decodeBlock();
+                recordIndex = 0;
+            } else if(!readFrame()) {
+                recordIndex = recordCount;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the id of the source of the current record.
+     *
+     * @return The source id.
+     */
+    public int getSourceId() {
+        return current.id;
+    }
+
+    /**
+     * This method obtains the timestamp of the current record.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getTimestamp() {
+        return timestamps[recordIndex];
+    }
+
+    /**
+     * This method obtains a value of the current record.
+     *
+     * @param channel The channel index.
+     * @return The value, restored from its quantized form; NaN, if it was missing.
+     */
+    public double getValue(int channel) {
+        return values[channel * recordCount + recordIndex];
+    }
+
+    /**
+     * This method copies the values of the current record into an array.
+     *
+     * @param dest The destination array.
+     * @param count The number of channels to be copied.
+     */
+    public void copyValues(double[] dest, int count) {
+        int n = Math.min(count, current.channels);
+        for(int c = 0; c < n; c++)
+            dest[c] = values[c * recordCount + recordIndex];
+    }
+
+    /**
+     * This method obtains the number of channels of the current record.
+     *
+     * @return The number of channels.
+     */
+    public int getChannelCount() {
+        return current.channels;
+    }
+
+    /**
+     * This method obtains the number of sources described so far in the stream.
+     *
+     * @return The number of sources.
+     */
+    public int getSourceCount() {
+        int count = 0;
+        for(Source s : sources)
+            if(s != null)
+                count++;
+        return count;
+    }
+
+    /**
+     * This method obtains the name of a source.
+     *
+     * @param sourceId The source id.
+     * @return The source name.
+     */
+    public String getSourceName(int sourceId) {
+        return sources.get(sourceId).name;
+    }
+
+    /**
+     * This method obtains the number of channels of a source.
+     *
+     * @param sourceId The source id.
+     * @return The number of channels.
+     */
+    public int getSourceChannels(int sourceId) {
+        return sources.get(sourceId).channels;
+    }
+
+    /**
+     * This method checks whether a source exports location fixes, whose channels are indexed by
+     * the AndroidLocationSensor.CHANNEL_* constants.
+     *
+     * @param sourceId The source id.
+     * @return true, if the source is a location sensor; false, otherwise.
+     */
+    public boolean isLocationSource(int sourceId) {
+        return sources.get(sourceId).kind == SensorExportFormat.KIND_LOCATION;
+    }
+
+    /**
+     * This method finds a source by its name.
+     *
+     * @param name The source name.
+     * @return The source id; or -1, if no source with this name was described so far.
+     */
+    public int findSource(String name) {
+        for(Source s : sources)
+            if(s != null && s.name.equals(name))
+                return s.id;
+        return -1;
+    }
+
+    /**
+     * This method obtains the number of frames read from the channel.
+     *
+     * @return The number of frames.
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method reads the next frame. Source frames are registered; batch frames become the
+     * current payload, whose blocks are decoded by next().
+     *
+     * @return true, if a frame was read; false, if the stream ended at a frame boundary.
+     * @throws IOException If the channel could not be read or the frame is malformed.
+     */
+    private boolean readFrame() throws IOException {
+        header.clear();
+        if(!readFully(header, true))
+            return false;
+        header.flip();
+        if(header.getInt() != SensorExportFormat.MAGIC)
+            throw new IOException("Invalid frame magic.");
+        byte version = header.get();
+        if(version != SensorExportFormat.VERSION)
+            throw new IOException("Unsupported export format version " + version + ".");
+        int type = header.get();
+        int flags = header.get();
+        header.get();
+        int length = header.getInt();
+        int rawLength = header.getInt();
+        if(length < 0 || rawLength < 0 || length > SensorExportFormat.MAX_PAYLOAD_SIZE || rawLength > SensorExportFormat.MAX_PAYLOAD_SIZE)
+            throw new IOException("Invalid frame length.");
+        stored = ensureCapacity(stored, length);
+        stored.limit(length);
+        readFully(stored, false);
+        stored.flip();
+        ByteBuffer buf = stored;
+        if((flags & SensorExportFormat.FLAG_LZ4) != 0) {
+            if(decompressor == null)
+                decompressor = LZ4Factory.fastestJavaInstance().safeDecompressor();
+            payload = ensureCapacity(payload, rawLength);
+            try {
+                int n = decompressor.decompress(stored.array(), 0, length, payload.array(), 0, rawLength);
+                if(n != rawLength)
+                    throw new IOException("Invalid compressed frame length.");
+            } catch(RuntimeException e) {
+                throw new IOException("Malformed compressed frame.", e);
+            }
+            payload.limit(rawLength);
+            buf = payload;
+        }
+        frameCount++;
+        try {
+            if(type == SensorExportFormat.TYPE_SOURCE) {
+                readSource(buf);
+            } else if(type == SensorExportFormat.TYPE_BATCH) {
+                batch = buf;
+                blocksRemaining = (int) SensorExportFormat.getVarLong(buf);
+            }
+            // Frames of unknown types are skipped, so newer exporters can add them
+        } catch(BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed frame.", e);
+        }
+        return true;
+    }
+
+    /**
+     * This method registers the source described by a source frame.
+     *
+     * @param buf The frame payload.
+     */
+    private void readSource(ByteBuffer buf) {
+        int id = (int) SensorExportFormat.getVarLong(buf);
+        int kind = (int) SensorExportFormat.getVarLong(buf);
+        int channels = (int) SensorExportFormat.getVarLong(buf);
+        if(id < 0 || channels < 0 || channels > buf.remaining() / 8)
+            throw new IllegalArgumentException("Invalid source descriptor.");
+        double[] quanta = new double[channels];
+        for(int c = 0; c < channels; c++)
+            quanta[c] = Double.longBitsToDouble(buf.getLong());
+        byte[] name = new byte[(int) SensorExportFormat.getVarLong(buf)];
+        buf.get(name);
+        while(sources.size() <= id)
+            sources.add(null);
+        sources.set(id, new Source(id, kind, channels, quanta, new String(name, SensorExportFormat.UTF8)));
+    }
+
+    /**
+     * This method decodes the next block of the current batch frame into the record columns.
+     *
+     * @throws IOException If the block is malformed or refers to an unknown source.
+     */
+    private void decodeBlock() throws IOException {
+        blocksRemaining--;
+        try {
+            ByteBuffer buf = batch;
+            int id = (int) SensorExportFormat.getVarLong(buf);
+            Source source = id >= 0 && id < sources.size() ? sources.get(id) : null;
+            if(source == null)
+                throw new IOException("Unknown source " + id + ".");
+            long n = SensorExportFormat.getVarLong(buf);
+            // Each record takes at least one byte per column
+            if(n < 0 || n * (1 + source.channels) > buf.remaining())
+                throw new IOException("Invalid block length.");
+            int count = (int) n;
+            if(timestamps.length < count)
+                timestamps = new long[count];
+            if(values.length < count * source.channels)
+                values = new double[count * source.channels];
+            long prev = 0L;
+            for(int i = 0; i < count; i++) {
+                prev += SensorExportFormat.getZigZag(buf);
+                timestamps[i] = prev;
+            }
+            for(int c = 0; c < source.channels; c++) {
+                int base = c * count;
+                double quantum = source.quanta[c];
+                prev = 0L;
+                for(int i = 0; i < count; i++) {
+                    prev += SensorExportFormat.getZigZag(buf);
+                    values[base + i] = SensorExportFormat.dequantize(prev, quantum);
+                }
+            }
+            current = source;
+            recordCount = count;
+        } catch(BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Malformed batch block.", e);
+        }
+    }
+
+    /**
+     * This method fills a buffer from the channel.
+     *
+     * @param buf The buffer.
+     * @param allowEnd Indicates whether the end of the stream is accepted before the first byte.
+     * @return true, if the buffer was filled; false, if the stream ended before the first byte.
+     * @throws IOException If the channel could not be read or the stream ended within the buffer.
+     */
+    private boolean readFully(ByteBuffer buf, boolean allowEnd) throws IOException {
+        boolean first = true;
+        while(buf.hasRemaining()) {
+            if(channel.read(buf) < 0) {
+                if(allowEnd && first)
+                    return false;
+                throw new EOFException("The stream ended within a frame.");
+            }
+            first = first && buf.position() == 0;
+        }
+        return true;
+    }
+
+    /**
+     * This method obtains a buffer with at least the given capacity, cleared.
+     *
+     * @param buf The current buffer, or null.
+     * @param capacity The minimum capacity in bytes.
+     * @return The buffer.
+     */
+    private static ByteBuffer ensureCapacity(ByteBuffer buf, int capacity) {
+        if(buf == null || buf.capacity() < capacity)
+            buf = ByteBuffer.allocate(Math.max(capacity, 4096)).order(ByteOrder.LITTLE_ENDIAN);
+        buf.clear();
+        return buf;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The channel from which the frames are read.
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * The buffer of the frame header.
+     */
+    private final ByteBuffer header = ByteBuffer.allocate(SensorExportFormat.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The buffer of the payload as stored in the frame.
+     */
+    private ByteBuffer stored;
+
+    /**
+     * The buffer of the decompressed payload.
+     */
+    private ByteBuffer payload;
+
+    /**
+     * The LZ4 decompressor, created with the first compressed frame.
+     */
+    private LZ4SafeDecompressor decompressor;
+
+    /**
+     * The sources described so far, indexed by id.
+     */
+    private final List<Source> sources = new ArrayList<>();
+
+    /**
+     * The payload of the current batch frame.
+     */
+    private ByteBuffer batch;
+
+    /**
+     * The number of blocks of the current batch frame not decoded yet.
+     */
+    private int blocksRemaining;
+
+    /**
+     * The source of the current block.
+     */
+    private Source current;
+
+    /**
+     * The timestamps of the current block.
+     */
+    private long[] timestamps = new long[0];
+
+    /**
+     * The values of the current block, channel by channel.
+     */
+    private double[] values = new double[0];
+
+    /**
+     * The number of records of the current block.
+     */
+    private int recordCount;
+
+    /**
+     * The index of the current record in the current block.
+     */
+    private int recordIndex = -1;
+
+    /**
+     * The number of frames read.
+     */
+    private long frameCount;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The descriptor of a source.
+     */
+    private static final class Source {
+
+        /**
+         * This constructor builds a new Source.
+         *
+         * @param id The source id.
+         * @param kind The source kind.
+         * @param channels The number of channels.
+         * @param quanta The quantization step of each channel.
+         * @param name The source name.
+         */
+        Source(int id, int kind, int channels, double[] quanta, String name) {
+            this.id = id;
+            this.kind = kind;
+            this.channels = channels;
+            this.quanta = quanta;
+            this.name = name;
+        }
+
+        /**
+         * The source id.
+         */
+        final int id;
+
+        /**
+         * The source kind.
+         */
+        final int kind;
+
+        /**
+         * The number of channels.
+         */
+        final int channels;
+
+        /**
+         * The quantization step of each channel.
+         */
+        final double[] quanta;
+
+        /**
+         * The source name.
+         */
+        final String name;
+    }
+}
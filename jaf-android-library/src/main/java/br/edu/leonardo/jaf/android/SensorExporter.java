@@ -0,0 +1,697 @@
+package br.edu.leonardo.jaf.android;
+
+import android.location.Location;
+import android.os.Build;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * An exporter that forwards the readings of a set of sensors to a remote consumer through a byte
+ * channel (a socket, a pipe or a file), in the compact format described in SensorExportFormat.
+ * Readings and location fixes are quantized by the callback threads into preallocated columnar
+ * batches, one per source, and a background thread encodes and writes a batch frame when the
+ * oldest buffered record reaches the maximum delay or a source fills its batch. The callback
+ * threads never wait for the channel: the batches are double-buffered, and records that arrive
+ * while both buffers of a source are full are dropped and counted.
+ */
+public class SensorExporter {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorExporter.
+     *
+     * @param channel The channel that receives the frames. It must be a blocking channel, and it is
+     *                not closed by the exporter.
+     * @param maxDelay The maximum time in milliseconds a record waits before being written.
+     * @param maxRecords The maximum number of records of a source in a batch.
+     * @param compress Indicates whether the batch frames are compressed with LZ4. A frame is only
+     *                 sent compressed when that makes it smaller.
+     */
+    public SensorExporter(WritableByteChannel channel, long maxDelay, int maxRecords, boolean compress) {
+        if(maxDelay <= 0 || maxRecords <= 0)
+            throw new IllegalArgumentException("The maximum delay and the maximum number of records must be positive.");
+        this.channel = channel;
+        this.maxDelayNanos = maxDelay * 1000000L;
+        this.maxRecords = maxRecords;
+        this.compressor = compress ? LZ4Factory.fastestJavaInstance().fastCompressor() : null;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method starts exporting the readings of a source.
+     *
+     * @param source The source to be exported.
+     * @param name The source name sent to the consumer.
+     * @param quantum The quantization step of the values of the source, in their unit. Values are
+     *                restored by the consumer with an error of at most half the step.
+     * @return The source id used in the stream.
+     */
+    public synchronized int addSource(final SensorReadingSource source, String name, double quantum) {
+        double[] quanta = new double[source.getChannelCount()];
+        Arrays.fill(quanta, quantum);
+        final ExportSource exportSource = registerSource(SensorExportFormat.KIND_READING, quanta, name);
+        final SensorReadingListener listener = new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource src, SensorReading reading) {
+                record(exportSource, reading.getTimestamp(), reading.getValues(), null, reading.getSize());
+            }
+        };
+        source.addReadingListener(listener);
+        detachers.add(new Runnable() {
+            @Override
+            public void run() {
+                source.removeReadingListener(listener);
+            }
+        });
+        return exportSource.id;
+    }
+
+    /**
+     * This method starts exporting the fixes of a location sensor. The channels of a location
+     * source are indexed by the AndroidLocationSensor.CHANNEL_* constants.
+     *
+     * @param sensor The location sensor to be exported.
+     * @param name The source name sent to the consumer.
+     * @return The source id used in the stream.
+     */
+    public synchronized int addLocationSource(final AndroidLocationSensor sensor, String name) {
+        final ExportSource exportSource = registerSource(SensorExportFormat.KIND_LOCATION, SensorExportFormat.LOCATION_QUANTA, name);
+        final double[] values = new double[AndroidLocationSensor.CHANNEL_COUNT];
+        final LocationFixListener listener = new LocationFixListener() {
+            @Override
+            public void onLocationFix(AndroidLocationSensor s, Location loc) {
+                synchronized(values) {
+                    values[AndroidLocationSensor.CHANNEL_LATITUDE] = loc.getLatitude();
+                    values[AndroidLocationSensor.CHANNEL_LONGITUDE] = loc.getLongitude();
+                    values[AndroidLocationSensor.CHANNEL_ALTITUDE] = loc.hasAltitude() ? loc.getAltitude() : Double.NaN;
+                    values[AndroidLocationSensor.CHANNEL_ACCURACY] = loc.hasAccuracy() ? loc.getAccuracy() : Double.NaN;
+                    values[AndroidLocationSensor.CHANNEL_SPEED] = loc.hasSpeed() ? loc.getSpeed() : Double.NaN;
+                    values[AndroidLocationSensor.CHANNEL_BEARING] = loc.hasBearing() ? loc.getBearing() : Double.NaN;
+                    long timestamp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? loc.getElapsedRealtimeNanos() : loc.getTime() * 1000000L;
+                    record(exportSource, timestamp, null, values, values.length);
+                }
+            }
+        };
+        sensor.addLocationFixListener(listener);
+        detachers.add(new Runnable() {
+            @Override
+            public void run() {
+                sensor.removeLocationFixListener(listener);
+            }
+        });
+        return exportSource.id;
+    }
+
+    /**
+     * This method adds a record of a source to the current batch. It never waits for the channel:
+     * if the batch of the source is full and the previous one is still being written, the record is
+     * dropped and counted.
+     *
+     * @param sourceId The id of the source that produced the values.
+     * @param timestamp The time in nanoseconds of the values.
+     * @param values The channel values.
+     * @param count The number of channels in the values array.
+     * @return true, if the record was added; false, if it was dropped.
+     */
+    public boolean record(int sourceId, long timestamp, float[] values, int count) {
+        ExportSource source;
+        synchronized(lock) {
+            source = sourceId >= 0 && sourceId < sources.size() ? sources.get(sourceId) : null;
+        }
+        if(source == null)
+            throw new IllegalArgumentException("Unknown source " + sourceId + ".");
+        return record(source, timestamp, values, null, count);
+    }
+
+    /**
+     * This method starts the thread that writes the batches.
+     */
+    public synchronized void start() {
+        if(writer != null)
+            return;
+        synchronized(lock) {
+            running = true;
+        }
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "jaf-exporter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * This method stops exporting. The sources are detached and the buffered records are written
+     * before this method returns.
+     *
+     * @throws IOException If a frame could not be written to the channel.
+     */
+    public synchronized void stop() throws IOException {
+        for(Runnable r : detachers)
+            r.run();
+        detachers.clear();
+        Thread t = writer;
+        if(t == null)
+            return;
+        synchronized(lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            t.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        IOException error = writeError;
+        writeError = null;
+        if(error != null)
+            throw error;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of records written to the channel.
+     *
+     * @return The number of exported records.
+     */
+    public long getExportedCount() {
+        return exported;
+    }
+
+    /**
+     * This method obtains the number of records dropped because the batches of their source were
+     * full.
+     *
+     * @return The number of dropped records.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * This method obtains the number of frames written to the channel.
+     *
+     * @return The number of frames.
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * This method obtains the number of bytes written to the channel, including the frame
+     * headers.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method registers a source. Its descriptor is written before its first batch.
+     *
+     * @param kind The source kind.
+     * @param quanta The quantization step of each channel.
+     * @param name The source name.
+     * @return The source.
+     */
+    private ExportSource registerSource(int kind, double[] quanta, String name) {
+        synchronized(lock) {
+            ExportSource source = new ExportSource(sources.size(), kind, quanta, name, maxRecords);
+            sources.add(source);
+            return source;
+        }
+    }
+
+    /**
+     * This method quantizes a record into the current batch of its source.
+     *
+     * @param source The source.
+     * @param timestamp The time in nanoseconds of the values.
+     * @param floatValues The channel values, or null if they are given as doubles.
+     * @param doubleValues The channel values, or null if they are given as floats.
+     * @param count The number of channels in the values array.
+     * @return true, if the record was added; false, if it was dropped.
+     */
+    private boolean record(ExportSource source, long timestamp, float[] floatValues, double[] doubleValues, int count) {
+        synchronized(lock) {
+            if(source.count == maxRecords) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            int i = source.count;
+            int n = Math.min(count, source.channels);
+            source.timestamps[i] = timestamp;
+            for(int c = 0; c < source.channels; c++) {
+                double v = c >= n ? Double.NaN : floatValues != null ? floatValues[c] : doubleValues[c];
+                source.values[c * maxRecords + i] = SensorExportFormat.quantize(v, source.quanta[c]);
+            }
+            source.count++;
+            boolean first = pendingRecords++ == 0;
+            if(first)
+                batchStart = System.nanoTime();
+            if(source.count == maxRecords)
+                batchFull = true;
+            if(first || batchFull)
+                lock.notifyAll();
+            return true;
+        }
+    }
+
+    /**
+     * This method is the body of the writer thread. It waits until the current batch must be
+     * written, takes it from the callback threads and writes it.
+     */
+    private void writeLoop() {
+        List<ExportSource> batch = new ArrayList<>();
+        List<ExportSource> undescribed = new ArrayList<>();
+        while(true) {
+            boolean last;
+            synchronized(lock) {
+                while(running && !isBatchReady()) {
+                    try {
+                        if(pendingRecords == 0)
+                            lock.wait();
+                        else
+                            lock.wait(Math.max(1L, (batchStart + maxDelayNanos - System.nanoTime() + 999999L) / 1000000L));
+                    } catch(InterruptedException e) {
+                        running = false;
+                    }
+                }
+                last = !running;
+                batch.clear();
+                undescribed.clear();
+                for(ExportSource s : sources) {
+                    if(!s.described && s.count > 0) {
+                        s.described = true;
+                        undescribed.add(s);
+                    }
+                    if(s.count > 0) {
+                        s.swap();
+                        batch.add(s);
+                    }
+                }
+                pendingRecords = 0;
+                batchFull = false;
+            }
+            try {
+                for(ExportSource s : undescribed)
+                    writeSource(s);
+                if(!batch.isEmpty())
+                    writeBatch(batch);
+            } catch(IOException e) {
+                writeError = e;
+                synchronized(lock) {
+                    running = false;
+                }
+                return;
+            }
+            if(last)
+                return;
+        }
+    }
+
+    /**
+     * This method checks whether the current batch must be written. It must be called with the
+     * lock held.
+     *
+     * @return true, if a source filled its batch or the oldest record reached the maximum delay;
+     *         false, otherwise.
+     */
+    private boolean isBatchReady() {
+        return pendingRecords > 0 && (batchFull || System.nanoTime() - batchStart >= maxDelayNanos);
+    }
+
+    /**
+     * This method writes the descriptor frame of a source.
+     *
+     * @param source The source.
+     * @throws IOException If the frame could not be written.
+     */
+    private void writeSource(ExportSource source) throws IOException {
+        byte[] name = source.name.getBytes(SensorExportFormat.UTF8);
+        ByteBuffer buf = ensureOutput(SensorExportFormat.HEADER_SIZE + 4 * SensorExportFormat.MAX_VARINT_SIZE + 8 * source.channels + name.length);
+        buf.position(SensorExportFormat.HEADER_SIZE);
+        SensorExportFormat.putVarLong(buf, source.id);
+        SensorExportFormat.putVarLong(buf, source.kind);
+        SensorExportFormat.putVarLong(buf, source.channels);
+        for(double q : source.quanta)
+            buf.putLong(Double.doubleToLongBits(q));
+        SensorExportFormat.putVarLong(buf, name.length);
+        buf.put(name);
+        int length = buf.position() - SensorExportFormat.HEADER_SIZE;
+        buf.position(0);
+        SensorExportFormat.putHeader(buf, SensorExportFormat.TYPE_SOURCE, 0, length, length);
+        writeFrame(buf, SensorExportFormat.HEADER_SIZE + length);
+    }
+
+    /**
+     * This method encodes the taken batches of the given sources into a batch frame and writes
+     * it.
+     *
+     * @param batch The sources with records in the batch.
+     * @throws IOException If the frame could not be written.
+     */
+    private void writeBatch(List<ExportSource> batch) throws IOException {
+        int maxSize = SensorExportFormat.MAX_VARINT_SIZE;
+        int records = 0;
+        for(ExportSource s : batch) {
+            maxSize += SensorExportFormat.maxBlockSize(s.backCount, s.channels);
+            records += s.backCount;
+        }
+        ByteBuffer raw;
+        if(compressor != null) {
+            if(rawBuffer == null || rawBuffer.capacity() < maxSize)
+                rawBuffer = ByteBuffer.allocate(maxSize).order(ByteOrder.LITTLE_ENDIAN);
+            raw = rawBuffer;
+            raw.clear();
+        } else {
+            raw = ensureOutput(SensorExportFormat.HEADER_SIZE + maxSize);
+            raw.position(SensorExportFormat.HEADER_SIZE);
+        }
+        int start = raw.position();
+        SensorExportFormat.putVarLong(raw, batch.size());
+        for(ExportSource s : batch)
+            encodeBlock(raw, s);
+        int rawLength = raw.position() - start;
+
+        ByteBuffer out;
+        int flags = 0;
+        int length = rawLength;
+        if(compressor != null) {
+            out = ensureOutput(SensorExportFormat.HEADER_SIZE + Math.max(rawLength, compressor.maxCompressedLength(rawLength)));
+            int compressed = compressor.compress(raw.array(), 0, rawLength, out.array(), SensorExportFormat.HEADER_SIZE, out.capacity() - SensorExportFormat.HEADER_SIZE);
+            if(compressed < rawLength) {
+                flags = SensorExportFormat.FLAG_LZ4;
+                length = compressed;
+            } else {
+                System.arraycopy(raw.array(), 0, out.array(), SensorExportFormat.HEADER_SIZE, rawLength);
+            }
+        } else {
+            out = raw;
+        }
+        out.position(0);
+        SensorExportFormat.putHeader(out, SensorExportFormat.TYPE_BATCH, flags, length, rawLength);
+        writeFrame(out, SensorExportFormat.HEADER_SIZE + length);
+        exported += records;
+    }
+
+    /**
+     * This method encodes the taken batch of a source as a columnar block: the timestamps, then
+     * each channel, as zig-zag varint deltas of the previous record.
+     *
+     * @param buf The buffer.
+     * @param source The source.
+     */
+    private void encodeBlock(ByteBuffer buf, ExportSource source) {
+        int n = source.backCount;
+        SensorExportFormat.putVarLong(buf, source.id);
+        SensorExportFormat.putVarLong(buf, n);
+        long[] timestamps = source.backTimestamps;
+        long prev = 0L;
+        for(int i = 0; i < n; i++) {
+            SensorExportFormat.putZigZag(buf, timestamps[i] - prev);
+            prev = timestamps[i];
+        }
+        long[] values = source.backValues;
+        for(int c = 0; c < source.channels; c++) {
+            int base = c * maxRecords;
+            prev = 0L;
+            for(int i = 0; i < n; i++) {
+                long q = values[base + i];
+                SensorExportFormat.putZigZag(buf, q - prev);
+                prev = q;
+            }
+        }
+    }
+
+    /**
+     * This method obtains the output buffer with at least the given capacity, cleared.
+     *
+     * @param capacity The minimum capacity in bytes.
+     * @return The output buffer.
+     */
+    private ByteBuffer ensureOutput(int capacity) {
+        if(outBuffer == null || outBuffer.capacity() < capacity)
+            outBuffer = ByteBuffer.allocate(Math.max(capacity, MIN_BUFFER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+        outBuffer.clear();
+        return outBuffer;
+    }
+
+    /**
+     * This method writes a frame to the channel.
+     *
+     * @param buf The buffer that holds the frame from its beginning.
+     * @param length The frame length in bytes.
+     * @throws IOException If the frame could not be written.
+     */
+    private void writeFrame(ByteBuffer buf, int length) throws IOException {
+        buf.position(0);
+        buf.limit(length);
+        while(buf.hasRemaining())
+            channel.write(buf);
+        frames++;
+        bytesWritten += length;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The minimum size of the output buffer.
+     */
+    private static final int MIN_BUFFER_SIZE = 4096;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The channel that receives the frames.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The maximum time in nanoseconds a record waits before being written.
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * The maximum number of records of a source in a batch.
+     */
+    private final int maxRecords;
+
+    /**
+     * The LZ4 compressor, or null if the frames are not compressed.
+     */
+    private final LZ4Compressor compressor;
+
+    /**
+     * The lock that guards the sources and the current batch.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The exported sources, indexed by id.
+     */
+    private final List<ExportSource> sources = new ArrayList<>();
+
+    /**
+     * The actions that detach the listeners registered in the sources.
+     */
+    private final List<Runnable> detachers = new ArrayList<>();
+
+    /**
+     * The number of records in the current batch.
+     */
+    private int pendingRecords;
+
+    /**
+     * The time in nanoseconds (System.nanoTime) at which the first record of the current batch was
+     * added.
+     */
+    private long batchStart;
+
+    /**
+     * Indicates whether a source filled its current batch.
+     */
+    private boolean batchFull;
+
+    /**
+     * Indicates whether the writer thread must keep running.
+     */
+    private boolean running;
+
+    /**
+     * The writer thread.
+     */
+    private Thread writer;
+
+    /**
+     * The buffer that holds the frames being written, used only by the writer thread.
+     */
+    private ByteBuffer outBuffer;
+
+    /**
+     * The buffer that holds the payloads before compression, used only by the writer thread.
+     */
+    private ByteBuffer rawBuffer;
+
+    /**
+     * The error that stopped the writer thread, or null.
+     */
+    private volatile IOException writeError;
+
+    /**
+     * The number of records written to the channel.
+     */
+    private volatile long exported;
+
+    /**
+     * The number of frames written to the channel.
+     */
+    private volatile long frames;
+
+    /**
+     * The number of bytes written to the channel.
+     */
+    private volatile long bytesWritten;
+
+    /**
+     * The number of dropped records.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * An exported source and its two batches: the current one, filled by the callback threads, and
+     * the taken one, encoded by the writer thread.
+     */
+    private static final class ExportSource {
+
+        /**
+         * This constructor builds a new ExportSource.
+         *
+         * @param id The source id.
+         * @param kind The source kind.
+         * @param quanta The quantization step of each channel.
+         * @param name The source name.
+         * @param capacity The maximum number of records in a batch.
+         */
+        ExportSource(int id, int kind, double[] quanta, String name, int capacity) {
+            this.id = id;
+            this.kind = kind;
+            this.channels = quanta.length;
+            this.quanta = quanta.clone();
+            this.name = name;
+            this.timestamps = new long[capacity];
+            this.values = new long[capacity * channels];
+            this.backTimestamps = new long[capacity];
+            this.backValues = new long[capacity * channels];
+        }
+
+        /**
+         * This method takes the current batch for the writer thread and starts an empty one.
+         */
+        void swap() {
+            long[] t = backTimestamps;
+            backTimestamps = timestamps;
+            timestamps = t;
+            long[] v = backValues;
+            backValues = values;
+            values = v;
+            backCount = count;
+            count = 0;
+        }
+
+        /**
+         * The source id.
+         */
+        final int id;
+
+        /**
+         * The source kind.
+         */
+        final int kind;
+
+        /**
+         * The number of channels.
+         */
+        final int channels;
+
+        /**
+         * The quantization step of each channel.
+         */
+        final double[] quanta;
+
+        /**
+         * The source name.
+         */
+        final String name;
+
+        /**
+         * The timestamps of the current batch.
+         */
+        long[] timestamps;
+
+        /**
+         * The quantized values of the current batch, channel by channel.
+         */
+        long[] values;
+
+        /**
+         * The number of records of the current batch.
+         */
+        int count;
+
+        /**
+         * The timestamps of the taken batch.
+         */
+        long[] backTimestamps;
+
+        /**
+         * The quantized values of the taken batch, channel by channel.
+         */
+        long[] backValues;
+
+        /**
+         * The number of records of the taken batch.
+         */
+        int backCount;
+
+        /**
+         * Indicates whether the descriptor of the source was written.
+         */
+        boolean described;
+    }
+}
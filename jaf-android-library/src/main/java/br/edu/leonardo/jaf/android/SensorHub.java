@@ -0,0 +1,636 @@
+package br.edu.leonardo.jaf.android;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import br.edu.leonardo.jaf.sensors.SensorException;
+
+/**
+ * A hub that receives the events of many AndroidDeviceSensor objects in dedicated background
+ * threads. Each hub thread registers a single listener in the Android system and dispatches the
+ * received events to the sensors through a table indexed by the sensor type, so that sensor
+ * processing does not compete with the UI work of the main thread. An Android sensor is
+ * registered only once in a hub thread, at the fastest rate requested by the sensors attached to
+ * it, and its events are delivered to all of them. The registration is reference counted: it is
+ * renegotiated whenever a sensor is attached or detached, and released when the last sensor that
+ * uses it is detached.
+ */
+public class SensorHub {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorHub with a single background thread.
+     *
+     * @param context The Android application context.
+     */
+    public SensorHub(Context context) {
+        this(context, 1);
+    }
+
+    /**
+     * This constructor builds a new SensorHub with the given number of background threads, which
+     * run at DEFAULT_THREAD_PRIORITY. The sensors are distributed among the threads according to
+     * their type.
+     *
+     * @param context The Android application context.
+     * @param threadCount The number of background threads.
+     */
+    public SensorHub(Context context, int threadCount) {
+        this(context, threadCount, DEFAULT_THREAD_PRIORITY);
+    }
+
+    /**
+     * This constructor builds a new SensorHub with the given number of background threads, which
+     * run at the given Linux priority. Priorities more favorable than the default one make the
+     * sensor processing preempt other work of the application, and the display-related
+     * priorities (such as Process.THREAD_PRIORITY_URGENT_DISPLAY) make it compete with the
+     * rendering of the UI, so they should be reserved to latency-critical processing.
+     *
+     * @param context The Android application context.
+     * @param threadCount The number of background threads.
+     * @param threadPriority The priority of the threads (see the THREAD_PRIORITY_* constants in the
+     *                       Android Process class).
+     */
+    public SensorHub(Context context, int threadCount, int threadPriority) {
+        if(threadCount <= 0)
+            throw new IllegalArgumentException("The number of threads must be positive.");
+        this.sensorMgr = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        this.threads = new HandlerThread[threadCount];
+        this.dispatchers = new Dispatcher[threadCount];
+        for(int i = 0; i < threadCount; i++) {
+            threads[i] = new HandlerThread("jaf-sensor-hub-" + i, threadPriority);
+            threads[i].start();
+            dispatchers[i] = newDispatcher(sensorMgr, new Handler(threads[i].getLooper()));
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorHub without background threads, which delivers the events
+     * in the main thread.
+     *
+     * @param sensorMgr The Android sensor manager.
+     */
+    private SensorHub(SensorManager sensorMgr) {
+        this.sensorMgr = sensorMgr;
+        this.threads = new HandlerThread[0];
+        this.dispatchers = new Dispatcher[] { newDispatcher(sensorMgr, null) };
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the process-wide hub that delivers events in the main thread. It is used
+     * by AndroidDeviceSensorFactory when no other hub is defined, so that sensors of the same type
+     * created for different agents share a single registration in the Android system.
+     *
+     * @param context The Android application context.
+     * @return The SensorHub reference.
+     */
+    public static synchronized SensorHub getMainThreadHub(Context context) {
+        if(mainThreadHub == null)
+            mainThreadHub = new SensorHub((SensorManager) context.getApplicationContext().getSystemService(Context.SENSOR_SERVICE));
+        return mainThreadHub;
+    }
+
+    /**
+     * This method attaches a sensor to this hub, so that its events are delivered by a hub thread.
+     *
+     * @param sensor The sensor to be attached.
+     * @throws SensorException If the Android sensor could not be registered.
+     */
+    public void attach(AndroidDeviceSensor sensor) throws SensorException {
+        dispatcherFor(sensor).attach(sensor);
+    }
+
+    /**
+     * This method detaches a sensor from this hub. The Android sensor is unregistered when no other
+     * attached sensor uses it.
+     *
+     * @param sensor The sensor to be detached.
+     */
+    public void detach(AndroidDeviceSensor sensor) {
+        dispatcherFor(sensor).detach(sensor);
+    }
+
+    /**
+     * This method obtains the number of attached sensors that share the registration of an Android
+     * sensor in this hub.
+     *
+     * @param hw The Android sensor.
+     * @return The number of subscribers of the Android sensor.
+     */
+    public int getSubscriberCount(android.hardware.Sensor hw) {
+        return dispatcherFor(hw).getSubscriberCount(hw);
+    }
+
+    /**
+     * This method obtains the sampling period at which an Android sensor is currently registered by
+     * this hub, which is the fastest period requested by its subscribers.
+     *
+     * @param hw The Android sensor.
+     * @return The sampling period in microseconds; or -1, if the Android sensor is not registered.
+     */
+    public int getEffectiveSamplingPeriod(android.hardware.Sensor hw) {
+        long rate = dispatcherFor(hw).getEffectiveRate(hw);
+        return rate == NO_RATE ? -1 : (int) (rate >>> 32);
+    }
+
+    /**
+     * This method stops the hub threads. The sensors attached to the hub stop receiving events.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    public void shutdown() {
+        for(Dispatcher d : dispatchers)
+            d.detachAll();
+        for(HandlerThread t : threads)
+            t.quitSafely();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method asks the Android system to flush the hardware FIFO of the sensors registered by
+     * the hub thread of an attached sensor. The flush is requested for the listener of that thread,
+     * which is the one registered in the Android system, so the sensors that share it are flushed
+     * too; each of them is notified through onFlushCompleted() when its flushed events have been
+     * delivered.
+     *
+     * @param sensor The attached sensor.
+     * @return true, if the flush was successfully requested; false, otherwise.
+     */
+    boolean flush(AndroidDeviceSensor sensor) {
+        return dispatcherFor(sensor).flush();
+    }
+
+    /**
+     * This method obtains the handler of the hub thread that delivers the events of an attached
+     * sensor.
+     *
+     * @param sensor The attached sensor.
+     * @return The handler reference; or null, if the events are delivered in the main thread.
+     */
+    Handler getHandler(AndroidDeviceSensor sensor) {
+        return dispatcherFor(sensor).handler;
+    }
+
+    /**
+     * This method builds a dispatcher that is notified of completed flushes when the Android
+     * system supports it.
+     *
+     * @param sensorMgr The Android sensor manager.
+     * @param handler The handler of the thread that receives the events, or null to receive them
+     *                in the main thread.
+     * @return The dispatcher reference.
+     */
+    static Dispatcher newDispatcher(SensorManager sensorMgr, Handler handler) {
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+            return new FlushAwareDispatcher(sensorMgr, handler);
+        return new Dispatcher(sensorMgr, handler);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of background threads of this hub.
+     *
+     * @return The number of threads.
+     */
+    public int getThreadCount() {
+        return threads.length;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the dispatcher responsible for the type of the given sensor.
+     *
+     * @param sensor The sensor.
+     * @return The dispatcher reference.
+     */
+    private Dispatcher dispatcherFor(AndroidDeviceSensor sensor) {
+        return dispatcherFor(sensor.getSensor());
+    }
+
+    /**
+     * This method obtains the dispatcher responsible for the type of the given Android sensor.
+     *
+     * @param hw The Android sensor.
+     * @return The dispatcher reference.
+     */
+    private Dispatcher dispatcherFor(android.hardware.Sensor hw) {
+        return dispatchers[(hw.getType() & Integer.MAX_VALUE) % dispatchers.length];
+    }
+
+    /**
+     * This method converts a sampling period passed to the Android system to microseconds. Besides
+     * a value in microseconds, the Android system accepts the SENSOR_DELAY_* constants.
+     *
+     * @param samplingPeriod The sampling period.
+     * @return The sampling period in microseconds.
+     */
+    static int toMicros(int samplingPeriod) {
+        switch(samplingPeriod) {
+            case SensorManager.SENSOR_DELAY_FASTEST: return 0;
+            case SensorManager.SENSOR_DELAY_GAME: return 20000;
+            case SensorManager.SENSOR_DELAY_UI: return 66667;
+            case SensorManager.SENSOR_DELAY_NORMAL: return 200000;
+            default: return samplingPeriod;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The sensor manager obtained from the application context given to this object.
+     */
+    private final SensorManager sensorMgr;
+
+    /**
+     * The background threads of this hub.
+     */
+    private final HandlerThread[] threads;
+
+    /**
+     * The event dispatchers, one per background thread.
+     */
+    private final Dispatcher[] dispatchers;
+
+    /**
+     * The process-wide hub that delivers events in the main thread.
+     */
+    private static SensorHub mainThreadHub;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The listener registered in the Android system by a hub thread. It keeps, for each sensor
+     * type, the array of sensors attached to it and dispatches the events to them.
+     */
+    static class Dispatcher implements SensorEventListener {
+
+        /**
+         * This constructor builds a new Dispatcher.
+         *
+         * @param sensorMgr The Android sensor manager.
+         * @param handler The handler of the thread that receives the events, or null to receive
+         *                them in the main thread.
+         */
+        Dispatcher(SensorManager sensorMgr, Handler handler) {
+            this.sensorMgr = sensorMgr;
+            this.handler = handler;
+        }
+
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            AndroidDeviceSensor[] subscribers = lookup(event.sensor.getType());
+            for(AndroidDeviceSensor s : subscribers)
+                if(s.getSensor() == event.sensor && s.acceptSharedEvent(event.timestamp))
+                    s.onSensorChanged(event);
+        }
+
+        @Override
+        public void onAccuracyChanged(android.hardware.Sensor sensor, int accuracy) {
+            AndroidDeviceSensor[] subscribers = lookup(sensor.getType());
+            for(AndroidDeviceSensor s : subscribers)
+                if(s.getSensor() == sensor)
+                    s.onAccuracyChanged(sensor, accuracy);
+        }
+
+        /**
+         * This method attaches a sensor to this dispatcher. The Android sensor is registered if it
+         * is not registered yet, or registered again if the new sensor changes the effective rate
+         * requested by the attached sensors.
+         *
+         * @param sensor The sensor to be attached.
+         * @throws SensorException If the Android sensor could not be registered.
+         */
+        synchronized void attach(AndroidDeviceSensor sensor) throws SensorException {
+            android.hardware.Sensor hw = sensor.getSensor();
+            AndroidDeviceSensor[] current = lookup(hw.getType());
+            for(AndroidDeviceSensor s : current)
+                if(s == sensor)
+                    return;
+            AndroidDeviceSensor[] updated = new AndroidDeviceSensor[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = sensor;
+            if(!renegotiate(hw, current, updated))
+                throw new SensorException(sensor, "The sensor is not supported or it is not successfully enabled.");
+            store(hw.getType(), updated);
+            publishSharedPeriod(hw, updated);
+        }
+
+        /**
+         * This method detaches a sensor from this dispatcher. The Android sensor is unregistered if
+         * no other attached sensor uses it, or registered again at the effective rate requested by
+         * the remaining sensors.
+         *
+         * @param sensor The sensor to be detached.
+         */
+        synchronized void detach(AndroidDeviceSensor sensor) {
+            android.hardware.Sensor hw = sensor.getSensor();
+            AndroidDeviceSensor[] current = lookup(hw.getType());
+            int index = -1;
+            for(int i = 0; i < current.length && index < 0; i++)
+                if(current[i] == sensor)
+                    index = i;
+            if(index < 0)
+                return;
+            AndroidDeviceSensor[] updated = new AndroidDeviceSensor[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            store(hw.getType(), updated);
+            renegotiate(hw, current, updated);
+            sensor.setSharedSamplingPeriod(-1);
+            publishSharedPeriod(hw, updated);
+        }
+
+        /**
+         * This method obtains the number of attached sensors that use an Android sensor.
+         *
+         * @param hw The Android sensor.
+         * @return The number of subscribers of the Android sensor.
+         */
+        int getSubscriberCount(android.hardware.Sensor hw) {
+            int count = 0;
+            for(AndroidDeviceSensor s : lookup(hw.getType()))
+                if(s.getSensor() == hw)
+                    count++;
+            return count;
+        }
+
+        /**
+         * This method obtains the effective rate at which an Android sensor is registered.
+         *
+         * @param hw The Android sensor.
+         * @return The effective rate (see {@link #effectiveRate}).
+         */
+        long getEffectiveRate(android.hardware.Sensor hw) {
+            return effectiveRate(hw, lookup(hw.getType()));
+        }
+
+        /**
+         * This method asks the Android system to flush the hardware FIFO of the sensors registered
+         * by this dispatcher.
+         *
+         * @return true, if the flush was successfully requested; false, otherwise.
+         */
+        @TargetApi(Build.VERSION_CODES.KITKAT)
+        boolean flush() {
+            return sensorMgr.flush(this);
+        }
+
+        /**
+         * This method notifies the sensors attached to an Android sensor that a flush of its
+         * hardware FIFO has completed.
+         *
+         * @param hw The Android sensor.
+         */
+        void dispatchFlushCompleted(android.hardware.Sensor hw) {
+            AndroidDeviceSensor[] subscribers = lookup(hw.getType());
+            for(AndroidDeviceSensor s : subscribers)
+                if(s.getSensor() == hw)
+                    s.onFlushCompleted();
+        }
+
+        /**
+         * This method detaches all sensors from this dispatcher.
+         */
+        synchronized void detachAll() {
+            sensorMgr.unregisterListener(this);
+            for(AndroidDeviceSensor[] slot : table)
+                if(slot != null)
+                    for(AndroidDeviceSensor s : slot)
+                        s.setSharedSamplingPeriod(-1);
+            for(AndroidDeviceSensor[] slot : extraSlots)
+                for(AndroidDeviceSensor s : slot)
+                    s.setSharedSamplingPeriod(-1);
+            table = new AndroidDeviceSensor[TABLE_SIZE][];
+            extraTypes = new int[0];
+            extraSlots = new AndroidDeviceSensor[0][];
+        }
+
+        /**
+         * This method registers the Android sensor again if the effective rate requested by its
+         * subscribers changed from one array of attached sensors to another. If the new
+         * registration fails, the previous one is restored.
+         *
+         * @param hw The Android sensor.
+         * @param before The attached sensors before the change.
+         * @param after The attached sensors after the change.
+         * @return true, if the Android sensor is registered at the new effective rate (or
+         *         unregistered, if it has no subscribers); false, otherwise.
+         */
+        @TargetApi(Build.VERSION_CODES.KITKAT)
+        private boolean renegotiate(android.hardware.Sensor hw, AndroidDeviceSensor[] before, AndroidDeviceSensor[] after) {
+            long oldRate = effectiveRate(hw, before);
+            long newRate = effectiveRate(hw, after);
+            if(oldRate == newRate)
+                return true;
+            if(oldRate != NO_RATE)
+                sensorMgr.unregisterListener(this, hw);
+            if(newRate == NO_RATE)
+                return true;
+            if(sensorMgr.registerListener(this, hw, (int) (newRate >>> 32), (int) newRate, handler))
+                return true;
+            if(oldRate != NO_RATE)
+                sensorMgr.registerListener(this, hw, (int) (oldRate >>> 32), (int) oldRate, handler);
+            return false;
+        }
+
+        /**
+         * This method informs the sensors attached to an Android sensor of the effective sampling
+         * period of its registration.
+         *
+         * @param hw The Android sensor.
+         * @param subscribers The attached sensors.
+         */
+        private static void publishSharedPeriod(android.hardware.Sensor hw, AndroidDeviceSensor[] subscribers) {
+            long rate = effectiveRate(hw, subscribers);
+            int period = rate == NO_RATE ? -1 : (int) (rate >>> 32);
+            for(AndroidDeviceSensor s : subscribers)
+                if(s.getSensor() == hw)
+                    s.setSharedSamplingPeriod(period);
+        }
+
+        /**
+         * This method computes the effective rate of an Android sensor, which is the fastest
+         * sampling period and the shortest report latency requested by its subscribers.
+         *
+         * @param hw The Android sensor.
+         * @param subscribers The attached sensors.
+         * @return The sampling period in microseconds in the high 32 bits and the report latency in
+         *         the low 32 bits; or NO_RATE, if the Android sensor has no subscribers.
+         */
+        private static long effectiveRate(android.hardware.Sensor hw, AndroidDeviceSensor[] subscribers) {
+            int period = Integer.MAX_VALUE;
+            int latency = Integer.MAX_VALUE;
+            boolean found = false;
+            for(AndroidDeviceSensor s : subscribers) {
+                if(s.getSensor() == hw) {
+                    found = true;
+                    period = Math.min(period, toMicros(s.getSamplingPeriod()));
+                    latency = Math.min(latency, s.getReportLatency());
+                }
+            }
+            return found ? ((long) period << 32) | (latency & 0xFFFFFFFFL) : NO_RATE;
+        }
+
+        /**
+         * This method obtains the sensors attached to this dispatcher for a sensor type.
+         *
+         * @param type The sensor type.
+         * @return The array of sensors (never null).
+         */
+        private AndroidDeviceSensor[] lookup(int type) {
+            if(type >= 0 && type < TABLE_SIZE) {
+                AndroidDeviceSensor[] slot = table[type];
+                return slot != null ? slot : EMPTY;
+            }
+            int[] types = extraTypes;
+            AndroidDeviceSensor[][] slots = extraSlots;
+            for(int i = 0; i < types.length && i < slots.length; i++)
+                if(types[i] == type)
+                    return slots[i];
+            return EMPTY;
+        }
+
+        /**
+         * This method publishes a new array of sensors for a sensor type. Types that do not fit in
+         * the table (for instance, vendor-defined types) are kept in a separate list.
+         *
+         * @param type The sensor type.
+         * @param subscribers The new array of sensors.
+         */
+        private void store(int type, AndroidDeviceSensor[] subscribers) {
+            if(type >= 0 && type < TABLE_SIZE) {
+                AndroidDeviceSensor[][] updated = table.clone();
+                updated[type] = subscribers;
+                table = updated;
+                return;
+            }
+            int[] types = extraTypes;
+            AndroidDeviceSensor[][] slots = extraSlots;
+            for(int i = 0; i < types.length; i++) {
+                if(types[i] == type) {
+                    AndroidDeviceSensor[][] updated = slots.clone();
+                    updated[i] = subscribers;
+                    extraSlots = updated;
+                    return;
+                }
+            }
+            int[] newTypes = new int[types.length + 1];
+            AndroidDeviceSensor[][] newSlots = new AndroidDeviceSensor[slots.length + 1][];
+            System.arraycopy(types, 0, newTypes, 0, types.length);
+            System.arraycopy(slots, 0, newSlots, 0, slots.length);
+            newTypes[types.length] = type;
+            newSlots[slots.length] = subscribers;
+            extraSlots = newSlots;
+            extraTypes = newTypes;
+        }
+
+        /**
+         * The Android sensor manager.
+         */
+        private final SensorManager sensorMgr;
+
+        /**
+         * The handler of the thread that receives the events, or null for the main thread.
+         */
+        private final Handler handler;
+
+        /**
+         * The attached sensors indexed by sensor type.
+         */
+        private volatile AndroidDeviceSensor[][] table = new AndroidDeviceSensor[TABLE_SIZE][];
+
+        /**
+         * The sensor types that do not fit in the table.
+         */
+        private volatile int[] extraTypes = new int[0];
+
+        /**
+         * The attached sensors of the types that do not fit in the table.
+         */
+        private volatile AndroidDeviceSensor[][] extraSlots = new AndroidDeviceSensor[0][];
+    }
+
+    /**
+     * A dispatcher that is also notified when a flush of the hardware FIFO has completed. It is a
+     * separate class so that SensorEventListener2 is not loaded in Android versions that lack it.
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static final class FlushAwareDispatcher extends Dispatcher implements SensorEventListener2 {
+
+        /**
+         * This constructor builds a new FlushAwareDispatcher.
+         *
+         * @param sensorMgr The Android sensor manager.
+         * @param handler The handler of the thread that receives the events, or null to receive
+         *                them in the main thread.
+         */
+        FlushAwareDispatcher(SensorManager sensorMgr, Handler handler) {
+            super(sensorMgr, handler);
+        }
+
+        @Override
+        public void onFlushCompleted(android.hardware.Sensor sensor) {
+            dispatchFlushCompleted(sensor);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The default priority of the hub threads: the default priority of the application threads,
+     * slightly raised so that the sensor events are not delayed by its background work.
+     */
+    public static final int DEFAULT_THREAD_PRIORITY = Process.THREAD_PRIORITY_DEFAULT + Process.THREAD_PRIORITY_MORE_FAVORABLE;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The size of the dispatch table. It covers all sensor types defined by the Android platform.
+     */
+    private static final int TABLE_SIZE = 64;
+
+    /**
+     * The value that represents the effective rate of an Android sensor without subscribers.
+     */
+    private static final long NO_RATE = -1L;
+
+    /**
+     * An empty array of sensors.
+     */
+    private static final AndroidDeviceSensor[] EMPTY = new AndroidDeviceSensor[0];
+}
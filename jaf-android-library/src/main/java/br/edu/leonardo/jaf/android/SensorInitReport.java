@@ -0,0 +1,146 @@
+package br.edu.leonardo.jaf.android;
+
+import br.edu.leonardo.jaf.sensors.Sensor;
+
+/**
+ * The result of the initialization of a set of sensors by a {@link SensorInitializer}: for each
+ * sensor, whether its init() succeeded, the error it threw and how long it took.
+ */
+public final class SensorInitReport {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorInitReport.
+     *
+     * @param sensors The initialized sensors.
+     * @param errors The error thrown by each sensor, or null for the sensors that succeeded.
+     * @param elapsed The time in nanoseconds taken by the initialization of each sensor.
+     * @param totalElapsed The time in nanoseconds from the request to the end of the last
+     *                     initialization.
+     */
+    SensorInitReport(Sensor[] sensors, Throwable[] errors, long[] elapsed, long totalElapsed) {
+        this.sensors = sensors;
+        this.errors = errors;
+        this.elapsed = elapsed;
+        this.totalElapsed = totalElapsed;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d sensors in %.1f ms (%d failed)", sensors.length, totalElapsed / 1e6, getFailureCount()));
+        for(int i = 0; i < sensors.length; i++) {
+            sb.append(String.format("%n  %s: %.1f ms", sensors[i], elapsed[i] / 1e6));
+            if(errors[i] != null)
+                sb.append(" - ").append(errors[i]);
+        }
+        return sb.toString();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of sensors in this report.
+     *
+     * @return The number of sensors.
+     */
+    public int getSensorCount() {
+        return sensors.length;
+    }
+
+    /**
+     * This method obtains a sensor of this report, in the order they were given to the
+     * initializer.
+     *
+     * @param index The sensor index.
+     * @return The sensor.
+     */
+    public Sensor getSensor(int index) {
+        return sensors[index];
+    }
+
+    /**
+     * This method checks whether the initialization of a sensor succeeded.
+     *
+     * @param index The sensor index.
+     * @return true, if init() returned normally; false, if it threw an exception.
+     */
+    public boolean isSuccessful(int index) {
+        return errors[index] == null;
+    }
+
+    /**
+     * This method obtains the error thrown by the initialization of a sensor.
+     *
+     * @param index The sensor index.
+     * @return The error, usually a SensorException; or null, if the initialization succeeded.
+     */
+    public Throwable getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * This method obtains the time taken by the initialization of a sensor.
+     *
+     * @param index The sensor index.
+     * @return The time in nanoseconds.
+     */
+    public long getElapsedNanos(int index) {
+        return elapsed[index];
+    }
+
+    /**
+     * This method obtains the time from the request to the end of the last initialization.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getTotalElapsedNanos() {
+        return totalElapsed;
+    }
+
+    /**
+     * This method obtains the number of sensors whose initialization failed.
+     *
+     * @return The number of failures.
+     */
+    public int getFailureCount() {
+        int count = 0;
+        for(Throwable error : errors)
+            if(error != null)
+                count++;
+        return count;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The initialized sensors.
+     */
+    private final Sensor[] sensors;
+
+    /**
+     * The error thrown by each sensor, or null.
+     */
+    private final Throwable[] errors;
+
+    /**
+     * The time in nanoseconds taken by the initialization of each sensor.
+     */
+    private final long[] elapsed;
+
+    /**
+     * The time in nanoseconds from the request to the end of the last initialization.
+     */
+    private final long totalElapsed;
+}
@@ -0,0 +1,221 @@
+package br.edu.leonardo.jaf.android;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import br.edu.leonardo.jaf.sensors.Sensor;
+
+/**
+ * This class initializes sets of sensors concurrently and off the caller thread, so that bringing
+ * up the sensors of an agent does not take the sum of their registration times in the main thread.
+ * The events of the registered sensors are still delivered in the threads chosen by the sensors
+ * (the main thread or their hub), not in the initialization threads.
+ */
+public final class SensorInitializer {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method initializes the given sensors concurrently in a shared pool of background
+     * threads.
+     *
+     * @param sensors The sensors to be initialized.
+     * @return A future that completes with the report of the initialization once every sensor is
+     *         initialized or has failed.
+     */
+    public static Future<SensorInitReport> initAll(Collection<? extends Sensor> sensors) {
+        return initAll(sensors, getDefaultExecutor());
+    }
+
+    /**
+     * This method initializes the given sensors concurrently in the given executor. Sensors of the
+     * AndroidDeviceSensor class whose registration is deferred to listeners are only registered
+     * when they get a reading or batch listener, so their initialization completes immediately.
+     *
+     * @param sensors The sensors to be initialized.
+     * @param executor The executor that runs the initializations.
+     * @return A future that completes with the report of the initialization once every sensor is
+     *         initialized or has failed.
+     */
+    public static Future<SensorInitReport> initAll(Collection<? extends Sensor> sensors, Executor executor) {
+        final Sensor[] array = sensors.toArray(new Sensor[0]);
+        final ReportFuture future = new ReportFuture(array);
+        for(int i = 0; i < array.length; i++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    future.initialize(index);
+                }
+            });
+        }
+        return future;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This class has only static methods.
+     */
+    private SensorInitializer() {
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the shared pool of initialization threads, creating it if needed. Idle
+     * threads of the pool terminate after a minute.
+     *
+     * @return The shared pool.
+     */
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if(defaultExecutor == null) {
+            defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "jaf-init-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return defaultExecutor;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The shared pool of initialization threads.
+     */
+    private static ExecutorService defaultExecutor;
+
+    /**
+     * The number of threads created by the shared pool.
+     */
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The future of an initialization, completed when the last sensor is initialized.
+     */
+    private static final class ReportFuture implements Future<SensorInitReport> {
+
+        /**
+         * This constructor builds a new ReportFuture.
+         *
+         * @param sensors The sensors to be initialized.
+         */
+        ReportFuture(Sensor[] sensors) {
+            this.sensors = sensors;
+            this.errors = new Throwable[sensors.length];
+            this.elapsed = new long[sensors.length];
+            this.remaining = new CountDownLatch(sensors.length);
+            this.start = System.nanoTime();
+            if(sensors.length == 0)
+                report = new SensorInitReport(sensors, errors, elapsed, 0);
+        }
+
+        /**
+         * This method initializes a sensor and completes the future if it is the last one.
+         *
+         * @param index The sensor index.
+         */
+        void initialize(int index) {
+            long t0 = System.nanoTime();
+            try {
+                sensors[index].init();
+            } catch(Throwable e) {
+                errors[index] = e;
+            }
+            long t1 = System.nanoTime();
+            elapsed[index] = t1 - t0;
+            synchronized(this) {
+                if(remaining.getCount() == 1)
+                    report = new SensorInitReport(sensors, errors, elapsed, t1 - start);
+                remaining.countDown();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            // Registrations cannot be undone half-way; the caller unregisters the sensors instead
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return remaining.getCount() == 0;
+        }
+
+        @Override
+        public SensorInitReport get() throws InterruptedException {
+            remaining.await();
+            synchronized(this) {
+                return report;
+            }
+        }
+
+        @Override
+        public SensorInitReport get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+            if(!remaining.await(timeout, unit))
+                throw new TimeoutException();
+            synchronized(this) {
+                return report;
+            }
+        }
+
+        /**
+         * The sensors to be initialized.
+         */
+        private final Sensor[] sensors;
+
+        /**
+         * The error thrown by each sensor, or null.
+         */
+        private final Throwable[] errors;
+
+        /**
+         * The time in nanoseconds taken by the initialization of each sensor.
+         */
+        private final long[] elapsed;
+
+        /**
+         * The number of sensors not initialized yet.
+         */
+        private final CountDownLatch remaining;
+
+        /**
+         * The time in nanoseconds at which the initialization was requested.
+         */
+        private final long start;
+
+        /**
+         * The report, available when all sensors are initialized.
+         */
+        private SensorInitReport report;
+    }
+}
@@ -0,0 +1,317 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * A stage that joins the readings of several sources into time-aligned multi-channel readings.
+ * The readings of each source are kept in a preallocated ring buffer and resampled to a common
+ * fixed rate by linear interpolation of the source timestamps. Each output reading contains the
+ * channels of all sources, in the order the sources were given, and is emitted once every source
+ * has produced readings up to its timestamp.
+ */
+public class SensorJoin implements SensorReadingSource {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorJoin.
+     *
+     * @param outputPeriod The period in nanoseconds between two output readings.
+     * @param bufferSize The number of readings kept for each source. It must cover the largest
+     *                   delay expected between the sources.
+     * @param sources The joined sources.
+     */
+    public SensorJoin(long outputPeriod, int bufferSize, SensorReadingSource... sources) {
+        if(outputPeriod <= 0 || bufferSize < 2 || sources.length == 0)
+            throw new IllegalArgumentException("Invalid join configuration.");
+        this.outputPeriod = outputPeriod;
+        this.bufferSize = bufferSize;
+        this.inputs = new Input[sources.length];
+        int offset = 0;
+        for(int i = 0; i < sources.length; i++) {
+            inputs[i] = new Input(sources[i], offset);
+            offset += inputs[i].channels;
+        }
+        this.channels = offset;
+        this.output = new float[offset];
+        this.pool = new SensorReadingPool(POOL_SIZE, offset);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method starts joining the readings of the sources, registering this stage as a listener
+     * of each of them.
+     */
+    public void start() {
+        for(Input in : inputs)
+            in.source.addReadingListener(in);
+    }
+
+    /**
+     * This method stops joining the readings of the sources and discards the buffered readings.
+     */
+    public synchronized void stop() {
+        for(Input in : inputs) {
+            in.source.removeReadingListener(in);
+            in.count = 0;
+            in.cursor = 0;
+        }
+        nextTime = UNSET;
+    }
+
+    @Override
+    public void addReadingListener(SensorReadingListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeReadingListener(SensorReadingListener listener) {
+        listeners.remove(listener);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /**
+     * This method obtains the period between two output readings.
+     *
+     * @return The output period in nanoseconds.
+     */
+    public long getOutputPeriod() {
+        return outputPeriod;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method stores a reading of a source in its ring buffer and emits the output readings
+     * that became complete.
+     *
+     * @param in The source input.
+     * @param reading The reading produced by the source.
+     */
+    private synchronized void append(Input in, SensorReading reading) {
+        int slot = (int) (in.count % bufferSize);
+        in.timestamps[slot] = reading.getTimestamp();
+        int base = slot * in.channels;
+        int size = reading.getSize();
+        for(int c = 0; c < in.channels; c++)
+            in.values[base + c] = c < size ? reading.getValue(c) : 0f;
+        in.accuracy = reading.getAccuracy();
+        in.count++;
+        emitReady();
+    }
+
+    /**
+     * This method emits all output readings whose timestamps are covered by every source.
+     */
+    private void emitReady() {
+        long horizon = Long.MAX_VALUE;
+        long start = Long.MIN_VALUE;
+        for(Input in : inputs) {
+            if(in.count == 0)
+                return;
+            horizon = Math.min(horizon, in.timestamps[(int) ((in.count - 1) % bufferSize)]);
+            start = Math.max(start, in.timestamps[(int) (Math.max(0, in.count - bufferSize) % bufferSize)]);
+        }
+        if(nextTime == UNSET || horizon - nextTime > outputPeriod * bufferSize)
+            nextTime = (start / outputPeriod + 1) * outputPeriod;
+        while(nextTime <= horizon) {
+            int accuracy = Integer.MAX_VALUE;
+            for(Input in : inputs) {
+                interpolate(in, nextTime);
+                accuracy = Math.min(accuracy, in.accuracy);
+            }
+            publish(nextTime, accuracy);
+            nextTime += outputPeriod;
+        }
+    }
+
+    /**
+     * This method writes the channels of a source at the given time into the output array, by
+     * linear interpolation of the two buffered readings around that time.
+     *
+     * @param in The source input.
+     * @param time The time in nanoseconds.
+     */
+    private void interpolate(Input in, long time) {
+        long oldest = Math.max(0, in.count - bufferSize);
+        if(in.cursor < oldest)
+            in.cursor = oldest;
+        while(in.cursor + 1 < in.count && in.timestamps[(int) ((in.cursor + 1) % bufferSize)] <= time)
+            in.cursor++;
+        int a = (int) (in.cursor % bufferSize);
+        long ta = in.timestamps[a];
+        if(in.cursor + 1 >= in.count || ta >= time) {
+            System.arraycopy(in.values, a * in.channels, output, in.offset, in.channels);
+            return;
+        }
+        int b = (int) ((in.cursor + 1) % bufferSize);
+        long tb = in.timestamps[b];
+        float frac = tb == ta ? 0f : (float) ((double) (time - ta) / (tb - ta));
+        int baseA = a * in.channels;
+        int baseB = b * in.channels;
+        for(int c = 0; c < in.channels; c++) {
+            float va = in.values[baseA + c];
+            output[in.offset + c] = va + (in.values[baseB + c] - va) * frac;
+        }
+    }
+
+    /**
+     * This method delivers the current output array to the listeners as a pooled reading.
+     *
+     * @param timestamp The time of the output reading.
+     * @param accuracy The lowest accuracy among the joined readings.
+     */
+    private void publish(long timestamp, int accuracy) {
+        if(listeners.isEmpty())
+            return;
+        SensorReading reading = pool.acquire();
+        if(reading == null)
+            return;
+        reading.set(timestamp, accuracy, output, channels);
+        try {
+            listeners.dispatch(this, reading);
+        } finally {
+            reading.release();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The period in nanoseconds between two output readings.
+     */
+    private final long outputPeriod;
+
+    /**
+     * The number of readings kept for each source.
+     */
+    private final int bufferSize;
+
+    /**
+     * The joined sources.
+     */
+    private final Input[] inputs;
+
+    /**
+     * The total number of channels of the output readings.
+     */
+    private final int channels;
+
+    /**
+     * The array where the output channels are interpolated.
+     */
+    private final float[] output;
+
+    /**
+     * The pool of output readings.
+     */
+    private final SensorReadingPool pool;
+
+    /**
+     * The listeners that receive the output readings.
+     */
+    private final ReadingListenerList listeners = new ReadingListenerList();
+
+    /**
+     * The timestamp of the next output reading, or UNSET if no output reading was scheduled yet.
+     */
+    private long nextTime = UNSET;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The ring buffer of readings of a joined source.
+     */
+    private final class Input implements SensorReadingListener {
+
+        /**
+         * This constructor builds a new Input.
+         *
+         * @param source The joined source.
+         * @param offset The index of the first channel of the source in the output readings.
+         */
+        Input(SensorReadingSource source, int offset) {
+            this.source = source;
+            this.offset = offset;
+            this.channels = source.getChannelCount();
+            this.timestamps = new long[bufferSize];
+            this.values = new float[bufferSize * channels];
+        }
+
+        @Override
+        public void onReading(SensorReadingSource source, SensorReading reading) {
+            append(this, reading);
+        }
+
+        /**
+         * The joined source.
+         */
+        final SensorReadingSource source;
+
+        /**
+         * The index of the first channel of the source in the output readings.
+         */
+        final int offset;
+
+        /**
+         * The number of channels of the source.
+         */
+        final int channels;
+
+        /**
+         * The timestamps of the buffered readings.
+         */
+        final long[] timestamps;
+
+        /**
+         * The channels of the buffered readings.
+         */
+        final float[] values;
+
+        /**
+         * The total number of readings received from the source.
+         */
+        long count;
+
+        /**
+         * The sequence number of the buffered reading right before the next output time.
+         */
+        long cursor;
+
+        /**
+         * The accuracy of the last reading received from the source.
+         */
+        int accuracy;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The value of nextTime while no output reading is scheduled.
+     */
+    private static final long UNSET = Long.MIN_VALUE;
+
+    /**
+     * The number of readings in the pool of output readings.
+     */
+    private static final int POOL_SIZE = 4;
+}
@@ -0,0 +1,378 @@
+package br.edu.leonardo.jaf.android;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The runtime metrics of a sensor: the number of delivered events, the latency between the time
+ * of each event and its delivery, the inter-arrival time and its jitter relative to the requested
+ * period, and the number of events that were dropped, skipped or missed. The metrics are kept in
+ * lock-free counters and histograms, so they can be updated on the sensor thread and read from
+ * any thread through snapshots without stopping the sensor.
+ */
+public final class SensorMetrics {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorMetrics object.
+     *
+     * @param expectedPeriod The requested time between two events in nanoseconds, or zero if the
+     *                       sensor has no fixed rate (the jitter and the missed events are not
+     *                       computed in this case).
+     */
+    public SensorMetrics(long expectedPeriod) {
+        this.expectedPeriod = expectedPeriod;
+        this.start = System.nanoTime();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method records a delivered event.
+     *
+     * @param eventTime The time in nanoseconds at which the event happened.
+     * @param deliveryTime The time in nanoseconds at which the event is delivered, in the same
+     *                     time base of the event time, or a negative value if it is not known
+     *                     (the latency is not recorded in this case).
+     */
+    public void recordEvent(long eventTime, long deliveryTime) {
+        events.incrementAndGet();
+        if(deliveryTime >= 0)
+            latency.record(deliveryTime - eventTime);
+        long previous = lastEventTime.getAndSet(eventTime);
+        if(previous == NO_TIME)
+            return;
+        long interval = eventTime - previous;
+        intervals.record(interval);
+        if(expectedPeriod > 0) {
+            jitter.record(Math.abs(interval - expectedPeriod));
+            if(interval >= expectedPeriod + expectedPeriod / 2)
+                missed.addAndGet((interval + expectedPeriod / 2) / expectedPeriod - 1);
+        }
+    }
+
+    /**
+     * This method records events that reached the sensor but could not be delivered (for
+     * instance, because a reading pool was exhausted or a queue was full).
+     *
+     * @param count The number of dropped events.
+     */
+    public void recordDropped(int count) {
+        dropped.addAndGet(count);
+    }
+
+    /**
+     * This method records events that were deliberately skipped or merged into other events (for
+     * instance, events of a shared registration faster than the sampling period of the sensor).
+     *
+     * @param count The number of coalesced events.
+     */
+    public void recordCoalesced(int count) {
+        coalesced.addAndGet(count);
+    }
+
+    /**
+     * This method takes a snapshot of the metrics.
+     *
+     * @param reset true, to restart the metrics after the snapshot, so that the next snapshot
+     *              covers only the following events; false, to keep accumulating them.
+     * @return The snapshot.
+     */
+    public Snapshot snapshot(boolean reset) {
+        long now = System.nanoTime();
+        Snapshot s = new Snapshot();
+        s.elapsed = now - (reset ? startAndSet(now) : start);
+        s.events = reset ? events.getAndSet(0) : events.get();
+        s.dropped = reset ? dropped.getAndSet(0) : dropped.get();
+        s.coalesced = reset ? coalesced.getAndSet(0) : coalesced.get();
+        s.missed = reset ? missed.getAndSet(0) : missed.get();
+        s.expectedPeriod = expectedPeriod;
+        s.latencyTotal = latency.copyTo(s.latency, reset);
+        s.intervalTotal = intervals.copyTo(s.intervals, reset);
+        s.jitterTotal = jitter.copyTo(s.jitter, reset);
+        return s;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the requested time between two events.
+     *
+     * @return The period in nanoseconds, or zero if the sensor has no fixed rate.
+     */
+    public long getExpectedPeriod() {
+        return expectedPeriod;
+    }
+
+    /**
+     * This method changes the requested time between two events, when the rate of the sensor is
+     * changed. The events recorded before are not affected.
+     *
+     * @param expectedPeriod The requested time between two events in nanoseconds, or zero if the
+     *                       sensor has no fixed rate.
+     */
+    public void setExpectedPeriod(long expectedPeriod) {
+        this.expectedPeriod = expectedPeriod;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method restarts the measured time window.
+     *
+     * @param now The current time.
+     * @return The start of the previous window.
+     */
+    private synchronized long startAndSet(long now) {
+        long previous = start;
+        start = now;
+        return previous;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * An immutable copy of the metrics of a sensor. Latencies, intervals and jitters are in
+     * nanoseconds, and their percentiles have a relative error below 12.5%.
+     */
+    public static final class Snapshot {
+
+        /**
+         * This method obtains the time covered by this snapshot.
+         *
+         * @return The time in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return elapsed;
+        }
+
+        /**
+         * This method obtains the number of delivered events.
+         *
+         * @return The number of events.
+         */
+        public long getEventCount() {
+            return events;
+        }
+
+        /**
+         * This method obtains the rate of delivered events.
+         *
+         * @return The number of events per second.
+         */
+        public double getEventRate() {
+            return elapsed > 0 ? events * 1e9 / elapsed : 0;
+        }
+
+        /**
+         * This method obtains the number of events that could not be delivered.
+         *
+         * @return The number of dropped events.
+         */
+        public long getDroppedCount() {
+            return dropped;
+        }
+
+        /**
+         * This method obtains the number of events that were deliberately skipped or merged.
+         *
+         * @return The number of coalesced events.
+         */
+        public long getCoalescedCount() {
+            return coalesced;
+        }
+
+        /**
+         * This method obtains the estimated number of events that never reached the sensor, based
+         * on the gaps between event times larger than 1.5 times the requested period.
+         *
+         * @return The number of missed events.
+         */
+        public long getMissedCount() {
+            return missed;
+        }
+
+        /**
+         * This method obtains a percentile of the delivery latency.
+         *
+         * @param quantile The quantile, between 0 and 1 (e.g. 0.99 for the 99th percentile).
+         * @return The latency in nanoseconds.
+         */
+        public long getLatency(double quantile) {
+            return LogHistogram.percentile(latency, latencyTotal, quantile);
+        }
+
+        /**
+         * This method obtains a percentile of the time between two consecutive events.
+         *
+         * @param quantile The quantile, between 0 and 1.
+         * @return The interval in nanoseconds.
+         */
+        public long getInterval(double quantile) {
+            return LogHistogram.percentile(intervals, intervalTotal, quantile);
+        }
+
+        /**
+         * This method obtains a percentile of the absolute difference between the time between two
+         * consecutive events and the requested period.
+         *
+         * @param quantile The quantile, between 0 and 1.
+         * @return The jitter in nanoseconds.
+         */
+        public long getJitter(double quantile) {
+            return LogHistogram.percentile(jitter, jitterTotal, quantile);
+        }
+
+        /**
+         * This method obtains the requested time between two events.
+         *
+         * @return The period in nanoseconds, or zero if the sensor has no fixed rate.
+         */
+        public long getExpectedPeriod() {
+            return expectedPeriod;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "events=%d rate=%.1f/s dropped=%d coalesced=%d missed=%d latency(p50/p99)=%d/%dus jitter(p50/p99)=%d/%dus",
+                    events, getEventRate(), dropped, coalesced, missed,
+                    getLatency(0.5) / 1000, getLatency(0.99) / 1000,
+                    getJitter(0.5) / 1000, getJitter(0.99) / 1000);
+        }
+
+        /**
+         * The time covered by the snapshot.
+         */
+        private long elapsed;
+
+        /**
+         * The number of delivered events.
+         */
+        private long events;
+
+        /**
+         * The number of dropped events.
+         */
+        private long dropped;
+
+        /**
+         * The number of coalesced events.
+         */
+        private long coalesced;
+
+        /**
+         * The estimated number of missed events.
+         */
+        private long missed;
+
+        /**
+         * The requested period.
+         */
+        private long expectedPeriod;
+
+        /**
+         * The latency histogram buckets.
+         */
+        private final long[] latency = new long[LogHistogram.BUCKETS];
+
+        /**
+         * The number of recorded latencies.
+         */
+        private long latencyTotal;
+
+        /**
+         * The interval histogram buckets.
+         */
+        private final long[] intervals = new long[LogHistogram.BUCKETS];
+
+        /**
+         * The number of recorded intervals.
+         */
+        private long intervalTotal;
+
+        /**
+         * The jitter histogram buckets.
+         */
+        private final long[] jitter = new long[LogHistogram.BUCKETS];
+
+        /**
+         * The number of recorded jitters.
+         */
+        private long jitterTotal;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The marker of an unknown event time.
+     */
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The requested period in nanoseconds.
+     */
+    private volatile long expectedPeriod;
+
+    /**
+     * The start of the measured time window, as given by System.nanoTime.
+     */
+    private volatile long start;
+
+    /**
+     * The number of delivered events.
+     */
+    private final AtomicLong events = new AtomicLong();
+
+    /**
+     * The number of dropped events.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The number of coalesced events.
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * The estimated number of missed events.
+     */
+    private final AtomicLong missed = new AtomicLong();
+
+    /**
+     * The time of the last delivered event.
+     */
+    private final AtomicLong lastEventTime = new AtomicLong(NO_TIME);
+
+    /**
+     * The histogram of delivery latencies.
+     */
+    private final LogHistogram latency = new LogHistogram();
+
+    /**
+     * The histogram of inter-arrival times.
+     */
+    private final LogHistogram intervals = new LogHistogram();
+
+    /**
+     * The histogram of inter-arrival jitters.
+     */
+    private final LogHistogram jitter = new LogHistogram();
+}
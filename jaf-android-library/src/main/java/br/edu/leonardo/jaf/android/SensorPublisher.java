@@ -0,0 +1,464 @@
+package br.edu.leonardo.jaf.android;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import br.edu.leonardo.jaf.sensors.LocationSensorValue;
+import br.edu.leonardo.jaf.sensors.SensorException;
+import br.edu.leonardo.jaf.sensors.SensorValue;
+import tec.units.ri.AbstractUnit;
+import tec.units.ri.quantity.Quantities;
+import tec.units.ri.unit.MetricPrefix;
+import tec.units.ri.unit.Units;
+
+/**
+ * A Reactive Streams publisher of the values of an Android device sensor or location sensor. The
+ * sensor is registered when the first subscriber subscribes and unregistered when the last one
+ * cancels. If the sensor was already registered by its owner at that moment, the publisher only
+ * listens to it: it neither unregisters it nor changes its rate, which would affect the owner.
+ * Sensors are hot sources: a value is delivered to each subscriber that has requested it, and the
+ * subscribers without outstanding demand miss it.
+ *
+ * When the adaptive rate is enabled (the default), the publisher makes the hardware cost follow
+ * the demand: if most values are missed during consecutive evaluation windows, the sensor is
+ * registered again with twice the sampling period and report latency (or twice the minimum time
+ * between location updates), up to 16 times the original values; when the subscribers request
+ * more values than they receive, the rate is increased again.
+ */
+public class SensorPublisher implements Publisher<SensorValue> {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorPublisher of an Android device sensor.
+     *
+     * @param sensor The sensor.
+     */
+    public SensorPublisher(AndroidDeviceSensor sensor) {
+        this(sensor, null);
+    }
+
+    /**
+     * This constructor builds a new SensorPublisher of a location sensor.
+     *
+     * @param sensor The location sensor.
+     */
+    public SensorPublisher(AndroidLocationSensor sensor) {
+        this(null, sensor);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorPublisher of one of the given sensors.
+     *
+     * @param device The device sensor, or null.
+     * @param location The location sensor, or null.
+     */
+    private SensorPublisher(AndroidDeviceSensor device, AndroidLocationSensor location) {
+        this.device = device;
+        this.location = location;
+        if(device != null) {
+            this.basePeriod = Math.max(MIN_ADAPTIVE_PERIOD, SensorHub.toMicros(device.getSamplingPeriod()));
+            this.baseLatency = device.getReportLatency();
+        } else {
+            this.basePeriod = location.getMinTime().to(MetricPrefix.MILLI(Units.SECOND)).getValue().longValue();
+            this.baseLatency = 0;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void subscribe(Subscriber<? super SensorValue> subscriber) {
+        if(subscriber == null)
+            throw new NullPointerException("The subscriber must not be null.");
+        SensorSubscription subscription = new SensorSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        if(subscription.cancelled)
+            return;
+        subscriptions.add(subscription);
+        try {
+            start();
+        } catch(SensorException e) {
+            subscription.fail(e);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method defines whether the sampling rate follows the demand of the subscribers.
+     *
+     * @param adaptiveRate true, to adapt the rate to the demand; false, to keep the original rate.
+     */
+    public void setAdaptiveRate(boolean adaptiveRate) {
+        this.adaptiveRate = adaptiveRate;
+        if(!adaptiveRate)
+            changeLevel(0);
+    }
+
+    /**
+     * This method obtains the current slowdown of the sensor.
+     *
+     * @return The slowdown level: the sampling period is multiplied by 2 to the power of the level.
+     */
+    public int getRateLevel() {
+        return levels.getLevel();
+    }
+
+    /**
+     * This method obtains the number of values that no subscriber could receive for lack of
+     * demand.
+     *
+     * @return The number of missed values.
+     */
+    public long getMissedCount() {
+        return missed.get();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method registers the sensor, if it is not registered yet.
+     *
+     * @throws SensorException If the sensor could not be registered.
+     */
+    private synchronized void start() throws SensorException {
+        if(started || subscriptions.isEmpty())
+            return;
+        if(device != null) {
+            ownsRegistration = !device.isRegistered();
+            device.addReadingListener(readingListener);
+            if(ownsRegistration)
+                device.init();
+        } else {
+            ownsRegistration = !location.isRegistered();
+            location.addLocationFixListener(fixListener);
+            if(ownsRegistration)
+                location.init();
+        }
+        started = true;
+    }
+
+    /**
+     * This method unregisters the sensor and restores its original rate, if there are no more
+     * subscribers.
+     */
+    private synchronized void stopIfUnused() {
+        if(!started || !subscriptions.isEmpty())
+            return;
+        started = false;
+        if(device != null) {
+            if(ownsRegistration)
+                device.unregister();
+            device.removeReadingListener(readingListener);
+        } else {
+            if(ownsRegistration)
+                location.unregister();
+            location.removeLocationFixListener(fixListener);
+        }
+        levels.reset();
+        if(!ownsRegistration)
+            return;
+        try {
+            applyLevel(0);
+        } catch(SensorException e) {
+            // The sensor is not registered, so the new rate is only stored
+        }
+    }
+
+    /**
+     * This method delivers a value to the subscribers that have demand and updates the demand
+     * statistics. It is called in the thread that receives the sensor events.
+     *
+     * @param value The value.
+     */
+    private void publish(SensorValue value) {
+        boolean delivered = false;
+        long spare = Long.MAX_VALUE;
+        for(SensorSubscription s : subscriptions) {
+            if(s.deliver(value))
+                delivered = true;
+            spare = Math.min(spare, s.demand.get());
+        }
+        if(!delivered)
+            missed.incrementAndGet();
+        int wanted = levels.onValue(delivered, spare);
+        if(adaptiveRate)
+            changeLevel(wanted);
+    }
+
+    /**
+     * This method checks whether any subscriber has demand.
+     *
+     * @return true, if a value would be delivered; false, otherwise.
+     */
+    private boolean hasDemand() {
+        for(SensorSubscription s : subscriptions)
+            if(s.demand.get() > 0)
+                return true;
+        return false;
+    }
+
+    /**
+     * This method accounts a value that no subscriber would receive, without creating it.
+     */
+    private void publishMissed() {
+        publish(null);
+    }
+
+    /**
+     * This method requests a new slowdown level. The sensor is registered again in the main thread,
+     * outside the sensor callbacks.
+     *
+     * @param newLevel The new slowdown level.
+     */
+    private void changeLevel(final int newLevel) {
+        if(!ownsRegistration || !levels.setLevel(newLevel))
+            return;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    applyLevel(newLevel);
+                } catch(SensorException e) {
+                    for(SensorSubscription s : subscriptions)
+                        s.fail(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method registers the sensor again with the rate of the given slowdown level.
+     *
+     * @param newLevel The slowdown level.
+     * @throws SensorException If the sensor could not be registered again.
+     */
+    private synchronized void applyLevel(int newLevel) throws SensorException {
+        if(newLevel != levels.getLevel())
+            return;
+        if(device != null)
+            device.setSamplingRate((int) (basePeriod << newLevel), baseLatency << newLevel);
+        else
+            location.setMinTime(Quantities.getQuantity(basePeriod << newLevel, MetricPrefix.MILLI(Units.SECOND)));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C L A S S E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The subscription of a subscriber of this publisher. Signals to the subscriber are serialized
+     * by the subscription lock.
+     */
+    private final class SensorSubscription implements Subscription {
+
+        /**
+         * This constructor builds a new SensorSubscription.
+         *
+         * @param subscriber The subscriber.
+         */
+        SensorSubscription(Subscriber<? super SensorValue> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if(cancelled)
+                return;
+            if(n <= 0) {
+                fail(new IllegalArgumentException("The number of requested values must be positive (rule 3.9)."));
+                return;
+            }
+            long current;
+            long next;
+            do {
+                current = demand.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            } while(!demand.compareAndSet(current, next));
+            if(adaptiveRate)
+                changeLevel(levels.onRequest(next));
+        }
+
+        @Override
+        public void cancel() {
+            if(cancelled)
+                return;
+            cancelled = true;
+            subscriptions.remove(this);
+            stopIfUnused();
+        }
+
+        /**
+         * This method delivers a value to the subscriber, if it has demand.
+         *
+         * @param value The value, or null if no subscriber had demand when the event arrived.
+         * @return true, if the value was delivered; false, otherwise.
+         */
+        boolean deliver(SensorValue value) {
+            if(value == null)
+                return false;
+            long current;
+            do {
+                current = demand.get();
+                if(current <= 0 || cancelled)
+                    return false;
+            } while(current != Long.MAX_VALUE && !demand.compareAndSet(current, current - 1));
+            synchronized(this) {
+                if(!cancelled)
+                    subscriber.onNext(value);
+            }
+            return true;
+        }
+
+        /**
+         * This method cancels the subscription and signals an error to the subscriber.
+         *
+         * @param error The error.
+         */
+        void fail(Throwable error) {
+            synchronized(this) {
+                if(cancelled)
+                    return;
+                cancel();
+                subscriber.onError(error);
+            }
+        }
+
+        /**
+         * The subscriber.
+         */
+        private final Subscriber<? super SensorValue> subscriber;
+
+        /**
+         * The number of values requested and not delivered yet.
+         */
+        final AtomicLong demand = new AtomicLong();
+
+        /**
+         * Indicates whether the subscription was cancelled.
+         */
+        volatile boolean cancelled;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The sampling period in microseconds from which the sensor is slowed down when it was
+     * requested at the fastest rate.
+     */
+    private static final int MIN_ADAPTIVE_PERIOD = 5000;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The published device sensor, or null.
+     */
+    private final AndroidDeviceSensor device;
+
+    /**
+     * The published location sensor, or null.
+     */
+    private final AndroidLocationSensor location;
+
+    /**
+     * The original sampling period in microseconds, or minimum time between location updates in
+     * milliseconds.
+     */
+    private final long basePeriod;
+
+    /**
+     * The original report latency in microseconds.
+     */
+    private final int baseLatency;
+
+    /**
+     * The active subscriptions.
+     */
+    private final CopyOnWriteArrayList<SensorSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * The handler of the main thread, where the sensor is registered again.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The number of values missed by all subscribers.
+     */
+    private final AtomicLong missed = new AtomicLong();
+
+    /**
+     * Indicates whether the sampling rate follows the demand.
+     */
+    private volatile boolean adaptiveRate = true;
+
+    /**
+     * The state machine of the slowdown level.
+     */
+    private final AdaptiveRateLevel levels = new AdaptiveRateLevel();
+
+    /**
+     * Indicates whether the sensor is registered.
+     */
+    private boolean started;
+
+    /**
+     * Indicates whether the sensor was registered by this publisher, which may then unregister it
+     * and change its rate.
+     */
+    private volatile boolean ownsRegistration;
+
+    /**
+     * The listener registered in the device sensor.
+     */
+    private final SensorReadingListener readingListener = new SensorReadingListener() {
+        @Override
+        public void onReading(SensorReadingSource source, SensorReading reading) {
+            if(!hasDemand()) {
+                publishMissed();
+                return;
+            }
+            float[] values = new float[reading.getSize()];
+            reading.copyValues(values);
+            publish(device.createSensorValue(values));
+        }
+    };
+
+    /**
+     * The listener registered in the location sensor.
+     */
+    private final LocationFixListener fixListener = new LocationFixListener() {
+        @Override
+        public void onLocationFix(AndroidLocationSensor sensor, Location loc) {
+            if(!hasDemand()) {
+                publishMissed();
+                return;
+            }
+            publish(new LocationSensorValue(loc.getLatitude(), loc.getLongitude(), loc.getAltitude(), AbstractUnit.ONE, Units.METRE));
+        }
+    };
+}
@@ -0,0 +1,204 @@
+package br.edu.leonardo.jaf.android;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A mutable, primitive-backed sensor reading. Readings are preallocated by a SensorReadingPool
+ * and reused, so delivering them to listeners does not allocate any object. A listener that needs
+ * to keep a reading after its callback returns must call {@link #retain()} and, once done with it,
+ * {@link #release()}, so that the reading goes back to its pool.
+ */
+public final class SensorReading {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new standalone SensorReading (a reading that does not belong to any
+     * pool) able to store up to the given number of channels.
+     *
+     * @param capacity The maximum number of channels stored by this reading.
+     */
+    public SensorReading(int capacity) {
+        this(null, capacity);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorReading that belongs to the given pool.
+     *
+     * @param pool The pool that owns this reading, or null for a standalone reading.
+     * @param capacity The maximum number of channels stored by this reading.
+     */
+    SensorReading(SensorReadingPool pool, int capacity) {
+        this.pool = pool;
+        this.values = new float[capacity];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method signals that the caller keeps a reference to this reading after the listener
+     * callback returns. Each call must be paired with a call to {@link #release()}.
+     *
+     * @return This reading.
+     */
+    public SensorReading retain() {
+        refCount.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * This method releases a reference to this reading. When the last reference is released the
+     * reading goes back to its pool and must not be used anymore.
+     */
+    public void release() {
+        if(refCount.decrementAndGet() == 0 && pool != null)
+            pool.recycle(this);
+    }
+
+    /**
+     * This method copies the channels of this reading to the given array.
+     *
+     * @param dest The destination array. It must have at least {@link #getSize()} positions.
+     */
+    public void copyValues(float[] dest) {
+        System.arraycopy(values, 0, dest, 0, size);
+    }
+
+    /**
+     * This method copies the contents of the given reading to this reading.
+     *
+     * @param other The reading to be copied.
+     */
+    public void copyFrom(SensorReading other) {
+        set(other.timestamp, other.accuracy, other.values, other.size);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the time in nanoseconds at which the reading happened.
+     *
+     * @return The reading timestamp.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * This method obtains the accuracy reported with this reading.
+     *
+     * @return The accuracy value.
+     */
+    public int getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * This method obtains the number of valid channels in this reading.
+     *
+     * @return The number of channels.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * This method obtains the value of a channel of this reading.
+     *
+     * @param channel The channel index.
+     * @return The channel value.
+     */
+    public float getValue(int channel) {
+        return values[channel];
+    }
+
+    /**
+     * This method obtains the array that backs the channels of this reading. Only the first
+     * {@link #getSize()} positions are valid and the array is reused when the reading is recycled.
+     *
+     * @return The backing array.
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    /**
+     * This method obtains the maximum number of channels stored by this reading.
+     *
+     * @return The reading capacity.
+     */
+    public int getCapacity() {
+        return values.length;
+    }
+
+    /**
+     * This method fills this reading with the given data. Channels beyond the reading capacity are
+     * discarded.
+     *
+     * @param timestamp The time in nanoseconds at which the reading happened.
+     * @param accuracy The accuracy reported with the reading.
+     * @param src The array with the channel values.
+     * @param count The number of channels in the source array.
+     */
+    public void set(long timestamp, int accuracy, float[] src, int count) {
+        this.timestamp = timestamp;
+        this.accuracy = accuracy;
+        this.size = Math.min(count, values.length);
+        System.arraycopy(src, 0, values, 0, size);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method marks this reading as borrowed from its pool, with a single reference.
+     */
+    void acquired() {
+        refCount.set(1);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The pool that owns this reading, or null for a standalone reading.
+     */
+    private final SensorReadingPool pool;
+
+    /**
+     * The array that stores the reading channels.
+     */
+    private final float[] values;
+
+    /**
+     * The number of references to this reading.
+     */
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    /**
+     * The number of valid channels in this reading.
+     */
+    private int size;
+
+    /**
+     * The time in nanoseconds at which the reading happened.
+     */
+    private long timestamp;
+
+    /**
+     * The accuracy reported with this reading.
+     */
+    private int accuracy;
+}
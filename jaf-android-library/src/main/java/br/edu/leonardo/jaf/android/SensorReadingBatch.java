@@ -0,0 +1,157 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * A columnar block of sensor readings. The timestamps and each channel of the readings are stored
+ * in separate preallocated arrays, so a batch can be filled and delivered repeatedly without
+ * allocating memory.
+ */
+public final class SensorReadingBatch {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new empty batch.
+     *
+     * @param capacity The maximum number of readings in the batch.
+     * @param channels The number of channels of each reading.
+     */
+    public SensorReadingBatch(int capacity, int channels) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("The batch capacity must be positive.");
+        this.timestamps = new long[capacity];
+        this.values = new float[channels][capacity];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method appends a reading to the end of this batch. Channels beyond the number of
+     * channels of the batch are discarded and missing channels are filled with zero.
+     *
+     * @param timestamp The time in nanoseconds at which the reading happened.
+     * @param src The array with the channel values.
+     * @param count The number of channels in the source array.
+     * @return true, if the reading was appended; false, if the batch is full.
+     */
+    public boolean add(long timestamp, float[] src, int count) {
+        if(size == timestamps.length)
+            return false;
+        timestamps[size] = timestamp;
+        for(int c = 0; c < values.length; c++)
+            values[c][size] = c < count ? src[c] : 0f;
+        size++;
+        return true;
+    }
+
+    /**
+     * This method removes all readings from this batch.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * This method checks whether this batch has no room for more readings.
+     *
+     * @return true, if the batch is full; false, otherwise.
+     */
+    public boolean isFull() {
+        return size == timestamps.length;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of readings in this batch.
+     *
+     * @return The number of readings.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * This method obtains the maximum number of readings in this batch.
+     *
+     * @return The batch capacity.
+     */
+    public int getCapacity() {
+        return timestamps.length;
+    }
+
+    /**
+     * This method obtains the number of channels of each reading in this batch.
+     *
+     * @return The number of channels.
+     */
+    public int getChannelCount() {
+        return values.length;
+    }
+
+    /**
+     * This method obtains the timestamp of a reading in this batch.
+     *
+     * @param index The reading index.
+     * @return The time in nanoseconds at which the reading happened.
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * This method obtains the value of a channel of a reading in this batch.
+     *
+     * @param index The reading index.
+     * @param channel The channel index.
+     * @return The channel value.
+     */
+    public float getValue(int index, int channel) {
+        return values[channel][index];
+    }
+
+    /**
+     * This method obtains the array that backs the timestamps of this batch. Only the first
+     * {@link #getSize()} positions are valid.
+     *
+     * @return The timestamps array.
+     */
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    /**
+     * This method obtains the array that backs a channel of this batch. Only the first
+     * {@link #getSize()} positions are valid.
+     *
+     * @param channel The channel index.
+     * @return The channel array.
+     */
+    public float[] getChannel(int channel) {
+        return values[channel];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The timestamps of the readings in this batch.
+     */
+    private final long[] timestamps;
+
+    /**
+     * The channels of the readings in this batch, one array per channel.
+     */
+    private final float[][] values;
+
+    /**
+     * The number of readings in this batch.
+     */
+    private int size;
+}
@@ -0,0 +1,16 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * A listener that receives primitive sensor readings from a SensorReadingSource.
+ */
+public interface SensorReadingListener {
+
+    /**
+     * This method is called when the source produces a new reading. The reading is only valid
+     * during this call, unless the listener calls {@link SensorReading#retain()} on it.
+     *
+     * @param source The source that produced the reading.
+     * @param reading The produced reading.
+     */
+    void onReading(SensorReadingSource source, SensorReading reading);
+}
@@ -0,0 +1,128 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * A fixed-size pool of preallocated SensorReading objects. Readings are borrowed with
+ * {@link #acquire()} and go back to the pool when their last reference is released, so a sensor
+ * that delivers pooled readings does not allocate memory in its steady state.
+ */
+public final class SensorReadingPool {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new pool with the given number of readings.
+     *
+     * @param size The number of readings in the pool.
+     * @param channels The number of channels of each reading.
+     */
+    public SensorReadingPool(int size, int channels) {
+        if(size <= 0)
+            throw new IllegalArgumentException("The pool size must be positive.");
+        this.free = new SensorReading[size];
+        for(int i = 0; i < size; i++)
+            free[i] = new SensorReading(this, channels);
+        this.available = size;
+        this.channels = channels;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method borrows a reading from the pool. The returned reading has a single reference that
+     * must be released with {@link SensorReading#release()}.
+     *
+     * @return The borrowed reading; or null, if all readings are currently borrowed.
+     */
+    public synchronized SensorReading acquire() {
+        if(available == 0) {
+            exhaustedCount++;
+            return null;
+        }
+        SensorReading reading = free[--available];
+        free[available] = null;
+        reading.acquired();
+        return reading;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of readings currently available in the pool.
+     *
+     * @return The number of available readings.
+     */
+    public synchronized int getAvailable() {
+        return available;
+    }
+
+    /**
+     * This method obtains the total number of readings in the pool.
+     *
+     * @return The pool size.
+     */
+    public int getSize() {
+        return free.length;
+    }
+
+    /**
+     * This method obtains the number of channels of each reading in the pool.
+     *
+     * @return The number of channels.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * This method obtains how many times a reading was requested while the pool was empty.
+     *
+     * @return The number of failed acquisitions.
+     */
+    public synchronized long getExhaustedCount() {
+        return exhaustedCount;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method gives a reading back to the pool. It is called when the last reference to the
+     * reading is released.
+     *
+     * @param reading The reading to be recycled.
+     */
+    synchronized void recycle(SensorReading reading) {
+        free[available++] = reading;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The stack of readings available in the pool.
+     */
+    private final SensorReading[] free;
+
+    /**
+     * The number of channels of each reading in the pool.
+     */
+    private final int channels;
+
+    /**
+     * The number of readings available in the pool (the top of the stack).
+     */
+    private int available;
+
+    /**
+     * The number of times a reading was requested while the pool was empty.
+     */
+    private long exhaustedCount;
+}
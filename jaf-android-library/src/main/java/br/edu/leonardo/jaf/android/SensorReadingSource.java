@@ -0,0 +1,28 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * An object that produces primitive sensor readings to registered listeners.
+ */
+public interface SensorReadingSource {
+
+    /**
+     * This method registers a listener that receives the readings produced by this source.
+     *
+     * @param listener The listener to be registered.
+     */
+    void addReadingListener(SensorReadingListener listener);
+
+    /**
+     * This method unregisters a listener previously registered in this source.
+     *
+     * @param listener The listener to be removed.
+     */
+    void removeReadingListener(SensorReadingListener listener);
+
+    /**
+     * This method obtains the number of channels in the readings produced by this source.
+     *
+     * @return The number of channels.
+     */
+    int getChannelCount();
+}
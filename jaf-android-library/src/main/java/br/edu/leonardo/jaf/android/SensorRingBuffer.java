@@ -0,0 +1,459 @@
+package br.edu.leonardo.jaf.android;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, preallocated and lock-free ring buffer of sensor events between a single producer
+ * (the thread that receives the events from the Android system) and a single consumer (the thread
+ * that delivers them). Events are stored in primitive arrays, so offering and polling never
+ * allocate memory. When the buffer is full, the overflow policy decides what happens:
+ *
+ * <ul>
+ * <li>DROP_OLDEST: the oldest buffered event is discarded to make room for the new one.</li>
+ * <li>DROP_NEWEST: the new event is discarded.</li>
+ * <li>COALESCE_LATEST: the new event is kept in a side slot, overwritten by the following events
+ * until the consumer catches up, so that the consumer always receives the most recent event.</li>
+ * <li>BLOCK: the producer waits until the consumer makes room. The thread that produces the
+ * events is stalled meanwhile, so this policy must only be used when that thread serves no other
+ * work (AndroidDeviceSensor refuses it for sensors attached to a SensorHub).</li>
+ * </ul>
+ */
+public class SensorRingBuffer {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorRingBuffer.
+     *
+     * @param capacity The maximum number of buffered events.
+     * @param channels The maximum number of channels of each event.
+     * @param policy The overflow policy (DROP_OLDEST, DROP_NEWEST, COALESCE_LATEST or BLOCK).
+     */
+    public SensorRingBuffer(int capacity, int channels, int policy) {
+        if(capacity <= 0 || channels <= 0)
+            throw new IllegalArgumentException("The capacity and the number of channels must be positive.");
+        if(policy < DROP_OLDEST || policy > BLOCK)
+            throw new IllegalArgumentException("Unknown overflow policy " + policy);
+        this.capacity = capacity;
+        this.channels = channels;
+        this.policy = policy;
+        this.timestamps = new long[capacity];
+        this.accuracies = new int[capacity];
+        this.sizes = new int[capacity];
+        this.values = new float[capacity * channels];
+        this.latestValues = new AtomicIntegerArray(channels);
+        this.scratch = new float[channels];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method adds an event to the buffer. It must be called only by the producer thread.
+     *
+     * @param timestamp The time in nanoseconds of the event.
+     * @param accuracy The accuracy of the event.
+     * @param src The values of the event.
+     * @param count The number of values (values beyond the number of channels are ignored).
+     * @return OFFER_OK, if the event was buffered without losses; OFFER_DROPPED, if an event (the
+     *         new one or the oldest one) was discarded; OFFER_COALESCED, if the event overwrote a
+     *         previous event that was not yet consumed.
+     */
+    public int offer(long timestamp, int accuracy, float[] src, int count) {
+        int n = Math.min(count, channels);
+        if(latestPending) {
+            writeLatest(timestamp, accuracy, src, n);
+            return OFFER_COALESCED;
+        }
+        long t = tail.get();
+        int result = OFFER_OK;
+        while(t - head.get() >= capacity) {
+            switch(policy) {
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return OFFER_DROPPED;
+                case COALESCE_LATEST:
+                    writeLatest(timestamp, accuracy, src, n);
+                    return OFFER_COALESCED;
+                case DROP_OLDEST:
+                    long h = head.get();
+                    if(t - h >= capacity && head.compareAndSet(h, h + 1)) {
+                        dropped.incrementAndGet();
+                        result = OFFER_DROPPED;
+                    }
+                    break;
+                default:
+                    signalConsumer();
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    break;
+            }
+        }
+        int slot = (int) (t % capacity);
+        timestamps[slot] = timestamp;
+        accuracies[slot] = accuracy;
+        sizes[slot] = n;
+        System.arraycopy(src, 0, values, slot * channels, n);
+        tail.lazySet(t + 1);
+        signalConsumer();
+        return result;
+    }
+
+    /**
+     * This method removes the oldest event from the buffer and copies it to the given reading. It
+     * must be called only by the consumer thread.
+     *
+     * @param dest The reading that receives the event. Its capacity must not be smaller than the
+     *             number of channels of the buffer.
+     * @return true, if an event was removed; false, if the buffer is empty.
+     */
+    public boolean poll(SensorReading dest) {
+        while(true) {
+            long h = head.get();
+            if(h == tail.get())
+                return pollLatest(dest);
+            int slot = (int) (h % capacity);
+            long timestamp = timestamps[slot];
+            int accuracy = accuracies[slot];
+            int n = sizes[slot];
+            System.arraycopy(values, slot * channels, scratch, 0, n);
+            // The producer may have discarded (and overwritten) this event while it was copied
+            if(head.compareAndSet(h, h + 1)) {
+                dest.set(timestamp, accuracy, scratch, n);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * This method removes the oldest event from the buffer, waiting for an event if the buffer is
+     * empty. It must be called only by the consumer thread.
+     *
+     * @param dest The reading that receives the event.
+     * @param timeoutNanos The maximum time to wait in nanoseconds.
+     * @return true, if an event was removed; false, if the timeout elapsed or the thread was
+     *         interrupted.
+     */
+    public boolean poll(SensorReading dest, long timeoutNanos) {
+        if(poll(dest))
+            return true;
+        consumer = Thread.currentThread();
+        consumerWaiting = true;
+        try {
+            if(poll(dest))
+                return true;
+            LockSupport.parkNanos(this, timeoutNanos);
+            return poll(dest);
+        } finally {
+            consumerWaiting = false;
+        }
+    }
+
+    /**
+     * This method discards all buffered events. It must be called only by the consumer thread, or
+     * while no thread uses the buffer.
+     */
+    public void clear() {
+        head.set(tail.get());
+        latestPending = false;
+        claimedSequence.set(latestSequence);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of buffered events.
+     *
+     * @return The occupancy of the buffer.
+     */
+    public int getSize() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(capacity, size)) + (latestPending ? 1 : 0);
+    }
+
+    /**
+     * This method obtains the maximum number of buffered events.
+     *
+     * @return The capacity of the buffer.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * This method obtains the maximum number of channels of each event.
+     *
+     * @return The number of channels.
+     */
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /**
+     * This method obtains the overflow policy of the buffer.
+     *
+     * @return The overflow policy.
+     */
+    public int getPolicy() {
+        return policy;
+    }
+
+    /**
+     * This method obtains the number of events discarded because the buffer was full.
+     *
+     * @return The number of dropped events.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * This method obtains the number of events overwritten by newer events before being consumed.
+     *
+     * @return The number of coalesced events.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method writes an event to the side slot of the coalescing policy, protected by a
+     * sequence lock. If the previous event of the slot was not taken by the consumer, it is
+     * claimed as coalesced, so that the consumer can no longer take it.
+     *
+     * @param timestamp The time in nanoseconds of the event.
+     * @param accuracy The accuracy of the event.
+     * @param src The values of the event.
+     * @param n The number of values.
+     */
+    private void writeLatest(long timestamp, int accuracy, float[] src, int n) {
+        int previous = latestSequence;
+        int claimed = claimedSequence.get();
+        if(claimed != previous && claimedSequence.compareAndSet(claimed, previous))
+            coalesced.incrementAndGet();
+        latestSequence++;
+        latestTimestamp = timestamp;
+        latestAccuracy = accuracy;
+        latestSize = n;
+        for(int i = 0; i < n; i++)
+            latestValues.lazySet(i, Float.floatToRawIntBits(src[i]));
+        latestSequence++;
+        latestPending = true;
+        signalConsumer();
+    }
+
+    /**
+     * This method takes the event of the side slot of the coalescing policy, if there is one. The
+     * slot is released before it is read, so that an event written meanwhile is not lost. The
+     * event is claimed by its sequence number, which prevents it from being taken twice or being
+     * both taken and counted as coalesced by the producer.
+     *
+     * @param dest The reading that receives the event.
+     * @return true, if an event was taken; false, otherwise.
+     */
+    private boolean pollLatest(SensorReading dest) {
+        if(!latestPending)
+            return false;
+        latestPending = false;
+        while(true) {
+            int sequence = latestSequence;
+            if((sequence & 1) == 0) {
+                long timestamp = latestTimestamp;
+                int accuracy = latestAccuracy;
+                int n = latestSize;
+                for(int i = 0; i < n; i++)
+                    scratch[i] = Float.intBitsToFloat(latestValues.get(i));
+                if(sequence == latestSequence) {
+                    // The event may have been taken already, or claimed by the producer as coalesced
+                    int claimed = claimedSequence.get();
+                    if(claimed == sequence)
+                        return false;
+                    if(claimedSequence.compareAndSet(claimed, sequence)) {
+                        dest.set(timestamp, accuracy, scratch, n);
+                        return true;
+                    }
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * This method wakes the consumer up if it is waiting for events.
+     */
+    private void signalConsumer() {
+        if(consumerWaiting)
+            LockSupport.unpark(consumer);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The policy that discards the oldest buffered event when the buffer is full.
+     */
+    public static final int DROP_OLDEST = 0;
+
+    /**
+     * The policy that discards the new event when the buffer is full.
+     */
+    public static final int DROP_NEWEST = 1;
+
+    /**
+     * The policy that keeps only the most recent of the events that do not fit in the buffer.
+     */
+    public static final int COALESCE_LATEST = 2;
+
+    /**
+     * The policy that makes the producer wait when the buffer is full.
+     */
+    public static final int BLOCK = 3;
+
+    /**
+     * The result of an offer that buffered the event without losses.
+     */
+    public static final int OFFER_OK = 0;
+
+    /**
+     * The result of an offer that discarded an event.
+     */
+    public static final int OFFER_DROPPED = 1;
+
+    /**
+     * The result of an offer that overwrote an event not yet consumed.
+     */
+    public static final int OFFER_COALESCED = 2;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The time the producer waits between two checks of the BLOCK policy.
+     */
+    private static final long BLOCK_PARK_NANOS = 50000L;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The maximum number of buffered events.
+     */
+    private final int capacity;
+
+    /**
+     * The maximum number of channels of each event.
+     */
+    private final int channels;
+
+    /**
+     * The overflow policy.
+     */
+    private final int policy;
+
+    /**
+     * The timestamps of the buffered events.
+     */
+    private final long[] timestamps;
+
+    /**
+     * The accuracies of the buffered events.
+     */
+    private final int[] accuracies;
+
+    /**
+     * The number of values of the buffered events.
+     */
+    private final int[] sizes;
+
+    /**
+     * The values of the buffered events (channels positions per event).
+     */
+    private final float[] values;
+
+    /**
+     * The sequence number of the next event to be consumed.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence number of the next event to be produced.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The number of dropped events.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The number of coalesced events.
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * The array where the consumer copies an event before validating it.
+     */
+    private final float[] scratch;
+
+    /**
+     * The values of the side slot of the coalescing policy, as float bits. The fields of the side
+     * slot are accessed atomically, so that the reads of the sequence lock cannot be reordered with
+     * the reads of the data.
+     */
+    private final AtomicIntegerArray latestValues;
+
+    /**
+     * The timestamp of the side slot.
+     */
+    private volatile long latestTimestamp;
+
+    /**
+     * The accuracy of the side slot.
+     */
+    private volatile int latestAccuracy;
+
+    /**
+     * The number of values of the side slot.
+     */
+    private volatile int latestSize;
+
+    /**
+     * The sequence lock of the side slot (odd while it is being written).
+     */
+    private volatile int latestSequence;
+
+    /**
+     * The sequence number of the last event of the side slot claimed either by the consumer, which
+     * took it, or by the producer, which overwrote it before it was taken.
+     */
+    private final AtomicInteger claimedSequence = new AtomicInteger();
+
+    /**
+     * Indicates whether the side slot holds an event not yet consumed.
+     */
+    private volatile boolean latestPending;
+
+    /**
+     * The consumer thread, registered when it waits for events.
+     */
+    private volatile Thread consumer;
+
+    /**
+     * Indicates whether the consumer is waiting for events.
+     */
+    private volatile boolean consumerWaiting;
+}
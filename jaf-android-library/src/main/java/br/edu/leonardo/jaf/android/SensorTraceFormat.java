@@ -0,0 +1,194 @@
+package br.edu.leonardo.jaf.android;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * The constants and helper methods of the binary trace format written by SensorTraceRecorder. A
+ * trace is a sequence of segment files. Each segment has a fixed-size header, followed by
+ * fixed-width records and by a footer with the descriptors of the recorded sources, a sparse
+ * timestamp index and a trailer. All values are little-endian.
+ *
+ * <pre>
+ * header:  int magic, short version, short channels, int recordSize, int segmentIndex,
+ *          long createdMillis, long reserved
+ * record:  int sourceId, long timestamp, float[channels] values
+ * footer:  int sourceCount, sourceCount x (int id, int kind, int channels, byte[32] name),
+ *          indexCount x (long timestamp, long recordIndex),
+ *          long recordCount, int indexCount, int indexOffset, int sourcesOffset, int magic
+ * </pre>
+ */
+final class SensorTraceFormat {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This class has only static members.
+     */
+    private SensorTraceFormat() {
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method computes the size of a record.
+     *
+     * @param channels The number of channels of each record.
+     * @return The record size in bytes.
+     */
+    static int recordSize(int channels) {
+        return RECORD_PREFIX_SIZE + 4 * channels;
+    }
+
+    /**
+     * This method computes the number of bytes that must be reserved at the end of a segment for
+     * its footer.
+     *
+     * @param maxRecords The maximum number of records in the segment.
+     * @return The footer size in bytes.
+     */
+    static int footerReserve(int maxRecords) {
+        int indexCount = maxRecords / INDEX_INTERVAL + 1;
+        return 4 + MAX_SOURCES * SOURCE_SIZE + indexCount * INDEX_ENTRY_SIZE + TRAILER_SIZE;
+    }
+
+    /**
+     * This method writes a segment header at the beginning of the given buffer.
+     *
+     * @param buf The segment buffer.
+     * @param channels The number of channels of each record.
+     * @param segmentIndex The index of the segment in the trace.
+     * @param createdMillis The wall-clock time in milliseconds at which the segment was created.
+     */
+    static void writeHeader(ByteBuffer buf, int channels, int segmentIndex, long createdMillis) {
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(0, HEADER_MAGIC);
+        buf.putShort(4, VERSION);
+        buf.putShort(6, (short) channels);
+        buf.putInt(8, recordSize(channels));
+        buf.putInt(12, segmentIndex);
+        buf.putLong(16, createdMillis);
+        buf.putLong(24, 0L);
+    }
+
+    /**
+     * This method encodes a source name into the fixed-size name field of a descriptor.
+     *
+     * @param buf The buffer.
+     * @param offset The offset of the name field.
+     * @param name The source name.
+     */
+    static void putName(ByteBuffer buf, int offset, String name) {
+        byte[] bytes = name.getBytes(UTF8);
+        for(int i = 0; i < NAME_SIZE; i++)
+            buf.put(offset + i, i < bytes.length ? bytes[i] : 0);
+    }
+
+    /**
+     * This method decodes the fixed-size name field of a descriptor.
+     *
+     * @param buf The buffer.
+     * @param offset The offset of the name field.
+     * @return The source name.
+     */
+    static String getName(ByteBuffer buf, int offset) {
+        byte[] bytes = new byte[NAME_SIZE];
+        int length = 0;
+        while(length < NAME_SIZE && buf.get(offset + length) != 0) {
+            bytes[length] = buf.get(offset + length);
+            length++;
+        }
+        return new String(bytes, 0, length, UTF8);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P A C K A G E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The magic number at the beginning of a segment ("JAFT").
+     */
+    static final int HEADER_MAGIC = 0x5446414A;
+
+    /**
+     * The magic number at the end of a finished segment ("JAFI").
+     */
+    static final int TRAILER_MAGIC = 0x4946414A;
+
+    /**
+     * The version of the trace format.
+     */
+    static final short VERSION = 1;
+
+    /**
+     * The size of the segment header.
+     */
+    static final int HEADER_SIZE = 32;
+
+    /**
+     * The size of the fixed part of a record (source id and timestamp).
+     */
+    static final int RECORD_PREFIX_SIZE = 12;
+
+    /**
+     * The size of the name field of a source descriptor.
+     */
+    static final int NAME_SIZE = 32;
+
+    /**
+     * The size of a source descriptor.
+     */
+    static final int SOURCE_SIZE = 12 + NAME_SIZE;
+
+    /**
+     * The size of an index entry.
+     */
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    /**
+     * The size of the segment trailer.
+     */
+    static final int TRAILER_SIZE = 24;
+
+    /**
+     * The number of records between two index entries.
+     */
+    static final int INDEX_INTERVAL = 256;
+
+    /**
+     * The maximum number of sources in a trace.
+     */
+    static final int MAX_SOURCES = 64;
+
+    /**
+     * The kind of a source that records primitive sensor readings.
+     */
+    static final int KIND_READING = 0;
+
+    /**
+     * The kind of a source that records location fixes. The channels of a location record are the
+     * latitude and the longitude (each split in a high and a low float part), the altitude, the
+     * accuracy, the speed and the bearing.
+     */
+    static final int KIND_LOCATION = 1;
+
+    /**
+     * The number of channels of a location record.
+     */
+    static final int LOCATION_CHANNELS = 8;
+
+    /**
+     * The extension of segment files.
+     */
+    static final String EXTENSION = ".jtr";
+
+    /**
+     * The charset of source names.
+     */
+    static final Charset UTF8 = Charset.forName("UTF-8");
+}
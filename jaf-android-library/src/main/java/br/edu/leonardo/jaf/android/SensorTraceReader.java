@@ -0,0 +1,385 @@
+package br.edu.leonardo.jaf.android;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * A reader of the binary traces written by SensorTraceRecorder. It iterates over the records of
+ * all segments of a trace in order and can seek to a timestamp using the segment indexes. This
+ * class does not depend on the Android framework, so traces can be read on a plain JVM.
+ */
+public class SensorTraceReader implements Closeable {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor opens the trace with the given prefix in the given directory.
+     *
+     * @param directory The directory with the segment files.
+     * @param prefix The prefix of the segment file names.
+     * @throws IOException If the trace has no segments or its segments are invalid.
+     */
+    public SensorTraceReader(File directory, final String prefix) throws IOException {
+        // Only the names written by SensorTraceRecorder: another trace may share the prefix
+        final Pattern segmentName = Pattern.compile(Pattern.quote(prefix) + "-\\d{5}" + Pattern.quote(SensorTraceFormat.EXTENSION));
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return segmentName.matcher(name).matches();
+            }
+        });
+        if(files == null || files.length == 0)
+            throw new IOException("There is no trace " + prefix + " in " + directory);
+        Arrays.sort(files);
+        this.files = files;
+        for(int i = files.length - 1; i >= 0 && sourceNames == null; i--) {
+            openSegment(i);
+            readSources();
+        }
+        if(sourceNames == null)
+            throw new IOException("The trace " + prefix + " has no finished segment.");
+        openSegment(0);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method advances to the next record of the trace.
+     *
+     * @return true, if the reader is positioned on a record; false, if the trace has ended.
+     * @throws IOException If a segment could not be opened.
+     */
+    public boolean next() throws IOException {
+        while(position >= recordCount) {
+            if(segment + 1 >= files.length)
+                return false;
+            openSegment(segment + 1);
+        }
+        offset = SensorTraceFormat.HEADER_SIZE + (int) position * recordSize;
+        position++;
+        return true;
+    }
+
+    /**
+     * This method positions the reader right before the first record whose timestamp is not older
+     * than the given time, so that the next call to {@link #next()} reaches it. Records of all
+     * sources are expected to be recorded in increasing timestamp order.
+     *
+     * @param timestamp The time in nanoseconds.
+     * @throws IOException If a segment could not be opened.
+     */
+    public void seek(long timestamp) throws IOException {
+        int target = 0;
+        for(int i = 1; i < files.length; i++) {
+            openSegment(i);
+            if(indexCount > 0 && indexTimestamp(0) <= timestamp)
+                target = i;
+            else
+                break;
+        }
+        openSegment(target);
+        for(int i = indexCount - 1; i >= 0; i--) {
+            if(indexTimestamp(i) <= timestamp) {
+                position = buffer.getLong(indexOffset + i * SensorTraceFormat.INDEX_ENTRY_SIZE + 8);
+                break;
+            }
+        }
+        while(next()) {
+            if(getTimestamp() >= timestamp) {
+                position--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * This method goes back to the first record of the trace.
+     *
+     * @throws IOException If the first segment could not be opened.
+     */
+    public void rewind() throws IOException {
+        openSegment(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        if(channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the source id of the current record.
+     *
+     * @return The source id.
+     */
+    public int getSourceId() {
+        return buffer.getInt(offset);
+    }
+
+    /**
+     * This method obtains the timestamp of the current record.
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getTimestamp() {
+        return buffer.getLong(offset + 4);
+    }
+
+    /**
+     * This method obtains a channel of the current record.
+     *
+     * @param channel The channel index.
+     * @return The channel value.
+     */
+    public float getValue(int channel) {
+        return buffer.getFloat(offset + SensorTraceFormat.RECORD_PREFIX_SIZE + 4 * channel);
+    }
+
+    /**
+     * This method copies the channels of the current record to the given array.
+     *
+     * @param dest The destination array.
+     * @param count The number of channels to be copied.
+     */
+    public void copyValues(float[] dest, int count) {
+        for(int c = 0; c < count; c++)
+            dest[c] = getValue(c);
+    }
+
+    /**
+     * This method obtains the number of channels of each record.
+     *
+     * @return The number of channels.
+     */
+    public int getChannelCount() {
+        return channels;
+    }
+
+    /**
+     * This method obtains the number of sources recorded in the trace.
+     *
+     * @return The number of sources.
+     */
+    public int getSourceCount() {
+        return sourceNames.length;
+    }
+
+    /**
+     * This method obtains the name of a recorded source.
+     *
+     * @param sourceId The source id.
+     * @return The source name.
+     */
+    public String getSourceName(int sourceId) {
+        return sourceNames[sourceId];
+    }
+
+    /**
+     * This method obtains the number of channels of a recorded source.
+     *
+     * @param sourceId The source id.
+     * @return The number of channels.
+     */
+    public int getSourceChannels(int sourceId) {
+        return sourceChannels[sourceId];
+    }
+
+    /**
+     * This method checks whether a recorded source is a location sensor. The channels of a
+     * location record are the latitude and the longitude (each split in a high and a low float
+     * part), the altitude, the accuracy, the speed and the bearing.
+     *
+     * @param sourceId The source id.
+     * @return true, if the source records location fixes; false, if it records sensor readings.
+     */
+    public boolean isLocationSource(int sourceId) {
+        return sourceKinds[sourceId] == SensorTraceFormat.KIND_LOCATION;
+    }
+
+    /**
+     * This method finds the id of a recorded source by its name.
+     *
+     * @param name The source name.
+     * @return The source id, or -1 if there is no source with the given name.
+     */
+    public int findSource(String name) {
+        for(int i = 0; i < sourceNames.length; i++)
+            if(sourceNames[i].equals(name))
+                return i;
+        return -1;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method maps a segment and reads its header and trailer. A segment without trailer (for
+     * instance, the last segment of a recording that was not stopped) is read up to its first
+     * empty record.
+     *
+     * @param index The segment index.
+     * @throws IOException If the segment could not be mapped or is invalid.
+     */
+    private void openSegment(int index) throws IOException {
+        close();
+        channel = new RandomAccessFile(files[index], "r").getChannel();
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        int size = buf.limit();
+        if(size < SensorTraceFormat.HEADER_SIZE || buf.getInt(0) != SensorTraceFormat.HEADER_MAGIC)
+            throw new IOException("Invalid trace segment " + files[index]);
+        channels = buf.getShort(6);
+        recordSize = buf.getInt(8);
+        int trailer = size - SensorTraceFormat.TRAILER_SIZE;
+        if(trailer >= SensorTraceFormat.HEADER_SIZE && buf.getInt(trailer + 20) == SensorTraceFormat.TRAILER_MAGIC) {
+            recordCount = buf.getLong(trailer);
+            indexCount = buf.getInt(trailer + 8);
+            indexOffset = buf.getInt(trailer + 12);
+            sourcesOffset = buf.getInt(trailer + 16);
+        } else {
+            long count = 0;
+            int max = (size - SensorTraceFormat.HEADER_SIZE) / recordSize;
+            while(count < max) {
+                int o = SensorTraceFormat.HEADER_SIZE + (int) count * recordSize;
+                if(buf.getInt(o) == 0 && buf.getLong(o + 4) == 0L)
+                    break;
+                count++;
+            }
+            recordCount = count;
+            indexCount = 0;
+            sourcesOffset = -1;
+        }
+        buffer = buf;
+        segment = index;
+        position = 0;
+    }
+
+    /**
+     * This method reads the source descriptors of the current segment, if it is finished.
+     */
+    private void readSources() {
+        if(sourcesOffset < 0)
+            return;
+        int count = buffer.getInt(sourcesOffset);
+        sourceNames = new String[count];
+        sourceKinds = new int[count];
+        sourceChannels = new int[count];
+        int o = sourcesOffset + 4;
+        for(int i = 0; i < count; i++) {
+            int id = buffer.getInt(o);
+            sourceKinds[id] = buffer.getInt(o + 4);
+            sourceChannels[id] = buffer.getInt(o + 8);
+            sourceNames[id] = SensorTraceFormat.getName(buffer, o + 12);
+            o += SensorTraceFormat.SOURCE_SIZE;
+        }
+    }
+
+    /**
+     * This method obtains the timestamp of an index entry of the current segment.
+     *
+     * @param entry The entry index.
+     * @return The timestamp of the entry.
+     */
+    private long indexTimestamp(int entry) {
+        return buffer.getLong(indexOffset + entry * SensorTraceFormat.INDEX_ENTRY_SIZE);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The segment files of the trace, in order.
+     */
+    private final File[] files;
+
+    /**
+     * The names of the recorded sources.
+     */
+    private String[] sourceNames;
+
+    /**
+     * The kinds of the recorded sources.
+     */
+    private int[] sourceKinds;
+
+    /**
+     * The number of channels of the recorded sources.
+     */
+    private int[] sourceChannels;
+
+    /**
+     * The file channel of the current segment.
+     */
+    private FileChannel channel;
+
+    /**
+     * The mapped buffer of the current segment.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * The index of the current segment.
+     */
+    private int segment;
+
+    /**
+     * The number of channels of each record.
+     */
+    private int channels;
+
+    /**
+     * The size of each record in bytes.
+     */
+    private int recordSize;
+
+    /**
+     * The number of records in the current segment.
+     */
+    private long recordCount;
+
+    /**
+     * The number of index entries in the current segment.
+     */
+    private int indexCount;
+
+    /**
+     * The offset of the index in the current segment.
+     */
+    private int indexOffset;
+
+    /**
+     * The offset of the source descriptors in the current segment, or -1 if it is not finished.
+     */
+    private int sourcesOffset;
+
+    /**
+     * The index of the next record in the current segment.
+     */
+    private long position;
+
+    /**
+     * The offset of the current record in the current segment.
+     */
+    private int offset;
+}
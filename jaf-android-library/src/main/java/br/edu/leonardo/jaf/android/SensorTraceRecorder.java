@@ -0,0 +1,595 @@
+package br.edu.leonardo.jaf.android;
+
+import android.location.Location;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A recorder that captures sensor readings and location fixes into binary trace files (see
+ * SensorTraceFormat). Readings are copied by the callback threads into a bounded, preallocated
+ * write-behind queue that never blocks: when the queue is full, the reading is dropped and
+ * counted. A background thread drains the queue into memory-mapped segment files of a fixed size,
+ * rotating to a new segment when the current one is full and keeping at most a given number of
+ * segments on disk.
+ */
+public class SensorTraceRecorder {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SensorTraceRecorder.
+     *
+     * @param directory The directory where the segment files are written.
+     * @param prefix The prefix of the segment file names.
+     * @param channels The number of channels of each record. Readings with more channels are
+     *                 truncated. It must be at least 8 to record location fixes.
+     * @param segmentSize The size in bytes of each segment file.
+     * @param maxSegments The maximum number of segment files kept on disk (the oldest are
+     *                    deleted), or zero to keep all segments.
+     * @param queueCapacity The capacity of the write-behind queue. It is rounded up to a power of
+     *                      two.
+     */
+    public SensorTraceRecorder(File directory, String prefix, int channels, int segmentSize, int maxSegments, int queueCapacity) {
+        int recordSize = SensorTraceFormat.recordSize(channels);
+        int maxRecords = (segmentSize - SensorTraceFormat.HEADER_SIZE) / recordSize;
+        while(maxRecords > 0 && SensorTraceFormat.HEADER_SIZE + maxRecords * recordSize + SensorTraceFormat.footerReserve(maxRecords) > segmentSize)
+            maxRecords--;
+        if(channels <= 0 || maxRecords <= 0)
+            throw new IllegalArgumentException("The segment size is too small for the given number of channels.");
+        int capacity = Integer.highestOneBit(Math.max(2, queueCapacity - 1)) << 1;
+        this.directory = directory;
+        this.prefix = prefix;
+        this.channels = channels;
+        this.recordSize = recordSize;
+        this.segmentSize = segmentSize;
+        this.maxRecords = maxRecords;
+        this.maxSegments = maxSegments;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; i++)
+            sequences.set(i, i);
+        this.queueIds = new int[capacity];
+        this.queueTimestamps = new long[capacity];
+        this.queueValues = new float[capacity * channels];
+        this.indexTimestamps = new long[maxRecords / SensorTraceFormat.INDEX_INTERVAL + 1];
+        this.indexRecords = new long[indexTimestamps.length];
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method starts recording the readings of a source.
+     *
+     * @param source The source to be recorded.
+     * @param name The source name stored in the trace (up to 32 bytes).
+     * @return The source id used in the trace records.
+     */
+    public synchronized int addSource(final SensorReadingSource source, String name) {
+        final int id = registerSource(SensorTraceFormat.KIND_READING, source.getChannelCount(), name);
+        SensorReadingListener listener = new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource src, SensorReading reading) {
+                record(id, reading.getTimestamp(), reading.getValues(), reading.getSize());
+            }
+        };
+        source.addReadingListener(listener);
+        detachers.add(new Runnable() {
+            @Override
+            public void run() {
+                source.removeReadingListener(listener);
+            }
+        });
+        return id;
+    }
+
+    /**
+     * This method starts recording the fixes of a location sensor.
+     *
+     * @param sensor The location sensor to be recorded.
+     * @param name The source name stored in the trace (up to 32 bytes).
+     * @return The source id used in the trace records.
+     */
+    public synchronized int addLocationSource(final AndroidLocationSensor sensor, String name) {
+        if(channels < SensorTraceFormat.LOCATION_CHANNELS)
+            throw new IllegalStateException("The recorder needs at least 8 channels to record location fixes.");
+        final int id = registerSource(SensorTraceFormat.KIND_LOCATION, SensorTraceFormat.LOCATION_CHANNELS, name);
+        final float[] values = new float[SensorTraceFormat.LOCATION_CHANNELS];
+        LocationFixListener listener = new LocationFixListener() {
+            @Override
+            public void onLocationFix(AndroidLocationSensor s, Location loc) {
+                synchronized(values) {
+                    splitDouble(loc.getLatitude(), values, 0);
+                    splitDouble(loc.getLongitude(), values, 2);
+                    values[4] = (float) loc.getAltitude();
+                    values[5] = loc.getAccuracy();
+                    values[6] = loc.getSpeed();
+                    values[7] = loc.getBearing();
+                    long timestamp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? loc.getElapsedRealtimeNanos() : loc.getTime() * 1000000L;
+                    record(id, timestamp, values, values.length);
+                }
+            }
+        };
+        sensor.addLocationFixListener(listener);
+        detachers.add(new Runnable() {
+            @Override
+            public void run() {
+                sensor.removeLocationFixListener(listener);
+            }
+        });
+        return id;
+    }
+
+    /**
+     * This method enqueues a record. It never blocks: if the write-behind queue is full, the record
+     * is dropped and counted.
+     *
+     * @param sourceId The id of the source that produced the values.
+     * @param timestamp The time in nanoseconds of the values.
+     * @param values The channel values.
+     * @param count The number of channels in the values array.
+     * @return true, if the record was enqueued; false, if it was dropped.
+     */
+    public boolean record(int sourceId, long timestamp, float[] values, int count) {
+        long pos;
+        int slot;
+        while(true) {
+            pos = tail.get();
+            slot = (int) (pos & mask);
+            long dif = sequences.get(slot) - pos;
+            if(dif == 0) {
+                if(tail.compareAndSet(pos, pos + 1))
+                    break;
+            } else if(dif < 0) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+        queueIds[slot] = sourceId;
+        queueTimestamps[slot] = timestamp;
+        int base = slot * channels;
+        int n = Math.min(count, channels);
+        System.arraycopy(values, 0, queueValues, base, n);
+        for(int c = n; c < channels; c++)
+            queueValues[base + c] = 0f;
+        sequences.set(slot, pos + 1);
+        return true;
+    }
+
+    /**
+     * This method opens the first segment and starts the thread that writes the queued records.
+     *
+     * @throws IOException If the segment could not be created.
+     */
+    public synchronized void start() throws IOException {
+        if(writer != null)
+            return;
+        if(!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create the directory " + directory);
+        openSegment();
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "jaf-trace-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * This method stops recording. The sources are detached, the queued records are written and
+     * the current segment is finished.
+     *
+     * @throws IOException If the segment could not be finished.
+     */
+    public synchronized void stop() throws IOException {
+        for(Runnable r : detachers)
+            r.run();
+        detachers.clear();
+        Thread t = writer;
+        if(t == null)
+            return;
+        running = false;
+        LockSupport.unpark(t);
+        try {
+            t.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        drain();
+        closeSegment();
+        IOException error = writeError;
+        writeError = null;
+        if(error != null)
+            throw error;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of records written to the segment files.
+     *
+     * @return The number of written records.
+     */
+    public long getRecordedCount() {
+        return written;
+    }
+
+    /**
+     * This method obtains the number of records dropped because the write-behind queue was full.
+     *
+     * @return The number of dropped records.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * This method obtains the number of segment files created by this recorder.
+     *
+     * @return The number of segments.
+     */
+    public int getSegmentCount() {
+        return segmentIndex;
+    }
+
+    /**
+     * This method obtains the number of channels of each record.
+     *
+     * @return The number of channels.
+     */
+    public int getChannelCount() {
+        return channels;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method registers the descriptor of a source.
+     *
+     * @param kind The source kind.
+     * @param sourceChannels The number of channels of the source.
+     * @param name The source name.
+     * @return The source id.
+     */
+    private int registerSource(int kind, int sourceChannels, String name) {
+        synchronized(sourceNames) {
+            if(sourceNames.size() == SensorTraceFormat.MAX_SOURCES)
+                throw new IllegalStateException("Too many sources.");
+            sourceKinds.add(kind);
+            this.sourceChannels.add(Math.min(sourceChannels, channels));
+            sourceNames.add(name);
+            return sourceNames.size() - 1;
+        }
+    }
+
+    /**
+     * This method is the body of the writer thread.
+     */
+    private void writeLoop() {
+        while(running) {
+            try {
+                if(drain() == 0)
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } catch(IOException e) {
+                writeError = e;
+                running = false;
+            }
+        }
+    }
+
+    /**
+     * This method writes all records currently in the queue to the segment files.
+     *
+     * @return The number of written records.
+     * @throws IOException If a segment could not be rotated.
+     */
+    private int drain() throws IOException {
+        int count = 0;
+        while(true) {
+            int slot = (int) (head & mask);
+            if(sequences.get(slot) != head + 1)
+                return count;
+            if(segmentRecords == maxRecords) {
+                closeSegment();
+                openSegment();
+            }
+            if(segmentRecords % SensorTraceFormat.INDEX_INTERVAL == 0) {
+                indexTimestamps[indexCount] = queueTimestamps[slot];
+                indexRecords[indexCount] = segmentRecords;
+                indexCount++;
+            }
+            MappedByteBuffer buf = segment;
+            int offset = SensorTraceFormat.HEADER_SIZE + segmentRecords * recordSize;
+            buf.putInt(offset, queueIds[slot]);
+            buf.putLong(offset + 4, queueTimestamps[slot]);
+            int base = slot * channels;
+            for(int c = 0; c < channels; c++)
+                buf.putFloat(offset + SensorTraceFormat.RECORD_PREFIX_SIZE + 4 * c, queueValues[base + c]);
+            sequences.set(slot, head + mask + 1);
+            head++;
+            segmentRecords++;
+            written++;
+            count++;
+        }
+    }
+
+    /**
+     * This method creates and maps a new segment file, deleting the oldest segment if the maximum
+     * number of segments is reached.
+     *
+     * @throws IOException If the segment could not be created.
+     */
+    private void openSegment() throws IOException {
+        if(maxSegments > 0 && segmentIndex >= maxSegments) {
+            File oldest = segmentFile(segmentIndex - maxSegments);
+            if(oldest.exists() && !oldest.delete())
+                throw new IOException("Could not delete the segment " + oldest);
+        }
+        File file = segmentFile(segmentIndex);
+        segmentChannel = new RandomAccessFile(file, "rw").getChannel();
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        SensorTraceFormat.writeHeader(segment, channels, segmentIndex, System.currentTimeMillis());
+        segmentIndex++;
+        segmentRecords = 0;
+        indexCount = 0;
+    }
+
+    /**
+     * This method writes the footer of the current segment, flushes it to disk and truncates the
+     * file to its used size.
+     *
+     * @throws IOException If the segment could not be finished.
+     */
+    private void closeSegment() throws IOException {
+        MappedByteBuffer buf = segment;
+        if(buf == null)
+            return;
+        int sourcesOffset = SensorTraceFormat.HEADER_SIZE + segmentRecords * recordSize;
+        int offset = sourcesOffset;
+        int sourceCount;
+        synchronized(sourceNames) {
+            sourceCount = sourceNames.size();
+            buf.putInt(offset, sourceCount);
+            offset += 4;
+            for(int i = 0; i < sourceCount; i++) {
+                buf.putInt(offset, i);
+                buf.putInt(offset + 4, sourceKinds.get(i));
+                buf.putInt(offset + 8, sourceChannels.get(i));
+                SensorTraceFormat.putName(buf, offset + 12, sourceNames.get(i));
+                offset += SensorTraceFormat.SOURCE_SIZE;
+            }
+        }
+        int indexOffset = offset;
+        for(int i = 0; i < indexCount; i++) {
+            buf.putLong(offset, indexTimestamps[i]);
+            buf.putLong(offset + 8, indexRecords[i]);
+            offset += SensorTraceFormat.INDEX_ENTRY_SIZE;
+        }
+        buf.putLong(offset, segmentRecords);
+        buf.putInt(offset + 8, indexCount);
+        buf.putInt(offset + 12, indexOffset);
+        buf.putInt(offset + 16, sourcesOffset);
+        buf.putInt(offset + 20, SensorTraceFormat.TRAILER_MAGIC);
+        offset += SensorTraceFormat.TRAILER_SIZE;
+        buf.force();
+        segment = null;
+        try {
+            segmentChannel.truncate(offset);
+        } finally {
+            segmentChannel.close();
+            segmentChannel = null;
+        }
+    }
+
+    /**
+     * This method obtains the file of a segment.
+     *
+     * @param index The segment index.
+     * @return The segment file.
+     */
+    private File segmentFile(int index) {
+        return new File(directory, String.format(Locale.US, "%s-%05d%s", prefix, index, SensorTraceFormat.EXTENSION));
+    }
+
+    /**
+     * This method splits a double value in two floats whose sum approximates the value with double
+     * precision.
+     *
+     * @param value The value to be split.
+     * @param dest The destination array.
+     * @param offset The position of the high part in the destination array.
+     */
+    private static void splitDouble(double value, float[] dest, int offset) {
+        float high = (float) value;
+        dest[offset] = high;
+        dest[offset + 1] = (float) (value - high);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The directory where the segment files are written.
+     */
+    private final File directory;
+
+    /**
+     * The prefix of the segment file names.
+     */
+    private final String prefix;
+
+    /**
+     * The number of channels of each record.
+     */
+    private final int channels;
+
+    /**
+     * The size of each record in bytes.
+     */
+    private final int recordSize;
+
+    /**
+     * The size of each segment file in bytes.
+     */
+    private final int segmentSize;
+
+    /**
+     * The maximum number of records in a segment.
+     */
+    private final int maxRecords;
+
+    /**
+     * The maximum number of segment files kept on disk, or zero to keep all.
+     */
+    private final int maxSegments;
+
+    /**
+     * The mask applied to a queue position to obtain its slot.
+     */
+    private final int mask;
+
+    /**
+     * The sequence number of each queue slot, used to publish slots between the producers and the
+     * writer thread.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The source ids of the queued records.
+     */
+    private final int[] queueIds;
+
+    /**
+     * The timestamps of the queued records.
+     */
+    private final long[] queueTimestamps;
+
+    /**
+     * The channels of the queued records.
+     */
+    private final float[] queueValues;
+
+    /**
+     * The next queue position claimed by a producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The number of records dropped because the queue was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The timestamps of the index entries of the current segment.
+     */
+    private final long[] indexTimestamps;
+
+    /**
+     * The record indexes of the index entries of the current segment.
+     */
+    private final long[] indexRecords;
+
+    /**
+     * The kinds of the registered sources.
+     */
+    private final List<Integer> sourceKinds = new ArrayList<>();
+
+    /**
+     * The number of channels of the registered sources.
+     */
+    private final List<Integer> sourceChannels = new ArrayList<>();
+
+    /**
+     * The names of the registered sources.
+     */
+    private final List<String> sourceNames = new ArrayList<>();
+
+    /**
+     * The tasks that detach this recorder from the registered sources.
+     */
+    private final List<Runnable> detachers = new ArrayList<>();
+
+    /**
+     * The next queue position read by the writer thread.
+     */
+    private long head;
+
+    /**
+     * The number of records written to the segment files.
+     */
+    private volatile long written;
+
+    /**
+     * The mapped buffer of the current segment.
+     */
+    private MappedByteBuffer segment;
+
+    /**
+     * The file channel of the current segment.
+     */
+    private FileChannel segmentChannel;
+
+    /**
+     * The index of the next segment.
+     */
+    private volatile int segmentIndex;
+
+    /**
+     * The number of records in the current segment.
+     */
+    private int segmentRecords;
+
+    /**
+     * The number of index entries of the current segment.
+     */
+    private int indexCount;
+
+    /**
+     * The writer thread.
+     */
+    private Thread writer;
+
+    /**
+     * Indicates whether the writer thread must keep running.
+     */
+    private volatile boolean running;
+
+    /**
+     * The error that stopped the writer thread, if any.
+     */
+    private volatile IOException writeError;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The time the writer thread sleeps when the queue is empty.
+     */
+    private static final long IDLE_PARK_NANOS = 2000000L;
+}
@@ -0,0 +1,207 @@
+package br.edu.leonardo.jaf.android;
+
+/**
+ * A filter that suppresses the events of a sensor whose values did not change significantly since
+ * the last emitted event. An event is emitted if any of its channels moved beyond a deadband
+ * (the largest of an absolute threshold and a fraction of the last emitted value), as long as a
+ * minimum interval has passed since the last emitted event. An event is also emitted, even without
+ * changes, when the sensor has been silent for a maximum interval, so that agents can tell a
+ * stable value from a dead sensor. Since a sensor that reports only on change may stay silent
+ * for long, the sensor that owns the filter drives this heartbeat from a timer, which re-emits the
+ * last emitted values through {@link #heartbeat(float[])}. A filter keeps the state of a single
+ * sensor and must not be shared.
+ */
+public class SuppressionFilter {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new SuppressionFilter.
+     *
+     * @param absoluteDeadband The minimum absolute change of a channel that is emitted, or zero.
+     * @param relativeDeadband The minimum change of a channel that is emitted, as a fraction of the
+     *                         last emitted value of the channel (e.g. 0.01 for 1%), or zero.
+     * @param minInterval The minimum time in nanoseconds between two emitted events, or zero.
+     * @param maxSilence The maximum time in nanoseconds without emitted events, after which an
+     *                   event is emitted even if it did not change; or zero to never force events.
+     */
+    public SuppressionFilter(float absoluteDeadband, float relativeDeadband, long minInterval, long maxSilence) {
+        if(absoluteDeadband < 0 || relativeDeadband < 0 || minInterval < 0 || maxSilence < 0)
+            throw new IllegalArgumentException("The filter parameters must not be negative.");
+        this.absoluteDeadband = absoluteDeadband;
+        this.relativeDeadband = relativeDeadband;
+        this.minInterval = minInterval;
+        this.maxSilence = maxSilence;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method decides whether an event must be emitted. If it must, the event becomes the
+     * reference for the next decisions.
+     *
+     * @param timestamp The time in nanoseconds of the event.
+     * @param values The values of the event.
+     * @param count The number of channels to be compared.
+     * @return true, if the event must be emitted; false, if it must be suppressed.
+     */
+    public synchronized boolean accept(long timestamp, float[] values, int count) {
+        if(last == null || last.length < count) {
+            emit(timestamp, values, count);
+            return true;
+        }
+        long elapsed = timestamp - lastTimestamp;
+        if(elapsed < minInterval) {
+            suppressed++;
+            return false;
+        }
+        if(maxSilence > 0 && elapsed >= maxSilence) {
+            emit(timestamp, values, count);
+            return true;
+        }
+        for(int i = 0; i < count; i++) {
+            float reference = last[i];
+            float threshold = Math.max(absoluteDeadband, relativeDeadband * Math.abs(reference));
+            float change = Math.abs(values[i] - reference);
+            if(change > threshold || Float.isNaN(change)) {
+                emit(timestamp, values, count);
+                return true;
+            }
+        }
+        suppressed++;
+        return false;
+    }
+
+    /**
+     * This method emits the last emitted values again, as a heartbeat due the maximum interval
+     * after the last emitted event. The heartbeat becomes the reference for the next decisions,
+     * so the next one is due the maximum interval later.
+     *
+     * @param dest The array that receives the values; values beyond its length are discarded.
+     * @return The time in nanoseconds of the heartbeat, in the time base of the events; or
+     *         NO_HEARTBEAT, if no event was emitted yet or the maximum interval is zero.
+     */
+    public synchronized long heartbeat(float[] dest) {
+        if(last == null || maxSilence == 0)
+            return NO_HEARTBEAT;
+        long timestamp = lastTimestamp + maxSilence;
+        System.arraycopy(last, 0, dest, 0, Math.min(last.length, dest.length));
+        lastTimestamp = timestamp;
+        emitted++;
+        return timestamp;
+    }
+
+    /**
+     * This method forgets the last emitted event, so that the next event is always emitted.
+     */
+    public synchronized void reset() {
+        last = null;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of events suppressed by this filter.
+     *
+     * @return The number of suppressed events.
+     */
+    public long getSuppressedCount() {
+        return suppressed;
+    }
+
+    /**
+     * This method obtains the number of events emitted by this filter.
+     *
+     * @return The number of emitted events.
+     */
+    public long getEmittedCount() {
+        return emitted;
+    }
+
+    /**
+     * This method obtains the maximum time without emitted events.
+     *
+     * @return The time in nanoseconds; or zero, if events are never forced.
+     */
+    public long getMaxSilence() {
+        return maxSilence;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method stores an emitted event as the reference for the next decisions.
+     *
+     * @param timestamp The time in nanoseconds of the event.
+     * @param values The values of the event.
+     * @param count The number of channels.
+     */
+    private void emit(long timestamp, float[] values, int count) {
+        if(last == null || last.length < count)
+            last = new float[count];
+        System.arraycopy(values, 0, last, 0, count);
+        lastTimestamp = timestamp;
+        emitted++;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T A N T S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The value returned by heartbeat() when there is no value to emit.
+     */
+    public static final long NO_HEARTBEAT = Long.MIN_VALUE;
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The minimum absolute change of a channel that is emitted.
+     */
+    private final float absoluteDeadband;
+
+    /**
+     * The minimum relative change of a channel that is emitted.
+     */
+    private final float relativeDeadband;
+
+    /**
+     * The minimum time in nanoseconds between two emitted events.
+     */
+    private final long minInterval;
+
+    /**
+     * The maximum time in nanoseconds without emitted events.
+     */
+    private final long maxSilence;
+
+    /**
+     * The values of the last emitted event, or null if no event was emitted.
+     */
+    private float[] last;
+
+    /**
+     * The time of the last emitted event.
+     */
+    private long lastTimestamp;
+
+    /**
+     * The number of emitted events.
+     */
+    private volatile long emitted;
+
+    /**
+     * The number of suppressed events.
+     */
+    private volatile long suppressed;
+}
@@ -0,0 +1,104 @@
+package br.edu.leonardo.jaf.android;
+
+import javax.measure.Unit;
+
+import br.edu.leonardo.jaf.sensors.SensorValue;
+
+/**
+ * A sensor value with an arbitrary number of channels that share the same unit. It is created for
+ * the Android sensor types whose events do not have the shape of a SingleSensorValue nor of a
+ * ThreeAxisSensorValue, such as the rotation vectors (the quaternion components), the
+ * uncalibrated sensors (the values followed by the estimated bias), the limited axes sensors, the
+ * heading sensor (the heading and its accuracy) and the pose 6DOF sensor, so that agents receive
+ * every channel of the event.
+ */
+public class VectorSensorValue extends SensorValue {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   C O N S T R U C T O R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This constructor builds a new VectorSensorValue with a copy of the given channels.
+     *
+     * @param values The array with the channels.
+     * @param count The number of channels, taken from the beginning of the array.
+     * @param unit The Unit of the channels.
+     */
+    public VectorSensorValue(float[] values, int count, Unit<?> unit) {
+        this.values = new float[count];
+        System.arraycopy(values, 0, this.values, 0, count);
+        this.unit = unit;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P U B L I C   M E T H O D S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains a channel of this value.
+     *
+     * @param channel The index of the channel.
+     * @return The value of the channel.
+     * @throws IndexOutOfBoundsException If the channel does not exist.
+     */
+    public float getValue(int channel) {
+        return values[channel];
+    }
+
+    /**
+     * This method obtains a copy of the channels of this value.
+     *
+     * @return A new array with the channels.
+     */
+    public float[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("(");
+        for(int i = 0; i < values.length; i++) {
+            if(i > 0)
+                sb.append(", ");
+            sb.append(values[i]);
+        }
+        return sb.append(") ").append(unit).toString();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // G E T T E R S   A N D   S E T T E R S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * This method obtains the number of channels of this value.
+     *
+     * @return The number of channels.
+     */
+    public int getChannelCount() {
+        return values.length;
+    }
+
+    /**
+     * This method obtains the unit of the channels of this value.
+     *
+     * @return The Unit reference.
+     */
+    public Unit<?> getUnit() {
+        return unit;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+    // P R I V A T E   A T T R I B U T E S
+    ///////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The channels of this value.
+     */
+    private final float[] values;
+
+    /**
+     * The unit of the channels.
+     */
+    private final Unit<?> unit;
+}
@@ -0,0 +1,100 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the slowdown level state machine of SensorPublisher, which run on the
+ * development machine (host).
+ */
+public class AdaptiveRateLevelTest {
+
+    private static final int WINDOW = AdaptiveRateLevel.EVALUATION_WINDOW;
+
+    @Test
+    public void onValue_withinAWindow_keepsTheCurrentLevel() {
+        AdaptiveRateLevel levels = new AdaptiveRateLevel();
+
+        for(int i = 0; i < WINDOW - 1; i++)
+            assertEquals(0, levels.onValue(false, 0L));
+    }
+
+    @Test
+    public void onValue_afterConsecutiveLowWindows_raisesTheLevel() {
+        AdaptiveRateLevel levels = new AdaptiveRateLevel();
+
+        assertEquals(0, window(levels, WINDOW, 0L));
+        assertEquals(1, window(levels, WINDOW, 0L));
+    }
+
+    @Test
+    public void onValue_lowWindowFollowedByBusyWindow_restartsTheCount() {
+        AdaptiveRateLevel levels = new AdaptiveRateLevel();
+
+        assertEquals(0, window(levels, WINDOW, 0L));
+        assertEquals(0, window(levels, WINDOW / 2, 0L));
+        assertEquals(0, window(levels, WINDOW, 0L));
+        assertEquals(1, window(levels, WINDOW, 0L));
+    }
+
+    @Test
+    public void onValue_atTheMaximumLevel_keepsIt() {
+        AdaptiveRateLevel levels = new AdaptiveRateLevel();
+        levels.setLevel(AdaptiveRateLevel.MAX_LEVEL);
+
+        for(int i = 0; i < 4; i++)
+            assertEquals(AdaptiveRateLevel.MAX_LEVEL, window(levels, WINDOW, 0L));
+    }
+
+    @Test
+    public void onValue_windowWithoutMissesAndSpareDemand_lowersTheLevel() {
+        AdaptiveRateLevel levels = new AdaptiveRateLevel();
+        levels.setLevel(2);
+
+        assertEquals(2, window(levels, 0, WINDOW - 1));
+        assertEquals(1, window(levels, 0, WINDOW));
+    }
+
+    @Test
+    public void onRequest_ofAWholeWindow_lowersTheLevel() {
+        AdaptiveRateLevel levels = new AdaptiveRateLevel();
+
+        assertEquals(0, levels.onRequest(Long.MAX_VALUE));
+        levels.setLevel(3);
+        assertEquals(3, levels.onRequest(WINDOW - 1));
+        assertEquals(2, levels.onRequest(WINDOW));
+    }
+
+    @Test
+    public void setLevel_reportsWhetherTheLevelChanged() {
+        AdaptiveRateLevel levels = new AdaptiveRateLevel();
+
+        assertFalse(levels.setLevel(0));
+        assertTrue(levels.setLevel(1));
+        assertFalse(levels.setLevel(1));
+        assertEquals(1, levels.getLevel());
+    }
+
+    @Test
+    public void reset_restoresTheOriginalLevelAndDiscardsTheWindow() {
+        AdaptiveRateLevel levels = new AdaptiveRateLevel();
+        levels.setLevel(3);
+        window(levels, WINDOW, 0L);
+        for(int i = 0; i < WINDOW / 2; i++)
+            levels.onValue(false, 0L);
+
+        levels.reset();
+
+        assertEquals(0, levels.getLevel());
+        assertTrue(levels.setLevel(1));
+        // A single low window is not enough after the reset
+        assertEquals(1, window(levels, WINDOW, 0L));
+    }
+
+    private static int window(AdaptiveRateLevel levels, int misses, long spare) {
+        for(int i = 0; i < WINDOW - 1; i++)
+            levels.onValue(i >= misses, spare);
+        return levels.onValue(WINDOW - 1 >= misses, spare);
+    }
+}
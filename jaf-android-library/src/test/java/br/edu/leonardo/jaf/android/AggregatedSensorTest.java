@@ -0,0 +1,202 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the panes and the merged statistics of AggregatedSensor, which run on the
+ * development machine (host) with readings fed straight into the sensor.
+ */
+public class AggregatedSensorTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void countWindow_tumbling_emitsTheStatisticsOfEachWindow() {
+        AggregatedSensor sensor = create(1, AggregatedSensor.COUNT_WINDOW, 4, 4);
+        List<float[]> out = collect(sensor, null);
+
+        for(int i = 1; i <= 9; i++)
+            feed(sensor, i, i);
+
+        assertEquals(2, out.size());
+        assertStatistics(out.get(0), 0, 1, 1f, 2f, 3f, 4f);
+        assertStatistics(out.get(1), 0, 1, 5f, 6f, 7f, 8f);
+    }
+
+    @Test
+    public void countWindow_sliding_mergesTheLastPanes() {
+        AggregatedSensor sensor = create(1, AggregatedSensor.COUNT_WINDOW, 6, 2);
+        List<float[]> out = collect(sensor, null);
+
+        for(int i = 1; i <= 10; i++)
+            feed(sensor, i, i * i);
+
+        // A window of three panes is complete after 6 readings, then one is emitted every 2
+        assertEquals(3, out.size());
+        assertStatistics(out.get(0), 0, 1, 1f, 4f, 9f, 16f, 25f, 36f);
+        assertStatistics(out.get(1), 0, 1, 9f, 16f, 25f, 36f, 49f, 64f);
+        assertStatistics(out.get(2), 0, 1, 25f, 36f, 49f, 64f, 81f, 100f);
+    }
+
+    @Test
+    public void merge_largeOffset_keepsTheVarianceAccurate() {
+        AggregatedSensor sensor = create(1, AggregatedSensor.COUNT_WINDOW, 8, 2);
+        List<float[]> out = collect(sensor, null);
+
+        // A naive sum of squares loses the variance of these values in single precision
+        float[] values = { 10000.5f, 10001.5f, 10002.5f, 10003.5f, 10004.5f, 10005.5f, 10006.5f, 10007.5f };
+        for(int i = 0; i < values.length; i++)
+            feed(sensor, i, values[i]);
+
+        assertEquals(1, out.size());
+        assertEquals(10004.0, out.get(0)[AggregatedSensor.STATISTIC_MEAN], 1e-3);
+        assertEquals(5.25, out.get(0)[AggregatedSensor.STATISTIC_VARIANCE], 1e-4);
+    }
+
+    @Test
+    public void timeWindow_panesWithDifferentCounts_mergeExactly() {
+        // 20 ms windows sliding every 10 ms
+        AggregatedSensor sensor = create(1, AggregatedSensor.TIME_WINDOW, 20000, 10000);
+        List<Long> times = new ArrayList<>();
+        List<float[]> out = collect(sensor, times);
+
+        feed(sensor, 1 * MS, 1f);
+        feed(sensor, 5 * MS, 3f);
+        feed(sensor, 12 * MS, 10f);
+        feed(sensor, 14 * MS, 20f);
+        feed(sensor, 18 * MS, 30f);
+        // Closes the second pane: the window [0, 20) ms is emitted
+        feed(sensor, 21 * MS, 7f);
+        // Closes the third pane: the window [10, 30) ms is emitted
+        feed(sensor, 35 * MS, 0f);
+
+        assertEquals(2, out.size());
+        assertEquals(20 * MS, (long) times.get(0));
+        assertStatistics(out.get(0), 0, 1, 1f, 3f, 10f, 20f, 30f);
+        assertEquals(30 * MS, (long) times.get(1));
+        assertStatistics(out.get(1), 0, 1, 10f, 20f, 30f, 7f);
+    }
+
+    @Test
+    public void timeWindow_withoutLaterReadings_waitsForAFlush() {
+        AggregatedSensor sensor = create(1, AggregatedSensor.TIME_WINDOW, 10000, 10000);
+        List<Long> times = new ArrayList<>();
+        List<float[]> out = collect(sensor, times);
+        sensor.flush(100 * MS);
+        assertEquals(0, out.size());
+
+        feed(sensor, 2 * MS, 4f);
+        feed(sensor, 8 * MS, 6f);
+        sensor.flush(9 * MS);
+        assertEquals(0, out.size());
+        sensor.flush(12 * MS);
+
+        assertEquals(1, out.size());
+        assertEquals(10 * MS, (long) times.get(0));
+        assertStatistics(out.get(0), 0, 1, 4f, 6f);
+        // The following empty windows emit nothing
+        sensor.flush(100 * MS);
+        assertEquals(1, out.size());
+    }
+
+    @Test
+    public void timeWindow_gapLongerThanTheWindow_emitsNoEmptyWindows() {
+        AggregatedSensor sensor = create(1, AggregatedSensor.TIME_WINDOW, 20000, 10000);
+        List<Long> times = new ArrayList<>();
+        List<float[]> out = collect(sensor, times);
+
+        feed(sensor, 1 * MS, 1f);
+        feed(sensor, 1000 * MS, 2f);
+
+        // Only the first complete window, [0, 20) ms, covers the first reading
+        assertEquals(1, out.size());
+        assertEquals(20 * MS, (long) times.get(0));
+        assertStatistics(out.get(0), 0, 1, 1f);
+    }
+
+    @Test
+    public void channels_areLaidOutByStatisticThenChannel() {
+        AggregatedSensor sensor = create(2, AggregatedSensor.COUNT_WINDOW, 2, 2);
+        List<float[]> out = collect(sensor, null);
+
+        feed(sensor, 0, 1f, -2f);
+        feed(sensor, 1, 3f, -6f);
+
+        assertEquals(AggregatedSensor.STATISTIC_COUNT * 2, sensor.getChannelCount());
+        assertEquals(1, out.size());
+        assertStatistics(out.get(0), 0, 2, 1f, 3f);
+        assertStatistics(out.get(0), 1, 2, -2f, -6f);
+    }
+
+    @Test
+    public void constructor_invalidArguments_throw() {
+        assertInvalid(2, 4, 4);
+        assertInvalid(AggregatedSensor.COUNT_WINDOW, 4, 0);
+        assertInvalid(AggregatedSensor.COUNT_WINDOW, 2, 4);
+        assertInvalid(AggregatedSensor.COUNT_WINDOW, 6, 4);
+    }
+
+    private static AggregatedSensor create(int channels, int windowType, long windowSize, long slide) {
+        AggregatedSensor sensor = new AggregatedSensor(null, channels, windowType, windowSize, slide);
+        sensor.setAgentStatistic(-1);
+        return sensor;
+    }
+
+    private static void feed(AggregatedSensor sensor, long timestamp, float... values) {
+        SensorReading reading = new SensorReading(values.length);
+        reading.set(timestamp, 0, values, values.length);
+        sensor.onSourceReading(reading);
+    }
+
+    private static List<float[]> collect(AggregatedSensor sensor, final List<Long> times) {
+        final List<float[]> out = new ArrayList<>();
+        sensor.addReadingListener(new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                float[] v = new float[reading.getSize()];
+                reading.copyValues(v);
+                out.add(v);
+                if(times != null)
+                    times.add(reading.getTimestamp());
+            }
+        });
+        return out;
+    }
+
+    private static void assertStatistics(float[] aggregate, int channel, int channels, float... values) {
+        double sum = 0;
+        double squares = 0;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for(float v : values) {
+            sum += v;
+            squares += (double) v * v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        double mean = sum / values.length;
+        double variance = 0;
+        for(float v : values)
+            variance += (v - mean) * (v - mean);
+        variance /= values.length;
+        assertEquals(mean, aggregate[AggregatedSensor.STATISTIC_MEAN * channels + channel], 1e-4);
+        assertEquals(Math.sqrt(squares / values.length), aggregate[AggregatedSensor.STATISTIC_RMS * channels + channel], 1e-4);
+        assertEquals(min, aggregate[AggregatedSensor.STATISTIC_MIN * channels + channel], 0f);
+        assertEquals(max, aggregate[AggregatedSensor.STATISTIC_MAX * channels + channel], 0f);
+        assertEquals(variance, aggregate[AggregatedSensor.STATISTIC_VARIANCE * channels + channel], 1e-3);
+    }
+
+    private static void assertInvalid(int windowType, long windowSize, long slide) {
+        try {
+            new AggregatedSensor(null, 1, windowType, windowSize, slide);
+            fail("Accepted " + windowType + ", " + windowSize + ", " + slide);
+        } catch(IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the conversion of the software fusion estimate from the North-West-Up filter
+ * frame to the East-North-Up Android world frame, and of the angles computed from it, which run on
+ * the development machine (host).
+ */
+public class AndroidOrientationSensorTest {
+
+    private static final float G = 9.81f;
+    private static final double EPSILON = 1e-4;
+
+    @Test
+    public void toWorldFrame_flatDevicePointingNorth_isTheIdentity() {
+        float[] q = fuse(0f, 0f, G, 0f, 20f, -40f);
+
+        assertQuaternion(1f, 0f, 0f, 0f, q);
+        float[] out = orientation(q);
+        assertEquals(0.0, out[4], EPSILON);
+        assertEquals(0.0, out[5], EPSILON);
+        assertEquals(0.0, out[6], EPSILON);
+    }
+
+    @Test
+    public void toWorldFrame_flatDevicePointingEast_hasAPositiveQuarterTurnAzimuth() {
+        // The device X axis points to the south
+        float[] q = fuse(0f, 0f, G, -20f, 0f, -40f);
+
+        assertQuaternion((float) Math.sqrt(0.5), 0f, 0f, (float) -Math.sqrt(0.5), q);
+        assertEquals(Math.PI / 2, orientation(q)[4], EPSILON);
+    }
+
+    @Test
+    public void toWorldFrame_flatDevicePointingWest_hasANegativeQuarterTurnAzimuth() {
+        float[] q = fuse(0f, 0f, G, 20f, 0f, -40f);
+
+        assertEquals(-Math.PI / 2, orientation(q)[4], EPSILON);
+    }
+
+    @Test
+    public void toOrientation_topEdgeTiltedUp_hasANegativePitch() {
+        float sin = 0.5f;
+        float cos = (float) Math.sqrt(0.75);
+        float[] q = fuse(0f, G * sin, G * cos, 0f, 20f * cos - 40f * sin, -20f * sin - 40f * cos);
+
+        float[] out = orientation(q);
+
+        assertEquals(0.0, out[4], EPSILON);
+        assertEquals(-Math.PI / 6, out[5], EPSILON);
+        assertEquals(0.0, out[6], EPSILON);
+    }
+
+    @Test
+    public void toOrientation_copiesTheQuaternionFirst() {
+        float[] out = new float[7];
+
+        AndroidOrientationSensor.toOrientation(0.5f, 0.5f, 0.5f, 0.5f, out);
+
+        assertArrayEquals(new float[] { 0.5f, 0.5f, 0.5f, 0.5f }, new float[] { out[0], out[1], out[2], out[3] }, 0f);
+    }
+
+    private static float[] fuse(float ax, float ay, float az, float mx, float my, float mz) {
+        MadgwickFilter filter = new MadgwickFilter(0.1f);
+        filter.initialize(ax, ay, az, mx, my, mz);
+        float[] q = new float[4];
+        AndroidOrientationSensor.toWorldFrame(filter, q);
+        return q;
+    }
+
+    private static float[] orientation(float[] q) {
+        float[] out = new float[7];
+        AndroidOrientationSensor.toOrientation(q[0], q[1], q[2], q[3], out);
+        return out;
+    }
+
+    private static void assertQuaternion(float w, float x, float y, float z, float[] q) {
+        // q and -q are the same rotation
+        float sign = Math.signum(q[0] * w + q[1] * x + q[2] * y + q[3] * z);
+        assertEquals(w, sign * q[0], EPSILON);
+        assertEquals(x, sign * q[1], EPSILON);
+        assertEquals(y, sign * q[2], EPSILON);
+        assertEquals(z, sign * q[3], EPSILON);
+    }
+}
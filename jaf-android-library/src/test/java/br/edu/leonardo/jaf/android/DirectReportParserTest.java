@@ -0,0 +1,118 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the direct channel record parser, which run on the development machine
+ * (host) against synthetic shared memory rings.
+ */
+public class DirectReportParserTest {
+
+    private static final int TOKEN = 7;
+
+    @Test
+    public void next_parsesRecordsInOrderAcrossTheEndOfTheRing() {
+        ByteBuffer ring = newRing(4);
+        DirectReportParser parser = new DirectReportParser(4, TOKEN);
+        SensorReading reading = new SensorReading(3);
+        int counter = 1;
+        for(int round = 0; round < 3; round++) {
+            for(int i = 0; i < 3; i++, counter++)
+                write(ring, 4, TOKEN, counter);
+            for(int i = counter - 3; i < counter; i++) {
+                assertTrue(parser.next(ring, reading));
+                assertEquals(i * 1000L, reading.getTimestamp());
+                assertEquals(3, reading.getSize());
+                assertArrayEquals(new float[] {i, -i, 0.5f * i}, reading.getValues(), 0f);
+            }
+            assertFalse(parser.next(ring, reading));
+        }
+        assertEquals(9, parser.getParsedCount());
+        assertEquals(0, parser.getLostCount());
+    }
+
+    @Test
+    public void next_skipsRecordsOfOtherSensors() {
+        ByteBuffer ring = newRing(8);
+        DirectReportParser parser = new DirectReportParser(8, TOKEN);
+        SensorReading reading = new SensorReading(3);
+        write(ring, 8, TOKEN, 1);
+        write(ring, 8, TOKEN + 1, 2);
+        write(ring, 8, TOKEN, 3);
+
+        assertTrue(parser.next(ring, reading));
+        assertEquals(1000L, reading.getTimestamp());
+        assertTrue(parser.next(ring, reading));
+        assertEquals(3000L, reading.getTimestamp());
+        assertFalse(parser.next(ring, reading));
+    }
+
+    @Test
+    public void next_afterWriterLapsTheParser_resynchronizesAndCountsLostRecords() {
+        ByteBuffer ring = newRing(4);
+        DirectReportParser parser = new DirectReportParser(4, TOKEN);
+        SensorReading reading = new SensorReading(3);
+        for(int counter = 1; counter <= 10; counter++)
+            write(ring, 4, TOKEN, counter);
+
+        // Counters 1 to 6 were overwritten; 7 to 10 are still in the ring
+        for(int counter = 7; counter <= 10; counter++) {
+            assertTrue(parser.next(ring, reading));
+            assertEquals(counter * 1000L, reading.getTimestamp());
+        }
+        assertEquals(6, parser.getLostCount());
+        assertFalse(parser.next(ring, reading));
+        assertEquals(4, parser.getParsedCount());
+    }
+
+    @Test
+    public void rejectLast_countsTheRecordAsLost() {
+        ByteBuffer ring = newRing(4);
+        DirectReportParser parser = new DirectReportParser(4, TOKEN);
+        SensorReading reading = new SensorReading(3);
+        write(ring, 4, TOKEN, 1);
+        write(ring, 4, TOKEN, 2);
+
+        assertTrue(parser.next(ring, reading));
+        assertEquals(1, parser.getLastCounter());
+        assertEquals(0, parser.getLastOffset());
+        assertTrue(parser.next(ring, reading));
+        assertEquals(DirectReportParser.RECORD_SIZE, parser.getLastOffset());
+        parser.rejectLast();
+
+        assertEquals(1, parser.getParsedCount());
+        assertEquals(1, parser.getLostCount());
+    }
+
+    @Test
+    public void next_onEmptyRing_returnsFalse() {
+        ByteBuffer ring = newRing(4);
+        DirectReportParser parser = new DirectReportParser(4, TOKEN);
+
+        assertFalse(parser.next(ring, new SensorReading(3)));
+        assertEquals(0, parser.getParsedCount());
+    }
+
+    private static ByteBuffer newRing(int capacity) {
+        return ByteBuffer.allocate(capacity * DirectReportParser.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes a record the way the sensor HAL does: the counter is written last.
+     */
+    private static void write(ByteBuffer ring, int capacity, int token, int counter) {
+        int offset = ((counter - 1) % capacity) * DirectReportParser.RECORD_SIZE;
+        ring.putInt(offset + DirectReportParser.OFFSET_SIZE, DirectReportParser.RECORD_SIZE);
+        ring.putInt(offset + DirectReportParser.OFFSET_TOKEN, token);
+        ring.putInt(offset + DirectReportParser.OFFSET_TYPE, 1);
+        ring.putLong(offset + DirectReportParser.OFFSET_TIMESTAMP, counter * 1000L);
+        for(int i = 0; i < DirectReportParser.MAX_VALUES; i++)
+            ring.putFloat(offset + DirectReportParser.OFFSET_VALUES + 4 * i, i == 0 ? counter : i == 1 ? -counter : i == 2 ? 0.5f * counter : 99f);
+        ring.putInt(offset + DirectReportParser.OFFSET_COUNTER, counter);
+    }
+}
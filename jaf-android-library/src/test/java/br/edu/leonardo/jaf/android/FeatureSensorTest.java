@@ -0,0 +1,166 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the feature extraction of FeatureSensor, which run on the development
+ * machine (host) with readings fed straight into the sensor.
+ */
+public class FeatureSensorTest {
+
+    private static final int N = 64;
+
+    @Test
+    public void fft_impulse_hasAFlatSpectrum() {
+        FeatureSensor sensor = new FeatureSensor(null, N, N, 4);
+        float[] re = new float[N];
+        float[] im = new float[N];
+        re[0] = 1f;
+
+        sensor.fft(re, im);
+
+        for(int k = 0; k < N; k++) {
+            assertEquals(1.0, re[k], 1e-5);
+            assertEquals(0.0, im[k], 1e-5);
+        }
+    }
+
+    @Test
+    public void fft_cosine_concentratesItsEnergyInItsBin() {
+        FeatureSensor sensor = new FeatureSensor(null, N, N, 4);
+        float[] re = new float[N];
+        float[] im = new float[N];
+        for(int i = 0; i < N; i++)
+            re[i] = (float) Math.cos(2 * Math.PI * 5 * i / N);
+
+        sensor.fft(re, im);
+
+        for(int k = 0; k < N; k++) {
+            double magnitude = Math.hypot(re[k], im[k]);
+            assertEquals("bin " + k, k == 5 || k == N - 5 ? N / 2.0 : 0.0, magnitude, 1e-3);
+        }
+    }
+
+    @Test
+    public void constructor_invalidArguments_throw() {
+        assertInvalid(48, 16, 4);
+        assertInvalid(N, 0, 4);
+        assertInvalid(N, N + 1, 4);
+        assertInvalid(N, 16, N / 2 + 1);
+    }
+
+    @Test
+    public void extract_beforeAFullWindow_emitsNothing() {
+        FeatureSensor sensor = new FeatureSensor(null, N, 16, 4);
+        List<float[]> vectors = collect(sensor);
+
+        feed(sensor, 0, N - 1, 8.0);
+
+        assertEquals(0, vectors.size());
+    }
+
+    @Test
+    public void extract_overlappingWindows_emitsAVectorPerHop() {
+        FeatureSensor sensor = new FeatureSensor(null, N, 16, 4);
+        List<float[]> vectors = collect(sensor);
+
+        feed(sensor, 0, 2 * N, 8.0);
+
+        assertEquals(1 + N / 16, vectors.size());
+        assertEquals(FeatureSensor.FEATURE_BANDS + 4, vectors.get(0).length);
+    }
+
+    @Test
+    public void extract_sine_findsItsStatisticsPeaksAndDominantFrequency() {
+        FeatureSensor sensor = new FeatureSensor(null, N, N, 4);
+        List<float[]> vectors = collect(sensor);
+
+        // 8 Hz sampled at 64 Hz: 8 cycles per window, with a sample at each crest
+        feed(sensor, 0, N, 8.0);
+
+        assertEquals(1, vectors.size());
+        float[] f = vectors.get(0);
+        assertEquals(10.0, f[FeatureSensor.FEATURE_MEAN], 1e-3);
+        assertEquals(Math.sqrt(0.5), f[FeatureSensor.FEATURE_STD], 1e-3);
+        assertEquals(8, f[FeatureSensor.FEATURE_PEAKS], 0.0);
+        assertEquals(15.0 / (N - 1), f[FeatureSensor.FEATURE_ZERO_CROSSING_RATE], 1.5 / (N - 1));
+        assertEquals(8.0, f[FeatureSensor.FEATURE_DOMINANT_FREQUENCY], 1e-3);
+    }
+
+    @Test
+    public void extract_bands_splitTheSpectralEnergy() {
+        FeatureSensor sensor = new FeatureSensor(null, N, N, 4);
+        List<float[]> vectors = collect(sensor);
+
+        // 24 Hz falls in the third of four bands between 0 and 32 Hz
+        feed(sensor, 0, N, 24.0);
+
+        float[] f = vectors.get(0);
+        float sum = 0f;
+        int strongest = 0;
+        for(int b = 0; b < 4; b++) {
+            sum += f[FeatureSensor.FEATURE_BANDS + b];
+            if(f[FeatureSensor.FEATURE_BANDS + b] > f[FeatureSensor.FEATURE_BANDS + strongest])
+                strongest = b;
+        }
+        assertEquals(f[FeatureSensor.FEATURE_SPECTRAL_ENERGY], sum, 1e-3 * sum);
+        assertEquals(2, strongest);
+        assertEquals(24.0, f[FeatureSensor.FEATURE_DOMINANT_FREQUENCY], 1e-3);
+    }
+
+    @Test
+    public void extract_windowAfterWrapping_usesTheLastSamplesInOrder() {
+        FeatureSensor sensor = new FeatureSensor(null, N, N, 4);
+        List<float[]> vectors = collect(sensor);
+
+        // A constant first window, then a sine: the second window must only hold the sine
+        for(int i = 0; i < N; i++)
+            sensor.onSourceReading(sample(i, 3f));
+        feed(sensor, N, N, 8.0);
+
+        assertEquals(2, vectors.size());
+        assertEquals(3.0, vectors.get(0)[FeatureSensor.FEATURE_MEAN], 1e-5);
+        assertEquals(0.0, vectors.get(0)[FeatureSensor.FEATURE_STD], 1e-5);
+        assertEquals(10.0, vectors.get(1)[FeatureSensor.FEATURE_MEAN], 1e-3);
+        assertEquals(8.0, vectors.get(1)[FeatureSensor.FEATURE_DOMINANT_FREQUENCY], 1e-3);
+    }
+
+    private static void assertInvalid(int windowSize, int hop, int bands) {
+        try {
+            new FeatureSensor(null, windowSize, hop, bands);
+            fail("Accepted " + windowSize + ", " + hop + ", " + bands);
+        } catch(IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static List<float[]> collect(FeatureSensor sensor) {
+        final List<float[]> vectors = new ArrayList<>();
+        sensor.addReadingListener(new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                float[] v = new float[reading.getSize()];
+                reading.copyValues(v);
+                vectors.add(v);
+            }
+        });
+        return vectors;
+    }
+
+    // Feeds a 64 Hz magnitude of 10 + sin(2 pi f t) on the X axis
+    private static void feed(FeatureSensor sensor, int first, int count, double frequency) {
+        for(int i = first; i < first + count; i++)
+            sensor.onSourceReading(sample(i, (float) (10.0 + Math.sin(2 * Math.PI * frequency * i / 64.0))));
+    }
+
+    private static SensorReading sample(int i, float x) {
+        SensorReading reading = new SensorReading(3);
+        reading.set(i * 1000000000L / 64, 0, new float[] { x, 0f, 0f }, 3);
+        return reading;
+    }
+}
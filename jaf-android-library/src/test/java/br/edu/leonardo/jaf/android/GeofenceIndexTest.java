@@ -0,0 +1,93 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the R-tree of geofence zones, which run on the development machine (host).
+ * The queries are compared with a linear scan of the zones.
+ */
+public class GeofenceIndexTest {
+
+    @Test
+    public void emptyIndex_findsNothingAndHasNoBoundary() {
+        GeofenceIndex index = new GeofenceIndex(Collections.<GeofenceZone>emptyList());
+        List<GeofenceZone> result = new ArrayList<>();
+
+        index.findContaining(0.0, 0.0, result);
+
+        assertTrue(result.isEmpty());
+        assertEquals(0, index.size());
+        assertEquals(Double.POSITIVE_INFINITY, index.distanceToNearestBoundary(0.0, 0.0), 0);
+    }
+
+    @Test
+    public void findContaining_overThousandsOfZones_matchesALinearScan() {
+        // Several levels of STR packing, with overlapping zones
+        List<GeofenceZone> zones = randomZones(3000, 1);
+        GeofenceIndex index = new GeofenceIndex(zones);
+        Random random = new Random(2);
+        List<GeofenceZone> result = new ArrayList<>();
+
+        assertEquals(3000, index.size());
+        for(int i = 0; i < 2000; i++) {
+            double lat = random.nextDouble();
+            double lon = random.nextDouble();
+            result.clear();
+            index.findContaining(lat, lon, result);
+            List<GeofenceZone> expected = new ArrayList<>();
+            for(GeofenceZone zone : zones)
+                if(zone.contains(lat, lon))
+                    expected.add(zone);
+            assertEquals(expected.size(), result.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(result));
+        }
+    }
+
+    @Test
+    public void distanceToNearestBoundary_overThousandsOfZones_matchesALinearScan() {
+        List<GeofenceZone> zones = randomZones(3000, 3);
+        GeofenceIndex index = new GeofenceIndex(zones);
+        Random random = new Random(4);
+
+        for(int i = 0; i < 500; i++) {
+            // Also points outside the area of the zones, where most branches must be pruned
+            double lat = random.nextDouble() * 1.4 - 0.2;
+            double lon = random.nextDouble() * 1.4 - 0.2;
+            double expected = Double.POSITIVE_INFINITY;
+            for(GeofenceZone zone : zones)
+                expected = Math.min(expected, zone.distanceToBoundary(lat, lon));
+            assertEquals(expected, index.distanceToNearestBoundary(lat, lon), 1e-6);
+        }
+    }
+
+    @Test
+    public void distanceToNearestBoundary_ofASingleZone_isItsOwnDistance() {
+        GeofenceZone zone = GeofenceZoneTest.square("square", 0.0, 0.0, 0.01);
+        GeofenceIndex index = new GeofenceIndex(Collections.singletonList(zone));
+
+        assertEquals(zone.distanceToBoundary(0.02, 0.02), index.distanceToNearestBoundary(0.02, 0.02), 0);
+    }
+
+    private static List<GeofenceZone> randomZones(int count, long seed) {
+        Random random = new Random(seed);
+        List<GeofenceZone> zones = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            double lat = random.nextDouble();
+            double lon = random.nextDouble();
+            double size = 0.002 + random.nextDouble() * 0.03;
+            // A triangle, so that the box of a zone is larger than the zone itself
+            zones.add(new GeofenceZone("z" + i,
+                    new double[] {lat, lat + size, lat},
+                    new double[] {lon, lon, lon + size}));
+        }
+        return zones;
+    }
+}
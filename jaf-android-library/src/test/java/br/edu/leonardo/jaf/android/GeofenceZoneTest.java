@@ -0,0 +1,81 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the polygonal geofence zones, which run on the development machine (host).
+ */
+public class GeofenceZoneTest {
+
+    private static final double EPSILON = 0.01;
+
+    @Test
+    public void contains_pointsInsideAndOutsideASquare() {
+        GeofenceZone square = square("square", 0.0, 0.0, 0.01);
+
+        assertTrue(square.contains(0.005, 0.005));
+        assertFalse(square.contains(0.015, 0.005));
+        assertFalse(square.contains(0.005, -0.001));
+    }
+
+    @Test
+    public void contains_pointInTheNotchOfAConcavePolygon_isOutside() {
+        // A "U" shape: the notch between the arms is not part of the zone
+        GeofenceZone u = new GeofenceZone("u",
+                new double[] {0, 0, 3, 3, 1, 1, 3, 3},
+                new double[] {0, 3, 3, 2, 2, 1, 1, 0});
+
+        assertTrue(u.contains(0.5, 1.5));
+        assertTrue(u.contains(2.5, 2.5));
+        assertTrue(u.contains(2.5, 0.5));
+        assertFalse(u.contains(1.5, 1.5));
+        assertFalse(u.contains(2.5, 1.5));
+    }
+
+    @Test
+    public void distanceToBoundary_fromTheCenterOfASquare_isHalfItsSide() {
+        GeofenceZone square = square("square", -0.01, -0.01, 0.02);
+        double halfSide = 0.01 * GeofenceZone.METERS_PER_DEGREE;
+
+        assertEquals(halfSide, square.distanceToBoundary(0.0, 0.0), halfSide * 1e-3);
+    }
+
+    @Test
+    public void distanceToBoundary_fromOutsideNearACorner_isTheDistanceToTheCorner() {
+        GeofenceZone square = square("square", 0.0, 0.0, 0.01);
+        double d = 0.001 * GeofenceZone.METERS_PER_DEGREE;
+
+        double expected = Math.hypot(d, 0.001 * GeofenceZone.metersPerDegreeLongitude(-0.001));
+        assertEquals(expected, square.distanceToBoundary(-0.001, -0.001), EPSILON);
+    }
+
+    @Test
+    public void distanceToBoundary_onAnEdge_isZero() {
+        GeofenceZone square = square("square", 0.0, 0.0, 0.01);
+
+        assertEquals(0.0, square.distanceToBoundary(0.0, 0.005), EPSILON);
+    }
+
+    @Test
+    public void constructor_computesTheBoundingBox() {
+        GeofenceZone triangle = new GeofenceZone("triangle", new double[] {1, 4, 2}, new double[] {-3, 0, 5});
+
+        assertEquals(1, triangle.getMinLatitude(), 0);
+        assertEquals(4, triangle.getMaxLatitude(), 0);
+        assertEquals(-3, triangle.getMinLongitude(), 0);
+        assertEquals(5, triangle.getMaxLongitude(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_withTwoVertices_throws() {
+        new GeofenceZone("segment", new double[] {0, 1}, new double[] {0, 1});
+    }
+
+    static GeofenceZone square(String id, double lat, double lon, double side) {
+        return new GeofenceZone(id,
+                new double[] {lat, lat, lat + side, lat + side},
+                new double[] {lon, lon + side, lon + side, lon});
+    }
+}
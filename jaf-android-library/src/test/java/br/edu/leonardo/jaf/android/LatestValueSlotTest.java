@@ -0,0 +1,133 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the sequence lock and the bounds of LatestValueSlot, which run on the
+ * development machine (host).
+ */
+public class LatestValueSlotTest {
+
+    @Test
+    public void emptySlot_reportsNoValue() {
+        LatestValueSlot slot = new LatestValueSlot(3);
+
+        assertFalse(slot.read(new SensorReading(3)));
+        assertEquals(LatestValueSlot.NO_VALUE, slot.read(new double[3]));
+        assertEquals(LatestValueSlot.NO_VALUE, slot.getTimestamp());
+        assertTrue(Double.isNaN(slot.getValue(0)));
+        assertEquals(0, slot.getUpdateCount());
+    }
+
+    @Test
+    public void read_afterWrites_returnsTheLatestEvent() {
+        LatestValueSlot slot = new LatestValueSlot(3);
+        SensorReading reading = new SensorReading(3);
+        slot.write(10L, 1, new float[] { 1f, 2f, 3f }, 3);
+        slot.write(20L, 2, new float[] { 4f, 5f, 6f }, 3);
+
+        assertTrue(slot.read(reading));
+
+        assertEquals(20L, reading.getTimestamp());
+        assertEquals(2, reading.getAccuracy());
+        assertEquals(3, reading.getSize());
+        assertEquals(5f, reading.getValues()[1], 0f);
+        assertEquals(20L, slot.getTimestamp());
+        assertEquals(6.0, slot.getValue(2), 0.0);
+        assertEquals(2, slot.getUpdateCount());
+    }
+
+    @Test
+    public void write_doubles_keepsTheirFullPrecision() {
+        LatestValueSlot slot = new LatestValueSlot(2);
+        double[] dest = new double[2];
+
+        slot.write(5L, 0, new double[] { -22.906847123456, -43.172897654321 }, 2);
+
+        assertEquals(5L, slot.read(dest));
+        assertEquals(-22.906847123456, dest[0], 0.0);
+        assertEquals(-43.172897654321, slot.getValue(1), 0.0);
+    }
+
+    @Test
+    public void write_moreValuesThanTheCapacity_truncatesThem() {
+        LatestValueSlot slot = new LatestValueSlot(2);
+        SensorReading reading = new SensorReading(4);
+
+        slot.write(1L, 0, new float[] { 1f, 2f, 3f, 4f }, 4);
+
+        assertEquals(2, slot.getCapacity());
+        assertTrue(slot.read(reading));
+        assertEquals(2, reading.getSize());
+        assertTrue(Double.isNaN(slot.getValue(2)));
+    }
+
+    @Test
+    public void read_intoSmallerDestinations_truncatesTheValues() {
+        LatestValueSlot slot = new LatestValueSlot(3);
+        slot.write(1L, 0, new float[] { 1f, 2f, 3f }, 3);
+        SensorReading reading = new SensorReading(2);
+        double[] dest = new double[1];
+
+        assertTrue(slot.read(reading));
+        assertEquals(1L, slot.read(dest));
+
+        assertEquals(2, reading.getSize());
+        assertEquals(2f, reading.getValues()[1], 0f);
+        assertEquals(1.0, dest[0], 0.0);
+    }
+
+    @Test
+    public void getValue_missingOrNegativeChannel_returnsNaN() {
+        LatestValueSlot slot = new LatestValueSlot(3);
+        slot.write(1L, 0, new float[] { 7f }, 1);
+
+        assertEquals(7.0, slot.getValue(0), 0.0);
+        assertTrue(Double.isNaN(slot.getValue(1)));
+        assertTrue(Double.isNaN(slot.getValue(-1)));
+        assertTrue(Double.isNaN(slot.getValue(Integer.MIN_VALUE)));
+    }
+
+    @Test
+    public void read_concurrentWriter_neverMixesTwoEvents() throws Exception {
+        final LatestValueSlot slot = new LatestValueSlot(8);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                float[] values = new float[8];
+                for(int i = 1; running.get(); i++) {
+                    for(int c = 0; c < values.length; c++)
+                        values[c] = i;
+                    slot.write(i, 0, values, values.length);
+                }
+            }
+        });
+        writer.start();
+        try {
+            SensorReading reading = new SensorReading(8);
+            double[] dest = new double[8];
+            long last = 0;
+            for(int r = 0; r < 100000; r++) {
+                if(!slot.read(reading))
+                    continue;
+                float[] v = reading.getValues();
+                for(int c = 0; c < 8; c++)
+                    assertEquals((float) reading.getTimestamp(), v[c], 0f);
+                assertTrue(reading.getTimestamp() >= last);
+                last = reading.getTimestamp();
+                long timestamp = slot.read(dest);
+                for(int c = 0; c < 8; c++)
+                    assertEquals((double) (float) timestamp, dest[c], 0.0);
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertTrue(slot.getUpdateCount() > 0);
+    }
+}
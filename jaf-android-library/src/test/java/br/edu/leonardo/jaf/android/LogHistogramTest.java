@@ -0,0 +1,95 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the bucket math and the percentiles of LogHistogram, which run on the
+ * development machine (host).
+ */
+public class LogHistogramTest {
+
+    @Test
+    public void record_smallValues_haveExactBuckets() {
+        for(long v = 0; v < LogHistogram.SUB_BUCKETS * 2; v++)
+            assertEquals(v, single(v));
+    }
+
+    @Test
+    public void record_anyValue_isBoundedByItsBucketWithinTheRelativeError() {
+        for(long v = 1; v < 100000; v++)
+            assertBounded(v);
+        for(int bit = 4; bit < 63; bit++) {
+            long power = 1L << bit;
+            assertBounded(power - 1);
+            assertBounded(power);
+            assertBounded(power + 1);
+            assertBounded(power + power / 3);
+        }
+        assertEquals(Long.MAX_VALUE, single(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void record_increasingValues_neverMapToADecreasingBound() {
+        long previous = -1;
+        for(long v = 0; v < 1L << 20; v += 7) {
+            long bound = single(v);
+            assertTrue(v + " mapped below " + previous, bound >= previous);
+            previous = bound;
+        }
+    }
+
+    @Test
+    public void record_negativeValue_isRecordedAsZero() {
+        assertEquals(0L, single(-5));
+    }
+
+    @Test
+    public void percentile_uniformValues_returnsTheBoundOfTheRankBucket() {
+        LogHistogram histogram = new LogHistogram();
+        for(long v = 1; v <= 100; v++)
+            histogram.record(v);
+        long[] buckets = new long[LogHistogram.BUCKETS];
+
+        long total = histogram.copyTo(buckets, false);
+
+        assertEquals(100, total);
+        assertEquals(1L, LogHistogram.percentile(buckets, total, 0.0));
+        // 50 is in [48, 51] and 99 is in [96, 103]
+        assertEquals(51L, LogHistogram.percentile(buckets, total, 0.5));
+        assertEquals(103L, LogHistogram.percentile(buckets, total, 0.99));
+        assertEquals(103L, LogHistogram.percentile(buckets, total, 1.0));
+    }
+
+    @Test
+    public void percentile_noValues_returnsZero() {
+        assertEquals(0L, LogHistogram.percentile(new long[LogHistogram.BUCKETS], 0, 0.5));
+    }
+
+    @Test
+    public void copyTo_withReset_clearsTheBuckets() {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(10);
+        histogram.record(1000);
+        long[] buckets = new long[LogHistogram.BUCKETS];
+
+        assertEquals(2, histogram.copyTo(buckets, false));
+        assertEquals(2, histogram.copyTo(buckets, true));
+        assertEquals(0, histogram.copyTo(buckets, false));
+    }
+
+    private static void assertBounded(long v) {
+        long bound = single(v);
+        assertTrue(v + " above its bound " + bound, bound >= v);
+        assertTrue(v + " too far from its bound " + bound, bound - v < Math.max(1, v / 8));
+    }
+
+    // The upper bound of the bucket of a single value
+    private static long single(long v) {
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(v);
+        long[] buckets = new long[LogHistogram.BUCKETS];
+        return LogHistogram.percentile(buckets, histogram.copyTo(buckets, false), 1.0);
+    }
+}
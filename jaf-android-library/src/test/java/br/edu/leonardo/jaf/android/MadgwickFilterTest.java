@@ -0,0 +1,111 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the convergence of MadgwickFilter, which run on the development machine
+ * (host). The estimate rotates device vectors to the North-West-Up filter frame, so a converged
+ * estimate maps the measured gravity to +Z and the horizontal magnetic field to +X.
+ */
+public class MadgwickFilterTest {
+
+    private static final float G = 9.81f;
+    private static final float SIN30 = 0.5f;
+    private static final float COS30 = (float) Math.sqrt(0.75);
+    private static final double EPSILON = 1e-3;
+
+    @Test
+    public void update_staticInputTopPointingNorth_converges() {
+        // The identity estimate has the device X axis to the north: 90 degrees away
+        assertConverges(0f, 0f, G, 0f, 20f, -40f);
+    }
+
+    @Test
+    public void update_staticInputTopPointingSouth_converges() {
+        assertConverges(0f, 0f, G, 0f, -20f, -40f);
+    }
+
+    @Test
+    public void update_staticInputPitchedDevice_converges() {
+        // Top edge tilted 30 degrees up, pointing north
+        assertConverges(0f, G * SIN30, G * COS30, 0f, 20f * COS30 - 40f * SIN30, -20f * SIN30 - 40f * COS30);
+    }
+
+    @Test
+    public void update_accelerometerOnly_levelsTheEstimate() {
+        // The normalized gradient step dithers by about beta * dt around the solution
+        MadgwickFilter filter = new MadgwickFilter(0.1f);
+        float ax = G * SIN30;
+        float az = G * COS30;
+
+        for(int i = 0; i < 5000; i++)
+            filter.update(0f, 0f, 0f, ax, 0f, az, 0.01f);
+
+        // Within a few milliradians of the vertical
+        assertEquals(1.0, rotate(filter, ax / G, 0f, az / G)[2], 1e-5);
+    }
+
+    @Test
+    public void update_gyroscopeOnly_integratesTheAngularSpeed() {
+        MadgwickFilter filter = new MadgwickFilter(0.1f);
+
+        // A quarter turn around Z in one second; a zero acceleration disables the correction
+        for(int i = 0; i < 100; i++)
+            filter.update(0f, 0f, (float) (Math.PI / 2), 0f, 0f, 0f, 0.01f);
+
+        assertEquals(Math.sqrt(0.5), filter.q0, EPSILON);
+        assertEquals(0.0, filter.q1, EPSILON);
+        assertEquals(0.0, filter.q2, EPSILON);
+        assertEquals(Math.sqrt(0.5), filter.q3, EPSILON);
+    }
+
+    @Test
+    public void initialize_staticInput_matchesGravityAndNorthAtOnce() {
+        MadgwickFilter filter = new MadgwickFilter(0.1f);
+        float my = 20f * COS30 - 40f * SIN30;
+        float mz = -20f * SIN30 - 40f * COS30;
+
+        filter.initialize(0f, G * SIN30, G * COS30, 0f, my, mz);
+
+        assertVector(0f, 0f, 1f, rotate(filter, 0f, SIN30, COS30));
+        float[] m = rotate(filter, 0f, my, mz);
+        assertEquals(0.0, m[1], EPSILON);
+        assertTrue(m[0] > 0f);
+    }
+
+    private static void assertConverges(float ax, float ay, float az, float mx, float my, float mz) {
+        MadgwickFilter filter = new MadgwickFilter(0.1f);
+
+        for(int i = 0; i < 5000; i++)
+            filter.update(0f, 0f, 0f, ax, ay, az, mx, my, mz, 0.01f);
+
+        float norm = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        assertVector(0f, 0f, 1f, rotate(filter, ax / norm, ay / norm, az / norm));
+        float[] m = rotate(filter, mx, my, mz);
+        assertEquals("west component", 0.0, m[1], EPSILON * Math.abs(m[0]));
+        assertTrue("north component", m[0] > 0f);
+        double length = Math.sqrt(filter.q0 * filter.q0 + filter.q1 * filter.q1 + filter.q2 * filter.q2 + filter.q3 * filter.q3);
+        assertEquals(1.0, length, 1e-5);
+    }
+
+    private static void assertVector(float x, float y, float z, float[] v) {
+        assertEquals(x, v[0], EPSILON);
+        assertEquals(y, v[1], EPSILON);
+        assertEquals(z, v[2], EPSILON);
+    }
+
+    // Rotates a device vector to the filter frame: q v q*
+    private static float[] rotate(MadgwickFilter f, float x, float y, float z) {
+        float w = f.q0;
+        float qx = f.q1;
+        float qy = f.q2;
+        float qz = f.q3;
+        return new float[] {
+                (1 - 2 * (qy * qy + qz * qz)) * x + 2 * (qx * qy - w * qz) * y + 2 * (qx * qz + w * qy) * z,
+                2 * (qx * qy + w * qz) * x + (1 - 2 * (qx * qx + qz * qz)) * y + 2 * (qy * qz - w * qx) * z,
+                2 * (qx * qz - w * qy) * x + 2 * (qy * qz + w * qx) * y + (1 - 2 * (qx * qx + qy * qy)) * z
+        };
+    }
+}
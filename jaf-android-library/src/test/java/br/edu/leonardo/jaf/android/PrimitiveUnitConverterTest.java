@@ -0,0 +1,92 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import javax.measure.Unit;
+
+import tec.units.ri.AbstractUnit;
+import tec.units.ri.function.LogConverter;
+import tec.units.ri.unit.MetricPrefix;
+import tec.units.ri.unit.Units;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the identity, affine and generic paths of PrimitiveUnitConverter, which run
+ * on the development machine (host).
+ */
+public class PrimitiveUnitConverterTest {
+
+    @Test
+    public void equivalentUnits_areAnIdentity() {
+        PrimitiveUnitConverter converter = new PrimitiveUnitConverter(Units.METRE_PER_SQUARE_SECOND,
+                Units.METRE.divide(Units.SECOND.pow(2)));
+        float[] src = { -9.81f, 0f, 3.5f };
+        float[] dest = new float[3];
+
+        converter.convert(src, dest, 3);
+
+        assertTrue(converter.isIdentity());
+        assertTrue(converter.isAffine());
+        assertArrayEquals(src, dest, 0f);
+        assertEquals(Units.METRE.divide(Units.SECOND.pow(2)), converter.getTargetUnit());
+    }
+
+    @Test
+    public void celsiusToKelvin_isAnOffset() {
+        PrimitiveUnitConverter converter = new PrimitiveUnitConverter(Units.CELSIUS, Units.KELVIN);
+        float[] values = { -273.15f, 0f, 25f };
+
+        converter.convert(values, values, 3);
+
+        assertFalse(converter.isIdentity());
+        assertTrue(converter.isAffine());
+        assertEquals(1.0, converter.getScale(), 1e-12);
+        assertEquals(273.15, converter.getOffset(), 1e-9);
+        assertArrayEquals(new float[] { 0f, 273.15f, 298.15f }, values, 1e-4f);
+        assertEquals(310.15, converter.convert(37.0), 1e-9);
+    }
+
+    @Test
+    public void microteslaToTesla_isAScale() {
+        PrimitiveUnitConverter converter = new PrimitiveUnitConverter(MetricPrefix.MICRO(Units.TESLA), Units.TESLA);
+        float[] dest = new float[2];
+
+        converter.convert(new float[] { 45f, -20f }, dest, 2);
+
+        assertTrue(converter.isAffine());
+        assertEquals(1e-6, converter.getScale(), 1e-18);
+        assertEquals(0.0, converter.getOffset(), 0.0);
+        assertEquals(45e-6f, dest[0], 1e-12f);
+        assertEquals(-20e-6f, dest[1], 1e-12f);
+    }
+
+    @Test
+    public void radianToDegree_isAScale() {
+        Unit<?> degree = Units.RADIAN.multiply(Math.PI / 180.0);
+        PrimitiveUnitConverter converter = new PrimitiveUnitConverter(Units.RADIAN, degree);
+
+        assertTrue(converter.isAffine());
+        assertEquals(180.0, converter.convert(Math.PI), 1e-9);
+    }
+
+    @Test
+    public void nonAffineConversion_fallsBackToTheUnitConverter() {
+        // The conversion from ONE to this unit computes 10 to the power of each value
+        Unit<?> transformed = AbstractUnit.ONE.transform(new LogConverter(10));
+        PrimitiveUnitConverter converter = new PrimitiveUnitConverter(AbstractUnit.ONE, transformed);
+        float[] values = { 0f, 1f, 2f, 3f };
+
+        converter.convert(values, values, 3);
+
+        assertFalse(converter.isIdentity());
+        assertFalse(converter.isAffine());
+        assertArrayEquals(new float[] { 1f, 10f, 100f, 3f }, values, 1e-3f);
+        assertEquals(1000.0, converter.convert(3.0), 1e-6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void incommensurableUnits_throw() {
+        new PrimitiveUnitConverter(Units.METRE, Units.SECOND);
+    }
+}
@@ -0,0 +1,143 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the copy-on-write ReadingListenerList, which run on the development machine
+ * (host).
+ */
+public class ReadingListenerListTest {
+
+    @Test
+    public void dispatch_deliversToEveryListenerInRegistrationOrder() {
+        ReadingListenerList list = new ReadingListenerList();
+        List<String> calls = new ArrayList<>();
+        list.add(recorder(calls, "a"));
+        list.add(recorder(calls, "b"));
+        list.add(recorder(calls, "c"));
+
+        list.dispatch(null, new SensorReading(1));
+
+        assertEquals(Arrays.asList("a", "b", "c"), calls);
+    }
+
+    @Test
+    public void add_sameListenerTwice_registersItOnce() {
+        ReadingListenerList list = new ReadingListenerList();
+        List<String> calls = new ArrayList<>();
+        SensorReadingListener listener = recorder(calls, "a");
+
+        list.add(listener);
+        list.add(listener);
+        list.dispatch(null, new SensorReading(1));
+
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void remove_keepsTheOtherListenersInOrder() {
+        ReadingListenerList list = new ReadingListenerList();
+        List<String> calls = new ArrayList<>();
+        SensorReadingListener a = recorder(calls, "a");
+        SensorReadingListener b = recorder(calls, "b");
+        SensorReadingListener c = recorder(calls, "c");
+        list.add(a);
+        list.add(b);
+        list.add(c);
+
+        list.remove(b);
+        list.remove(recorder(calls, "unknown"));
+        list.dispatch(null, new SensorReading(1));
+
+        assertEquals(Arrays.asList("a", "c"), calls);
+        list.remove(a);
+        list.remove(c);
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void dispatch_listenerRemovingItself_doesNotSkipTheOthers() {
+        final ReadingListenerList list = new ReadingListenerList();
+        final List<String> calls = new ArrayList<>();
+        list.add(new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                calls.add("self");
+                list.remove(this);
+            }
+        });
+        list.add(recorder(calls, "b"));
+
+        list.dispatch(null, new SensorReading(1));
+        list.dispatch(null, new SensorReading(1));
+
+        assertEquals(Arrays.asList("self", "b", "b"), calls);
+    }
+
+    @Test
+    public void addAndRemove_concurrentWithDispatch_neverLosesAStableListener() throws Exception {
+        final ReadingListenerList list = new ReadingListenerList();
+        final AtomicInteger stableCalls = new AtomicInteger();
+        SensorReadingListener stable = new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                stableCalls.incrementAndGet();
+            }
+        };
+        list.add(stable);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] mutators = new Thread[3];
+        for(int t = 0; t < mutators.length; t++) {
+            mutators[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        SensorReadingListener own = recorder(new ArrayList<String>(), "own");
+                        while(running.get()) {
+                            list.add(own);
+                            list.remove(own);
+                        }
+                    } catch(Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            mutators[t].start();
+        }
+        try {
+            SensorReading reading = new SensorReading(1);
+            for(int i = 1; i <= 100000; i++) {
+                list.dispatch(null, reading);
+                assertEquals(i, stableCalls.get());
+            }
+        } finally {
+            running.set(false);
+            for(Thread t : mutators)
+                t.join();
+        }
+
+        assertEquals(Collections.<Throwable>emptyList(), errors);
+        // Every mutator removed its own listener last
+        list.remove(stable);
+        assertTrue(list.isEmpty());
+    }
+
+    private static SensorReadingListener recorder(final List<String> calls, final String name) {
+        return new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                calls.add(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import tec.units.ri.AbstractUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the trace replay, which run on the development machine (host).
+ */
+public class ReplaySensorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replay_asFastAsPossible_emitsRecordedReadingsInOrder() throws Exception {
+        File dir = record(1000, 1000000L);
+        ReplaySensor sensor = new ReplaySensor(new SensorTraceReader(dir, "trace"), "accelerometer", AbstractUnit.ONE, ReplaySensor.AS_FAST_AS_POSSIBLE);
+        final List<float[]> received = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+        sensor.addReadingListener(new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                float[] v = new float[reading.getSize()];
+                reading.copyValues(v);
+                received.add(v);
+                timestamps.add(reading.getTimestamp());
+            }
+        });
+        sensor.init();
+        assertTrue(sensor.awaitCompletion(10000));
+
+        assertEquals(3, sensor.getChannelCount());
+        assertEquals(1000, sensor.getReplayedCount());
+        assertEquals(1000, received.size());
+        for(int i = 0; i < 1000; i++) {
+            assertEquals((i + 1) * 1000000L, (long) timestamps.get(i));
+            assertArrayEquals(new float[] {i, -i, 0.5f * i}, received.get(i), 0f);
+        }
+    }
+
+    @Test
+    public void replay_withSpeed_keepsScaledTiming() throws Exception {
+        File dir = record(200, 1000000L);
+        ReplaySensor sensor = new ReplaySensor(new SensorTraceReader(dir, "trace"), "accelerometer", AbstractUnit.ONE, 10.0);
+        long start = System.nanoTime();
+        sensor.init();
+        assertTrue(sensor.awaitCompletion(10000));
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(200, sensor.getReplayedCount());
+        assertTrue("elapsed " + elapsed, elapsed >= 19000000L);
+    }
+
+    @Test
+    public void reader_seek_positionsOnFirstRecordNotOlder() throws Exception {
+        File dir = record(5000, 1000000L);
+        SensorTraceReader reader = new SensorTraceReader(dir, "trace");
+        reader.seek(3210500000L);
+        assertTrue(reader.next());
+        assertEquals(3211000000L, reader.getTimestamp());
+        assertEquals(3210f, reader.getValue(0), 0f);
+        reader.close();
+    }
+
+    /**
+     * This method records a trace with a three-channel source in a new temporary directory.
+     *
+     * @param count The number of readings.
+     * @param period The time in nanoseconds between two readings.
+     * @return The trace directory.
+     */
+    private File record(int count, long period) throws Exception {
+        File dir = folder.newFolder();
+        SensorTraceRecorder recorder = new SensorTraceRecorder(dir, "trace", 3, 32 * 1024, 0, 8192);
+        int id = recorder.addSource(new SensorReadingSource() {
+            @Override
+            public void addReadingListener(SensorReadingListener listener) { }
+
+            @Override
+            public void removeReadingListener(SensorReadingListener listener) { }
+
+            @Override
+            public int getChannelCount() {
+                return 3;
+            }
+        }, "accelerometer");
+        recorder.start();
+        float[] values = new float[3];
+        for(int i = 0; i < count; i++) {
+            values[0] = i;
+            values[1] = -i;
+            values[2] = 0.5f * i;
+            assertTrue(recorder.record(id, (i + 1) * period, values, 3));
+        }
+        recorder.stop();
+        return dir;
+    }
+}
@@ -0,0 +1,81 @@
+package br.edu.leonardo.jaf.android;
+
+import android.hardware.SensorManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the sampling period and report latency chosen by SensorCapabilities, which
+ * run on the development machine (host) with capabilities given by the test.
+ */
+public class SensorCapabilitiesTest {
+
+    @Test
+    public void clampSamplingPeriod_outsideTheSupportedRange_isClamped() {
+        SensorCapabilities capabilities = new SensorCapabilities(null, 5000, 1000000, 0, 0, false);
+
+        assertEquals(5000, capabilities.clampSamplingPeriod(1000));
+        assertEquals(20000, capabilities.clampSamplingPeriod(20000));
+        assertEquals(1000000, capabilities.clampSamplingPeriod(5000000));
+    }
+
+    @Test
+    public void clampSamplingPeriod_delayConstants_areConvertedFirst() {
+        SensorCapabilities capabilities = new SensorCapabilities(null, 5000, 100000, 0, 0, false);
+
+        assertEquals(5000, capabilities.clampSamplingPeriod(SensorManager.SENSOR_DELAY_FASTEST));
+        assertEquals(20000, capabilities.clampSamplingPeriod(SensorManager.SENSOR_DELAY_GAME));
+        assertEquals(66667, capabilities.clampSamplingPeriod(SensorManager.SENSOR_DELAY_UI));
+        assertEquals(100000, capabilities.clampSamplingPeriod(SensorManager.SENSOR_DELAY_NORMAL));
+    }
+
+    @Test
+    public void clampSamplingPeriod_unknownMaximum_onlyClampsTheMinimum() {
+        SensorCapabilities capabilities = new SensorCapabilities(null, 10000, 0, 0, 0, false);
+
+        assertEquals(10000, capabilities.clampSamplingPeriod(0));
+        assertEquals(5000000, capabilities.clampSamplingPeriod(5000000));
+    }
+
+    @Test
+    public void getMaxReportLatency_reservedFifo_boundsTheLatencyWithAMargin() {
+        // 300 reserved events at 10 ms fill the FIFO in 3 s, minus 10%
+        SensorCapabilities capabilities = new SensorCapabilities(null, 5000, 0, 300, 3000, false);
+
+        assertEquals(2700000, capabilities.getMaxReportLatency(10000, 10000000L));
+        assertEquals(1000000, capabilities.getMaxReportLatency(10000, 1000000L));
+    }
+
+    @Test
+    public void getMaxReportLatency_noReservedEvents_usesTheWholeFifo() {
+        SensorCapabilities capabilities = new SensorCapabilities(null, 5000, 0, 0, 1000, false);
+
+        assertEquals(9000000, capabilities.getMaxReportLatency(10000, 60000000L));
+    }
+
+    @Test
+    public void getMaxReportLatency_noFifoOrNoPeriod_isZero() {
+        assertEquals(0, new SensorCapabilities(null, 5000, 0, 0, 0, false).getMaxReportLatency(10000, 1000000L));
+        assertEquals(0, new SensorCapabilities(null, 5000, 0, 1, 1, false).getMaxReportLatency(10000, 1000000L));
+        assertEquals(0, new SensorCapabilities(null, 0, 0, 100, 100, false).getMaxReportLatency(0, 1000000L));
+    }
+
+    @Test
+    public void getMaxReportLatency_hugeValues_fitInAnInt() {
+        SensorCapabilities capabilities = new SensorCapabilities(null, 0, 0, 0, 1 << 20, false);
+
+        assertEquals(Integer.MAX_VALUE, capabilities.getMaxReportLatency(1000000, Long.MAX_VALUE));
+        assertEquals(0, capabilities.getMaxReportLatency(1000000, -5L));
+    }
+
+    @Test
+    public void getMaxReportLatency_wakeUpSensor_isTheSame() {
+        SensorCapabilities sleeping = new SensorCapabilities(null, 5000, 0, 300, 3000, false);
+        SensorCapabilities wakeUp = new SensorCapabilities(null, 5000, 0, 300, 3000, true);
+
+        assertTrue(wakeUp.isWakeUp());
+        assertEquals(sleeping.getMaxReportLatency(10000, 10000000L), wakeUp.getMaxReportLatency(10000, 10000000L));
+    }
+}
@@ -0,0 +1,146 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the batched binary export, which run on the development machine (host)
+ * against in-memory channels.
+ */
+public class SensorExportTest {
+
+    private static final double QUANTUM = 0.001;
+
+    @Test
+    public void export_withoutCompression_decodesAllRecordsWithinHalfTheQuantum() throws IOException {
+        roundTrip(false);
+    }
+
+    @Test
+    public void export_withCompression_decodesAllRecordsWithinHalfTheQuantum() throws IOException {
+        roundTrip(true);
+    }
+
+    @Test
+    public void export_smoothSignal_takesFewerBytesThanRawFloats() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SensorExporter exporter = new SensorExporter(Channels.newChannel(out), 60000L, 1000, false);
+        FakeSource source = new FakeSource(3);
+        exporter.addSource(source, "accelerometer", QUANTUM);
+        exporter.start();
+        for(int i = 0; i < 900; i++)
+            source.emit(i * 5000000L, (float) Math.sin(i / 50.0), (float) Math.cos(i / 50.0), 9.81f);
+        exporter.stop();
+
+        int rawSize = 900 * (8 + 3 * 4);
+        assertTrue(out.size() + " bytes", out.size() < rawSize / 2);
+        assertEquals(out.size(), exporter.getBytesWritten());
+    }
+
+    @Test
+    public void reader_onEmptyStream_returnsFalse() throws IOException {
+        SensorExportReader reader = new SensorExportReader(Channels.newChannel(new ByteArrayInputStream(new byte[0])));
+
+        assertFalse(reader.next());
+        assertEquals(0, reader.getSourceCount());
+    }
+
+    private static void roundTrip(boolean compress) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SensorExporter exporter = new SensorExporter(Channels.newChannel(out), 5L, 64, compress);
+        FakeSource accel = new FakeSource(3);
+        FakeSource light = new FakeSource(1);
+        int accelId = exporter.addSource(accel, "accelerometer", QUANTUM);
+        int lightId = exporter.addSource(light, "light", QUANTUM);
+        exporter.start();
+        for(int i = 0; i < 500; i++) {
+            accel.emit(1000000000L + i * 5000000L, (float) Math.sin(i / 10.0), -0.25f * i, i == 7 ? Float.NaN : 9.81f);
+            if(i % 4 == 0)
+                light.emit(2000000000L - i * 1000L, 120.5f + i);
+            // Let the exporter write every few records, so no batch overflows
+            if(i % 50 == 49)
+                awaitExported(exporter, i + 1 + i / 4 + 1);
+        }
+        exporter.stop();
+        assertEquals(0, exporter.getDroppedCount());
+        assertEquals(625, exporter.getExportedCount());
+
+        SensorExportReader reader = new SensorExportReader(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())));
+        int accelCount = 0;
+        int lightCount = 0;
+        while(reader.next()) {
+            if(reader.getSourceId() == accelId) {
+                int i = accelCount++;
+                assertEquals(1000000000L + i * 5000000L, reader.getTimestamp());
+                assertEquals(3, reader.getChannelCount());
+                assertEquals(Math.sin(i / 10.0), reader.getValue(0), QUANTUM / 2);
+                assertEquals(-0.25 * i, reader.getValue(1), QUANTUM / 2);
+                if(i == 7)
+                    assertTrue(Double.isNaN(reader.getValue(2)));
+                else
+                    assertEquals(9.81, reader.getValue(2), QUANTUM / 2);
+            } else {
+                assertEquals(lightId, reader.getSourceId());
+                int i = 4 * lightCount++;
+                assertEquals(2000000000L - i * 1000L, reader.getTimestamp());
+                assertEquals(120.5 + i, reader.getValue(0), QUANTUM / 2);
+            }
+        }
+        assertEquals(500, accelCount);
+        assertEquals(125, lightCount);
+        assertEquals("accelerometer", reader.getSourceName(accelId));
+        assertEquals(lightId, reader.findSource("light"));
+        assertFalse(reader.isLocationSource(lightId));
+        assertEquals(exporter.getFrameCount(), reader.getFrameCount());
+    }
+
+    private static void awaitExported(SensorExporter exporter, long count) {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while(exporter.getExportedCount() < count && System.currentTimeMillis() < deadline)
+            Thread.yield();
+        assertEquals(count, exporter.getExportedCount());
+    }
+
+    /**
+     * A reading source that delivers the readings given by the test in the calling thread.
+     */
+    private static final class FakeSource implements SensorReadingSource {
+
+        private final CopyOnWriteArrayList<SensorReadingListener> listeners = new CopyOnWriteArrayList<>();
+        private final SensorReading reading;
+        private final int channels;
+
+        FakeSource(int channels) {
+            this.channels = channels;
+            this.reading = new SensorReading(channels);
+        }
+
+        void emit(long timestamp, float... values) {
+            reading.set(timestamp, 0, values, values.length);
+            for(SensorReadingListener l : listeners)
+                l.onReading(this, reading);
+        }
+
+        @Override
+        public void addReadingListener(SensorReadingListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeReadingListener(SensorReadingListener listener) {
+            listeners.remove(listener);
+        }
+
+        @Override
+        public int getChannelCount() {
+            return channels;
+        }
+    }
+}
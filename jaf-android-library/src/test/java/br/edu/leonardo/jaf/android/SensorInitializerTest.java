@@ -0,0 +1,136 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import br.edu.leonardo.jaf.sensors.Sensor;
+import br.edu.leonardo.jaf.sensors.SensorException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the concurrent initialization and the report of SensorInitializer, which run
+ * on the development machine (host) with stub sensors on a real thread pool.
+ */
+public class SensorInitializerTest {
+
+    private static final long SLOW_INIT_MS = 100;
+
+    private static final long WAIT_MS = 5000;
+
+    @Test
+    public void initAll_mixedSensors_reportsTheErrorAndTimeOfEachSensor() throws Exception {
+        StubSensor fast = new StubSensor(0, null, false);
+        StubSensor failing = new StubSensor(0, null, true);
+        StubSensor slow = new StubSensor(SLOW_INIT_MS, null, false);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            SensorInitReport report = SensorInitializer.initAll(Arrays.asList(fast, failing, slow), executor)
+                    .get(WAIT_MS, TimeUnit.MILLISECONDS);
+
+            assertEquals(3, report.getSensorCount());
+            assertSame(fast, report.getSensor(0));
+            assertSame(failing, report.getSensor(1));
+            assertSame(slow, report.getSensor(2));
+            assertTrue(report.isSuccessful(0));
+            assertNull(report.getError(0));
+            assertFalse(report.isSuccessful(1));
+            assertSame(failing.error, report.getError(1));
+            assertTrue(report.isSuccessful(2));
+            assertEquals(1, report.getFailureCount());
+            assertTrue(fast.initialized && failing.initialized && slow.initialized);
+            // The slow sensor ran in parallel with the others, so it bounds the total time
+            assertTrue(report.getElapsedNanos(2) >= TimeUnit.MILLISECONDS.toNanos(SLOW_INIT_MS));
+            assertTrue(report.getTotalElapsedNanos() >= report.getElapsedNanos(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void get_sensorStillInitializing_timesOut() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        StubSensor fast = new StubSensor(0, null, false);
+        StubSensor blocked = new StubSensor(0, gate, false);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<SensorInitReport> future = SensorInitializer.initAll(Arrays.asList(fast, blocked), executor);
+            try {
+                future.get(50, TimeUnit.MILLISECONDS);
+                fail("Completed while a sensor was initializing");
+            } catch(TimeoutException e) {
+                // Expected
+            }
+            assertFalse(future.isDone());
+
+            gate.countDown();
+            SensorInitReport report = future.get(WAIT_MS, TimeUnit.MILLISECONDS);
+
+            assertTrue(future.isDone());
+            assertEquals(2, report.getSensorCount());
+            assertEquals(0, report.getFailureCount());
+        } finally {
+            gate.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void initAll_noSensors_completesImmediately() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            Future<SensorInitReport> future = SensorInitializer.initAll(Collections.<Sensor>emptyList(), executor);
+
+            assertTrue(future.isDone());
+            SensorInitReport report = future.get(0, TimeUnit.MILLISECONDS);
+            assertEquals(0, report.getSensorCount());
+            assertEquals(0, report.getFailureCount());
+            assertEquals(0, report.getTotalElapsedNanos());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A sensor whose initialization takes a given time, waits for a gate, or fails.
+     */
+    private static final class StubSensor extends Sensor {
+
+        StubSensor(long delayMillis, CountDownLatch gate, boolean fails) {
+            this.delayMillis = delayMillis;
+            this.gate = gate;
+            this.error = fails ? new SensorException(this, "The stub sensor failed.") : null;
+        }
+
+        @Override
+        public void init() throws SensorException {
+            initialized = true;
+            try {
+                if(delayMillis > 0)
+                    Thread.sleep(delayMillis);
+                if(gate != null)
+                    gate.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if(error != null)
+                throw error;
+        }
+
+        private final long delayMillis;
+
+        private final CountDownLatch gate;
+
+        private final SensorException error;
+
+        private volatile boolean initialized;
+    }
+}
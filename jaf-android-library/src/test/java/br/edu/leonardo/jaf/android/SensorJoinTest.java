@@ -0,0 +1,193 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the resampling and the per-source ring buffers of SensorJoin, which run on
+ * the development machine (host) with sources driven by the test.
+ */
+public class SensorJoinTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void join_linearSignals_interpolatesThemExactlyAtTheOutputRate() {
+        FakeSource a = new FakeSource(1);
+        FakeSource b = new FakeSource(1);
+        SensorJoin join = new SensorJoin(5 * MS, 16, a, b);
+        List<float[]> out = collect(join);
+        List<Long> times = new ArrayList<>();
+        join.addReadingListener(timestamps(times));
+        join.start();
+
+        // A every 10 ms with value t, B every 15 ms with value 2t + 1, in time order
+        for(long t = 0; t <= 105; t += 5) {
+            if(t % 10 == 0 && t <= 100)
+                a.emit(t * MS, 0, t);
+            if(t % 15 == 0)
+                b.emit(t * MS, 0, 2f * t + 1f);
+        }
+
+        assertEquals(20, out.size());
+        for(int i = 0; i < out.size(); i++) {
+            long t = 5 * (i + 1);
+            assertEquals(t * MS, (long) times.get(i));
+            assertEquals(t, out.get(i)[0], 1e-4);
+            assertEquals(2.0 * t + 1.0, out.get(i)[1], 1e-4);
+        }
+    }
+
+    @Test
+    public void join_untilEverySourceHasReadings_emitsNothing() {
+        FakeSource a = new FakeSource(1);
+        FakeSource b = new FakeSource(1);
+        SensorJoin join = new SensorJoin(5 * MS, 8, a, b);
+        List<float[]> out = collect(join);
+        join.start();
+
+        for(long t = 0; t < 50; t += 5)
+            a.emit(t * MS, 0, t);
+
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void join_laggingSource_onlyUsesReadingsStillInTheRingBuffer() {
+        FakeSource a = new FakeSource(1);
+        FakeSource b = new FakeSource(1);
+        SensorJoin join = new SensorJoin(10 * MS, 4, a, b);
+        List<float[]> out = collect(join);
+        List<Long> times = new ArrayList<>();
+        join.addReadingListener(timestamps(times));
+        join.start();
+
+        // Only the readings of A at 60, 70, 80 and 90 ms are still buffered when B catches up
+        for(long t = 0; t <= 90; t += 10)
+            a.emit(t * MS, 0, t);
+        b.emit(50 * MS, 0, 50f);
+        assertEquals(0, out.size());
+        b.emit(100 * MS, 0, 100f);
+
+        assertEquals(3, out.size());
+        for(int i = 0; i < 3; i++) {
+            long t = 70 + 10 * i;
+            assertEquals(t * MS, (long) times.get(i));
+            assertEquals(t, out.get(i)[0], 1e-4);
+            assertEquals(t, out.get(i)[1], 1e-4);
+        }
+    }
+
+    @Test
+    public void join_channels_areLaidOutInSourceOrderAndMissingOnesAreZero() {
+        FakeSource a = new FakeSource(1);
+        FakeSource b = new FakeSource(2);
+        SensorJoin join = new SensorJoin(10 * MS, 4, a, b);
+        List<float[]> out = collect(join);
+        final List<Integer> accuracies = new ArrayList<>();
+        join.addReadingListener(new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                accuracies.add(reading.getAccuracy());
+            }
+        });
+        join.start();
+
+        a.emit(0L, 3, 1f);
+        b.emit(0L, 2, 7f);
+        a.emit(20 * MS, 3, 1f);
+        b.emit(20 * MS, 2, 7f);
+
+        assertEquals(3, join.getChannelCount());
+        assertEquals(2, out.size());
+        assertArrayEquals(new float[] { 1f, 7f, 0f }, out.get(0), 0f);
+        assertEquals(Integer.valueOf(2), accuracies.get(0));
+    }
+
+    @Test
+    public void stop_discardsTheBufferedReadings() {
+        FakeSource a = new FakeSource(1);
+        FakeSource b = new FakeSource(1);
+        SensorJoin join = new SensorJoin(10 * MS, 4, a, b);
+        List<float[]> out = collect(join);
+        join.start();
+        a.emit(0L, 0, 0f);
+        b.emit(0L, 0, 0f);
+
+        join.stop();
+        join.start();
+        a.emit(100 * MS, 0, 100f);
+        b.emit(100 * MS, 0, 100f);
+
+        // Without the readings at 0 ms, there is nothing to interpolate up to 100 ms
+        assertEquals(0, out.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_bufferSmallerThanTwo_throws() {
+        new SensorJoin(10 * MS, 1, new FakeSource(1));
+    }
+
+    private static List<float[]> collect(SensorJoin join) {
+        final List<float[]> out = new ArrayList<>();
+        join.addReadingListener(new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                float[] v = new float[reading.getSize()];
+                reading.copyValues(v);
+                out.add(v);
+            }
+        });
+        return out;
+    }
+
+    private static SensorReadingListener timestamps(final List<Long> times) {
+        return new SensorReadingListener() {
+            @Override
+            public void onReading(SensorReadingSource source, SensorReading reading) {
+                times.add(reading.getTimestamp());
+            }
+        };
+    }
+
+    /**
+     * A reading source that delivers the readings given by the test in the calling thread.
+     */
+    private static final class FakeSource implements SensorReadingSource {
+
+        private final CopyOnWriteArrayList<SensorReadingListener> listeners = new CopyOnWriteArrayList<>();
+        private final SensorReading reading;
+        private final int channels;
+
+        FakeSource(int channels) {
+            this.channels = channels;
+            this.reading = new SensorReading(channels);
+        }
+
+        void emit(long timestamp, int accuracy, float... values) {
+            reading.set(timestamp, accuracy, values, values.length);
+            for(SensorReadingListener l : listeners)
+                l.onReading(this, reading);
+        }
+
+        @Override
+        public void addReadingListener(SensorReadingListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void removeReadingListener(SensorReadingListener listener) {
+            listeners.remove(listener);
+        }
+
+        @Override
+        public int getChannelCount() {
+            return channels;
+        }
+    }
+}
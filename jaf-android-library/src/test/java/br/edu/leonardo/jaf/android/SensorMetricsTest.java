@@ -0,0 +1,108 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the counters and the percentiles of SensorMetrics, which run on the
+ * development machine (host) with event times given by the test.
+ */
+public class SensorMetricsTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void snapshot_regularEvents_hasThePeriodAsIntervalAndNoJitter() {
+        SensorMetrics metrics = new SensorMetrics(10 * MS);
+
+        for(long t = 0; t < 100; t++)
+            metrics.recordEvent(t * 10 * MS, t * 10 * MS + 2 * MS);
+        SensorMetrics.Snapshot s = metrics.snapshot(false);
+
+        assertEquals(100, s.getEventCount());
+        assertEquals(0, s.getMissedCount());
+        assertWithinBucket(10 * MS, s.getInterval(0.5));
+        assertWithinBucket(10 * MS, s.getInterval(0.99));
+        assertWithinBucket(2 * MS, s.getLatency(0.99));
+        assertEquals(0L, s.getJitter(0.99));
+        assertEquals(10 * MS, s.getExpectedPeriod());
+    }
+
+    @Test
+    public void recordEvent_gaps_estimateTheMissedEventsAndTheJitter() {
+        SensorMetrics metrics = new SensorMetrics(10 * MS);
+
+        // 10 regular intervals, then a 30 ms gap (2 missed) and a 14 ms one (none missed)
+        long t = 0;
+        for(int i = 0; i <= 10; i++, t += 10 * MS)
+            metrics.recordEvent(t, -1);
+        t += 20 * MS;
+        metrics.recordEvent(t, -1);
+        metrics.recordEvent(t + 14 * MS, -1);
+        SensorMetrics.Snapshot s = metrics.snapshot(false);
+
+        assertEquals(13, s.getEventCount());
+        assertEquals(2, s.getMissedCount());
+        assertEquals(0L, s.getJitter(0.5));
+        assertWithinBucket(20 * MS, s.getJitter(1.0));
+        assertWithinBucket(30 * MS, s.getInterval(1.0));
+        // Unknown delivery times do not record latencies
+        assertEquals(0L, s.getLatency(0.5));
+    }
+
+    @Test
+    public void recordEvent_noExpectedPeriod_recordsNeitherJitterNorMissedEvents() {
+        SensorMetrics metrics = new SensorMetrics(0);
+
+        metrics.recordEvent(0, -1);
+        metrics.recordEvent(100 * MS, -1);
+        SensorMetrics.Snapshot s = metrics.snapshot(false);
+
+        assertEquals(0, s.getMissedCount());
+        assertEquals(0L, s.getJitter(1.0));
+        assertWithinBucket(100 * MS, s.getInterval(0.5));
+    }
+
+    @Test
+    public void snapshot_withReset_startsANewWindow() {
+        SensorMetrics metrics = new SensorMetrics(10 * MS);
+        metrics.recordEvent(0, 1 * MS);
+        metrics.recordEvent(10 * MS, 11 * MS);
+        metrics.recordDropped(3);
+        metrics.recordCoalesced(4);
+
+        SensorMetrics.Snapshot first = metrics.snapshot(true);
+        SensorMetrics.Snapshot second = metrics.snapshot(false);
+
+        assertEquals(2, first.getEventCount());
+        assertEquals(3, first.getDroppedCount());
+        assertEquals(4, first.getCoalescedCount());
+        assertTrue(first.getElapsedNanos() > 0);
+        assertEquals(0, second.getEventCount());
+        assertEquals(0, second.getDroppedCount());
+        assertEquals(0, second.getCoalescedCount());
+        assertEquals(0L, second.getLatency(0.5));
+        assertEquals(0L, second.getInterval(0.5));
+    }
+
+    @Test
+    public void percentiles_mixedLatencies_splitAtTheRank() {
+        SensorMetrics metrics = new SensorMetrics(0);
+
+        // 90 fast deliveries and 10 slow ones
+        for(int i = 0; i < 100; i++)
+            metrics.recordEvent(i * MS, i * MS + (i % 10 == 9 ? 50 * MS : MS));
+        SensorMetrics.Snapshot s = metrics.snapshot(false);
+
+        assertWithinBucket(MS, s.getLatency(0.5));
+        assertWithinBucket(MS, s.getLatency(0.9));
+        assertWithinBucket(50 * MS, s.getLatency(0.91));
+        assertWithinBucket(50 * MS, s.getLatency(0.99));
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue(actual + " below " + expected, actual >= expected);
+        assertTrue(actual + " too far from " + expected, actual - expected < expected / 8);
+    }
+}
@@ -0,0 +1,160 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of SensorReadingPool and of the reference counting of SensorReading, which run
+ * on the development machine (host).
+ */
+public class SensorReadingPoolTest {
+
+    @Test
+    public void acquire_untilExhausted_returnsDistinctReadingsThenNull() {
+        SensorReadingPool pool = new SensorReadingPool(3, 4);
+        Set<SensorReading> readings = Collections.newSetFromMap(new IdentityHashMap<SensorReading, Boolean>());
+
+        for(int i = 0; i < 3; i++) {
+            SensorReading reading = pool.acquire();
+            assertNotNull(reading);
+            assertEquals(4, reading.getCapacity());
+            readings.add(reading);
+        }
+
+        assertEquals(3, readings.size());
+        assertEquals(0, pool.getAvailable());
+        assertNull(pool.acquire());
+        assertNull(pool.acquire());
+        assertEquals(2, pool.getExhaustedCount());
+    }
+
+    @Test
+    public void release_lastReference_returnsTheReadingToThePool() {
+        SensorReadingPool pool = new SensorReadingPool(1, 3);
+        SensorReading reading = pool.acquire();
+        assertNull(pool.acquire());
+
+        reading.release();
+
+        assertEquals(1, pool.getAvailable());
+        assertSame(reading, pool.acquire());
+    }
+
+    @Test
+    public void release_retainedReading_waitsForEveryReference() {
+        SensorReadingPool pool = new SensorReadingPool(1, 3);
+        SensorReading reading = pool.acquire();
+        assertSame(reading, reading.retain());
+        reading.retain();
+
+        reading.release();
+        reading.release();
+        assertEquals(0, pool.getAvailable());
+        reading.release();
+
+        assertEquals(1, pool.getAvailable());
+    }
+
+    @Test
+    public void acquire_recycledReading_startsWithASingleReference() {
+        SensorReadingPool pool = new SensorReadingPool(1, 3);
+        SensorReading reading = pool.acquire();
+        reading.retain();
+        reading.release();
+        reading.release();
+
+        assertSame(reading, pool.acquire());
+        reading.release();
+
+        assertEquals(1, pool.getAvailable());
+    }
+
+    @Test
+    public void release_pooledReadings_goBackToTheirOwnPool() {
+        SensorReadingPool a = new SensorReadingPool(2, 3);
+        SensorReadingPool b = new SensorReadingPool(2, 3);
+        SensorReading fromA = a.acquire();
+        SensorReading fromB = b.acquire();
+
+        fromA.release();
+
+        assertEquals(2, a.getAvailable());
+        assertEquals(1, b.getAvailable());
+        fromB.release();
+        assertEquals(2, b.getAvailable());
+    }
+
+    @Test
+    public void release_standaloneReading_doesNotTouchAnyPool() {
+        SensorReadingPool pool = new SensorReadingPool(1, 3);
+        pool.acquire();
+        SensorReading standalone = new SensorReading(3);
+
+        standalone.release();
+
+        assertEquals(0, pool.getAvailable());
+    }
+
+    @Test
+    public void set_moreValuesThanTheCapacity_truncatesThem() {
+        SensorReading reading = new SensorReading(2);
+        SensorReading copy = new SensorReading(3);
+
+        reading.set(7L, 1, new float[] { 1f, 2f, 3f }, 3);
+        copy.copyFrom(reading);
+
+        assertEquals(2, reading.getSize());
+        assertEquals(7L, copy.getTimestamp());
+        assertEquals(1, copy.getAccuracy());
+        assertEquals(2, copy.getSize());
+        assertEquals(2f, copy.getValue(1), 0f);
+    }
+
+    @Test
+    public void acquireAndRelease_concurrentThreads_neverLoseOrDuplicateReadings() throws Exception {
+        final SensorReadingPool pool = new SensorReadingPool(8, 3);
+        final Set<SensorReading> borrowed = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<SensorReading, Boolean>()));
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread[] threads = new Thread[4];
+        for(int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i = 0; i < 50000; i++) {
+                            SensorReading reading = pool.acquire();
+                            if(reading == null)
+                                continue;
+                            assertTrue("Borrowed twice", borrowed.add(reading));
+                            reading.retain();
+                            reading.release();
+                            assertTrue(borrowed.remove(reading));
+                            reading.release();
+                        }
+                    } catch(Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread t : threads)
+            t.join();
+
+        assertEquals(Collections.<Throwable>emptyList(), errors);
+        assertEquals(8, pool.getAvailable());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_emptyPool_throws() {
+        new SensorReadingPool(0, 3);
+    }
+}
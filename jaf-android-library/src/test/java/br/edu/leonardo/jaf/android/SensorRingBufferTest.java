@@ -0,0 +1,236 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the overflow policies and the producer-consumer protocol of
+ * SensorRingBuffer, which run on the development machine (host).
+ */
+public class SensorRingBufferTest {
+
+    @Test
+    public void poll_bufferedEvents_returnsThemInOrder() {
+        SensorRingBuffer buffer = new SensorRingBuffer(4, 3, SensorRingBuffer.DROP_NEWEST);
+        SensorReading reading = new SensorReading(3);
+
+        for(int i = 1; i <= 3; i++)
+            assertEquals(SensorRingBuffer.OFFER_OK, offer(buffer, i));
+
+        assertEquals(3, buffer.getSize());
+        for(int i = 1; i <= 3; i++) {
+            assertTrue(buffer.poll(reading));
+            assertEquals(i, reading.getTimestamp());
+            assertEquals(i, reading.getAccuracy());
+            assertEquals(3, reading.getSize());
+            assertEquals(10f * i, reading.getValues()[0], 0f);
+            assertEquals(-i, reading.getValues()[2], 0f);
+        }
+        assertFalse(buffer.poll(reading));
+        assertEquals(0, buffer.getSize());
+    }
+
+    @Test
+    public void offer_moreValuesThanChannels_truncatesThem() {
+        SensorRingBuffer buffer = new SensorRingBuffer(2, 2, SensorRingBuffer.DROP_NEWEST);
+        SensorReading reading = new SensorReading(2);
+
+        buffer.offer(5L, 0, new float[] { 1f, 2f, 3f }, 3);
+
+        assertTrue(buffer.poll(reading));
+        assertEquals(2, reading.getSize());
+        assertEquals(2f, reading.getValues()[1], 0f);
+    }
+
+    @Test
+    public void offer_dropNewestWhenFull_discardsTheNewEvent() {
+        SensorRingBuffer buffer = new SensorRingBuffer(2, 3, SensorRingBuffer.DROP_NEWEST);
+        SensorReading reading = new SensorReading(3);
+        offer(buffer, 1);
+        offer(buffer, 2);
+
+        assertEquals(SensorRingBuffer.OFFER_DROPPED, offer(buffer, 3));
+        assertEquals(SensorRingBuffer.OFFER_DROPPED, offer(buffer, 4));
+
+        assertEquals(2, buffer.getDroppedCount());
+        assertEquals(0, buffer.getCoalescedCount());
+        assertTrue(buffer.poll(reading));
+        assertEquals(1L, reading.getTimestamp());
+        assertTrue(buffer.poll(reading));
+        assertEquals(2L, reading.getTimestamp());
+        assertFalse(buffer.poll(reading));
+    }
+
+    @Test
+    public void offer_dropOldestWhenFull_discardsTheOldestEvent() {
+        SensorRingBuffer buffer = new SensorRingBuffer(2, 3, SensorRingBuffer.DROP_OLDEST);
+        SensorReading reading = new SensorReading(3);
+        offer(buffer, 1);
+        offer(buffer, 2);
+
+        assertEquals(SensorRingBuffer.OFFER_DROPPED, offer(buffer, 3));
+        assertEquals(SensorRingBuffer.OFFER_DROPPED, offer(buffer, 4));
+
+        assertEquals(2, buffer.getDroppedCount());
+        assertEquals(2, buffer.getSize());
+        assertTrue(buffer.poll(reading));
+        assertEquals(3L, reading.getTimestamp());
+        assertTrue(buffer.poll(reading));
+        assertEquals(4L, reading.getTimestamp());
+        assertFalse(buffer.poll(reading));
+    }
+
+    @Test
+    public void offer_coalesceLatestWhenFull_keepsTheMostRecentEvent() {
+        SensorRingBuffer buffer = new SensorRingBuffer(2, 3, SensorRingBuffer.COALESCE_LATEST);
+        SensorReading reading = new SensorReading(3);
+        offer(buffer, 1);
+        offer(buffer, 2);
+
+        assertEquals(SensorRingBuffer.OFFER_COALESCED, offer(buffer, 3));
+        assertEquals(SensorRingBuffer.OFFER_COALESCED, offer(buffer, 4));
+        assertEquals(SensorRingBuffer.OFFER_COALESCED, offer(buffer, 5));
+
+        assertEquals(2, buffer.getCoalescedCount());
+        assertEquals(0, buffer.getDroppedCount());
+        assertEquals(3, buffer.getSize());
+        assertTrue(buffer.poll(reading));
+        assertEquals(1L, reading.getTimestamp());
+        assertTrue(buffer.poll(reading));
+        assertEquals(2L, reading.getTimestamp());
+        assertTrue(buffer.poll(reading));
+        assertEquals(5L, reading.getTimestamp());
+        assertEquals(50f, reading.getValues()[0], 0f);
+        assertFalse(buffer.poll(reading));
+        // With room again, events go back to the ring
+        assertEquals(SensorRingBuffer.OFFER_OK, offer(buffer, 6));
+    }
+
+    @Test
+    public void offer_blockWhenFull_waitsForTheConsumer() throws Exception {
+        final SensorRingBuffer buffer = new SensorRingBuffer(2, 3, SensorRingBuffer.BLOCK);
+        SensorReading reading = new SensorReading(3);
+        offer(buffer, 1);
+        offer(buffer, 2);
+        final AtomicReference<Integer> result = new AtomicReference<>();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(offer(buffer, 3));
+            }
+        });
+        producer.start();
+
+        producer.join(100);
+        assertTrue(producer.isAlive());
+        assertTrue(buffer.poll(reading));
+        producer.join(5000);
+
+        assertFalse(producer.isAlive());
+        assertEquals(Integer.valueOf(SensorRingBuffer.OFFER_OK), result.get());
+        assertEquals(0, buffer.getDroppedCount());
+        assertTrue(buffer.poll(reading));
+        assertEquals(2L, reading.getTimestamp());
+        assertTrue(buffer.poll(reading));
+        assertEquals(3L, reading.getTimestamp());
+    }
+
+    @Test
+    public void poll_withTimeout_onEmptyBufferReturnsFalseAfterTheTimeout() {
+        SensorRingBuffer buffer = new SensorRingBuffer(2, 3, SensorRingBuffer.DROP_NEWEST);
+        long start = System.nanoTime();
+
+        assertFalse(buffer.poll(new SensorReading(3), TimeUnit.MILLISECONDS.toNanos(20)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    public void clear_discardsBufferedAndCoalescedEvents() {
+        SensorRingBuffer buffer = new SensorRingBuffer(1, 3, SensorRingBuffer.COALESCE_LATEST);
+        offer(buffer, 1);
+        offer(buffer, 2);
+
+        buffer.clear();
+
+        assertEquals(0, buffer.getSize());
+        assertFalse(buffer.poll(new SensorReading(3)));
+    }
+
+    @Test
+    public void constructor_invalidArguments_throw() {
+        assertInvalid(0, 3, SensorRingBuffer.DROP_NEWEST);
+        assertInvalid(2, 0, SensorRingBuffer.DROP_NEWEST);
+        assertInvalid(2, 3, SensorRingBuffer.BLOCK + 1);
+    }
+
+    @Test
+    public void stress_dropOldest_consumerSeesIncreasingEventsAndCountsAddUp() throws Exception {
+        stress(SensorRingBuffer.DROP_OLDEST);
+    }
+
+    @Test
+    public void stress_coalesceLatest_consumerSeesIncreasingEventsAndCountsAddUp() throws Exception {
+        stress(SensorRingBuffer.COALESCE_LATEST);
+    }
+
+    @Test
+    public void stress_block_consumerSeesEveryEvent() throws Exception {
+        stress(SensorRingBuffer.BLOCK);
+    }
+
+    private static void stress(int policy) throws Exception {
+        final int events = 200000;
+        final SensorRingBuffer buffer = new SensorRingBuffer(64, 3, policy);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                float[] values = new float[3];
+                for(int i = 1; i <= events; i++) {
+                    values[0] = i;
+                    values[1] = -i;
+                    values[2] = 2f * i;
+                    buffer.offer(i, 0, values, 3);
+                }
+            }
+        });
+        producer.start();
+        SensorReading reading = new SensorReading(3);
+        long last = 0;
+        long received = 0;
+        while(producer.isAlive() || buffer.getSize() > 0) {
+            if(!buffer.poll(reading, TimeUnit.MILLISECONDS.toNanos(1)))
+                continue;
+            long t = reading.getTimestamp();
+            float[] v = reading.getValues();
+            assertTrue(t + " after " + last, t > last);
+            // Each event must be consistent: no values mixed from two events
+            assertEquals((float) t, v[0], 0f);
+            assertEquals((float) -t, v[1], 0f);
+            assertEquals(2f * t, v[2], 0f);
+            last = t;
+            received++;
+        }
+        producer.join();
+        assertEquals(events, received + buffer.getDroppedCount() + buffer.getCoalescedCount());
+        if(policy == SensorRingBuffer.BLOCK)
+            assertEquals(events, received);
+        assertEquals(events, last);
+    }
+
+    private static int offer(SensorRingBuffer buffer, int i) {
+        return buffer.offer(i, i, new float[] { 10f * i, 0f, -i }, 3);
+    }
+
+    private static void assertInvalid(int capacity, int channels, int policy) {
+        try {
+            new SensorRingBuffer(capacity, channels, policy);
+            fail("Accepted " + capacity + ", " + channels + ", " + policy);
+        } catch(IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
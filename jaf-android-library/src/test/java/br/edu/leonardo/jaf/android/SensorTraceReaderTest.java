@@ -0,0 +1,86 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the segment discovery of SensorTraceReader, which run on the development
+ * machine (host) with traces written by SensorTraceRecorder to a temporary directory.
+ */
+public class SensorTraceReaderTest {
+
+    private static final int RECORDS = 3000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void constructor_traceWhosePrefixStartsAnother_readsOnlyItsOwnSegments() throws IOException {
+        File directory = folder.getRoot();
+        record(directory, "acc", 1f);
+        record(directory, "acc-raw", -1f);
+
+        assertRecords(directory, "acc", 1f);
+        assertRecords(directory, "acc-raw", -1f);
+    }
+
+    @Test(expected = IOException.class)
+    public void constructor_onlyLongerPrefixes_findsNoTrace() throws IOException {
+        File directory = folder.getRoot();
+        record(directory, "acc-raw", -1f);
+
+        new SensorTraceReader(directory, "acc");
+    }
+
+    private static void record(File directory, String prefix, float sign) throws IOException {
+        // Small segments, so that each trace spans several files
+        SensorTraceRecorder recorder = new SensorTraceRecorder(directory, prefix, 1, 16384, 0, 4096);
+        int id = recorder.addSource(new FakeSource(), prefix);
+        recorder.start();
+        for(int i = 1; i <= RECORDS; i++)
+            assertTrue(recorder.record(id, i * 1000L, new float[] { sign * i }, 1));
+        recorder.stop();
+        assertTrue(recorder.getSegmentCount() > 1);
+    }
+
+    private static void assertRecords(File directory, String prefix, float sign) throws IOException {
+        SensorTraceReader reader = new SensorTraceReader(directory, prefix);
+        try {
+            assertEquals(prefix, reader.getSourceName(0));
+            int count = 0;
+            while(reader.next()) {
+                count++;
+                assertEquals(count * 1000L, reader.getTimestamp());
+                assertEquals(sign * count, reader.getValue(0), 0f);
+            }
+            assertEquals(RECORDS, count);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * A reading source that never delivers readings, since the test records them directly.
+     */
+    private static final class FakeSource implements SensorReadingSource {
+
+        @Override
+        public void addReadingListener(SensorReadingListener listener) {
+        }
+
+        @Override
+        public void removeReadingListener(SensorReadingListener listener) {
+        }
+
+        @Override
+        public int getChannelCount() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package br.edu.leonardo.jaf.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the suppression filter, which run on the development machine (host).
+ */
+public class SuppressionFilterTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void accept_firstEvent_isAlwaysEmitted() {
+        SuppressionFilter filter = new SuppressionFilter(10f, 0f, 0L, 0L);
+
+        assertTrue(filter.accept(0L, new float[] {1f}, 1));
+        assertEquals(1, filter.getEmittedCount());
+    }
+
+    @Test
+    public void accept_changeWithinAbsoluteDeadband_isSuppressed() {
+        SuppressionFilter filter = new SuppressionFilter(0.5f, 0f, 0L, 0L);
+        filter.accept(0L, new float[] {1f, 2f}, 2);
+
+        assertFalse(filter.accept(MS, new float[] {1.4f, 1.6f}, 2));
+        assertTrue(filter.accept(2 * MS, new float[] {1f, 2.6f}, 2));
+        // The reference is the last emitted event, not the last received one
+        assertFalse(filter.accept(3 * MS, new float[] {1.2f, 2.4f}, 2));
+        assertEquals(2, filter.getSuppressedCount());
+        assertEquals(2, filter.getEmittedCount());
+    }
+
+    @Test
+    public void accept_changeWithinRelativeDeadband_isSuppressed() {
+        SuppressionFilter filter = new SuppressionFilter(0f, 0.1f, 0L, 0L);
+        filter.accept(0L, new float[] {100f}, 1);
+
+        assertFalse(filter.accept(MS, new float[] {109f}, 1));
+        assertTrue(filter.accept(2 * MS, new float[] {89f}, 1));
+    }
+
+    @Test
+    public void accept_nanAfterANumber_isEmitted() {
+        SuppressionFilter filter = new SuppressionFilter(1f, 0f, 0L, 0L);
+        filter.accept(0L, new float[] {1f}, 1);
+
+        assertTrue(filter.accept(MS, new float[] {Float.NaN}, 1));
+    }
+
+    @Test
+    public void accept_changeBeforeMinInterval_isSuppressed() {
+        SuppressionFilter filter = new SuppressionFilter(0f, 0f, 10 * MS, 0L);
+        filter.accept(0L, new float[] {1f}, 1);
+
+        assertFalse(filter.accept(9 * MS, new float[] {50f}, 1));
+        assertTrue(filter.accept(10 * MS, new float[] {50f}, 1));
+        assertFalse(filter.accept(15 * MS, new float[] {60f}, 1));
+    }
+
+    @Test
+    public void accept_unchangedEventAfterMaxSilence_isEmitted() {
+        SuppressionFilter filter = new SuppressionFilter(1f, 0f, 0L, 100 * MS);
+        filter.accept(0L, new float[] {1f}, 1);
+
+        assertFalse(filter.accept(99 * MS, new float[] {1f}, 1));
+        assertTrue(filter.accept(100 * MS, new float[] {1f}, 1));
+        assertFalse(filter.accept(150 * MS, new float[] {1f}, 1));
+    }
+
+    @Test
+    public void heartbeat_reEmitsTheLastEmittedValuesOncePerMaxSilence() {
+        SuppressionFilter filter = new SuppressionFilter(1f, 0f, 0L, 100 * MS);
+        filter.accept(5 * MS, new float[] {1f, 2f}, 2);
+        filter.accept(50 * MS, new float[] {1.5f, 2.5f}, 2);
+        float[] values = new float[2];
+
+        assertEquals(105 * MS, filter.heartbeat(values));
+        assertArrayEquals(new float[] {1f, 2f}, values, 0f);
+        assertEquals(205 * MS, filter.heartbeat(values));
+        assertEquals(3, filter.getEmittedCount());
+        // The heartbeat is the new reference of the silence
+        assertFalse(filter.accept(300 * MS, new float[] {1f, 2f}, 2));
+        assertTrue(filter.accept(305 * MS, new float[] {1f, 2f}, 2));
+    }
+
+    @Test
+    public void heartbeat_withoutEmittedEventsOrMaxSilence_returnsNoHeartbeat() {
+        SuppressionFilter silent = new SuppressionFilter(1f, 0f, 0L, 100 * MS);
+        SuppressionFilter unbounded = new SuppressionFilter(1f, 0f, 0L, 0L);
+        unbounded.accept(0L, new float[] {1f}, 1);
+        float[] values = new float[1];
+
+        assertEquals(SuppressionFilter.NO_HEARTBEAT, silent.heartbeat(values));
+        assertEquals(SuppressionFilter.NO_HEARTBEAT, unbounded.heartbeat(values));
+        silent.accept(0L, new float[] {1f}, 1);
+        silent.reset();
+        assertEquals(SuppressionFilter.NO_HEARTBEAT, silent.heartbeat(values));
+    }
+
+    @Test
+    public void getHeartbeatDelay_activeSensor_waitsForTheMaxSilence() {
+        SuppressionFilter filter = new SuppressionFilter(1f, 0f, 0L, 100 * MS);
+
+        assertEquals(60L, AndroidDeviceSensor.getHeartbeatDelay(filter, true, 1000L, 1040L));
+        assertEquals(0L, AndroidDeviceSensor.getHeartbeatDelay(filter, true, 1000L, 1100L));
+        assertEquals(0L, AndroidDeviceSensor.getHeartbeatDelay(filter, true, 1000L, 5000L));
+        assertEquals(AndroidDeviceSensor.NO_HEARTBEAT_DELAY, AndroidDeviceSensor.getHeartbeatDelay(null, true, 1000L, 5000L));
+        assertEquals(AndroidDeviceSensor.NO_HEARTBEAT_DELAY,
+                AndroidDeviceSensor.getHeartbeatDelay(new SuppressionFilter(1f, 0f, 0L, 0L), true, 1000L, 5000L));
+    }
+
+    @Test
+    public void getHeartbeatDelay_pollingOnlySensor_stopsTheHeartbeat() {
+        // In the polling-only mode the last emission time no longer advances, so an active
+        // heartbeat would forward the stale values once per maximum interval forever
+        SuppressionFilter filter = new SuppressionFilter(1f, 0f, 0L, 100 * MS);
+        filter.accept(0L, new float[] {1f}, 1);
+        boolean registered = true;
+        boolean pollingOnly = true;
+
+        assertEquals(AndroidDeviceSensor.NO_HEARTBEAT_DELAY,
+                AndroidDeviceSensor.getHeartbeatDelay(filter, registered && !pollingOnly, 1000L, 1100L));
+        assertEquals(AndroidDeviceSensor.NO_HEARTBEAT_DELAY,
+                AndroidDeviceSensor.getHeartbeatDelay(filter, registered && !pollingOnly, 1000L, 60000L));
+        assertEquals(1, filter.getEmittedCount());
+        // Once the polling-only mode is disabled, the next emitted event restarts the heartbeat
+        pollingOnly = false;
+        assertEquals(100L, AndroidDeviceSensor.getHeartbeatDelay(filter, registered && !pollingOnly, 60000L, 60000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_withNegativeParameter_throws() {
+        new SuppressionFilter(0f, 0f, -1L, 0L);
+    }
+}